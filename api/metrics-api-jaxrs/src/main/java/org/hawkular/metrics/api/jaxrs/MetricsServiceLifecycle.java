@@ -30,6 +30,14 @@ import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.CASSANDRA_R
 import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.CASSANDRA_USESSL;
 import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.DEFAULT_TTL;
 import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.DISABLE_METRICS_JMX;
+import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.INSERTED_DATA_BUFFER_SIZE;
+import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.INSERTED_DATA_OVERFLOW_POLICY;
+import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.QUERY_MAX_ESTIMATED_ROWS;
+import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.QUERY_MAX_SCANNED_ROWS;
+import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.QUERY_SAMPLE_INTERVAL;
+import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.STATS_CACHE_EXPIRATION;
+import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.STATS_CACHE_MAX_BUCKETS;
+import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.STORAGE;
 import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.USE_VIRTUAL_CLOCK;
 import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.WAIT_FOR_SERVICE;
 
@@ -53,15 +61,21 @@ import javax.inject.Inject;
 import javax.net.ssl.SSLContext;
 
 import org.hawkular.metrics.api.jaxrs.config.Configurable;
+import org.hawkular.metrics.api.jaxrs.config.ConfigurationKey;
 import org.hawkular.metrics.api.jaxrs.config.ConfigurationProperty;
+import org.hawkular.metrics.api.jaxrs.limit.TenantRateLimiter;
 import org.hawkular.metrics.api.jaxrs.log.RestLogger;
 import org.hawkular.metrics.api.jaxrs.log.RestLogging;
 import org.hawkular.metrics.api.jaxrs.util.Eager;
 import org.hawkular.metrics.api.jaxrs.util.MetricRegistryProvider;
 import org.hawkular.metrics.core.service.DataAccess;
 import org.hawkular.metrics.core.service.DataAccessImpl;
+import org.hawkular.metrics.core.service.InMemoryDataAccess;
 import org.hawkular.metrics.core.service.MetricsService;
 import org.hawkular.metrics.core.service.MetricsServiceImpl;
+import org.hawkular.metrics.core.service.cache.StatsCache;
+import org.hawkular.metrics.core.service.cost.QueryCostModel;
+import org.hawkular.metrics.core.service.events.OverflowPolicy;
 import org.hawkular.metrics.schema.SchemaService;
 import org.hawkular.metrics.sysconfig.ConfigurationService;
 import org.hawkular.metrics.tasks.api.Task2;
@@ -97,6 +111,9 @@ import rx.functions.Action1;
 public class MetricsServiceLifecycle {
     private static final RestLogger log = RestLogging.getRestLogger(MetricsServiceLifecycle.class);
 
+    private static final String CASSANDRA_STORAGE = "cassandra";
+    private static final String IN_MEMORY_STORAGE = "memory";
+
     /**
      * @see #getState()
      */
@@ -165,10 +182,53 @@ public class MetricsServiceLifecycle {
     @ConfigurationProperty(DISABLE_METRICS_JMX)
     private String disableMetricsJmxReporting;
 
+    @Inject
+    @Configurable
+    @ConfigurationProperty(INSERTED_DATA_BUFFER_SIZE)
+    private String insertedDataBufferSize;
+
+    @Inject
+    @Configurable
+    @ConfigurationProperty(INSERTED_DATA_OVERFLOW_POLICY)
+    private String insertedDataOverflowPolicy;
+
+    @Inject
+    @Configurable
+    @ConfigurationProperty(STORAGE)
+    private String storage;
+
+    @Inject
+    @Configurable
+    @ConfigurationProperty(STATS_CACHE_MAX_BUCKETS)
+    private String statsCacheMaxBuckets;
+
+    @Inject
+    @Configurable
+    @ConfigurationProperty(STATS_CACHE_EXPIRATION)
+    private String statsCacheExpiration;
+
+    @Inject
+    @Configurable
+    @ConfigurationProperty(QUERY_MAX_ESTIMATED_ROWS)
+    private String queryMaxEstimatedRows;
+
+    @Inject
+    @Configurable
+    @ConfigurationProperty(QUERY_MAX_SCANNED_ROWS)
+    private String queryMaxScannedRows;
+
+    @Inject
+    @Configurable
+    @ConfigurationProperty(QUERY_SAMPLE_INTERVAL)
+    private String querySampleInterval;
+
     @Inject
     @ServiceReady
     Event<ServiceReadyEvent> metricsServiceReady;
 
+    @Inject
+    private TenantRateLimiter rateLimiter;
+
     private volatile State state;
     private int connectionAttempts;
     private Session session;
@@ -223,6 +283,10 @@ public class MetricsServiceLifecycle {
             return;
         }
         log.infoInitializing();
+        if (IN_MEMORY_STORAGE.equals(getStorage())) {
+            startInMemoryMetricsService();
+            return;
+        }
         connectionAttempts++;
         try {
             session = createSession();
@@ -251,7 +315,7 @@ public class MetricsServiceLifecycle {
             // will change at some point though because the task scheduling service will
             // probably move to the hawkular-commons repo.
             initSchema();
-            dataAcces = new DataAccessImpl(session);
+            dataAcces = new DataAccessImpl(session, MetricRegistryProvider.INSTANCE.getMetricRegistry());
             initTaskScheduler();
 
             ConfigurationService configurationService = new ConfigurationService();
@@ -262,17 +326,22 @@ public class MetricsServiceLifecycle {
             metricsService.setTaskScheduler(taskScheduler);
             metricsService.setConfigurationService(configurationService);
             metricsService.setDefaultTTL(getDefaultTTL());
+            metricsService.setStatsCache(createStatsCache());
+            QueryCostModel queryCostModel = createQueryCostModel();
+            metricsService.setQueryCostModel(queryCostModel);
 
-            MetricRegistry metricRegistry = MetricRegistryProvider.INSTANCE.getMetricRegistry();
-            if (!Boolean.parseBoolean(disableMetricsJmxReporting)) {
-                jmxReporter = JmxReporter.forRegistry(metricRegistry).inDomain("hawkular.metrics").build();
-                jmxReporter.start();
-            }
-            metricsService.startUp(session, keyspace, false, false, metricRegistry);
+            metricsService.startUp(session, keyspace, false, false, initMetricRegistry());
 
             initJobs();
 
-            metricsServiceReady.fire(new ServiceReadyEvent(metricsService.insertedDataEvents()));
+            metricsServiceReady.fire(new ServiceReadyEvent(metricsService.insertedDataEvents("bus",
+                    getInsertedDataBufferSize(), getInsertedDataOverflowPolicy())));
+
+            startRateLimiter();
+            lifecycleExecutor.scheduleWithFixedDelay(() -> configurationService.load(TenantRateLimiter.CONFIGURATION_ID)
+                    .subscribe(rateLimiter::configure, log::warnRateLimitsNotLoaded), 0, 1, MINUTES);
+            lifecycleExecutor.scheduleWithFixedDelay(() -> configurationService.load(QueryCostModel.CONFIGURATION_ID)
+                    .subscribe(queryCostModel::configure, log::warnQueryLimitsNotLoaded), 0, 1, MINUTES);
 
             Configuration configuration = session.getCluster().getConfiguration();
             LoadBalancingPolicy loadBalancingPolicy = configuration.getPolicies().getLoadBalancingPolicy();
@@ -307,6 +376,51 @@ public class MetricsServiceLifecycle {
         }
     }
 
+    /**
+     * Starts a single node service backed by an {@link InMemoryDataAccess}, without connecting to Cassandra.
+     */
+    private void startInMemoryMetricsService() {
+        log.warnInMemoryStorage();
+        try {
+            dataAcces = new InMemoryDataAccess();
+
+            metricsService = new MetricsServiceImpl();
+            metricsService.setDataAccess(dataAcces);
+            metricsService.setDefaultTTL(getDefaultTTL());
+            metricsService.setStatsCache(createStatsCache());
+            metricsService.setQueryCostModel(createQueryCostModel());
+            metricsService.startUp(initMetricRegistry());
+
+            metricsServiceReady.fire(new ServiceReadyEvent(metricsService.insertedDataEvents("bus",
+                    getInsertedDataBufferSize(), getInsertedDataOverflowPolicy())));
+
+            startRateLimiter();
+
+            state = State.STARTED;
+            log.infoServiceStarted();
+        } catch (Exception e) {
+            log.fatalCannotStartInMemoryService(e);
+            state = State.FAILED;
+        } finally {
+            if (state != State.STARTED && metricsService != null) {
+                try {
+                    metricsService.shutdown();
+                } catch (Exception e) {
+                    log.errorCouldNotCloseServiceInstance(e);
+                }
+            }
+        }
+    }
+
+    private MetricRegistry initMetricRegistry() {
+        MetricRegistry metricRegistry = MetricRegistryProvider.INSTANCE.getMetricRegistry();
+        if (!Boolean.parseBoolean(disableMetricsJmxReporting)) {
+            jmxReporter = JmxReporter.forRegistry(metricRegistry).inDomain("hawkular.metrics").build();
+            jmxReporter.start();
+        }
+        return metricRegistry;
+    }
+
     private Session createSession() {
         Cluster.Builder clusterBuilder = new Cluster.Builder();
         int port;
@@ -390,6 +504,15 @@ public class MetricsServiceLifecycle {
 //        taskScheduler.start();
     }
 
+    private String getStorage() {
+        String value = storage == null ? STORAGE.defaultValue() : storage.toLowerCase(Locale.ROOT);
+        if (!CASSANDRA_STORAGE.equals(value) && !IN_MEMORY_STORAGE.equals(value)) {
+            log.warnInvalidStorage(storage, STORAGE.defaultValue());
+            return STORAGE.defaultValue();
+        }
+        return value;
+    }
+
     private int getDefaultTTL() {
         try {
             return Integer.parseInt(defaultTTL);
@@ -399,6 +522,87 @@ public class MetricsServiceLifecycle {
         }
     }
 
+    private int getInsertedDataBufferSize() {
+        try {
+            int bufferSize = Integer.parseInt(insertedDataBufferSize);
+            if (bufferSize > 0) {
+                return bufferSize;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        log.warnInvalidInsertedDataBufferSize(insertedDataBufferSize, INSERTED_DATA_BUFFER_SIZE.defaultValue());
+        return Integer.parseInt(INSERTED_DATA_BUFFER_SIZE.defaultValue());
+    }
+
+    private StatsCache createStatsCache() {
+        long maxBuckets;
+        try {
+            maxBuckets = Long.parseLong(statsCacheMaxBuckets);
+        } catch (NumberFormatException e) {
+            log.warnInvalidConfigValue(statsCacheMaxBuckets, STATS_CACHE_MAX_BUCKETS.toString(),
+                    STATS_CACHE_MAX_BUCKETS.defaultValue());
+            maxBuckets = Long.parseLong(STATS_CACHE_MAX_BUCKETS.defaultValue());
+        }
+        if (maxBuckets <= 0) {
+            return null;
+        }
+        long expiration;
+        try {
+            expiration = Long.parseLong(statsCacheExpiration);
+            if (expiration <= 0) {
+                throw new NumberFormatException();
+            }
+        } catch (NumberFormatException e) {
+            log.warnInvalidConfigValue(statsCacheExpiration, STATS_CACHE_EXPIRATION.toString(),
+                    STATS_CACHE_EXPIRATION.defaultValue());
+            expiration = Long.parseLong(STATS_CACHE_EXPIRATION.defaultValue());
+        }
+        return new StatsCache(maxBuckets, expiration, SECONDS);
+    }
+
+    private QueryCostModel createQueryCostModel() {
+        long sampleInterval = getLong(querySampleInterval, QUERY_SAMPLE_INTERVAL, 1);
+        long maxEstimatedRows = getLong(queryMaxEstimatedRows, QUERY_MAX_ESTIMATED_ROWS, 0);
+        long maxScannedRows = getLong(queryMaxScannedRows, QUERY_MAX_SCANNED_ROWS, 0);
+        return new QueryCostModel(SECONDS.toMillis(sampleInterval), maxEstimatedRows, maxScannedRows);
+    }
+
+    private long getLong(String value, ConfigurationKey key, long min) {
+        try {
+            long parsed = Long.parseLong(value);
+            if (parsed >= min) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        log.warnInvalidConfigValue(value, key.toString(), key.defaultValue());
+        return Long.parseLong(key.defaultValue());
+    }
+
+    private OverflowPolicy getInsertedDataOverflowPolicy() {
+        OverflowPolicy defaultPolicy = OverflowPolicy.fromText(INSERTED_DATA_OVERFLOW_POLICY.defaultValue());
+        OverflowPolicy policy;
+        try {
+            policy = OverflowPolicy.fromText(insertedDataOverflowPolicy);
+        } catch (IllegalArgumentException e) {
+            log.warnInvalidInsertedDataOverflowPolicy(insertedDataOverflowPolicy, defaultPolicy.getText());
+            return defaultPolicy;
+        }
+        if (policy == OverflowPolicy.BLOCK) {
+            // The bus subscriber waits for the broker, blocking would stall the threads inserting data
+            log.warnBlockingInsertedDataOverflowPolicy(insertedDataOverflowPolicy, defaultPolicy.getText());
+            return defaultPolicy;
+        }
+        return policy;
+    }
+
+    private void startRateLimiter() {
+        // Only meters data points, which do not need every event: dropping some is better than blocking inserts
+        rateLimiter.start(metricsService.insertedDataEvents("rate-limiter", getInsertedDataBufferSize(),
+                OverflowPolicy.DROP_OLDEST));
+        lifecycleExecutor.scheduleWithFixedDelay(rateLimiter::expireIdleTenants, 1, 1, MINUTES);
+    }
+
     private void initJobs() {
 //        GenerateRate generateRates = new GenerateRate(metricsService);
 //        CreateTenants createTenants = new CreateTenants(metricsService, dataAcces);
@@ -438,6 +642,7 @@ public class MetricsServiceLifecycle {
     private void stopMetricsService() {
         state = State.STOPPING;
         try {
+            rateLimiter.stop();
             if (metricsService != null) {
                 metricsService.shutdown();
             }
@@ -41,7 +41,28 @@ public enum ConfigurationKey {
     WAIT_FOR_SERVICE("hawkular.metrics.waitForService", null, null, true),
     USE_VIRTUAL_CLOCK("hawkular.metrics.use-virtual-clock", "false", "USE_VIRTUAL_CLOCK", false),
     DEFAULT_TTL("hawkular.metrics.default-ttl", "7", "DEFAULT_TTL", false),
-    DISABLE_METRICS_JMX("hawkular.metrics.disable-metrics-jmx-reporting", null, "DISABLE_METRICS_JMX", true);
+    DISABLE_METRICS_JMX("hawkular.metrics.disable-metrics-jmx-reporting", null, "DISABLE_METRICS_JMX", true),
+    INSERTED_DATA_BUFFER_SIZE("hawkular.metrics.inserted-data.buffer-size", "10000", "INSERTED_DATA_BUFFER_SIZE",
+            false),
+    INSERTED_DATA_OVERFLOW_POLICY("hawkular.metrics.inserted-data.overflow-policy", "drop-oldest",
+            "INSERTED_DATA_OVERFLOW_POLICY", false),
+    STORAGE("hawkular.metrics.storage", "cassandra", "METRICS_STORAGE", false),
+    RATE_LIMIT_DATA_POINTS("hawkular.metrics.rate-limit.data-points", "0", "RATE_LIMIT_DATA_POINTS", false),
+    RATE_LIMIT_CONCURRENT_QUERIES("hawkular.metrics.rate-limit.concurrent-queries", "0",
+            "RATE_LIMIT_CONCURRENT_QUERIES", false),
+    RATE_LIMIT_BURST("hawkular.metrics.rate-limit.burst", "1", "RATE_LIMIT_BURST", false),
+    ADMISSION_CONTROL("hawkular.metrics.admission-control", "false", "ADMISSION_CONTROL", false),
+    ADMISSION_CONTROL_MIN_LIMIT("hawkular.metrics.admission-control.min-limit", "20", "ADMISSION_CONTROL_MIN_LIMIT",
+            false),
+    ADMISSION_CONTROL_MAX_LIMIT("hawkular.metrics.admission-control.max-limit", "1000", "ADMISSION_CONTROL_MAX_LIMIT",
+            false),
+    ADMISSION_CONTROL_LATENCY_TARGET("hawkular.metrics.admission-control.latency-target", "1000",
+            "ADMISSION_CONTROL_LATENCY_TARGET", false),
+    STATS_CACHE_MAX_BUCKETS("hawkular.metrics.stats-cache.max-buckets", "0", "STATS_CACHE_MAX_BUCKETS", false),
+    STATS_CACHE_EXPIRATION("hawkular.metrics.stats-cache.expiration", "300", "STATS_CACHE_EXPIRATION", false),
+    QUERY_MAX_ESTIMATED_ROWS("hawkular.metrics.query.max-estimated-rows", "0", "QUERY_MAX_ESTIMATED_ROWS", false),
+    QUERY_MAX_SCANNED_ROWS("hawkular.metrics.query.max-scanned-rows", "0", "QUERY_MAX_SCANNED_ROWS", false),
+    QUERY_SAMPLE_INTERVAL("hawkular.metrics.query.sample-interval", "10", "QUERY_SAMPLE_INTERVAL", false);
 
     private final String name;
     private final String env;
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.filter;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+
+import java.io.IOException;
+
+import javax.inject.Inject;
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.hawkular.metrics.api.jaxrs.limit.AdaptiveConcurrencyLimiter;
+import org.hawkular.metrics.model.ApiError;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Sheds load with a {@code 503} response when the {@link AdaptiveConcurrencyLimiter} has no permit left. Writes are
+ * high priority, queries low priority. Other requests, like the status page, are not limited.
+ * <p>
+ * Latency is measured from admission to the completion of the async context, so that streamed query results are
+ * accounted for. Internal server errors, which include Cassandra timeouts, count as failures.
+ */
+@WebFilter(urlPatterns = "/*", asyncSupported = true)
+public class AdmissionControlFilter implements Filter {
+    private static final String OVERLOADED = "Service overloaded, retry later.";
+
+    @Inject
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @Inject
+    private ObjectMapper mapper;
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!limiter.isEnabled() || request.getDispatcherType() != DispatcherType.REQUEST) {
+            chain.doFilter(request, response);
+            return;
+        }
+        RequestKind kind = RequestKind.of((HttpServletRequest) request);
+        if (kind == RequestKind.OTHER) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        if (!limiter.tryAcquire(kind == RequestKind.WRITE)) {
+            httpResponse.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            httpResponse.setHeader("Retry-After", "1");
+            httpResponse.setContentType(APPLICATION_JSON);
+            mapper.writeValue(httpResponse.getOutputStream(), new ApiError(OVERLOADED));
+            return;
+        }
+        long start = System.nanoTime();
+        boolean released = false;
+        try {
+            chain.doFilter(request, response);
+            RequestCompletion.onComplete(request, () -> limiter.release(start, System.nanoTime(),
+                    httpResponse.getStatus() == HttpServletResponse.SC_INTERNAL_SERVER_ERROR));
+            released = true;
+        } finally {
+            if (!released) {
+                limiter.release(start, System.nanoTime(), true);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
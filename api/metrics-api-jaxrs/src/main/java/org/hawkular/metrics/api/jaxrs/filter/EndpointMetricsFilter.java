@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.filter;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.Path;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+
+import org.hawkular.metrics.api.jaxrs.util.MetricRegistryProvider;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Records the latency of each REST endpoint, from the time the request is matched to a resource method until the
+ * response is ready to be written. Endpoints are identified by the HTTP method and the path template of the resource
+ * method, e.g. {@code rest-request-latency{endpoint="GET /gauges/{id}/raw"}}.
+ * <p>
+ * The endpoint label is also set as the {@link #ENDPOINT_LABEL} request property, for other providers to label their
+ * metrics.
+ */
+@Provider
+public class EndpointMetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+    public static final String ENDPOINT_LABEL = "org.hawkular.metrics.endpoint";
+
+    private static final String START = "org.hawkular.metrics.request-start";
+
+    private final MetricRegistry metricRegistry = MetricRegistryProvider.INSTANCE.getMetricRegistry();
+    private final ConcurrentMap<Method, String> paths = new ConcurrentHashMap<>();
+
+    @Context
+    ResourceInfo resourceInfo;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        Method method = resourceInfo.getResourceMethod();
+        if (method == null) {
+            return;
+        }
+        String path = paths.computeIfAbsent(method, m -> getPath(resourceInfo.getResourceClass(), m));
+        requestContext.setProperty(ENDPOINT_LABEL, "endpoint=\"" + requestContext.getMethod() + " " + path + "\"");
+        requestContext.setProperty(START, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext)
+            throws IOException {
+        Object endpoint = requestContext.getProperty(ENDPOINT_LABEL);
+        Object start = requestContext.getProperty(START);
+        if (endpoint == null || start == null) {
+            return;
+        }
+        metricRegistry.timer("rest-request-latency{" + endpoint + "}")
+                .update(System.nanoTime() - (Long) start, TimeUnit.NANOSECONDS);
+    }
+
+    private static String getPath(Class<?> resourceClass, Method method) {
+        StringBuilder path = new StringBuilder();
+        append(path, resourceClass.getAnnotation(Path.class));
+        append(path, method.getAnnotation(Path.class));
+        return path.length() == 0 ? "/" : path.toString();
+    }
+
+    private static void append(StringBuilder path, Path annotation) {
+        if (annotation == null) {
+            return;
+        }
+        String value = annotation.value();
+        if (!value.startsWith("/")) {
+            path.append('/');
+        }
+        path.append(value.endsWith("/") ? value.substring(0, value.length() - 1) : value);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.filter;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+
+import java.io.IOException;
+
+import javax.inject.Inject;
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.hawkular.metrics.api.jaxrs.limit.TenantRateLimiter;
+import org.hawkular.metrics.model.ApiError;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Enforces the limits of the {@link TenantRateLimiter}: data point writes are rejected while the tenant is over its
+ * rate, queries while the tenant has too many queries in progress. Rejected requests get a {@code 429} response, with
+ * a {@code Retry-After} header for writes.
+ * <p>
+ * This is a servlet filter rather than a JAX-RS filter because query results are streamed to the async context, which
+ * is completed without going through JAX-RS response filters; the query permit could not be released otherwise.
+ */
+@WebFilter(urlPatterns = "/*", asyncSupported = true)
+public class RateLimitFilter implements Filter {
+    static final int TOO_MANY_REQUESTS = 429;
+
+    @Inject
+    private TenantRateLimiter rateLimiter;
+
+    @Inject
+    private ObjectMapper mapper;
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        String tenant = httpRequest.getHeader(TenantFilter.TENANT_HEADER_NAME);
+        if (!rateLimiter.isEnabled() || tenant == null || request.getDispatcherType() != DispatcherType.REQUEST) {
+            chain.doFilter(request, response);
+            return;
+        }
+        RequestKind kind = RequestKind.of(httpRequest);
+
+        if (kind == RequestKind.WRITE) {
+            long retryAfter = rateLimiter.checkDataPoints(tenant);
+            if (retryAfter > 0) {
+                HttpServletResponse httpResponse = (HttpServletResponse) response;
+                httpResponse.setHeader("Retry-After", String.valueOf(retryAfter));
+                reject(httpResponse, "Data point rate limit exceeded for tenant " + tenant);
+                return;
+            }
+            chain.doFilter(request, response);
+        } else if (kind == RequestKind.QUERY) {
+            if (!rateLimiter.acquireQuery(tenant)) {
+                reject((HttpServletResponse) response, "Too many concurrent queries for tenant " + tenant);
+                return;
+            }
+            boolean released = false;
+            try {
+                chain.doFilter(request, response);
+                RequestCompletion.onComplete(request, () -> rateLimiter.releaseQuery(tenant));
+                released = true;
+            } finally {
+                if (!released) {
+                    rateLimiter.releaseQuery(tenant);
+                }
+            }
+        } else {
+            chain.doFilter(request, response);
+        }
+    }
+
+    private void reject(HttpServletResponse response, String message) throws IOException {
+        response.setStatus(TOO_MANY_REQUESTS);
+        response.setContentType(APPLICATION_JSON);
+        mapper.writeValue(response.getOutputStream(), new ApiError(message));
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
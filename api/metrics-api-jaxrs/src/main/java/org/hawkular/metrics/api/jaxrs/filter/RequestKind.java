@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.filter;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.hawkular.metrics.api.jaxrs.handler.BaseHandler;
+import org.hawkular.metrics.api.jaxrs.handler.StatusHandler;
+
+/**
+ * Classifies requests for the servlet filters which need to tell data point writes from queries, before the request
+ * is matched to a resource method.
+ */
+enum RequestKind {
+    /**
+     * Data points inserted with {@code POST .../raw}, {@code .../data} or {@code .../lines}.
+     */
+    WRITE,
+    /**
+     * Data point reads, with {@code GET} or {@code POST .../query}.
+     */
+    QUERY,
+    /**
+     * Status page, static resources and metric definition updates.
+     */
+    OTHER;
+
+    static RequestKind of(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return of(request.getMethod(), path);
+    }
+
+    static RequestKind of(String method, String path) {
+        if ("POST".equals(method)) {
+            if (path.endsWith("/raw") || path.endsWith("/data") || path.endsWith("/lines")) {
+                return WRITE;
+            }
+            return path.endsWith("/query") ? QUERY : OTHER;
+        }
+        if ("GET".equals(method) && !path.equals(BaseHandler.PATH) && !path.startsWith(StatusHandler.PATH)
+                && !path.startsWith("/static")) {
+            return QUERY;
+        }
+        return OTHER;
+    }
+}
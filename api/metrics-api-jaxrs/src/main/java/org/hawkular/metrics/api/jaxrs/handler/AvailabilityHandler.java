@@ -24,6 +24,7 @@ import static org.hawkular.metrics.api.jaxrs.util.ApiUtils.noContent;
 import static org.hawkular.metrics.api.jaxrs.util.ApiUtils.serverError;
 import static org.hawkular.metrics.model.MetricType.AVAILABILITY;
 
+import java.io.InputStream;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
@@ -51,6 +52,8 @@ import org.hawkular.metrics.api.jaxrs.handler.observer.MetricCreatedObserver;
 import org.hawkular.metrics.api.jaxrs.handler.observer.ResultSetObserver;
 import org.hawkular.metrics.api.jaxrs.handler.template.IMetricsHandler;
 import org.hawkular.metrics.api.jaxrs.handler.transformer.MinMaxTimestampTransformer;
+import org.hawkular.metrics.api.jaxrs.ingest.JsonMetricsReader;
+import org.hawkular.metrics.api.jaxrs.ingest.StreamingIngest;
 import org.hawkular.metrics.api.jaxrs.util.ApiUtils;
 import org.hawkular.metrics.core.service.Functions;
 import org.hawkular.metrics.core.service.Order;
@@ -70,6 +73,8 @@ import org.hawkular.metrics.model.param.TimeRange;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiImplicitParam;
+import io.swagger.annotations.ApiImplicitParams;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
@@ -251,7 +256,7 @@ public class AvailabilityHandler extends MetricsServiceHandler implements IMetri
     ) {
         Observable<Metric<AvailabilityType>> metrics = Functions.dataPointToObservable(getTenant(), id, data,
                 AVAILABILITY);
-        Observable<Void> observable = metricsService.addDataPoints(AVAILABILITY, metrics);
+        Observable<Void> observable = metricsService.addDataPoints(AVAILABILITY, rateLimiter.charge(metrics));
         observable.subscribe(new ResultSetObserver(asyncResponse));
     }
 
@@ -271,20 +276,21 @@ public class AvailabilityHandler extends MetricsServiceHandler implements IMetri
     @ApiOperation(value = "Add metric data for multiple availability metrics in a single call.")
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Adding data succeeded."),
-            @ApiResponse(code = 400, message = "Missing or invalid payload", response = ApiError.class),
+            @ApiResponse(code = 400, message = "Missing or invalid payload. Metrics read before the " +
+                    "error may have been stored.", response = ApiError.class),
             @ApiResponse(code = 500, message = "Unexpected error happened while storing the data",
                     response = ApiError.class)
     })
+    @ApiImplicitParams(@ApiImplicitParam(name = "body", value = "List of availability metrics", required = true,
+            paramType = "body", dataType = "org.hawkular.metrics.model.Metric", allowMultiple = true))
     public void addData(
             @Suspended final AsyncResponse asyncResponse,
-            @ApiParam(value = "List of availability metrics", required = true)
-            @JsonDeserialize()
-            List<Metric<AvailabilityType>> availabilities
+            @ApiParam(hidden = true) InputStream availabilities
     ) {
-        Observable<Metric<AvailabilityType>> metrics = Functions.metricToObservable(getTenant(), availabilities,
-                AVAILABILITY);
-        Observable<Void> observable = metricsService.addDataPoints(AVAILABILITY, metrics);
-        observable.subscribe(new ResultSetObserver(asyncResponse));
+        Observable<Metric<?>> metrics = JsonMetricsReader.readMetrics(mapper.getFactory(), availabilities,
+                getTenant(), AVAILABILITY);
+        StreamingIngest.addDataPoints(metricsService, rateLimiter.charge(metrics))
+                .subscribe(new ResultSetObserver(asyncResponse));
     }
 
     @POST
@@ -315,7 +321,10 @@ public class AvailabilityHandler extends MetricsServiceHandler implements IMetri
             @ApiParam(value = "List of availability metrics", required = true)
             @JsonDeserialize() List<Metric<AvailabilityType>> availabilities
     ) {
-        addData(asyncResponse, availabilities);
+        Observable<Metric<AvailabilityType>> metrics = Functions.metricToObservable(getTenant(), availabilities,
+                AVAILABILITY);
+        Observable<Void> observable = metricsService.addDataPoints(AVAILABILITY, rateLimiter.charge(metrics));
+        observable.subscribe(new ResultSetObserver(asyncResponse));
     }
 
     @Deprecated
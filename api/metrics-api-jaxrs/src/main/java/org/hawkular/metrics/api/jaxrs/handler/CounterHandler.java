@@ -24,6 +24,7 @@ import static org.hawkular.metrics.api.jaxrs.util.ApiUtils.noContent;
 import static org.hawkular.metrics.api.jaxrs.util.ApiUtils.serverError;
 import static org.hawkular.metrics.model.MetricType.COUNTER;
 
+import java.io.InputStream;
 import java.net.URI;
 import java.util.Collections;
 import java.util.List;
@@ -52,6 +53,8 @@ import org.hawkular.metrics.api.jaxrs.handler.observer.MetricCreatedObserver;
 import org.hawkular.metrics.api.jaxrs.handler.observer.ResultSetObserver;
 import org.hawkular.metrics.api.jaxrs.handler.template.IMetricsHandler;
 import org.hawkular.metrics.api.jaxrs.handler.transformer.MinMaxTimestampTransformer;
+import org.hawkular.metrics.api.jaxrs.ingest.JsonMetricsReader;
+import org.hawkular.metrics.api.jaxrs.ingest.StreamingIngest;
 import org.hawkular.metrics.api.jaxrs.util.ApiUtils;
 import org.hawkular.metrics.core.service.Functions;
 import org.hawkular.metrics.core.service.Order;
@@ -72,6 +75,8 @@ import org.hawkular.metrics.model.param.Tags;
 import org.hawkular.metrics.model.param.TimeRange;
 
 import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiImplicitParam;
+import io.swagger.annotations.ApiImplicitParams;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
@@ -245,17 +250,21 @@ public class CounterHandler extends MetricsServiceHandler implements IMetricsHan
     @ApiOperation(value = "Add data points for multiple counters.")
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Adding data points succeeded."),
-            @ApiResponse(code = 400, message = "Missing or invalid payload", response = ApiError.class),
+            @ApiResponse(code = 400, message = "Missing or invalid payload. Metrics read before the " +
+                    "error may have been stored.", response = ApiError.class),
             @ApiResponse(code = 500, message = "Unexpected error happened while storing the data points",
                     response = ApiError.class)
     })
+    @ApiImplicitParams(@ApiImplicitParam(name = "body", value = "List of metrics", required = true,
+            paramType = "body", dataType = "org.hawkular.metrics.model.Metric", allowMultiple = true))
     public void addData(
             @Suspended final AsyncResponse asyncResponse,
-            @ApiParam(value = "List of metrics", required = true) List<Metric<Long>> counters
+            @ApiParam(hidden = true) InputStream counters
     ) {
-        Observable<Metric<Long>> metrics = Functions.metricToObservable(getTenant(), counters, COUNTER);
-        Observable<Void> observable = metricsService.addDataPoints(COUNTER, metrics);
-        observable.subscribe(new ResultSetObserver(asyncResponse));
+        Observable<Metric<?>> metrics = JsonMetricsReader.readMetrics(mapper.getFactory(), counters, getTenant(),
+                COUNTER);
+        StreamingIngest.addDataPoints(metricsService, rateLimiter.charge(metrics))
+                .subscribe(new ResultSetObserver(asyncResponse));
     }
 
     @POST
@@ -304,7 +313,9 @@ public class CounterHandler extends MetricsServiceHandler implements IMetricsHan
             @Suspended final AsyncResponse asyncResponse,
             @ApiParam(value = "List of metrics", required = true) List<Metric<Long>> counters
     ) {
-        addData(asyncResponse, counters);
+        Observable<Metric<Long>> metrics = Functions.metricToObservable(getTenant(), counters, COUNTER);
+        Observable<Void> observable = metricsService.addDataPoints(COUNTER, rateLimiter.charge(metrics));
+        observable.subscribe(new ResultSetObserver(asyncResponse));
     }
 
     @POST
@@ -323,7 +334,7 @@ public class CounterHandler extends MetricsServiceHandler implements IMetricsHan
             List<DataPoint<Long>> data
     ) {
         Observable<Metric<Long>> metrics = Functions.dataPointToObservable(getTenant(), id, data, COUNTER);
-        Observable<Void> observable = metricsService.addDataPoints(COUNTER, metrics);
+        Observable<Void> observable = metricsService.addDataPoints(COUNTER, rateLimiter.charge(metrics));
         observable.subscribe(new ResultSetObserver(asyncResponse));
     }
 
@@ -765,12 +776,12 @@ public class CounterHandler extends MetricsServiceHandler implements IMetricsHan
             metricsService.findNumericStats(getTenant(), MetricType.COUNTER, tags.getTags(), timeRange.getStart(),
                     timeRange.getEnd(), bucketConfig.getBuckets(), percentiles.getPercentiles(), stacked)
                     .map(ApiUtils::collectionToResponse)
-                    .subscribe(asyncResponse::resume, t -> asyncResponse.resume(ApiUtils.serverError(t)));
+                    .subscribe(asyncResponse::resume, t -> asyncResponse.resume(ApiUtils.error(t)));
         } else {
             metricsService.findNumericStats(getTenant(), MetricType.COUNTER, metricNames, timeRange.getStart(),
                     timeRange.getEnd(), bucketConfig.getBuckets(), percentiles.getPercentiles(), stacked)
                     .map(ApiUtils::collectionToResponse)
-                    .subscribe(asyncResponse::resume, t -> asyncResponse.resume(ApiUtils.serverError(t)));
+                    .subscribe(asyncResponse::resume, t -> asyncResponse.resume(ApiUtils.error(t)));
         }
     }
 
@@ -852,12 +863,12 @@ public class CounterHandler extends MetricsServiceHandler implements IMetricsHan
             metricsService.findNumericStats(getTenant(), MetricType.COUNTER_RATE, tags.getTags(), timeRange.getStart(),
                     timeRange.getEnd(), bucketConfig.getBuckets(), percentiles.getPercentiles(), stacked)
                     .map(ApiUtils::collectionToResponse)
-                    .subscribe(asyncResponse::resume, t -> asyncResponse.resume(ApiUtils.serverError(t)));
+                    .subscribe(asyncResponse::resume, t -> asyncResponse.resume(ApiUtils.error(t)));
         } else {
             metricsService.findNumericStats(getTenant(), MetricType.COUNTER_RATE, metricNames, timeRange.getStart(),
                     timeRange.getEnd(), bucketConfig.getBuckets(), percentiles.getPercentiles(), stacked)
                     .map(ApiUtils::collectionToResponse)
-                    .subscribe(asyncResponse::resume, t -> asyncResponse.resume(ApiUtils.serverError(t)));
+                    .subscribe(asyncResponse::resume, t -> asyncResponse.resume(ApiUtils.error(t)));
         }
     }
 
@@ -25,6 +25,7 @@ import static org.hawkular.metrics.model.MetricType.GAUGE;
 import static org.hawkular.metrics.model.MetricType.GAUGE_RATE;
 import static org.hawkular.metrics.model.MetricType.UNDEFINED;
 
+import java.io.InputStream;
 import java.net.URI;
 import java.util.Collections;
 import java.util.List;
@@ -54,6 +55,8 @@ import org.hawkular.metrics.api.jaxrs.handler.observer.MetricCreatedObserver;
 import org.hawkular.metrics.api.jaxrs.handler.observer.ResultSetObserver;
 import org.hawkular.metrics.api.jaxrs.handler.template.IMetricsHandler;
 import org.hawkular.metrics.api.jaxrs.handler.transformer.MinMaxTimestampTransformer;
+import org.hawkular.metrics.api.jaxrs.ingest.JsonMetricsReader;
+import org.hawkular.metrics.api.jaxrs.ingest.StreamingIngest;
 import org.hawkular.metrics.api.jaxrs.util.ApiUtils;
 import org.hawkular.metrics.core.service.Functions;
 import org.hawkular.metrics.core.service.Order;
@@ -74,6 +77,8 @@ import org.hawkular.metrics.model.param.TimeRange;
 import org.jboss.logging.Logger;
 
 import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiImplicitParam;
+import io.swagger.annotations.ApiImplicitParams;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
@@ -256,7 +261,7 @@ public class GaugeHandler extends MetricsServiceHandler implements IMetricsHandl
             List<DataPoint<Double>> data
     ) {
         Observable<Metric<Double>> metrics = Functions.dataPointToObservable(getTenant(), id, data, GAUGE);
-        Observable<Void> observable = metricsService.addDataPoints(GAUGE, metrics);
+        Observable<Void> observable = metricsService.addDataPoints(GAUGE, rateLimiter.charge(metrics));
         observable.subscribe(new ResultSetObserver(asyncResponse));
     }
 
@@ -278,16 +283,20 @@ public class GaugeHandler extends MetricsServiceHandler implements IMetricsHandl
     @ApiOperation(value = "Add data for multiple gauge metrics in a single call.")
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Adding data succeeded."),
-            @ApiResponse(code = 400, message = "Missing or invalid payload", response = ApiError.class),
+            @ApiResponse(code = 400, message = "Missing or invalid payload. Metrics read before the " +
+                    "error may have been stored.", response = ApiError.class),
             @ApiResponse(code = 500, message = "Unexpected error happened while storing the data",
                 response = ApiError.class)
     })
+    @ApiImplicitParams(@ApiImplicitParam(name = "body", value = "List of metrics", required = true,
+            paramType = "body", dataType = "org.hawkular.metrics.model.Metric", allowMultiple = true))
     public void addData(
             @Suspended final AsyncResponse asyncResponse,
-            @ApiParam(value = "List of metrics", required = true) List<Metric<Double>> gauges) {
-        Observable<Metric<Double>> metrics = Functions.metricToObservable(getTenant(), gauges, GAUGE);
-        Observable<Void> observable = metricsService.addDataPoints(GAUGE, metrics);
-        observable.subscribe(new ResultSetObserver(asyncResponse));
+            @ApiParam(hidden = true) InputStream gauges) {
+        Observable<Metric<?>> metrics = JsonMetricsReader.readMetrics(mapper.getFactory(), gauges, getTenant(),
+                GAUGE);
+        StreamingIngest.addDataPoints(metricsService, rateLimiter.charge(metrics))
+                .subscribe(new ResultSetObserver(asyncResponse));
     }
 
     @POST
@@ -336,7 +345,9 @@ public class GaugeHandler extends MetricsServiceHandler implements IMetricsHandl
             @Suspended final AsyncResponse asyncResponse,
             @ApiParam(value = "List of metrics", required = true) List<Metric<Double>> gauges
     ) {
-        addData(asyncResponse, gauges);
+        Observable<Metric<Double>> metrics = Functions.metricToObservable(getTenant(), gauges, GAUGE);
+        Observable<Void> observable = metricsService.addDataPoints(GAUGE, rateLimiter.charge(metrics));
+        observable.subscribe(new ResultSetObserver(asyncResponse));
     }
 
     @Deprecated
@@ -634,12 +645,12 @@ public class GaugeHandler extends MetricsServiceHandler implements IMetricsHandl
             metricsService.findNumericStats(getTenant(), GAUGE, tags.getTags(), timeRange.getStart(),
                     timeRange.getEnd(), bucketConfig.getBuckets(), percentiles.getPercentiles(), stacked)
                     .map(ApiUtils::collectionToResponse)
-                    .subscribe(asyncResponse::resume, t -> asyncResponse.resume(ApiUtils.serverError(t)));
+                    .subscribe(asyncResponse::resume, t -> asyncResponse.resume(ApiUtils.error(t)));
         } else {
             metricsService.findNumericStats(getTenant(), GAUGE, metricNames, timeRange.getStart(),
                     timeRange.getEnd(), bucketConfig.getBuckets(), percentiles.getPercentiles(), stacked)
                     .map(ApiUtils::collectionToResponse)
-                    .subscribe(asyncResponse::resume, t -> asyncResponse.resume(ApiUtils.serverError(t)));
+                    .subscribe(asyncResponse::resume, t -> asyncResponse.resume(ApiUtils.error(t)));
         }
     }
 
@@ -915,12 +926,12 @@ public class GaugeHandler extends MetricsServiceHandler implements IMetricsHandl
             metricsService.findNumericStats(getTenant(), GAUGE_RATE, tags.getTags(), timeRange.getStart(),
                     timeRange.getEnd(), bucketConfig.getBuckets(), percentiles.getPercentiles(), stacked)
                     .map(ApiUtils::collectionToResponse)
-                    .subscribe(asyncResponse::resume, t -> asyncResponse.resume(ApiUtils.serverError(t)));
+                    .subscribe(asyncResponse::resume, t -> asyncResponse.resume(ApiUtils.error(t)));
         } else {
             metricsService.findNumericStats(getTenant(), GAUGE_RATE, metricNames, timeRange.getStart(),
                     timeRange.getEnd(), bucketConfig.getBuckets(), percentiles.getPercentiles(), stacked)
                     .map(ApiUtils::collectionToResponse)
-                    .subscribe(asyncResponse::resume, t -> asyncResponse.resume(ApiUtils.serverError(t)));
+                    .subscribe(asyncResponse::resume, t -> asyncResponse.resume(ApiUtils.error(t)));
         }
     }
 }
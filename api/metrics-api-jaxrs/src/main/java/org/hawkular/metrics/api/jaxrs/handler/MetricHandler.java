@@ -20,6 +20,7 @@ import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
 
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
 
 import static org.hawkular.metrics.api.jaxrs.filter.TenantFilter.TENANT_HEADER_NAME;
 import static org.hawkular.metrics.api.jaxrs.util.ApiUtils.badRequest;
@@ -32,10 +33,12 @@ import static org.hawkular.metrics.model.MetricType.GAUGE;
 import static org.hawkular.metrics.model.MetricType.GAUGE_RATE;
 import static org.hawkular.metrics.model.MetricType.STRING;
 
+import java.io.InputStream;
 import java.net.URI;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
 
@@ -58,7 +61,12 @@ import javax.ws.rs.core.UriInfo;
 
 import org.hawkular.metrics.api.jaxrs.StatsQueryRequest;
 import org.hawkular.metrics.api.jaxrs.handler.observer.MetricCreatedObserver;
+import org.hawkular.metrics.api.jaxrs.handler.observer.ResultSetObserver;
 import org.hawkular.metrics.api.jaxrs.handler.transformer.MinMaxTimestampTransformer;
+import org.hawkular.metrics.api.jaxrs.ingest.JsonMetricsReader;
+import org.hawkular.metrics.api.jaxrs.ingest.LineProtocolReader;
+import org.hawkular.metrics.api.jaxrs.ingest.StreamingIngest;
+import org.hawkular.metrics.api.jaxrs.limit.TenantRateLimiter;
 import org.hawkular.metrics.api.jaxrs.param.DurationConverter;
 import org.hawkular.metrics.api.jaxrs.param.PercentilesConverter;
 import org.hawkular.metrics.api.jaxrs.param.TagsConverter;
@@ -79,10 +87,13 @@ import org.hawkular.metrics.model.param.Duration;
 import org.hawkular.metrics.model.param.Tags;
 import org.hawkular.metrics.model.param.TimeRange;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Strings;
 import com.google.common.collect.ObjectArrays;
 
 import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiImplicitParam;
+import io.swagger.annotations.ApiImplicitParams;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
@@ -105,6 +116,12 @@ public class MetricHandler {
     @Inject
     private MetricsService metricsService;
 
+    @Inject
+    private ObjectMapper mapper;
+
+    @Inject
+    private TenantRateLimiter rateLimiter;
+
     @Context
     private HttpHeaders httpHeaders;
 
@@ -215,22 +232,6 @@ public class MetricHandler {
     public void deprecatedAddMetricsData(
             @Suspended final AsyncResponse asyncResponse,
             @ApiParam(value = "List of metrics", required = true) MixedMetricsRequest metricsRequest) {
-        addMetricsData(asyncResponse, metricsRequest);
-    }
-
-    @POST
-    @Path("/raw")
-    @ApiOperation(value = "Add data points for multiple metrics in a single call.")
-    @ApiResponses(value = {
-            @ApiResponse(code = 200, message = "Adding data points succeeded."),
-            @ApiResponse(code = 400, message = "Missing or invalid payload.", response = ApiError.class),
-            @ApiResponse(code = 500, message = "Unexpected error happened while storing the data",
-                    response = ApiError.class)
-    })
-    public void addMetricsData(
-            @Suspended final AsyncResponse asyncResponse,
-            @ApiParam(value = "List of metrics", required = true) MixedMetricsRequest metricsRequest
-    ) {
         if (metricsRequest.isEmpty()) {
             asyncResponse.resume(emptyPayload());
             return;
@@ -245,10 +246,10 @@ public class MetricHandler {
         Observable<Metric<String>> strings = Functions.metricToObservable(getTenant(), metricsRequest.getStrings(),
                 STRING);
 
-        metricsService.addDataPoints(GAUGE, gauges)
-                .mergeWith(metricsService.addDataPoints(AVAILABILITY, availabilities))
-                .mergeWith(metricsService.addDataPoints(COUNTER, counters))
-                .mergeWith(metricsService.addDataPoints(STRING, strings))
+        metricsService.addDataPoints(GAUGE, rateLimiter.charge(gauges))
+                .mergeWith(metricsService.addDataPoints(AVAILABILITY, rateLimiter.charge(availabilities)))
+                .mergeWith(metricsService.addDataPoints(COUNTER, rateLimiter.charge(counters)))
+                .mergeWith(metricsService.addDataPoints(STRING, rateLimiter.charge(strings)))
                 .subscribe(
                         aVoid -> {
                         },
@@ -257,6 +258,68 @@ public class MetricHandler {
                 );
     }
 
+    @POST
+    @Path("/raw")
+    @ApiOperation(value = "Add data points for multiple metrics in a single call.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Adding data points succeeded."),
+            @ApiResponse(code = 400, message = "Missing or invalid payload. Metrics read before the " +
+                    "error may have been stored.", response = ApiError.class),
+            @ApiResponse(code = 500, message = "Unexpected error happened while storing the data",
+                    response = ApiError.class)
+    })
+    @ApiImplicitParams(@ApiImplicitParam(name = "body", value = "List of metrics", required = true,
+            paramType = "body", dataType = "org.hawkular.metrics.model.MixedMetricsRequest"))
+    public void addMetricsData(
+            @Suspended final AsyncResponse asyncResponse,
+            @ApiParam(hidden = true) InputStream metricsRequest
+    ) {
+        Observable<Metric<?>> metrics = JsonMetricsReader.readMixedMetrics(mapper.getFactory(), metricsRequest,
+                getTenant());
+        StreamingIngest.addDataPoints(metricsService, rateLimiter.charge(metrics))
+                .subscribe(new ResultSetObserver(asyncResponse));
+    }
+
+    @POST
+    @Path("/lines")
+    @Consumes(TEXT_PLAIN)
+    @ApiOperation(value = "Add data points written in line format.", notes = "Each line holds a single data point: "
+            + "the metric name optionally followed by comma separated tag=value pairs, the value and optionally the "
+            + "timestamp, separated by spaces. Example: \"cpu.load,host=server1 0.64 1463419284000\". Lines without "
+            + "timestamp use the current time. Empty lines and lines starting with # are ignored.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Adding data points succeeded."),
+            @ApiResponse(code = 400, message = "Missing or invalid payload, or invalid type or precision parameter. " +
+                    "Metrics read before the error may have been stored.", response = ApiError.class),
+            @ApiResponse(code = 500, message = "Unexpected error happened while storing the data",
+                    response = ApiError.class)
+    })
+    @ApiImplicitParams(@ApiImplicitParam(name = "body", value = "Data points, one per line", required = true,
+            paramType = "body", dataType = "string"))
+    public void addMetricsLines(
+            @Suspended final AsyncResponse asyncResponse,
+            @ApiParam(value = "Type of the metrics", allowableValues = "gauge, counter") @DefaultValue("gauge")
+            @QueryParam("type") MetricType<?> metricType,
+            @ApiParam(value = "Unit of the timestamps", allowableValues = "s, ms, us, ns") @DefaultValue("ms")
+            @QueryParam("precision") String precision,
+            @ApiParam(hidden = true) InputStream lines
+    ) {
+        if (metricType != GAUGE && metricType != COUNTER) {
+            asyncResponse.resume(badRequest(new ApiError("Incorrect type param " + metricType)));
+            return;
+        }
+        TimeUnit timeUnit;
+        try {
+            timeUnit = LineProtocolReader.parsePrecision(precision);
+        } catch (IllegalArgumentException e) {
+            asyncResponse.resume(badRequest(new ApiError(e.getMessage())));
+            return;
+        }
+        Observable<Metric<?>> metrics = LineProtocolReader.readMetrics(lines, getTenant(), metricType, timeUnit);
+        StreamingIngest.addDataPoints(metricsService, rateLimiter.charge(metrics))
+                .subscribe(new ResultSetObserver(asyncResponse));
+    }
+
     @POST
     @Path("/stats/query")
     @SuppressWarnings("unchecked")
@@ -35,6 +35,7 @@ import javax.ws.rs.core.HttpHeaders;
 
 import org.hawkular.metrics.api.jaxrs.QueryRequest;
 import org.hawkular.metrics.api.jaxrs.handler.observer.NamedDataPointObserver;
+import org.hawkular.metrics.api.jaxrs.limit.TenantRateLimiter;
 import org.hawkular.metrics.core.service.MetricsService;
 import org.hawkular.metrics.core.service.Order;
 import org.hawkular.metrics.model.ApiError;
@@ -60,6 +61,9 @@ public abstract class MetricsServiceHandler {
     @Inject
     protected ObjectMapper mapper;
 
+    @Inject
+    protected TenantRateLimiter rateLimiter;
+
     @Context
     protected HttpHeaders httpHeaders;
 
@@ -33,7 +33,12 @@ import javax.ws.rs.core.Response;
 
 import org.hawkular.metrics.api.jaxrs.MetricsServiceLifecycle;
 import org.hawkular.metrics.api.jaxrs.MetricsServiceLifecycle.State;
+import org.hawkular.metrics.api.jaxrs.limit.TenantRateLimiter;
 import org.hawkular.metrics.api.jaxrs.util.ManifestInformation;
+import org.hawkular.metrics.api.jaxrs.util.MetricRegistryProvider;
+import org.hawkular.metrics.api.jaxrs.util.PrometheusTextFormat;
+
+import com.codahale.metrics.MetricFilter;
 
 import io.swagger.annotations.ApiOperation;
 
@@ -49,6 +54,10 @@ public class StatusHandler {
 
     private static final String METRICSSERVICE_NAME = "MetricsService";
 
+    // Status resources do not require authentication, so metrics holding tenant ids are not exported
+    private static final MetricFilter NON_TENANT_METRICS = (name, metric) -> !name.startsWith(
+            TenantRateLimiter.METRICS_PREFIX + ".");
+
     @Inject
     MetricsServiceLifecycle metricsServiceLifecycle;
     @Inject
@@ -64,4 +73,14 @@ public class StatusHandler {
         status.putAll(manifestInformation.getFrom(servletContext));
         return Response.ok(status).build();
     }
+
+    @GET
+    @Path("/metrics")
+    @Produces(PrometheusTextFormat.CONTENT_TYPE)
+    @ApiOperation(value = "Returns internal metrics, except per-tenant ones, in the Prometheus text format.",
+            response = String.class)
+    public Response metrics() {
+        return Response.ok(PrometheusTextFormat.write(MetricRegistryProvider.INSTANCE.getMetricRegistry(),
+                NON_TENANT_METRICS)).build();
+    }
 }
@@ -23,6 +23,7 @@ import static org.hawkular.metrics.api.jaxrs.util.ApiUtils.serverError;
 import static org.hawkular.metrics.model.MetricType.STRING;
 import static org.hawkular.metrics.model.MetricType.UNDEFINED;
 
+import java.io.InputStream;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +51,8 @@ import org.hawkular.metrics.api.jaxrs.handler.observer.MetricCreatedObserver;
 import org.hawkular.metrics.api.jaxrs.handler.observer.ResultSetObserver;
 import org.hawkular.metrics.api.jaxrs.handler.template.IMetricsHandler;
 import org.hawkular.metrics.api.jaxrs.handler.transformer.MinMaxTimestampTransformer;
+import org.hawkular.metrics.api.jaxrs.ingest.JsonMetricsReader;
+import org.hawkular.metrics.api.jaxrs.ingest.StreamingIngest;
 import org.hawkular.metrics.api.jaxrs.util.ApiUtils;
 import org.hawkular.metrics.core.service.Functions;
 import org.hawkular.metrics.core.service.Order;
@@ -61,9 +64,9 @@ import org.hawkular.metrics.model.param.TagNames;
 import org.hawkular.metrics.model.param.Tags;
 import org.hawkular.metrics.model.param.TimeRange;
 
-import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
-
 import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiImplicitParam;
+import io.swagger.annotations.ApiImplicitParams;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
@@ -232,7 +235,7 @@ public class StringHandler extends MetricsServiceHandler implements IMetricsHand
     ) {
         Observable<Metric<String>> metrics = Functions.dataPointToObservable(getTenant(), id, data,
                 STRING);
-        Observable<Void> observable = metricsService.addDataPoints(STRING, metrics);
+        Observable<Void> observable = metricsService.addDataPoints(STRING, rateLimiter.charge(metrics));
         observable.subscribe(new ResultSetObserver(asyncResponse));
     }
 
@@ -241,20 +244,21 @@ public class StringHandler extends MetricsServiceHandler implements IMetricsHand
     @ApiOperation(value = "Add metric data for multiple string metrics in a single call.")
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Adding data succeeded."),
-            @ApiResponse(code = 400, message = "Missing or invalid payload", response = ApiError.class),
+            @ApiResponse(code = 400, message = "Missing or invalid payload. Metrics read before the " +
+                    "error may have been stored.", response = ApiError.class),
             @ApiResponse(code = 500, message = "Unexpected error happened while storing the data",
                     response = ApiError.class)
     })
+    @ApiImplicitParams(@ApiImplicitParam(name = "body", value = "List of string metrics", required = true,
+            paramType = "body", dataType = "org.hawkular.metrics.model.Metric", allowMultiple = true))
     public void addData(
             @Suspended final AsyncResponse asyncResponse,
-            @ApiParam(value = "List of string metrics", required = true)
-            @JsonDeserialize()
-                    List<Metric<String>> availabilities
+            @ApiParam(hidden = true) InputStream strings
     ) {
-        Observable<Metric<String>> metrics = Functions.metricToObservable(getTenant(), availabilities,
+        Observable<Metric<?>> metrics = JsonMetricsReader.readMetrics(mapper.getFactory(), strings, getTenant(),
                 STRING);
-        Observable<Void> observable = metricsService.addDataPoints(STRING, metrics);
-        observable.subscribe(new ResultSetObserver(asyncResponse));
+        StreamingIngest.addDataPoints(metricsService, rateLimiter.charge(metrics))
+                .subscribe(new ResultSetObserver(asyncResponse));
     }
 
     @POST
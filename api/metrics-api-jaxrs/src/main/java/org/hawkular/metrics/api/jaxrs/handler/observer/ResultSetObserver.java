@@ -17,10 +17,12 @@
 package org.hawkular.metrics.api.jaxrs.handler.observer;
 
 import static org.hawkular.metrics.api.jaxrs.util.ApiUtils.badRequest;
+import static org.hawkular.metrics.api.jaxrs.util.ApiUtils.emptyPayload;
 
 import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.core.Response;
 
+import org.hawkular.metrics.api.jaxrs.interceptor.EmptyPayloadException;
 import org.hawkular.metrics.api.jaxrs.util.ApiUtils;
 import org.hawkular.metrics.model.ApiError;
 
@@ -46,7 +48,9 @@ public class ResultSetObserver implements Observer<Void> {
 
     @Override
     public void onError(Throwable t) {
-        if (t instanceof IllegalArgumentException) {
+        if (t instanceof EmptyPayloadException) {
+            asyncResponse.resume(emptyPayload());
+        } else if (t instanceof IllegalArgumentException) {
             asyncResponse.resume(badRequest(new ApiError(t.getMessage())));
         } else {
             asyncResponse.resume(ApiUtils.serverError(t));
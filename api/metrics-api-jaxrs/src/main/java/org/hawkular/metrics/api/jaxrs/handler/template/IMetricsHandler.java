@@ -17,6 +17,7 @@
 
 package org.hawkular.metrics.api.jaxrs.handler.template;
 
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -53,7 +54,7 @@ public interface IMetricsHandler<T> {
     void deleteMetricTags(AsyncResponse asyncResponse, String id, TagNames tags);
 
     //Data
-    void addData(AsyncResponse asyncResponse, List<Metric<T>> metrics);
+    void addData(AsyncResponse asyncResponse, InputStream metrics);
 
     void getData(AsyncResponse asyncResponse, QueryRequest query);
 
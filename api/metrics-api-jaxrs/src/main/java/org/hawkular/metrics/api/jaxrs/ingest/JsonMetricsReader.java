@@ -0,0 +1,358 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.ingest;
+
+import static org.hawkular.metrics.model.MetricType.AVAILABILITY;
+import static org.hawkular.metrics.model.MetricType.COUNTER;
+import static org.hawkular.metrics.model.MetricType.GAUGE;
+import static org.hawkular.metrics.model.MetricType.STRING;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hawkular.metrics.api.jaxrs.interceptor.EmptyPayloadException;
+import org.hawkular.metrics.model.AvailabilityType;
+import org.hawkular.metrics.model.DataPoint;
+import org.hawkular.metrics.model.Metric;
+import org.hawkular.metrics.model.MetricId;
+import org.hawkular.metrics.model.MetricType;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.collect.ImmutableMap;
+
+import rx.Observable;
+
+/**
+ * Incrementally parses a data points payload with the Jackson streaming API. Metrics are emitted as soon as they are
+ * read, and the data points of a metric are emitted in chunks of at most {@link #DEFAULT_CHUNK_SIZE} points, so the
+ * whole request body is never materialized in memory. The resulting observable honors backpressure: the input stream
+ * is only read when downstream requests more metrics.
+ * <p>
+ * Two payload shapes are supported: an array of metrics of a single type (as accepted by the {@code /gauges/raw}
+ * endpoint for example) and the object grouping arrays of metrics by type accepted by {@code /metrics/raw}.
+ * <p>
+ * Note that a metric whose {@code id} property comes after its {@code data} property cannot be streamed; its data
+ * points are buffered until the id is known.
+ */
+public class JsonMetricsReader implements MetricsReader {
+
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private static final Map<String, MetricType<?>> MIXED_REQUEST_TYPES = ImmutableMap.of(
+            "gauges", GAUGE,
+            "availabilities", AVAILABILITY,
+            "counters", COUNTER,
+            "strings", STRING
+    );
+
+    @FunctionalInterface
+    private interface ReadValue {
+        Object call(JsonParser parser) throws IOException;
+    }
+
+    private final JsonParser parser;
+    private final String tenantId;
+    private final MetricType<?> rootType;
+    private final int chunkSize;
+
+    private boolean started;
+    private boolean finished;
+    private int metricsRead;
+
+    private MetricType<?> type;
+    private ReadValue readValue;
+    private String id;
+    private boolean inData;
+    private boolean emitted;
+    private List<DataPoint<Object>> buffered;
+
+    /**
+     * Creates a reader for an array of metrics of type {@code type}, or for a mixed metrics request if {@code type}
+     * is null.
+     */
+    public JsonMetricsReader(JsonFactory factory, InputStream input, String tenantId, MetricType<?> type,
+            int chunkSize) throws IOException {
+        this.parser = factory.createParser(input);
+        this.tenantId = tenantId;
+        this.rootType = type;
+        this.chunkSize = chunkSize;
+        if (type != null) {
+            setType(type);
+        }
+    }
+
+    /**
+     * Lazily reads an array of metrics of the given type from {@code input}.
+     */
+    public static Observable<Metric<?>> readMetrics(JsonFactory factory, InputStream input, String tenantId,
+            MetricType<?> type) {
+        return StreamingIngest.read(() -> new JsonMetricsReader(factory, input, tenantId, type, DEFAULT_CHUNK_SIZE));
+    }
+
+    /**
+     * Lazily reads a mixed metrics request from {@code input}.
+     *
+     * @see org.hawkular.metrics.model.MixedMetricsRequest
+     */
+    public static Observable<Metric<?>> readMixedMetrics(JsonFactory factory, InputStream input, String tenantId) {
+        return StreamingIngest.read(() -> new JsonMetricsReader(factory, input, tenantId, null, DEFAULT_CHUNK_SIZE));
+    }
+
+    @Override
+    public Metric<?> next() throws IOException {
+        try {
+            return doNext();
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid payload: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    private Metric<?> doNext() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (!started) {
+            started = true;
+            if (!startRoot()) {
+                return finish();
+            }
+        }
+        while (true) {
+            if (inData) {
+                List<DataPoint<Object>> dataPoints = readDataPoints(chunkSize);
+                if (!dataPoints.isEmpty()) {
+                    emitted = true;
+                    return toMetric(dataPoints);
+                }
+                inData = false;
+                Metric<?> metric = readMetricFields();
+                if (metric != null) {
+                    return metric;
+                }
+                continue;
+            }
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                id = null;
+                emitted = false;
+                buffered = null;
+                metricsRead++;
+                Metric<?> metric = readMetricFields();
+                if (metric != null) {
+                    return metric;
+                }
+            } else if (token == JsonToken.END_ARRAY) {
+                if (rootType != null || !nextTypeArray()) {
+                    return finish();
+                }
+            } else {
+                throw new IllegalArgumentException("Expected a metric object but got " + token);
+            }
+        }
+    }
+
+    private boolean startRoot() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            return false;
+        }
+        if (rootType != null) {
+            if (token != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Expected an array of metrics");
+            }
+            return true;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Expected an object with metrics grouped by type");
+        }
+        return nextTypeArray();
+    }
+
+    /**
+     * Moves the parser to the start of the next array of metrics in a mixed request.
+     *
+     * @return false if the end of the request object was reached
+     */
+    private boolean nextTypeArray() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            MetricType<?> fieldType = MIXED_REQUEST_TYPES.get(parser.getCurrentName());
+            JsonToken value = parser.nextToken();
+            if (fieldType == null || value == JsonToken.VALUE_NULL) {
+                parser.skipChildren();
+                continue;
+            }
+            if (value != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Expected an array of " + fieldType.getText() + " metrics");
+            }
+            setType(fieldType);
+            return true;
+        }
+        if (token != JsonToken.END_OBJECT) {
+            throw new IllegalArgumentException("Unexpected token " + token);
+        }
+        return false;
+    }
+
+    /**
+     * Reads the fields of the current metric object until either its data array can be streamed or the end of the
+     * object is reached.
+     *
+     * @return the metric to emit when the end of the object is reached and it was not emitted yet, null otherwise
+     */
+    private Metric<?> readMetricFields() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("id".equals(field)) {
+                id = value == JsonToken.VALUE_NULL ? null : parser.getText();
+            } else if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                if (id != null) {
+                    inData = true;
+                    return null;
+                }
+                if (buffered == null) {
+                    buffered = new ArrayList<>();
+                }
+                buffered.addAll(readDataPoints(Integer.MAX_VALUE));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (token != JsonToken.END_OBJECT) {
+            throw new IllegalArgumentException("Unexpected token " + token);
+        }
+        if (id == null) {
+            throw new IllegalArgumentException("Metric id is null");
+        }
+        List<DataPoint<Object>> dataPoints = buffered == null ? Collections.emptyList() : buffered;
+        buffered = null;
+        if (emitted && dataPoints.isEmpty()) {
+            return null;
+        }
+        emitted = true;
+        return toMetric(dataPoints);
+    }
+
+    private List<DataPoint<Object>> readDataPoints(int max) throws IOException {
+        List<DataPoint<Object>> dataPoints = new ArrayList<>(Math.min(max, chunkSize));
+        while (dataPoints.size() < max) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.END_ARRAY) {
+                break;
+            }
+            if (token != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Expected a data point object but got " + token);
+            }
+            dataPoints.add(readDataPoint());
+        }
+        return dataPoints;
+    }
+
+    private DataPoint<Object> readDataPoint() throws IOException {
+        Long timestamp = null;
+        Object value = null;
+        Map<String, String> tags = Collections.emptyMap();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case "timestamp":
+                    timestamp = token == JsonToken.VALUE_STRING ? Long.parseLong(parser.getText())
+                            : parser.getLongValue();
+                    break;
+                case "value":
+                    if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                        throw new IllegalArgumentException("Data point value must be a scalar");
+                    }
+                    value = readValue.call(parser);
+                    break;
+                case "tags":
+                    tags = readTags();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new DataPoint<>(timestamp, value, tags);
+    }
+
+    private Map<String, String> readTags() throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Data point tags must be an object");
+        }
+        Map<String, String> tags = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            if (parser.nextToken() != JsonToken.VALUE_NULL) {
+                tags.put(name, parser.getText());
+            }
+        }
+        return tags;
+    }
+
+    private void setType(MetricType<?> type) {
+        this.type = type;
+        if (type == GAUGE) {
+            readValue = p -> p.getCurrentToken() == JsonToken.VALUE_STRING ? Double.parseDouble(p.getText())
+                    : p.getDoubleValue();
+        } else if (type == COUNTER) {
+            readValue = p -> p.getCurrentToken() == JsonToken.VALUE_STRING ? Long.parseLong(p.getText())
+                    : p.getLongValue();
+        } else if (type == AVAILABILITY) {
+            readValue = p -> AvailabilityType.fromString(p.getText());
+        } else if (type == STRING) {
+            readValue = JsonParser::getText;
+        } else {
+            throw new IllegalArgumentException(type + " is not supported metric type. This class should be " +
+                    "updated to add support for it!");
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Metric<?> toMetric(List<DataPoint<Object>> dataPoints) {
+        return new Metric(new MetricId<>(tenantId, type, id), dataPoints);
+    }
+
+    private Metric<?> finish() {
+        finished = true;
+        if (metricsRead == 0) {
+            throw new EmptyPayloadException();
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        try {
+            parser.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
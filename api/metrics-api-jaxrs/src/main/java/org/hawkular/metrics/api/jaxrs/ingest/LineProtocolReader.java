@@ -0,0 +1,310 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.ingest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.hawkular.metrics.model.MetricType.COUNTER;
+import static org.hawkular.metrics.model.MetricType.GAUGE;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.metrics.api.jaxrs.interceptor.EmptyPayloadException;
+import org.hawkular.metrics.core.service.DecimalParser;
+import org.hawkular.metrics.model.DataPoint;
+import org.hawkular.metrics.model.Metric;
+import org.hawkular.metrics.model.MetricId;
+import org.hawkular.metrics.model.MetricType;
+
+import rx.Observable;
+
+/**
+ * Reads data points written in a plain text line format, one data point per line:
+ * <pre>
+ * name[,tag=value]* value [timestamp]
+ * </pre>
+ * Fields are separated by one or more spaces. When the timestamp is omitted, the current time is used. Empty lines and
+ * lines starting with {@code #} are ignored. Tags are stored as data point tags.
+ * <p>
+ * Lines are scanned in place in a fixed size byte buffer: numeric fields are parsed directly from the bytes and only
+ * metric names and tags are turned into strings. Data points are grouped by metric name over batches of at most
+ * {@link #DEFAULT_BATCH_SIZE} lines, so that each metric of a batch is emitted once with all its points.
+ */
+public class LineProtocolReader implements MetricsReader {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream input;
+    private final String tenantId;
+    private final MetricType<?> type;
+    private final TimeUnit precision;
+    private final int batchSize;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+    private int lineNumber;
+    private int pointsRead;
+
+    private Iterator<Map.Entry<String, List<DataPoint<Object>>>> batch = Collections.emptyIterator();
+
+    public LineProtocolReader(InputStream input, String tenantId, MetricType<?> type, TimeUnit precision,
+            int batchSize) {
+        if (type != GAUGE && type != COUNTER) {
+            throw new IllegalArgumentException(type + " data points cannot be written in line format");
+        }
+        this.input = input;
+        this.tenantId = tenantId;
+        this.type = type;
+        this.precision = precision;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Lazily reads data points of the given type from {@code input}.
+     *
+     * @param precision the unit of the timestamps found in the lines
+     */
+    public static Observable<Metric<?>> readMetrics(InputStream input, String tenantId, MetricType<?> type,
+            TimeUnit precision) {
+        return StreamingIngest.read(() -> new LineProtocolReader(input, tenantId, type, precision,
+                DEFAULT_BATCH_SIZE));
+    }
+
+    /**
+     * @return the time unit matching the {@code s}, {@code ms}, {@code us} or {@code ns} abbreviation
+     */
+    public static TimeUnit parsePrecision(String precision) {
+        switch (precision) {
+            case "s":
+                return TimeUnit.SECONDS;
+            case "ms":
+                return TimeUnit.MILLISECONDS;
+            case "us":
+                return TimeUnit.MICROSECONDS;
+            case "ns":
+                return TimeUnit.NANOSECONDS;
+            default:
+                throw new IllegalArgumentException("Invalid precision " + precision + ", expected one of s, ms, us, " +
+                        "ns");
+        }
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Metric<?> next() throws IOException {
+        if (!batch.hasNext()) {
+            batch = readBatch().entrySet().iterator();
+            if (!batch.hasNext()) {
+                if (pointsRead == 0) {
+                    throw new EmptyPayloadException();
+                }
+                return null;
+            }
+        }
+        Map.Entry<String, List<DataPoint<Object>>> entry = batch.next();
+        return new Metric(new MetricId<>(tenantId, type, entry.getKey()), entry.getValue());
+    }
+
+    private Map<String, List<DataPoint<Object>>> readBatch() throws IOException {
+        Map<String, List<DataPoint<Object>>> points = new LinkedHashMap<>();
+        int count = 0;
+        while (count < batchSize) {
+            int end = nextLine();
+            if (end < 0) {
+                break;
+            }
+            int start = position;
+            position = end + 1;
+            lineNumber++;
+            if (end > start && buffer[end - 1] == '\r') {
+                end--;
+            }
+            if (end == start || buffer[start] == '#') {
+                continue;
+            }
+            parseLine(start, end, points);
+            count++;
+        }
+        pointsRead += count;
+        return points;
+    }
+
+    /**
+     * Makes sure a whole line is available in the buffer, starting at {@link #position}.
+     *
+     * @return the index of the line terminator (which may be {@link #limit} for the last line of the input), or -1 if
+     * there is no more line to read
+     */
+    private int nextLine() throws IOException {
+        int scanned = position;
+        while (true) {
+            for (int i = scanned; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    return i;
+                }
+            }
+            if (endOfInput) {
+                return position < limit ? limit : -1;
+            }
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                limit -= position;
+                position = 0;
+            }
+            if (limit == buffer.length) {
+                throw new IllegalArgumentException("Line " + (lineNumber + 1) + " exceeds " + BUFFER_SIZE +
+                        " bytes");
+            }
+            scanned = limit;
+            int read = input.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                endOfInput = true;
+            } else {
+                limit += read;
+            }
+        }
+    }
+
+    private void parseLine(int start, int end, Map<String, List<DataPoint<Object>>> points) {
+        int keyEnd = indexOf(' ', start, end);
+        int valueStart = skipSpaces(keyEnd, end);
+        if (valueStart == end) {
+            throw invalidLine("missing value");
+        }
+        int valueEnd = indexOf(' ', valueStart, end);
+        int timestampStart = skipSpaces(valueEnd, end);
+        int timestampEnd = indexOf(' ', timestampStart, end);
+        if (skipSpaces(timestampEnd, end) != end) {
+            throw invalidLine("unexpected trailing field");
+        }
+
+        int nameEnd = indexOf(',', start, keyEnd);
+        if (nameEnd == start) {
+            throw invalidLine("missing metric name");
+        }
+        String name = new String(buffer, start, nameEnd - start, UTF_8);
+        Map<String, String> tags = nameEnd == keyEnd ? Collections.emptyMap() : parseTags(nameEnd + 1, keyEnd);
+
+        Object value;
+        if (type == COUNTER) {
+            value = parseLong(valueStart, valueEnd);
+        } else {
+            value = parseDouble(valueStart, valueEnd);
+        }
+
+        long timestamp;
+        if (timestampStart == timestampEnd) {
+            timestamp = System.currentTimeMillis();
+        } else {
+            timestamp = precision.toMillis(parseLong(timestampStart, timestampEnd));
+        }
+
+        points.computeIfAbsent(name, key -> new ArrayList<>()).add(new DataPoint<>(timestamp, value, tags));
+    }
+
+    private Map<String, String> parseTags(int start, int end) {
+        Map<String, String> tags = new HashMap<>();
+        while (start < end) {
+            int tagEnd = indexOf(',', start, end);
+            int separator = indexOf('=', start, tagEnd);
+            if (separator == start || separator == tagEnd) {
+                throw invalidLine("invalid tag");
+            }
+            tags.put(new String(buffer, start, separator - start, UTF_8),
+                    new String(buffer, separator + 1, tagEnd - separator - 1, UTF_8));
+            start = tagEnd + 1;
+        }
+        return tags;
+    }
+
+    private long parseLong(int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        if (i == end) {
+            throw invalidLine("invalid number");
+        }
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw invalidLine("invalid number");
+            }
+            if (result > (Long.MAX_VALUE - digit) / 10) {
+                throw invalidLine("number out of range");
+            }
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Parses a decimal value in place, see {@link DecimalParser}.
+     */
+    private double parseDouble(int start, int end) {
+        try {
+            return DecimalParser.parseDouble(buffer, start, end);
+        } catch (NumberFormatException e) {
+            throw invalidLine("invalid number");
+        }
+    }
+
+    private int indexOf(char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == c) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private int skipSpaces(int start, int end) {
+        int i = start;
+        while (i < end && buffer[i] == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private IllegalArgumentException invalidLine(String problem) {
+        return new IllegalArgumentException("Invalid line " + lineNumber + ": " + problem);
+    }
+
+    @Override
+    public void close() {
+        try {
+            input.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.ingest;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.hawkular.metrics.model.Metric;
+
+/**
+ * Pull-based reader of the metrics contained in a request body.
+ *
+ * @see StreamingIngest#read(StreamingIngest.ReaderFactory)
+ */
+public interface MetricsReader extends Closeable {
+
+    /**
+     * @return the next metric, possibly holding only a part of its data points, or null once the request body has been
+     * fully read
+     * @throws IllegalArgumentException if the request body is invalid
+     * @throws org.hawkular.metrics.api.jaxrs.interceptor.EmptyPayloadException if the request body does not contain
+     * any metric
+     */
+    Metric<?> next() throws IOException;
+
+    @Override
+    void close();
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.ingest;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.hawkular.metrics.core.service.MetricsService;
+import org.hawkular.metrics.model.Metric;
+import org.hawkular.metrics.model.MetricType;
+
+import rx.Observable;
+import rx.observables.SyncOnSubscribe;
+import rx.schedulers.Schedulers;
+
+/**
+ * Turns {@link MetricsReader readers} into observables and writes the lazily produced stream of metrics of mixed
+ * types. Metrics are grouped by type and handed over to {@link MetricsService#addDataPoints(MetricType, Observable)}
+ * in small batches. A bounded number of batches is written
+ * concurrently, so that writes overlap with the production of the next batches while backpressure still limits how
+ * much of the stream is held in memory.
+ * <p>
+ * Requests are not validated as a whole before being written: when the stream fails, for instance because the reader
+ * finds an invalid data point, the batches handed over before the error have been or are being stored, and the
+ * metrics read since the last batch are discarded. Clients get an error and may safely send the whole request again,
+ * as storing a data point twice overwrites it with the same value.
+ */
+public class StreamingIngest {
+
+    /**
+     * Maximum number of metrics (or chunks of metric data points) passed to a single addDataPoints call.
+     */
+    public static final int BATCH_SIZE = 20;
+
+    /**
+     * Maximum number of batches being written concurrently, per metric type.
+     */
+    public static final int MAX_CONCURRENT_BATCHES = 4;
+
+    @FunctionalInterface
+    public interface ReaderFactory {
+        MetricsReader create() throws IOException;
+    }
+
+    /**
+     * Creates an observable that pulls metrics from the reader created by {@code readerFactory} as downstream requests
+     * them. Reading happens on the {@link Schedulers#io() io scheduler} since reading the request body blocks.
+     */
+    public static Observable<Metric<?>> read(ReaderFactory readerFactory) {
+        SyncOnSubscribe<MetricsReader, Metric<?>> onSubscribe = SyncOnSubscribe.createSingleState(
+                () -> {
+                    try {
+                        return readerFactory.create();
+                    } catch (IOException e) {
+                        throw new RuntimeException("Failed to open request body", e);
+                    }
+                },
+                (reader, observer) -> {
+                    Metric<?> metric;
+                    try {
+                        metric = reader.next();
+                    } catch (IOException | RuntimeException e) {
+                        observer.onError(e);
+                        return;
+                    }
+                    if (metric == null) {
+                        observer.onCompleted();
+                    } else {
+                        observer.onNext(metric);
+                    }
+                },
+                MetricsReader::close);
+        return Observable.create(onSubscribe).subscribeOn(Schedulers.io());
+    }
+
+    public static Observable<Void> addDataPoints(MetricsService metricsService, Observable<Metric<?>> metrics) {
+        return metrics
+                .<MetricType<?>>groupBy(Metric::getType)
+                .flatMap(group -> group
+                        .buffer(BATCH_SIZE)
+                        .flatMap(batch -> addBatch(metricsService, group.getKey(), batch), MAX_CONCURRENT_BATCHES));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Observable<Void> addBatch(MetricsService metricsService, MetricType<T> type,
+            List<Metric<?>> batch) {
+        Observable<Metric<T>> metrics = Observable.from(batch).map(metric -> (Metric<T>) metric);
+        return metricsService.addDataPoints(type, metrics);
+    }
+
+    private StreamingIngest() {
+    }
+}
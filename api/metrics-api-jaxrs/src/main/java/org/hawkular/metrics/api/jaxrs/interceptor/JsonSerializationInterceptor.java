@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.interceptor;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
+
+import static org.hawkular.metrics.api.jaxrs.filter.EndpointMetricsFilter.ENDPOINT_LABEL;
+
+import java.io.IOException;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import org.hawkular.metrics.api.jaxrs.util.MetricRegistryProvider;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Records the time spent writing JSON response bodies, per endpoint when the
+ * {@link org.hawkular.metrics.api.jaxrs.filter.EndpointMetricsFilter} identified it.
+ *
+ * @see org.hawkular.metrics.api.jaxrs.filter.EndpointMetricsFilter
+ */
+@Provider
+public class JsonSerializationInterceptor implements WriterInterceptor {
+
+    private final MetricRegistry metricRegistry = MetricRegistryProvider.INSTANCE.getMetricRegistry();
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+        if (context.getMediaType() == null || !APPLICATION_JSON_TYPE.isCompatible(context.getMediaType())) {
+            context.proceed();
+            return;
+        }
+        Object endpoint = context.getProperty(ENDPOINT_LABEL);
+        String name = endpoint == null ? "rest-json-serialization" : "rest-json-serialization{" + endpoint + "}";
+        try (Timer.Context ignored = metricRegistry.timer(name).time()) {
+            context.proceed();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.limit;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.ADMISSION_CONTROL;
+import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.ADMISSION_CONTROL_LATENCY_TARGET;
+import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.ADMISSION_CONTROL_MAX_LIMIT;
+import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.ADMISSION_CONTROL_MIN_LIMIT;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.hawkular.metrics.api.jaxrs.config.Configurable;
+import org.hawkular.metrics.api.jaxrs.config.ConfigurationKey;
+import org.hawkular.metrics.api.jaxrs.config.ConfigurationProperty;
+import org.hawkular.metrics.api.jaxrs.log.RestLogger;
+import org.hawkular.metrics.api.jaxrs.log.RestLogging;
+import org.hawkular.metrics.api.jaxrs.util.MetricRegistryProvider;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Caps the number of requests in progress, with a limit adapted to the observed latency (AIMD).
+ * <p>
+ * Each completed request is a latency sample. Requests served within the
+ * {@link ConfigurationKey#ADMISSION_CONTROL_LATENCY_TARGET latency target} increase the limit by {@code 1 / limit},
+ * that is by one per round of requests, as long as the limit is actually used. A slower or failed request decreases the
+ * limit by {@link #BACKOFF_RATIO}; requests admitted before the last decrease are ignored, so that a single slowdown of
+ * Cassandra backs off once and not once per request in progress. The limit stays between the configured min and max,
+ * and starts at the max.
+ * <p>
+ * High priority requests may use the whole limit, low priority requests only {@link #LOW_PRIORITY_SHARE} of it, so
+ * that the remaining permits are kept for writes when queries pile up.
+ * <p>
+ * The {@code admission-control.limit} and {@code admission-control.in-flight} gauges and the
+ * {@code admission-control.rejected-high-priority} and {@code admission-control.rejected-low-priority} meters are
+ * registered in the metric registry.
+ */
+@ApplicationScoped
+public class AdaptiveConcurrencyLimiter {
+    private static final RestLogger log = RestLogging.getRestLogger(AdaptiveConcurrencyLimiter.class);
+
+    static final double BACKOFF_RATIO = 0.9;
+    static final double LOW_PRIORITY_SHARE = 0.75;
+
+    @Inject
+    @Configurable
+    @ConfigurationProperty(ADMISSION_CONTROL)
+    private String enabledConfig;
+
+    @Inject
+    @Configurable
+    @ConfigurationProperty(ADMISSION_CONTROL_MIN_LIMIT)
+    private String minLimitConfig;
+
+    @Inject
+    @Configurable
+    @ConfigurationProperty(ADMISSION_CONTROL_MAX_LIMIT)
+    private String maxLimitConfig;
+
+    @Inject
+    @Configurable
+    @ConfigurationProperty(ADMISSION_CONTROL_LATENCY_TARGET)
+    private String latencyTargetConfig;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private boolean enabled;
+    private int minLimit;
+    private int maxLimit;
+    private long latencyTarget;
+    private Meter rejectedHighPriority;
+    private Meter rejectedLowPriority;
+
+    private volatile double limit;
+    private long lastBackoff;
+
+    public AdaptiveConcurrencyLimiter() {
+    }
+
+    AdaptiveConcurrencyLimiter(int minLimit, int maxLimit, long latencyTargetMillis) {
+        this.enabledConfig = "true";
+        this.minLimitConfig = String.valueOf(minLimit);
+        this.maxLimitConfig = String.valueOf(maxLimit);
+        this.latencyTargetConfig = String.valueOf(latencyTargetMillis);
+        init();
+    }
+
+    @PostConstruct
+    void init() {
+        enabled = Boolean.parseBoolean(enabledConfig);
+        minLimit = parse(ADMISSION_CONTROL_MIN_LIMIT, minLimitConfig);
+        maxLimit = Math.max(minLimit, parse(ADMISSION_CONTROL_MAX_LIMIT, maxLimitConfig));
+        latencyTarget = MILLISECONDS.toNanos(parse(ADMISSION_CONTROL_LATENCY_TARGET, latencyTargetConfig));
+        limit = maxLimit;
+        lastBackoff = System.nanoTime();
+
+        MetricRegistry metricRegistry = MetricRegistryProvider.INSTANCE.getMetricRegistry();
+        register(metricRegistry, "limit", () -> (int) limit);
+        register(metricRegistry, "in-flight", inFlight::get);
+        rejectedHighPriority = metricRegistry.meter(MetricRegistry.name("admission-control", "rejected-high-priority"));
+        rejectedLowPriority = metricRegistry.meter(MetricRegistry.name("admission-control", "rejected-low-priority"));
+    }
+
+    private static void register(MetricRegistry metricRegistry, String name, Gauge<Integer> gauge) {
+        String fullName = MetricRegistry.name("admission-control", name);
+        metricRegistry.remove(fullName);
+        metricRegistry.register(fullName, gauge);
+    }
+
+    private static int parse(ConfigurationKey key, String value) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        log.warnInvalidConfigValue(value, key.toString(), key.defaultValue());
+        return Integer.parseInt(key.defaultValue());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Takes a permit. Every successful call must be followed by a call to {@link #release(long, long, boolean)}.
+     *
+     * @param highPriority true if the request may use the whole limit
+     * @return false if the request should be rejected
+     */
+    public boolean tryAcquire(boolean highPriority) {
+        double currentLimit = highPriority ? limit : limit * LOW_PRIORITY_SHARE;
+        while (true) {
+            int current = inFlight.get();
+            if (current >= currentLimit) {
+                (highPriority ? rejectedHighPriority : rejectedLowPriority).mark();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a permit and adjusts the limit.
+     *
+     * @param start  time at which the request was admitted, in nanoseconds
+     * @param end    time at which the request completed, in nanoseconds
+     * @param failed true if the request failed because of the server
+     */
+    public void release(long start, long end, boolean failed) {
+        int current = inFlight.getAndDecrement();
+        if (failed || end - start > latencyTarget) {
+            backoff(start, end);
+        } else if (current * 2 >= limit) {
+            // Only grow while the limit is used, not while the server is idle
+            increase();
+        }
+    }
+
+    private synchronized void backoff(long start, long end) {
+        if (start - lastBackoff < 0) {
+            return;
+        }
+        lastBackoff = end;
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+    }
+
+    private synchronized void increase() {
+        limit = Math.min(maxLimit, limit + 1 / limit);
+    }
+
+    int getLimit() {
+        return (int) limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+}
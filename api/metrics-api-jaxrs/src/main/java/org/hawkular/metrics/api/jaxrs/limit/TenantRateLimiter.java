@@ -0,0 +1,323 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.limit;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.RATE_LIMIT_BURST;
+import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.RATE_LIMIT_CONCURRENT_QUERIES;
+import static org.hawkular.metrics.api.jaxrs.config.ConfigurationKey.RATE_LIMIT_DATA_POINTS;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.hawkular.metrics.api.jaxrs.config.Configurable;
+import org.hawkular.metrics.api.jaxrs.config.ConfigurationKey;
+import org.hawkular.metrics.api.jaxrs.config.ConfigurationProperty;
+import org.hawkular.metrics.api.jaxrs.log.RestLogger;
+import org.hawkular.metrics.api.jaxrs.log.RestLogging;
+import org.hawkular.metrics.api.jaxrs.util.MetricRegistryProvider;
+import org.hawkular.metrics.core.service.limit.TenantLimits;
+import org.hawkular.metrics.model.Metric;
+import org.hawkular.metrics.sysconfig.Configuration;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+
+import rx.Observable;
+import rx.Subscription;
+
+/**
+ * Per tenant limits on the rate of inserted data points and on the number of concurrent queries, enforced by
+ * {@link org.hawkular.metrics.api.jaxrs.filter.RateLimitFilter}.
+ * <p>
+ * Default limits are set with the {@link ConfigurationKey#RATE_LIMIT_DATA_POINTS},
+ * {@link ConfigurationKey#RATE_LIMIT_CONCURRENT_QUERIES} and {@link ConfigurationKey#RATE_LIMIT_BURST} parameters. They
+ * can be overridden in the {@code sys_config} table, under the {@link #CONFIGURATION_ID} configuration id, with the
+ * {@code data-points} and {@code concurrent-queries} properties for all tenants, and {@code <tenant>.data-points} and
+ * {@code <tenant>.concurrent-queries} for a single tenant. A limit of zero means no limit.
+ * <p>
+ * Write endpoints pass the metrics they read through {@link #charge(Observable)}, which takes the data points from
+ * the {@link TokenBucket} of the tenant before they are stored. A tenant is throttled once its bucket is empty: a large
+ * request is accepted, and the following ones are rejected until the bucket has been refilled.
+ * <p>
+ * While limits are enabled, a {@code rate-limit.<tenant>.data-points} meter, a {@code rate-limit.<tenant>.throttled}
+ * meter and a {@code rate-limit.<tenant>.queries} gauge of the queries in progress are registered for each active
+ * tenant. The data points meter is updated from the
+ * {@link org.hawkular.metrics.core.service.MetricsService#insertedDataEvents() inserted data events}, which drop events
+ * under load: it is an approximation, never used to enforce limits. Tenants are identified by a client supplied
+ * header, so the usage of tenants which have been idle for {@link #IDLE_EXPIRATION} is discarded along with their
+ * metrics, see {@link #expireIdleTenants()}.
+ */
+@ApplicationScoped
+public class TenantRateLimiter {
+    private static final RestLogger log = RestLogging.getRestLogger(TenantRateLimiter.class);
+
+    public static final String CONFIGURATION_ID = "org.hawkular.metrics.rate-limits";
+
+    /**
+     * Prefix of the per-tenant metrics, which hold tenant ids in their names.
+     */
+    public static final String METRICS_PREFIX = "rate-limit";
+
+    static final String DATA_POINTS = "data-points";
+    static final String CONCURRENT_QUERIES = "concurrent-queries";
+    static final long IDLE_EXPIRATION = MINUTES.toNanos(10);
+
+    private static final long MAX_LIMIT = Integer.MAX_VALUE;
+
+    @Inject
+    @Configurable
+    @ConfigurationProperty(RATE_LIMIT_DATA_POINTS)
+    private String dataPointsConfig;
+
+    @Inject
+    @Configurable
+    @ConfigurationProperty(RATE_LIMIT_CONCURRENT_QUERIES)
+    private String concurrentQueriesConfig;
+
+    @Inject
+    @Configurable
+    @ConfigurationProperty(RATE_LIMIT_BURST)
+    private String burstConfig;
+
+    private final ConcurrentMap<String, TenantUsage> tenants = new ConcurrentHashMap<>();
+    private MetricRegistry metricRegistry;
+
+    private TenantLimits configuredLimits;
+    private double burst;
+    private volatile TenantLimits limits;
+    private volatile boolean enabled;
+    private Subscription subscription;
+
+    public TenantRateLimiter() {
+    }
+
+    TenantRateLimiter(String dataPointsConfig, String concurrentQueriesConfig, String burstConfig) {
+        this.dataPointsConfig = dataPointsConfig;
+        this.concurrentQueriesConfig = concurrentQueriesConfig;
+        this.burstConfig = burstConfig;
+        init();
+    }
+
+    @PostConstruct
+    void init() {
+        metricRegistry = MetricRegistryProvider.INSTANCE.getMetricRegistry();
+        configuredLimits = new TenantLimits(ImmutableMap.of(
+                DATA_POINTS, TenantLimits.parse(RATE_LIMIT_DATA_POINTS.toString(), dataPointsConfig, 0, MAX_LIMIT),
+                CONCURRENT_QUERIES, TenantLimits.parse(RATE_LIMIT_CONCURRENT_QUERIES.toString(),
+                        concurrentQueriesConfig, 0, MAX_LIMIT)), MAX_LIMIT);
+        burst = parseBurst(burstConfig);
+        limits = configuredLimits;
+        enabled = limits.isLimited();
+    }
+
+    /**
+     * @return false if no tenant has any limit, in which case requests do not need to be checked
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return 0 if the tenant may insert data, otherwise the number of seconds to wait before trying again
+     */
+    public long checkDataPoints(String tenant) {
+        TenantUsage usage = getUsage(tenant);
+        TokenBucket bucket = usage.bucket;
+        if (bucket == null) {
+            return 0;
+        }
+        long delay = bucket.delay(System.nanoTime());
+        if (delay == 0) {
+            return 0;
+        }
+        usage.throttled.mark();
+        // Round up, so that the client does not retry too early
+        return NANOSECONDS.toSeconds(delay + SECONDS.toNanos(1) - 1);
+    }
+
+    /**
+     * Takes the data points of each metric from the bucket of its tenant as the metric is emitted, that is as the
+     * request is read and before the data points are stored.
+     *
+     * @param metrics the metrics of a write request
+     * @return the same metrics, charged to their tenants
+     */
+    public <M extends Metric<?>> Observable<M> charge(Observable<M> metrics) {
+        if (!enabled) {
+            return metrics;
+        }
+        return metrics.doOnNext(metric -> getUsage(metric.getMetricId().getTenantId())
+                .charge(metric.getDataPoints().size(), System.nanoTime()));
+    }
+
+    /**
+     * Takes a query permit. Every successful call must be followed by a call to {@link #releaseQuery(String)} when
+     * the query is done.
+     *
+     * @return false if the tenant already has as many queries in progress as allowed
+     */
+    public boolean acquireQuery(String tenant) {
+        TenantUsage usage = getUsage(tenant);
+        int limit = usage.concurrentQueries;
+        while (true) {
+            int current = usage.queries.get();
+            if (limit > 0 && current >= limit) {
+                usage.throttled.mark();
+                return false;
+            }
+            if (usage.queries.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void releaseQuery(String tenant) {
+        // The usage may have been discarded and recreated since the query was admitted
+        getUsage(tenant).queries.updateAndGet(queries -> queries > 0 ? queries - 1 : 0);
+    }
+
+    /**
+     * Starts metering inserted data points.
+     *
+     * @param insertedData the inserted data events of the metrics service
+     */
+    public void start(Observable<Metric<?>> insertedData) {
+        subscription = insertedData.subscribe(metric -> {
+            if (!enabled) {
+                return;
+            }
+            getUsage(metric.getMetricId().getTenantId()).dataPoints.mark(metric.getDataPoints().size());
+        }, log::errorRateLimiterStopped);
+    }
+
+    /**
+     * Discards the usage and the metrics of tenants without queries in progress which have been idle for
+     * {@link #IDLE_EXPIRATION}, or of all such tenants if limits are disabled. Meant to be called periodically.
+     */
+    public void expireIdleTenants() {
+        expireIdleTenants(System.nanoTime());
+    }
+
+    void expireIdleTenants(long now) {
+        boolean expireAll = !enabled;
+        // Usages are created and discarded while holding the lock of their map entry, so the metrics of a new usage
+        // are never unregistered along with those of the usage it replaces
+        tenants.keySet().forEach(tenant -> tenants.computeIfPresent(tenant, (key, usage) -> {
+            if (usage.queries.get() == 0 && (expireAll || now - usage.lastUsed > IDLE_EXPIRATION)) {
+                usage.unregisterMetrics();
+                return null;
+            }
+            return usage;
+        }));
+    }
+
+    public void stop() {
+        if (subscription != null) {
+            subscription.unsubscribe();
+        }
+    }
+
+    /**
+     * Applies the limits stored in the {@link #CONFIGURATION_ID} configuration on top of the configured defaults.
+     */
+    public void configure(Configuration configuration) {
+        TenantLimits newLimits = configuredLimits.configure(configuration);
+        limits = newLimits;
+        tenants.values().forEach(usage -> usage.setLimits(newLimits));
+        enabled = newLimits.isLimited();
+    }
+
+    private TenantUsage getUsage(String tenant) {
+        TenantUsage usage = tenants.get(tenant);
+        if (usage == null) {
+            usage = tenants.computeIfAbsent(tenant, TenantUsage::new);
+        }
+        usage.lastUsed = System.nanoTime();
+        return usage;
+    }
+
+    private static double parseBurst(String value) {
+        try {
+            double burst = Double.parseDouble(value);
+            if (burst > 0) {
+                return burst;
+            }
+        } catch (NumberFormatException | NullPointerException ignored) {
+        }
+        log.warnInvalidRateLimit(value, RATE_LIMIT_BURST.toString(), RATE_LIMIT_BURST.defaultValue());
+        return Double.parseDouble(RATE_LIMIT_BURST.defaultValue());
+    }
+
+    private class TenantUsage {
+        final String tenant;
+        final AtomicInteger queries = new AtomicInteger();
+        final String dataPointsName;
+        final String throttledName;
+        final String queriesName;
+        final Meter dataPoints;
+        final Meter throttled;
+        volatile long dataPointsLimit = -1;
+        volatile int concurrentQueries;
+        volatile TokenBucket bucket;
+        volatile long lastUsed;
+
+        TenantUsage(String tenant) {
+            this.tenant = tenant;
+            dataPointsName = MetricRegistry.name(METRICS_PREFIX, tenant, DATA_POINTS);
+            throttledName = MetricRegistry.name(METRICS_PREFIX, tenant, "throttled");
+            queriesName = MetricRegistry.name(METRICS_PREFIX, tenant, "queries");
+            dataPoints = metricRegistry.meter(dataPointsName);
+            throttled = metricRegistry.meter(throttledName);
+            metricRegistry.remove(queriesName);
+            metricRegistry.register(queriesName, (Gauge<Integer>) queries::get);
+            setLimits(limits);
+        }
+
+        void unregisterMetrics() {
+            metricRegistry.remove(dataPointsName);
+            metricRegistry.remove(throttledName);
+            metricRegistry.remove(queriesName);
+        }
+
+        void setLimits(TenantLimits limits) {
+            concurrentQueries = (int) limits.get(tenant, CONCURRENT_QUERIES);
+            long dataPoints = limits.get(tenant, DATA_POINTS);
+            if (dataPoints != dataPointsLimit) {
+                dataPointsLimit = dataPoints;
+                bucket = dataPoints > 0 ? new TokenBucket(dataPoints, burst, System.nanoTime()) : null;
+            }
+        }
+
+        void charge(int count, long now) {
+            TokenBucket current = bucket;
+            if (current != null) {
+                current.consume(count, now);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.limit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket, refilled at a constant rate up to a capacity of {@code burst} seconds of tokens.
+ * <p>
+ * Instead of a token count, the bucket keeps the time at which it will be full again, as in the generic cell rate
+ * algorithm. Consuming {@code n} tokens moves that time forward by {@code n} token periods. This fits in a single
+ * {@link AtomicLong}, so the bucket is lock-free.
+ * <p>
+ * Tokens are consumed once the cost of an operation is known, which may be after the operation has been admitted. The
+ * bucket may therefore go into debt: operations are admitted as long as the bucket is not empty, and a single large
+ * operation may leave it empty for a while.
+ */
+public class TokenBucket {
+    private final long nanosPerToken;
+    private final long capacityNanos;
+    private final AtomicLong fullAt;
+
+    /**
+     * @param rate  number of tokens added per second
+     * @param burst capacity of the bucket, in seconds of tokens
+     * @param now   current time, in nanoseconds; the bucket starts full
+     */
+    public TokenBucket(double rate, double burst, long now) {
+        checkArgument(rate > 0, "rate must be positive");
+        checkArgument(burst > 0, "burst must be positive");
+        nanosPerToken = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        capacityNanos = (long) (TimeUnit.SECONDS.toNanos(1) * burst);
+        fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * @param now current time, in nanoseconds
+     * @return 0 if there are tokens left, otherwise how long to wait for the bucket to have tokens again, in
+     * nanoseconds
+     */
+    public long delay(long now) {
+        return Math.max(0, fullAt.get() - capacityNanos - now);
+    }
+
+    /**
+     * @param tokens number of tokens to take from the bucket
+     * @param now    current time, in nanoseconds
+     */
+    public void consume(long tokens, long now) {
+        long increment = tokens * nanosPerToken;
+        long current;
+        long next;
+        do {
+            current = fullAt.get();
+            // A bucket cannot hold more than its capacity
+            next = Math.max(current, now) + increment;
+        } while (!fullAt.compareAndSet(current, next));
+    }
+}
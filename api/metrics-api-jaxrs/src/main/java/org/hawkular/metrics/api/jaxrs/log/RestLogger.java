@@ -89,4 +89,48 @@ public interface RestLogger extends BasicLogger {
     @LogMessage(level = WARN)
     @Message(id = 200013, value = "Invalid value [%s] for max requests per connection. Will use a default of %s")
     void warnInvalidMaxRequests(String maxRequestsPerConnection, String defaultMaxRequests);
+
+    @LogMessage(level = WARN)
+    @Message(id = 200014, value = "Invalid value [%s] for inserted data buffer size. Will use a default of %s")
+    void warnInvalidInsertedDataBufferSize(String bufferSize, String defaultBufferSize);
+
+    @LogMessage(level = WARN)
+    @Message(id = 200015, value = "Invalid value [%s] for inserted data overflow policy. Will use a default of %s")
+    void warnInvalidInsertedDataOverflowPolicy(String overflowPolicy, String defaultOverflowPolicy);
+
+    @LogMessage(level = WARN)
+    @Message(id = 200016, value = "Invalid value [%s] for storage. Will use a default of %s")
+    void warnInvalidStorage(String storage, String defaultStorage);
+
+    @LogMessage(level = WARN)
+    @Message(id = 200017, value = "Using in-memory storage: data will be lost when the metrics service stops")
+    void warnInMemoryStorage();
+
+    @LogMessage(level = FATAL)
+    @Message(id = 200018, value = "An error occurred trying to start the in-memory metrics service")
+    void fatalCannotStartInMemoryService(@Cause Exception e);
+
+    @LogMessage(level = WARN)
+    @Message(id = 200019, value = "Invalid value [%s] for rate limit %s. Will use a default of %s")
+    void warnInvalidRateLimit(String value, String name, String defaultValue);
+
+    @LogMessage(level = WARN)
+    @Message(id = 200020, value = "Could not load rate limits")
+    void warnRateLimitsNotLoaded(@Cause Throwable t);
+
+    @LogMessage(level = ERROR)
+    @Message(id = 200021, value = "Rate limiter stopped counting inserted data points")
+    void errorRateLimiterStopped(@Cause Throwable t);
+
+    @LogMessage(level = WARN)
+    @Message(id = 200022, value = "Invalid value [%s] for %s. Will use a default of %s")
+    void warnInvalidConfigValue(String value, String name, String defaultValue);
+
+    @LogMessage(level = WARN)
+    @Message(id = 200023, value = "Could not load query limits")
+    void warnQueryLimitsNotLoaded(@Cause Throwable t);
+
+    @LogMessage(level = WARN)
+    @Message(id = 200024, value = "Overflow policy [%s] would let a slow bus block inserts. Will use a default of %s")
+    void warnBlockingInsertedDataOverflowPolicy(String overflowPolicy, String defaultOverflowPolicy);
 }
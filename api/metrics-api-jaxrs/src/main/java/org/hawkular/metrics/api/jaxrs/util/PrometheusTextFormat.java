@@ -0,0 +1,174 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.util;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+/**
+ * Writes the metrics of a {@link MetricRegistry} in the Prometheus text exposition format.
+ * <p>
+ * Metric names are prefixed with {@code hawkular_} and characters which are not allowed by Prometheus are replaced by
+ * underscores. A name may end with labels in the Prometheus syntax, e.g. {@code rest-request-latency{endpoint="..."}},
+ * which are exported as is.
+ * <p>
+ * Gauges with numeric values and counters are exported as gauges, meters as counters with a {@code _total} suffix.
+ * Histograms and timers are exported as summaries, timers in seconds with a {@code _seconds} suffix. Quantiles are
+ * computed over the recent samples kept by the reservoir of each histogram or timer. Dropwizard does not keep the sum
+ * of the samples, so {@code _sum} is estimated as the mean of the reservoir times the count.
+ */
+public final class PrometheusTextFormat {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+
+    private static final String PREFIX = "hawkular_";
+    private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = SECONDS.toNanos(1);
+
+    public static String write(MetricRegistry metricRegistry) {
+        return write(metricRegistry, MetricFilter.ALL);
+    }
+
+    /**
+     * @param filter selects the metrics to write
+     */
+    public static String write(MetricRegistry metricRegistry, MetricFilter filter) {
+        Map<String, Family> families = new TreeMap<>();
+        metricRegistry.getGauges(filter).forEach((name, gauge) -> writeGauge(families, name, gauge));
+        metricRegistry.getCounters(filter).forEach((name, counter) -> writeCounter(families, name, counter));
+        metricRegistry.getMeters(filter).forEach((name, meter) -> writeMeter(families, name, meter));
+        metricRegistry.getHistograms(filter).forEach((name, histogram) -> writeHistogram(families, name, histogram));
+        metricRegistry.getTimers(filter).forEach((name, timer) -> writeTimer(families, name, timer));
+
+        StringBuilder out = new StringBuilder();
+        families.forEach((name, family) -> {
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            family.samples.forEach(sample -> out.append(sample).append('\n'));
+        });
+        return out.toString();
+    }
+
+    private static void writeGauge(Map<String, Family> families, String name, Gauge<?> gauge) {
+        Object value = gauge.getValue();
+        if (value instanceof Boolean) {
+            value = (Boolean) value ? 1 : 0;
+        }
+        if (value instanceof Number) {
+            Name metricName = new Name(name, "");
+            family(families, metricName.family, "gauge").add(metricName, "", null, (Number) value);
+        }
+    }
+
+    private static void writeCounter(Map<String, Family> families, String name, Counter counter) {
+        Name metricName = new Name(name, "");
+        family(families, metricName.family, "gauge").add(metricName, "", null, counter.getCount());
+    }
+
+    private static void writeMeter(Map<String, Family> families, String name, Meter meter) {
+        Name metricName = new Name(name, "_total");
+        family(families, metricName.family, "counter").add(metricName, "", null, meter.getCount());
+    }
+
+    private static void writeHistogram(Map<String, Family> families, String name, Histogram histogram) {
+        writeSummary(families, new Name(name, ""), histogram.getSnapshot(), histogram.getCount(), 1);
+    }
+
+    private static void writeTimer(Map<String, Family> families, String name, Timer timer) {
+        writeSummary(families, new Name(name, "_seconds"), timer.getSnapshot(), timer.getCount(), NANOS_PER_SECOND);
+    }
+
+    private static void writeSummary(Map<String, Family> families, Name name, Snapshot snapshot, long count,
+            double scale) {
+        Family family = family(families, name.family, "summary");
+        for (double quantile : QUANTILES) {
+            family.add(name, "", "quantile=\"" + quantile + "\"", snapshot.getValue(quantile) / scale);
+        }
+        family.add(name, "_sum", null, snapshot.getMean() * count / scale);
+        family.add(name, "_count", null, count);
+    }
+
+    private static Family family(Map<String, Family> families, String name, String type) {
+        return families.computeIfAbsent(name, n -> new Family(type));
+    }
+
+    private static String format(Number value) {
+        if (value instanceof Double || value instanceof Float) {
+            double d = value.doubleValue();
+            if (Double.isNaN(d)) {
+                return "NaN";
+            }
+            if (Double.isInfinite(d)) {
+                return d > 0 ? "+Inf" : "-Inf";
+            }
+            return Double.toString(d);
+        }
+        return value.toString();
+    }
+
+    private static class Name {
+        final String family;
+        final String labels;
+
+        Name(String name, String suffix) {
+            String base = name;
+            String labels = "";
+            int start = name.indexOf('{');
+            if (start > 0 && name.endsWith("}")) {
+                base = name.substring(0, start);
+                labels = name.substring(start + 1, name.length() - 1);
+            }
+            this.family = PREFIX + base.replaceAll("[^a-zA-Z0-9_:]", "_") + suffix;
+            this.labels = labels;
+        }
+    }
+
+    private static class Family {
+        final String type;
+        final List<String> samples = new ArrayList<>();
+
+        Family(String type) {
+            this.type = type;
+        }
+
+        void add(Name name, String suffix, String extraLabel, Number value) {
+            StringBuilder sample = new StringBuilder(name.family).append(suffix);
+            if (!name.labels.isEmpty() || extraLabel != null) {
+                sample.append('{').append(name.labels);
+                if (extraLabel != null) {
+                    sample.append(name.labels.isEmpty() ? "" : ",").append(extraLabel);
+                }
+                sample.append('}');
+            }
+            samples.add(sample.append(' ').append(format(value)).toString());
+        }
+    }
+
+    private PrometheusTextFormat() {
+    }
+}
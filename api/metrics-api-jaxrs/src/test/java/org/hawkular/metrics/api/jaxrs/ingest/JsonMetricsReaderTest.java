@@ -0,0 +1,150 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.ingest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+
+import static org.hawkular.metrics.model.MetricType.AVAILABILITY;
+import static org.hawkular.metrics.model.MetricType.COUNTER;
+import static org.hawkular.metrics.model.MetricType.GAUGE;
+import static org.hawkular.metrics.model.MetricType.STRING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.hawkular.metrics.api.jaxrs.interceptor.EmptyPayloadException;
+import org.hawkular.metrics.model.AvailabilityType;
+import org.hawkular.metrics.model.DataPoint;
+import org.hawkular.metrics.model.Metric;
+import org.hawkular.metrics.model.MetricId;
+import org.hawkular.metrics.model.MetricType;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.google.common.collect.ImmutableMap;
+
+public class JsonMetricsReaderTest {
+
+    private static final String TENANT = "test";
+
+    private final JsonFactory factory = new JsonFactory()
+            .configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true)
+            .configure(JsonParser.Feature.ALLOW_UNQUOTED_FIELD_NAMES, true);
+
+    @Test
+    public void readGauges() throws Exception {
+        List<Metric<?>> metrics = readAll("[{id: 'g1', tags: {a: 'b'}, data: [" +
+                "{timestamp: 1, value: 1.5}, {timestamp: 2, value: 3, tags: {x: 'y'}}]}, {id: 'g2', data: []}]",
+                GAUGE, 100);
+
+        assertEquals(asList(
+                new Metric<>(new MetricId<>(TENANT, GAUGE, "g1"), asList(new DataPoint<>(1L, 1.5),
+                        new DataPoint<>(2L, 3.0, ImmutableMap.of("x", "y")))),
+                new Metric<>(new MetricId<>(TENANT, GAUGE, "g2"))
+        ), metrics);
+        assertEquals(2, metrics.get(0).getDataPoints().size());
+        assertEquals(new DataPoint<>(2L, 3.0, ImmutableMap.of("x", "y")), metrics.get(0).getDataPoints().get(1));
+    }
+
+    @Test
+    public void splitDataPointsInChunks() throws Exception {
+        StringBuilder json = new StringBuilder("[{\"id\": \"c1\", \"data\": [");
+        for (int i = 0; i < 5; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"timestamp\": ").append(i).append(", \"value\": ").append(i)
+                    .append("}");
+        }
+        json.append("]}]");
+
+        List<Metric<?>> metrics = readAll(json.toString(), COUNTER, 2);
+
+        assertEquals(3, metrics.size());
+        List<DataPoint<?>> dataPoints = new ArrayList<>();
+        metrics.forEach(metric -> {
+            assertEquals(new MetricId<>(TENANT, COUNTER, "c1"), metric.getMetricId());
+            dataPoints.addAll(metric.getDataPoints());
+        });
+        assertEquals(asList(new DataPoint<>(0L, 0L), new DataPoint<>(1L, 1L), new DataPoint<>(2L, 2L),
+                new DataPoint<>(3L, 3L), new DataPoint<>(4L, 4L)), dataPoints);
+    }
+
+    @Test
+    public void bufferDataPointsWhenIdComesLast() throws Exception {
+        List<Metric<?>> metrics = readAll("[{data: [{timestamp: 1, value: 'up'}], id: 'a1'}]", AVAILABILITY, 100);
+
+        assertEquals(1, metrics.size());
+        assertEquals(new MetricId<>(TENANT, AVAILABILITY, "a1"), metrics.get(0).getMetricId());
+        assertEquals(Collections.singletonList(new DataPoint<>(1L, AvailabilityType.UP)),
+                metrics.get(0).getDataPoints());
+    }
+
+    @Test
+    public void readMixedRequest() throws Exception {
+        List<Metric<?>> metrics = readAll("{gauges: [{id: 'g', data: [{timestamp: 1, value: 1.0}]}], " +
+                "unknown: {a: [1, 2]}, strings: [{id: 's', data: [{timestamp: 2, value: 'hello'}]}], " +
+                "counters: null}", null, 100);
+
+        assertEquals(2, metrics.size());
+        assertEquals(new MetricId<>(TENANT, GAUGE, "g"), metrics.get(0).getMetricId());
+        assertEquals(new MetricId<>(TENANT, STRING, "s"), metrics.get(1).getMetricId());
+        assertEquals(Collections.singletonList(new DataPoint<>(2L, "hello")), metrics.get(1).getDataPoints());
+    }
+
+    @Test(expected = EmptyPayloadException.class)
+    public void rejectEmptyArray() throws Exception {
+        readAll("[]", GAUGE, 100);
+    }
+
+    @Test(expected = EmptyPayloadException.class)
+    public void rejectEmptyBody() throws Exception {
+        readAll("", GAUGE, 100);
+    }
+
+    @Test(expected = EmptyPayloadException.class)
+    public void rejectMixedRequestWithoutMetrics() throws Exception {
+        readAll("{gauges: [], counters: []}", null, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectMetricWithoutId() throws Exception {
+        readAll("[{data: [{timestamp: 1, value: 1.0}]}]", GAUGE, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectDataPointWithoutValue() throws Exception {
+        readAll("[{id: 'g', data: [{timestamp: 1}]}]", GAUGE, 100);
+    }
+
+    private List<Metric<?>> readAll(String json, MetricType<?> type, int chunkSize) throws IOException {
+        JsonMetricsReader reader = new JsonMetricsReader(factory, new ByteArrayInputStream(json.getBytes(UTF_8)),
+                TENANT, type, chunkSize);
+        List<Metric<?>> metrics = new ArrayList<>();
+        Metric<?> metric;
+        while ((metric = reader.next()) != null) {
+            metrics.add(metric);
+        }
+        assertNull(reader.next());
+        reader.close();
+        return metrics;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.ingest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+
+import static org.hawkular.metrics.model.MetricType.COUNTER;
+import static org.hawkular.metrics.model.MetricType.GAUGE;
+import static org.hawkular.metrics.model.MetricType.STRING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.metrics.api.jaxrs.interceptor.EmptyPayloadException;
+import org.hawkular.metrics.model.DataPoint;
+import org.hawkular.metrics.model.Metric;
+import org.hawkular.metrics.model.MetricId;
+import org.hawkular.metrics.model.MetricType;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+
+public class LineProtocolReaderTest {
+
+    private static final String TENANT = "test";
+
+    @Test
+    public void readGauges() throws Exception {
+        List<Metric<?>> metrics = readAll("cpu,host=a,dc=east 0.64 1000\n" +
+                "# comment\n" +
+                "\r\n" +
+                "mem  1024   2000\r\n" +
+                "cpu -1.5e2 3000", GAUGE, TimeUnit.MILLISECONDS, 100);
+
+        assertEquals(2, metrics.size());
+        assertEquals(new MetricId<>(TENANT, GAUGE, "cpu"), metrics.get(0).getMetricId());
+        assertEquals(asList(new DataPoint<>(1000L, 0.64, ImmutableMap.of("host", "a", "dc", "east")),
+                new DataPoint<>(3000L, -150.0)), metrics.get(0).getDataPoints());
+        assertEquals(ImmutableMap.of("host", "a", "dc", "east"), metrics.get(0).getDataPoints().get(0).getTags());
+        assertEquals(new MetricId<>(TENANT, GAUGE, "mem"), metrics.get(1).getMetricId());
+        assertEquals(Collections.singletonList(new DataPoint<>(2000L, 1024.0)), metrics.get(1).getDataPoints());
+    }
+
+    @Test
+    public void parseDecimalValuesExactly() throws Exception {
+        String[] values = {"0.1", "3.14159", "-0.000123", "123456789.123456", "12345678901234567890.5", "1e-3",
+                ".5", "7.", "NaN"};
+        StringBuilder lines = new StringBuilder();
+        for (String value : values) {
+            lines.append("g ").append(value).append(" 1\n");
+        }
+
+        List<Metric<?>> metrics = readAll(lines.toString(), GAUGE, TimeUnit.MILLISECONDS, 100);
+
+        assertEquals(1, metrics.size());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], Double.parseDouble(values[i]), metrics.get(0).getDataPoints().get(i).getValue());
+        }
+    }
+
+    @Test
+    public void readCountersWithPrecision() throws Exception {
+        List<Metric<?>> metrics = readAll("requests 42 5\nrequests +43 6", COUNTER, TimeUnit.SECONDS, 100);
+
+        assertEquals(1, metrics.size());
+        assertEquals(new MetricId<>(TENANT, COUNTER, "requests"), metrics.get(0).getMetricId());
+        assertEquals(asList(new DataPoint<>(5000L, 42L), new DataPoint<>(6000L, 43L)),
+                metrics.get(0).getDataPoints());
+    }
+
+    @Test
+    public void useCurrentTimeWhenTimestampIsMissing() throws Exception {
+        long start = System.currentTimeMillis();
+        List<Metric<?>> metrics = readAll("g 1", GAUGE, TimeUnit.MILLISECONDS, 100);
+
+        long timestamp = metrics.get(0).getDataPoints().get(0).getTimestamp();
+        assertTrue(timestamp >= start && timestamp <= System.currentTimeMillis());
+    }
+
+    @Test
+    public void groupDataPointsPerBatch() throws Exception {
+        List<Metric<?>> metrics = readAll("a 1 1\nb 2 2\na 3 3\nb 4 4\na 5 5", GAUGE, TimeUnit.MILLISECONDS, 4);
+
+        assertEquals(3, metrics.size());
+        assertEquals(new MetricId<>(TENANT, GAUGE, "a"), metrics.get(0).getMetricId());
+        assertEquals(asList(new DataPoint<>(1L, 1.0), new DataPoint<>(3L, 3.0)), metrics.get(0).getDataPoints());
+        assertEquals(new MetricId<>(TENANT, GAUGE, "b"), metrics.get(1).getMetricId());
+        assertEquals(asList(new DataPoint<>(2L, 2.0), new DataPoint<>(4L, 4.0)), metrics.get(1).getDataPoints());
+        assertEquals(new MetricId<>(TENANT, GAUGE, "a"), metrics.get(2).getMetricId());
+        assertEquals(Collections.singletonList(new DataPoint<>(5L, 5.0)), metrics.get(2).getDataPoints());
+    }
+
+    @Test
+    public void readLinesSpanningBufferBoundaries() throws Exception {
+        String name = Strings.repeat("x", 1000);
+        int count = 3 * LineProtocolReader.BUFFER_SIZE / 1000;
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            lines.append(name).append(' ').append(i).append(' ').append(i).append('\n');
+        }
+
+        List<Metric<?>> metrics = readAll(lines.toString(), COUNTER, TimeUnit.MILLISECONDS, 1000);
+
+        assertEquals(1, metrics.size());
+        assertEquals(count, metrics.get(0).getDataPoints().size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(new DataPoint<>((long) i, (long) i), metrics.get(0).getDataPoints().get(i));
+        }
+    }
+
+    @Test(expected = EmptyPayloadException.class)
+    public void rejectEmptyPayload() throws Exception {
+        readAll("\n# nothing\n", GAUGE, TimeUnit.MILLISECONDS, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectMissingValue() throws Exception {
+        readAll("g 1 1\ng\n", GAUGE, TimeUnit.MILLISECONDS, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectInvalidValue() throws Exception {
+        readAll("g abc 1", GAUGE, TimeUnit.MILLISECONDS, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectDecimalCounterValue() throws Exception {
+        readAll("c 1.5 1", COUNTER, TimeUnit.MILLISECONDS, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectInvalidTag() throws Exception {
+        readAll("g,host 1 1", GAUGE, TimeUnit.MILLISECONDS, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectTrailingFields() throws Exception {
+        readAll("g 1 1 1", GAUGE, TimeUnit.MILLISECONDS, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectTooLongLine() throws Exception {
+        readAll(Strings.repeat("x", LineProtocolReader.BUFFER_SIZE) + " 1 1", GAUGE, TimeUnit.MILLISECONDS, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectUnsupportedType() throws Exception {
+        readAll("s 1 1", STRING, TimeUnit.MILLISECONDS, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectUnknownPrecision() {
+        LineProtocolReader.parsePrecision("m");
+    }
+
+    private List<Metric<?>> readAll(String lines, MetricType<?> type, TimeUnit precision, int batchSize)
+            throws IOException {
+        LineProtocolReader reader = new LineProtocolReader(new ByteArrayInputStream(lines.getBytes(UTF_8)), TENANT,
+                type, precision, batchSize);
+        List<Metric<?>> metrics = new ArrayList<>();
+        Metric<?> metric;
+        while ((metric = reader.next()) != null) {
+            metrics.add(metric);
+        }
+        assertNull(reader.next());
+        reader.close();
+        return metrics;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.ingest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.hawkular.metrics.model.MetricType.GAUGE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.hawkular.metrics.core.service.MetricsService;
+import org.hawkular.metrics.model.Metric;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+import rx.Observable;
+
+public class StreamingIngestTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void storeBatchesReadBeforeInvalidDataPoint() throws Exception {
+        List<String> stored = Collections.synchronizedList(new ArrayList<>());
+        MetricsService metricsService = mock(MetricsService.class);
+        when(metricsService.addDataPoints(any(), any())).thenAnswer(invocation -> {
+            Observable<Metric<?>> metrics = (Observable<Metric<?>>) invocation.getArguments()[1];
+            return metrics.doOnNext(metric -> stored.add(metric.getMetricId().getName())).ignoreElements()
+                    .cast(Void.class);
+        });
+
+        int valid = StreamingIngest.BATCH_SIZE + 5;
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < valid; i++) {
+            json.append("{\"id\": \"g").append(i).append("\", \"data\": [{\"timestamp\": 1, \"value\": 1}]},");
+        }
+        json.append("{\"id\": \"invalid\", \"data\": [{\"timestamp\": 1}]}]");
+        Observable<Metric<?>> metrics = JsonMetricsReader.readMetrics(new JsonFactory(),
+                new ByteArrayInputStream(json.toString().getBytes(UTF_8)), "test", GAUGE);
+
+        Throwable error = StreamingIngest.addDataPoints(metricsService, metrics).materialize().toBlocking()
+                .last().getThrowable();
+
+        assertTrue(String.valueOf(error), error instanceof IllegalArgumentException);
+        // The first batch was written before the invalid data point was read, the next one was discarded
+        assertEquals(StreamingIngest.BATCH_SIZE, stored.size());
+        for (int i = 0; i < StreamingIngest.BATCH_SIZE; i++) {
+            assertEquals("g" + i, stored.get(i));
+        }
+    }
+}
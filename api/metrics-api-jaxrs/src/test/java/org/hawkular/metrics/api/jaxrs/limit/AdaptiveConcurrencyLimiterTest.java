@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.limit;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    public void shouldKeepPermitsForHighPriorityRequests() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 4, 100);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire(false));
+        }
+        assertFalse(limiter.tryAcquire(false));
+        assertTrue(limiter.tryAcquire(true));
+        assertFalse(limiter.tryAcquire(true));
+        assertEquals(4, limiter.getInFlight());
+    }
+
+    @Test
+    public void shouldBackOffOncePerSlowdown() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 100, 100);
+        long start = System.nanoTime();
+        long end = start + MILLISECONDS.toNanos(200);
+
+        limiter.tryAcquire(true);
+        limiter.tryAcquire(true);
+        limiter.release(start, end, false);
+        assertEquals(90, limiter.getLimit());
+        // Admitted before the limit was decreased
+        limiter.release(start, end, false);
+        assertEquals(90, limiter.getLimit());
+
+        limiter.tryAcquire(true);
+        limiter.release(end + 1, end + 2, true);
+        assertEquals(81, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void shouldNotGoBelowMinLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 11, 100);
+        long time = System.nanoTime();
+
+        for (int i = 0; i < 5; i++) {
+            limiter.tryAcquire(true);
+            limiter.release(time, time + 1, true);
+            time += 2;
+        }
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void shouldGrowWhileLimitIsUsed() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 20, 100);
+        long time = System.nanoTime();
+        limiter.tryAcquire(true);
+        limiter.release(time, time + 1, true);
+        assertEquals(18, limiter.getLimit());
+
+        // Idle server, the limit is not used
+        for (int i = 0; i < 100; i++) {
+            limiter.tryAcquire(true);
+            limiter.release(time + 2, time + 3, false);
+        }
+        assertEquals(18, limiter.getLimit());
+
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire(true);
+        }
+        for (int i = 0; i < 100; i++) {
+            limiter.tryAcquire(true);
+            limiter.release(time + 2, time + 3, false);
+        }
+        assertTrue(limiter.getLimit() > 18);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.limit;
+
+import static java.util.Collections.nCopies;
+
+import static org.hawkular.metrics.model.MetricType.GAUGE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hawkular.metrics.api.jaxrs.util.MetricRegistryProvider;
+import org.hawkular.metrics.model.DataPoint;
+import org.hawkular.metrics.model.Metric;
+import org.hawkular.metrics.model.MetricId;
+import org.hawkular.metrics.sysconfig.Configuration;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import rx.Observable;
+
+public class TenantRateLimiterTest {
+
+    @Test
+    public void shouldBeDisabledWithoutLimits() {
+        TenantRateLimiter rateLimiter = new TenantRateLimiter("0", "0", "1");
+
+        assertFalse(rateLimiter.isEnabled());
+        assertEquals(0, rateLimiter.checkDataPoints("t1"));
+        assertTrue(rateLimiter.acquireQuery("t1"));
+    }
+
+    @Test
+    public void shouldThrottleDataPointsOnceBucketIsEmpty() {
+        TenantRateLimiter rateLimiter = new TenantRateLimiter("10", "0", "1");
+        assertTrue(rateLimiter.isEnabled());
+
+        rateLimiter.charge(Observable.just(metric("t1", 100))).subscribe();
+
+        assertTrue(rateLimiter.checkDataPoints("t1") > 0);
+        assertEquals(0, rateLimiter.checkDataPoints("t2"));
+    }
+
+    @Test
+    public void shouldOnlyMeterInsertedData() {
+        TenantRateLimiter rateLimiter = new TenantRateLimiter("10", "0", "1");
+
+        rateLimiter.start(Observable.just(metric("metered", 100)));
+
+        assertEquals(0, rateLimiter.checkDataPoints("metered"));
+        assertEquals(100, MetricRegistryProvider.INSTANCE.getMetricRegistry().getMeters()
+                .get("rate-limit.metered.data-points").getCount());
+    }
+
+    @Test
+    public void shouldLimitConcurrentQueries() {
+        TenantRateLimiter rateLimiter = new TenantRateLimiter("0", "2", "1");
+
+        assertTrue(rateLimiter.acquireQuery("t1"));
+        assertTrue(rateLimiter.acquireQuery("t1"));
+        assertFalse(rateLimiter.acquireQuery("t1"));
+        assertTrue(rateLimiter.acquireQuery("t2"));
+
+        rateLimiter.releaseQuery("t1");
+        assertTrue(rateLimiter.acquireQuery("t1"));
+    }
+
+    @Test
+    public void shouldApplyTenantOverrides() {
+        TenantRateLimiter rateLimiter = new TenantRateLimiter("0", "0", "1");
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put("concurrent-queries", "1");
+        properties.put("t2.concurrent-queries", "0");
+        properties.put("t3.concurrent-queries", "invalid");
+        rateLimiter.configure(new Configuration(TenantRateLimiter.CONFIGURATION_ID, properties));
+
+        assertTrue(rateLimiter.isEnabled());
+        assertTrue(rateLimiter.acquireQuery("t1"));
+        assertFalse(rateLimiter.acquireQuery("t1"));
+        assertTrue(rateLimiter.acquireQuery("t2"));
+        assertTrue(rateLimiter.acquireQuery("t2"));
+        assertTrue(rateLimiter.acquireQuery("t3"));
+        assertFalse(rateLimiter.acquireQuery("t3"));
+    }
+
+    @Test
+    public void shouldExpireIdleTenants() {
+        TenantRateLimiter rateLimiter = new TenantRateLimiter("0", "1", "1");
+        MetricRegistry metricRegistry = MetricRegistryProvider.INSTANCE.getMetricRegistry();
+
+        assertTrue(rateLimiter.acquireQuery("idle"));
+        assertTrue(rateLimiter.acquireQuery("busy"));
+        rateLimiter.releaseQuery("idle");
+        rateLimiter.expireIdleTenants(System.nanoTime() + TenantRateLimiter.IDLE_EXPIRATION + 1);
+
+        assertFalse(metricRegistry.getGauges().containsKey("rate-limit.idle.queries"));
+        assertTrue(metricRegistry.getGauges().containsKey("rate-limit.busy.queries"));
+        assertFalse(rateLimiter.acquireQuery("busy"));
+        assertTrue(rateLimiter.acquireQuery("idle"));
+        assertTrue(metricRegistry.getGauges().containsKey("rate-limit.idle.queries"));
+        assertTrue(metricRegistry.getMeters().containsKey("rate-limit.idle.throttled"));
+    }
+
+    @Test
+    public void shouldNotTrackTenantsWhenDisabled() {
+        TenantRateLimiter rateLimiter = new TenantRateLimiter("0", "0", "1");
+
+        rateLimiter.start(Observable.just(metric("untracked", 10)));
+
+        assertFalse(MetricRegistryProvider.INSTANCE.getMetricRegistry().getMeters()
+                .containsKey("rate-limit.untracked.data-points"));
+    }
+
+    private static Metric<Double> metric(String tenant, int dataPoints) {
+        return new Metric<>(new MetricId<>(tenant, GAUGE, "m"), nCopies(dataPoints, new DataPoint<>(1L, 1.0)));
+    }
+}
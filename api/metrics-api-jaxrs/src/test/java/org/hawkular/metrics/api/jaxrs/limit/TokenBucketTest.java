@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.limit;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    @Test
+    public void shouldAdmitUntilBucketIsEmpty() {
+        long now = SECONDS.toNanos(100);
+        TokenBucket bucket = new TokenBucket(10, 1, now);
+
+        assertEquals(0, bucket.delay(now));
+        bucket.consume(10, now);
+        assertEquals(0, bucket.delay(now));
+        bucket.consume(1, now);
+        assertEquals(MILLISECONDS.toNanos(100), bucket.delay(now));
+    }
+
+    @Test
+    public void shouldRefillAtConstantRate() {
+        long now = SECONDS.toNanos(100);
+        TokenBucket bucket = new TokenBucket(10, 1, now);
+
+        bucket.consume(30, now);
+        assertEquals(SECONDS.toNanos(2), bucket.delay(now));
+        assertEquals(SECONDS.toNanos(1), bucket.delay(now + SECONDS.toNanos(1)));
+        assertEquals(0, bucket.delay(now + SECONDS.toNanos(2)));
+    }
+
+    @Test
+    public void shouldNotRefillAboveCapacity() {
+        long now = SECONDS.toNanos(100);
+        TokenBucket bucket = new TokenBucket(10, 1, now);
+
+        long later = now + SECONDS.toNanos(60);
+        bucket.consume(11, later);
+        assertEquals(MILLISECONDS.toNanos(100), bucket.delay(later));
+    }
+}
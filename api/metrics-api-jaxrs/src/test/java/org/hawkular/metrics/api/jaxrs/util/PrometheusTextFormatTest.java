@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.api.jaxrs.util;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+public class PrometheusTextFormatTest {
+
+    @Test
+    public void writeMetersAndGauges() {
+        MetricRegistry registry = new MetricRegistry();
+        registry.meter("gauge-inserts").mark(3);
+        registry.register("admission-control.limit", (Gauge<Integer>) () -> 20);
+        registry.register("not-a-number", (Gauge<String>) () -> "x");
+
+        List<String> lines = lines(registry);
+
+        assertEquals(Arrays.asList(
+                "# TYPE hawkular_admission_control_limit gauge",
+                "hawkular_admission_control_limit 20",
+                "# TYPE hawkular_gauge_inserts_total counter",
+                "hawkular_gauge_inserts_total 3"), lines);
+    }
+
+    @Test
+    public void writeLabeledTimersAsSummaries() {
+        MetricRegistry registry = new MetricRegistry();
+        registry.timer("rest-request-latency{endpoint=\"GET /gauges\"}").update(500, MILLISECONDS);
+        registry.timer("rest-request-latency{endpoint=\"POST /gauges/raw\"}").update(2, MILLISECONDS);
+
+        List<String> lines = lines(registry);
+
+        assertEquals("# TYPE hawkular_rest_request_latency_seconds summary", lines.get(0));
+        assertEquals(1, lines.stream().filter(line -> line.startsWith("# TYPE")).count());
+        assertTrue(lines.toString(),
+                lines.contains("hawkular_rest_request_latency_seconds{endpoint=\"GET /gauges\",quantile=\"0.5\"} 0.5"));
+        assertTrue(lines.toString(),
+                lines.contains("hawkular_rest_request_latency_seconds_count{endpoint=\"POST /gauges/raw\"} 1"));
+        assertTrue(lines.toString(),
+                lines.contains("hawkular_rest_request_latency_seconds_sum{endpoint=\"GET /gauges\"} 0.5"));
+    }
+
+    @Test
+    public void writeHistograms() {
+        MetricRegistry registry = new MetricRegistry();
+        registry.histogram("cassandra-batch-size").update(10);
+
+        List<String> lines = lines(registry);
+
+        assertTrue(lines.toString(), lines.contains("hawkular_cassandra_batch_size{quantile=\"0.99\"} 10.0"));
+        assertTrue(lines.toString(), lines.contains("hawkular_cassandra_batch_size_count 1"));
+        assertTrue(lines.toString(), lines.contains("hawkular_cassandra_batch_size_sum 10.0"));
+    }
+
+    @Test
+    public void writeFilteredMetrics() {
+        MetricRegistry registry = new MetricRegistry();
+        registry.meter("rate-limit.tenant.data-points").mark();
+        registry.counter("stats-cache.entries").inc();
+
+        List<String> lines = Arrays.asList(PrometheusTextFormat.write(registry,
+                (name, metric) -> !name.startsWith("rate-limit.")).split("\n"));
+
+        assertEquals(Arrays.asList(
+                "# TYPE hawkular_stats_cache_entries gauge",
+                "hawkular_stats_cache_entries 1"), lines);
+    }
+
+    private static List<String> lines(MetricRegistry registry) {
+        return Arrays.asList(PrometheusTextFormat.write(registry).split("\n"));
+    }
+}
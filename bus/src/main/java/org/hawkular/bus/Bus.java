@@ -16,13 +16,21 @@
  */
 package org.hawkular.bus;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
 import java.util.Collections;
 import java.util.Map;
-
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
-import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.concurrent.ManagedThreadFactory;
 import javax.enterprise.context.Dependent;
-import javax.jms.CompletionListener;
 import javax.jms.ConnectionFactory;
 import javax.jms.Destination;
 import javax.jms.JMSContext;
@@ -32,9 +40,15 @@ import javax.jms.Message;
 import javax.jms.TextMessage;
 
 import org.hawkular.bus.common.BasicMessage;
+import org.hawkular.metrics.api.jaxrs.util.MetricRegistryProvider;
 import org.jboss.logging.Logger;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
 import rx.Observable;
+import rx.Subscriber;
 
 /**
  * @author jsanda
@@ -44,6 +58,19 @@ public class Bus {
 
     public static final String HEADER_BASIC_MESSAGE_CLASS = "basicMessageClassName";
 
+    /**
+     * Default number of producers, which can be overridden with the {@code hawkular.metrics.bus.producers} system
+     * property.
+     */
+    public static final int DEFAULT_PRODUCERS = 4;
+
+    /**
+     * Default number of messages which can wait for each producer, which can be overridden with the
+     * {@code hawkular.metrics.bus.queue-size} system property. Messages sent while the queue is full fail with a
+     * {@link RejectedExecutionException}.
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+
     private static final Logger log = Logger.getLogger(Bus.class);
 
     /**
@@ -55,10 +82,33 @@ public class Bus {
     private ConnectionFactory connectionFactory;
 
     @Resource
-    private ManagedExecutorService executorService;
+    private ManagedThreadFactory threadFactory;
+
+    private int queueSize;
+    private Producer[] producers;
+    private final AtomicInteger nextProducer = new AtomicInteger();
+
+    private Timer publishTimer;
+    private Meter publishFailures;
+
+    @PostConstruct
+    void init() {
+        int count = Math.max(1, Integer.getInteger("hawkular.metrics.bus.producers", DEFAULT_PRODUCERS));
+        queueSize = Math.max(1, Integer.getInteger("hawkular.metrics.bus.queue-size", DEFAULT_QUEUE_SIZE));
+        producers = new Producer[count];
+        for (int i = 0; i < count; i++) {
+            producers[i] = new Producer();
+        }
+        MetricRegistry metricRegistry = MetricRegistryProvider.INSTANCE.getMetricRegistry();
+        publishTimer = metricRegistry.timer("bus-publish");
+        publishFailures = metricRegistry.meter("bus-publish-failures");
+    }
 
     /**
-     * Sends a message asynchronously.
+     * Sends a message asynchronously. Messages are handed over round-robin to a small pool of producers. Each producer
+     * owns a long-lived {@link JMSContext} which is only ever used from the single thread the producer is bound to,
+     * since the underlying JMS session is intended for single threaded usage. The observable fails if the queue of
+     * the producer is full.
      *
      * @param destination The queue or topic to which the message is being sent
      * @param message The message to send
@@ -67,39 +117,8 @@ public class Bus {
      */
     public <T extends BasicMessage> Observable<TextMessage> send(Destination destination, T message) {
         return Observable.create(subscriber -> {
-            try {
-                // We create a context per request (i.e., method invocation) in order to avoid any concurrency
-                // issues since the underlying JMS session is intended for single threaded usage.
-                JMSContext context = connectionFactory.createContext();
-                try {
-                    JMSProducer producer = context.createProducer();
-                    TextMessage jmsMessage = context.createTextMessage();
-                    prepareJMSMessage(message, jmsMessage, Collections.emptyMap());
-                    producer.setAsync(new CompletionListener() {
-                        @Override
-                        public void onCompletion(Message message) {
-                            subscriber.onNext((TextMessage) message);
-                            close(context);
-                            // TODO Should we wait until context is closed to call onCompleted?
-                            subscriber.onCompleted();
-                        }
-
-                        @Override
-                        public void onException(Message message, Exception exception) {
-                            close(context);
-                            subscriber.onError(exception);
-                        }
-                    });
-                    producer.send(destination, jmsMessage);
-                } catch (Exception e) {
-                    close(context);
-                    subscriber.onError(e);
-
-                }
-            } catch (Exception e) {
-                // No need to call close() here since we failed to create the context
-                subscriber.onError(e);
-            }
+            Producer producer = producers[Math.floorMod(nextProducer.getAndIncrement(), producers.length)];
+            producer.send(destination, message, subscriber);
         });
     }
 
@@ -135,17 +154,83 @@ public class Bus {
         });
     }
 
-    private void close(AutoCloseable closeable) {
-        executorService.submit(() -> {
+    @PreDestroy
+    void shutdown() {
+        if (producers != null) {
+            for (Producer producer : producers) {
+                producer.shutdown();
+            }
+        }
+    }
+
+    /**
+     * A JMS context bound to a single worker thread. The context is created lazily and re-created after a failure,
+     * in case the failure left it unusable.
+     */
+    private class Producer {
+        private final ExecutorService executor = new ThreadPoolExecutor(1, 1, 0, MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), threadFactory);
+
+        // Only accessed from the executor thread
+        private JMSContext context;
+        private JMSProducer producer;
+
+        <T extends BasicMessage> void send(Destination destination, T message,
+                Subscriber<? super TextMessage> subscriber) {
+            try {
+                executor.execute(() -> doSend(destination, message, subscriber));
+            } catch (RejectedExecutionException e) {
+                publishFailures.mark();
+                subscriber.onError(e);
+            }
+        }
+
+        private <T extends BasicMessage> void doSend(Destination destination, T message,
+                Subscriber<? super TextMessage> subscriber) {
+            if (subscriber.isUnsubscribed()) {
+                return;
+            }
+            Timer.Context timerContext = publishTimer.time();
+            TextMessage jmsMessage;
             try {
-                log.debug("Closing " + closeable);
-                if (closeable != null) {
-                    closeable.close();
+                if (context == null) {
+                    context = connectionFactory.createContext();
+                    producer = context.createProducer();
                 }
+                jmsMessage = context.createTextMessage();
+                prepareJMSMessage(message, jmsMessage, Collections.emptyMap());
+                producer.send(destination, jmsMessage);
             } catch (Exception e) {
-                log.warn("Failed to close " + closeable, e);
+                publishFailures.mark();
+                close();
+                subscriber.onError(e);
+                return;
+            } finally {
+                timerContext.stop();
             }
-        });
-    }
+            subscriber.onNext(jmsMessage);
+            subscriber.onCompleted();
+        }
 
+        private void close() {
+            if (context != null) {
+                try {
+                    log.debug("Closing " + context);
+                    context.close();
+                } catch (Exception e) {
+                    log.warn("Failed to close " + context, e);
+                }
+                context = null;
+                producer = null;
+            }
+        }
+
+        void shutdown() {
+            try {
+                executor.execute(this::close);
+            } catch (RejectedExecutionException ignored) {
+            }
+            executor.shutdown();
+        }
+    }
 }
@@ -14,21 +14,28 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package org.hawkular.metrics.component.publish;
 
-import static java.util.stream.Collectors.toList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import static org.hawkular.metrics.model.MetricType.AVAILABILITY;
+import static org.hawkular.metrics.model.MetricType.STRING;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedThreadFactory;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
+import javax.jms.TextMessage;
 import javax.jms.Topic;
 
 import org.hawkular.bus.Bus;
@@ -36,16 +43,30 @@ import org.hawkular.bus.common.BasicMessage;
 import org.hawkular.metrics.api.jaxrs.ServiceReady;
 import org.hawkular.metrics.api.jaxrs.ServiceReadyEvent;
 import org.hawkular.metrics.api.jaxrs.util.Eager;
+import org.hawkular.metrics.api.jaxrs.util.MetricRegistryProvider;
 import org.hawkular.metrics.model.AvailabilityType;
+import org.hawkular.metrics.model.DataPoint;
 import org.hawkular.metrics.model.Metric;
 import org.hawkular.metrics.model.MetricId;
 import org.jboss.logging.Logger;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import rx.BackpressureOverflow;
 import rx.Observable;
 import rx.Subscription;
 import rx.schedulers.Schedulers;
 
 /**
+ * Publishes inserted data points on the bus. Inserted metrics are buffered for a short time window and each window
+ * results in at most one message per tenant and per topic, holding the data points of all the metrics of the tenant.
+ * <p>
+ * Windows are published one at a time from a dedicated thread, which waits for their messages to be handed over to the
+ * broker. At most {@link #MAX_PENDING_WINDOWS} windows wait to be published: when a slow broker lets more pile up, the
+ * oldest are dropped and counted in the {@code bus-dropped-windows} meter. Data points of messages which could not be
+ * sent are counted in the {@code bus-failed-data-points} meter.
+ *
  * @author Thomas Segismont
  */
 @ApplicationScoped
@@ -53,77 +74,114 @@ import rx.schedulers.Schedulers;
 public class InsertedDataSubscriber {
     private static final Logger log = Logger.getLogger(InsertedDataSubscriber.class);
 
+    static final int MAX_PENDING_WINDOWS = 100;
+
     @Resource(mappedName = "java:/topic/HawkularMetricData")
     private Topic numericTopic;
 
     @Resource(mappedName = "java:/topic/HawkularAvailData")
     private Topic availabilityTopic;
 
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
     @Inject
     private Bus bus;
 
+    private ScheduledExecutorService windowExecutor;
+    private ExecutorService publishExecutor;
     private Subscription subscription;
 
+    private Meter publishedDataPoints;
+    private Meter failedDataPoints;
+    private Meter droppedWindows;
+
     public void onMetricsServiceReady(@Observes @ServiceReady ServiceReadyEvent event) {
-        Observable<List<Metric<?>>> events = event.getInsertedData().buffer(50, TimeUnit.MILLISECONDS, 100)
+        MetricRegistry metricRegistry = MetricRegistryProvider.INSTANCE.getMetricRegistry();
+        publishedDataPoints = metricRegistry.meter("bus-published-data-points");
+        failedDataPoints = metricRegistry.meter("bus-failed-data-points");
+        droppedWindows = metricRegistry.meter("bus-dropped-windows");
+        windowExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        publishExecutor = Executors.newSingleThreadExecutor(threadFactory);
+        // The buffer operator requests inserted data without bounds and ignores backpressure: windows are handed over
+        // to the publishing thread through an explicitly bounded buffer, so neither thread ever blocks
+        Observable<List<Metric<?>>> events = event.getInsertedData()
+                .buffer(50, MILLISECONDS, 100, Schedulers.from(windowExecutor))
                 .filter(list -> !list.isEmpty())
-                .onBackpressureBuffer()
-                .observeOn(Schedulers.io());
-        subscription = events.subscribe(list -> list.forEach(this::onInsertedData));
+                .onBackpressureBuffer(MAX_PENDING_WINDOWS, droppedWindows::mark,
+                        BackpressureOverflow.ON_OVERFLOW_DROP_OLDEST)
+                .observeOn(Schedulers.from(publishExecutor), 1);
+        subscription = events.subscribe(this::onInsertedData,
+                t -> log.error("Stopped publishing inserted data on the bus", t));
     }
 
-    private void onInsertedData(Metric<?> metric) {
-        log.tracef("Inserted metric: %s", metric);
-        if (metric.getMetricId().getType() == AVAILABILITY) {
-            @SuppressWarnings("unchecked")
-            Metric<AvailabilityType> avail = (Metric<AvailabilityType>) metric;
-            publishAvailablility(avail);
-        } else {
-            @SuppressWarnings("unchecked")
-            Metric<? extends Number> numeric = (Metric<? extends Number>) metric;
-            publishNumeric(numeric);
+    private void onInsertedData(List<Metric<?>> metrics) {
+        Map<String, List<MetricDataMessage.SingleMetric>> numericByTenant = new HashMap<>();
+        Map<String, List<AvailDataMessage.SingleAvail>> availByTenant = new HashMap<>();
+        for (Metric<?> metric : metrics) {
+            log.tracef("Inserted metric: %s", metric);
+            MetricId<?> metricId = metric.getMetricId();
+            if (metricId.getType() == AVAILABILITY) {
+                @SuppressWarnings("unchecked")
+                Metric<AvailabilityType> avail = (Metric<AvailabilityType>) metric;
+                addAvailData(avail, availByTenant.computeIfAbsent(metricId.getTenantId(), t -> new ArrayList<>()));
+            } else if (metricId.getType() != STRING) {
+                @SuppressWarnings("unchecked")
+                Metric<? extends Number> numeric = (Metric<? extends Number>) metric;
+                addNumericData(numeric, numericByTenant.computeIfAbsent(metricId.getTenantId(),
+                        t -> new ArrayList<>()));
+            }
         }
+        List<Observable<TextMessage>> sent = new ArrayList<>();
+        numericByTenant.forEach((tenantId, data) -> sent.add(publish(numericTopic,
+                createNumericMessage(tenantId, data), data.size())));
+        availByTenant.forEach((tenantId, data) -> sent.add(publish(availabilityTopic, createAvailMessage(data),
+                data.size())));
+        // Waiting makes windows pile up in the bounded buffer while the broker is slow
+        Observable.merge(sent).toBlocking().lastOrDefault(null);
     }
 
-    private void publishNumeric(Metric<? extends Number> metric) {
-        BasicMessage message = createNumericMessage(metric);
-        bus.send(numericTopic, message).subscribe(
-                msg -> log.tracef("Sent message %s", msg),
-                t -> log.warnf(t, "Failed to send message %s", message)
-        );
+    private Observable<TextMessage> publish(Topic topic, BasicMessage message, int dataPoints) {
+        return bus.send(topic, message)
+                .doOnNext(msg -> {
+                    publishedDataPoints.mark(dataPoints);
+                    log.tracef("Sent message %s", msg);
+                })
+                .onErrorResumeNext(t -> {
+                    // The window goes on with the other messages
+                    failedDataPoints.mark(dataPoints);
+                    log.warnf(t, "Failed to send message %s", message);
+                    return Observable.empty();
+                });
     }
 
-    private BasicMessage createNumericMessage(Metric<? extends Number> numeric) {
-        MetricId<?> numericId = numeric.getMetricId();
-        List<MetricDataMessage.SingleMetric> numericList = numeric.getDataPoints().stream()
-                .map(dataPoint -> new MetricDataMessage.SingleMetric(numericId.getName(), dataPoint.getTimestamp(),
-                        dataPoint.getValue().doubleValue()))
-                .collect(toList());
+    private void addNumericData(Metric<? extends Number> numeric, List<MetricDataMessage.SingleMetric> data) {
+        String name = numeric.getMetricId().getName();
+        for (DataPoint<? extends Number> dataPoint : numeric.getDataPoints()) {
+            data.add(new MetricDataMessage.SingleMetric(name, dataPoint.getTimestamp(),
+                    dataPoint.getValue().doubleValue()));
+        }
+    }
+
+    private BasicMessage createNumericMessage(String tenantId, List<MetricDataMessage.SingleMetric> data) {
         MetricDataMessage.MetricData metricData = new MetricDataMessage.MetricData();
-        metricData.setTenantId(numericId.getTenantId());
-        metricData.setData(numericList);
+        metricData.setTenantId(tenantId);
+        metricData.setData(data);
         return new MetricDataMessage(metricData);
-
     }
 
-    private void publishAvailablility(Metric<AvailabilityType> metric) {
-        BasicMessage message = createAvailMessage(metric);
-        bus.send(availabilityTopic, message).subscribe(
-                msg -> log.tracef("Sent message %s", msg),
-                t -> log.warnf(t, "Failed to send message %s", message)
-        );
+    private void addAvailData(Metric<AvailabilityType> avail, List<AvailDataMessage.SingleAvail> data) {
+        MetricId<AvailabilityType> availId = avail.getMetricId();
+        for (DataPoint<AvailabilityType> dataPoint : avail.getDataPoints()) {
+            data.add(new AvailDataMessage.SingleAvail(availId.getTenantId(), availId.getName(),
+                    dataPoint.getTimestamp(), dataPoint.getValue().getText().toUpperCase()));
+        }
     }
 
-    private BasicMessage createAvailMessage(Metric<AvailabilityType> avail) {
-        MetricId<AvailabilityType> availId = avail.getMetricId();
-        List<AvailDataMessage.SingleAvail> availList = avail.getDataPoints().stream()
-                .map(dataPoint -> new AvailDataMessage.SingleAvail(availId.getTenantId(), availId.getName(),
-                        dataPoint.getTimestamp(),
-                        dataPoint.getValue().getText().toUpperCase()))
-                .collect(toList());
-        AvailDataMessage.AvailData metricData = new AvailDataMessage.AvailData();
-        metricData.setData(availList);
-        return new AvailDataMessage(metricData);
+    private BasicMessage createAvailMessage(List<AvailDataMessage.SingleAvail> data) {
+        AvailDataMessage.AvailData availData = new AvailDataMessage.AvailData();
+        availData.setData(data);
+        return new AvailDataMessage(availData);
     }
 
     @PreDestroy
@@ -131,5 +189,11 @@ public class InsertedDataSubscriber {
         if (subscription != null) {
             subscription.unsubscribe();
         }
+        if (windowExecutor != null) {
+            windowExecutor.shutdownNow();
+        }
+        if (publishExecutor != null) {
+            publishExecutor.shutdownNow();
+        }
     }
 }
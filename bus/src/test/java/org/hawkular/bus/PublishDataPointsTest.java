@@ -82,7 +82,8 @@ public class PublishDataPointsTest {
                 "org.hawkular.metrics:hawkular-metrics-model:" + System.getProperty("version.org.hawkular.metrics"),
                 "org.hawkular.metrics:hawkular-metrics-api-util:" + System.getProperty("version.org.hawkular.metrics"),
                 "org.hawkular.commons:hawkular-bus-common:" + System.getProperty("version.org.hawkular.commons"),
-                "io.reactivex:rxjava:" + System.getProperty("version.io.reactivex.rxjava")
+                "io.reactivex:rxjava:" + System.getProperty("version.io.reactivex.rxjava"),
+                "io.dropwizard.metrics:metrics-core:" + System.getProperty("version.io.dropwizard.metrics")
         );
 
         Collection<JavaArchive> dependencies = new HashSet<JavaArchive>();
@@ -142,6 +143,36 @@ public class PublishDataPointsTest {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void publishDataPointsOfSameTenantInSingleMessage() throws Exception {
+        String tenantId = "batch-tenant";
+        long now = System.currentTimeMillis();
+        Metric<Double> g1 = new Metric<>(new MetricId<>(tenantId, GAUGE, "G1"), asList(
+                new DataPoint<>(now, 1.0),
+                new DataPoint<>(now - 1000, 2.0)
+        ));
+        Metric<Double> g2 = new Metric<>(new MetricId<>(tenantId, GAUGE, "G2"),
+                Collections.singletonList(new DataPoint<>(now, 3.0)));
+        Observable<Metric<?>> observable = Observable.just(g1, g2);
+
+        MetricMessageListener<MetricDataMessage> listener = new MetricMessageListener<>(1, MetricDataMessage.class);
+        context.createConsumer(gaugeDataTopic).setMessageListener(listener);
+
+        serviceReadyEvent.fire(new ServiceReadyEvent(observable));
+
+        MetricDataMessage.MetricData data = new MetricDataMessage.MetricData();
+        data.setTenantId(tenantId);
+        data.setData(asList(
+                new MetricDataMessage.SingleMetric("G1", now, 1.0),
+                new MetricDataMessage.SingleMetric("G1", now - 1000, 2.0),
+                new MetricDataMessage.SingleMetric("G2", now, 3.0)
+        ));
+        List<MetricDataMessage> expected = Collections.singletonList(new MetricDataMessage(data));
+        List<MetricDataMessage> actual = listener.getMessages(5, TimeUnit.SECONDS);
+
+        assertEquals(expected, actual);
+    }
+
     @Test
     public void publishAvailabilityDataPoints() throws Exception {
         String tenantId = "availability-tenant";
@@ -1,5 +1,5 @@
 /*
- * Copyright 2014-2015 Red Hat, Inc. and/or its affiliates
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
  * and other contributors as indicated by the @author tags.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
@@ -17,19 +17,35 @@
 package org.hawkular.metrics.client.common;
 
 import java.util.AbstractQueue;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Deque;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * A Fifo with a fixed maximum size. If the maximum size is reached, old
  * elements are pushed out to make room for the new arrivals.
  *
- * Access is internally synchronized.
+ * The Fifo is a ring buffer for multiple producers and a single consumer:
+ * any thread may {@link #offer(SingleMetric)} items, but only one thread at a
+ * time may remove them ({@link #poll()}, {@link #drainTo(Collection, int)}
+ * and the cleanout methods). Producers claim a sequence number and overwrite
+ * the slot of the oldest item if needed. It is not lock-free: a producer which
+ * reaches a slot while another producer is writing it spins, yielding, until
+ * that write is done, so a producer descheduled in the middle of a write holds
+ * up the producers which wrap around to its slot. This only happens when
+ * producers lap each other, that is when items are offered faster than the
+ * ring size between two writes. A producer which finds its slot already
+ * holding a newer item drops its own, older, item. The consumer never waits:
+ * it skips items which have been overwritten while it was lagging behind, and
+ * stops at a slot claimed but not written yet.
  *
  * There are special methods #getList and #cleanout that can be used to
  * retrieve a list of items for further processing so that the fifo can still
@@ -37,77 +53,168 @@ import java.util.Queue;
  * be used to remove those items from the fifo.
  * @author Heiko W. Rupp
  */
-public class BoundMetricFifo extends AbstractQueue<SingleMetric> implements Queue<SingleMetric>{
+public class BoundMetricFifo extends AbstractQueue<SingleMetric> implements Queue<SingleMetric> {
+
+    /**
+     * Maximum capacity of a Fifo, the number of slots being the next power of two.
+     */
+    public static final int MAX_SIZE = 1 << 30;
+
+    private static final long WRITING = Long.MIN_VALUE;
 
     private final int maxSize;
-    Deque<SingleMetric> contents;
-    final Object mutex;
+    private final int mask;
+    private final AtomicReferenceArray<SingleMetric> elements;
+    // Sequence number of the item in each slot, WRITING while a producer updates the slot
+    private final AtomicLongArray sequences;
+    // Next sequence number to claim by producers
+    private final AtomicLong tail = new AtomicLong();
+    // Next sequence number to consume, only written by the consumer
+    private volatile long head;
+    private volatile long dropped;
 
     /**
-     * Create a new Fifo with an initial internal capacity of initialSize and a
-     * maximum capacity of maxSize.
-     * @param initialSize Initial internal capacity.
-     * @param maxSize Maximum capacity of the Fifo.
+     * Create a new Fifo with a maximum capacity of maxSize.
+     * @param initialSize Ignored, the ring is allocated upfront.
+     * @param maxSize Maximum capacity of the Fifo, at most {@link #MAX_SIZE}.
      */
     public BoundMetricFifo(int initialSize, int maxSize) {
-        if (initialSize > maxSize) {
-            initialSize =  maxSize;
+        if (maxSize < 1 || maxSize > MAX_SIZE) {
+            throw new IllegalArgumentException("maxSize: " + maxSize);
         }
-        contents = new ArrayDeque<>(initialSize);
         this.maxSize = maxSize;
-        mutex = this;
+        int slots = Integer.highestOneBit(maxSize);
+        if (slots < maxSize) {
+            slots <<= 1;
+        }
+        mask = slots - 1;
+        elements = new AtomicReferenceArray<>(slots);
+        sequences = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++) {
+            // No item has this sequence number
+            sequences.set(i, i - (long) slots);
+        }
     }
 
+    /**
+     * Returns an iterator over a snapshot of the items, oldest first.
+     */
     @Override
     public Iterator<SingleMetric> iterator() {
-        synchronized (mutex) {
-            return contents.iterator();
-        }
+        return Collections.unmodifiableList(getList()).iterator();
     }
 
+    /**
+     * Counts the items in the fifo. This method traverses the fifo; the result is exact only if there is no concurrent
+     * modification.
+     */
     @Override
     public int size() {
-        synchronized (mutex) {
-            return contents.size();
+        int size = 0;
+        long end = tail.get();
+        for (long sequence = start(end); sequence < end; sequence++) {
+            if (get(sequence) != null) {
+                size++;
+            }
         }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return peek() == null;
     }
 
     /**
      * Add an object to the Fifo. If the Fifo is full,
-     * then the oldest item is removed first.
+     * then the oldest item is overwritten.
      * @param singleMetric Metric to add
-     * @return true if adding was successful
+     * @return true, even if the item was dropped because newer items were offered concurrently
+     * @throws NullPointerException if singleMetric is null
      */
     @Override
     public boolean offer(SingleMetric singleMetric) {
-
-        synchronized (mutex) {
-            if (contents.size()==maxSize) {
-                contents.removeLast();
+        if (singleMetric == null) {
+            throw new NullPointerException();
+        }
+        long sequence = tail.getAndIncrement();
+        int index = (int) sequence & mask;
+        while (true) {
+            long current = sequences.get(index);
+            if (current == WRITING) {
+                Thread.yield();
+            } else if (current > sequence) {
+                // Lapped by faster producers, the slot already holds a newer item
+                return true;
+            } else if (sequences.compareAndSet(index, current, WRITING)) {
+                break;
             }
-            contents.offerFirst(singleMetric);
         }
-
+        elements.lazySet(index, singleMetric);
+        sequences.lazySet(index, sequence);
         return true;
     }
 
     @Override
     public SingleMetric poll() {
-        synchronized (mutex) {
-            if (contents.size()==0) {
-                return null;
+        long end = tail.get();
+        for (long sequence = skipDropped(end); sequence < end; sequence++) {
+            SingleMetric metric = get(sequence);
+            if (metric != null) {
+                head = sequence + 1;
+                return metric;
             }
-            else {
-                return contents.removeLast();
+            if (!skip(sequence)) {
+                // Claimed by a producer which has not written it yet
+                head = sequence;
+                return null;
             }
         }
+        head = Math.max(head, end);
+        return null;
     }
 
     @Override
     public SingleMetric peek() {
-        synchronized (mutex) {
-            return contents.peekLast();
+        long end = tail.get();
+        for (long sequence = start(end); sequence < end; sequence++) {
+            SingleMetric metric = get(sequence);
+            if (metric != null) {
+                return metric;
+            }
+            if (sequences.get((int) sequence & mask) < sequence) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes at most {@code maxElements} items, oldest first, and adds them to {@code collection}.
+     * @return the number of items transferred
+     */
+    public int drainTo(Collection<? super SingleMetric> collection, int maxElements) {
+        int count = 0;
+        long end = tail.get();
+        long sequence = skipDropped(end);
+        for (; sequence < end && count < maxElements; sequence++) {
+            SingleMetric metric = get(sequence);
+            if (metric != null) {
+                collection.add(metric);
+                count++;
+            } else if (!skip(sequence)) {
+                break;
+            }
         }
+        head = sequence;
+        return count;
+    }
+
+    /**
+     * @return the number of items which were overwritten before being consumed, as observed by the consumer
+     */
+    public long getDropped() {
+        return dropped;
     }
 
     /**
@@ -119,14 +226,11 @@ public class BoundMetricFifo extends AbstractQueue<SingleMetric> implements Queu
         if (metric==null) {
             return false;
         }
-
-        synchronized (mutex) {
-            return contents.remove(metric);
-        }
+        return cleanout(Collections.singletonList(metric));
     }
 
     /**
-     * Remove the collection of passed metrics from the fifo.
+     * Remove the collection of passed metrics from the fifo. The fifo is traversed once, newest items first.
      * @param metrics Metrics to remove
      * @return true if all Metrics were removed, false otherwise (e.g. if one metric was not in the fifo)
      */
@@ -136,23 +240,85 @@ public class BoundMetricFifo extends AbstractQueue<SingleMetric> implements Queu
             return false;
         }
 
-        boolean removed = true;
-
-        synchronized (mutex) {
-            for (SingleMetric metric : metrics) {
-                removed &= contents.remove(metric);
+        Map<SingleMetric, Integer> remaining = new HashMap<>();
+        for (SingleMetric metric : metrics) {
+            remaining.merge(metric, 1, Integer::sum);
+        }
+        int toRemove = metrics.size();
+        long end = tail.get();
+        long start = start(end);
+        for (long sequence = end - 1; sequence >= start && toRemove > 0; sequence--) {
+            SingleMetric metric = get(sequence);
+            if (metric == null) {
+                continue;
+            }
+            Integer count = remaining.get(metric);
+            if (count != null && elements.compareAndSet((int) sequence & mask, metric, null)) {
+                toRemove--;
+                if (count == 1) {
+                    remaining.remove(metric);
+                } else {
+                    remaining.put(metric, count - 1);
+                }
             }
         }
-        return removed;
+        return toRemove == 0;
     }
 
     /**
-     * Retrieve a copy of the current items in the fifo. The original content of the fifo is not changed.
+     * Retrieve a copy of the current items in the fifo, oldest first. The original content of the fifo is not changed.
      * @return A copy of the items in the fifo.
      */
     public List<SingleMetric> getList() {
-        synchronized (mutex) {
-            return new ArrayList<>(contents);
+        List<SingleMetric> list = new ArrayList<>();
+        long end = tail.get();
+        for (long sequence = start(end); sequence < end; sequence++) {
+            SingleMetric metric = get(sequence);
+            if (metric != null) {
+                list.add(metric);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return the first sequence number still in the fifo, given the current tail
+     */
+    private long start(long end) {
+        return Math.max(head, end - maxSize);
+    }
+
+    private long skipDropped(long end) {
+        long sequence = head;
+        if (end - sequence > maxSize) {
+            dropped += end - maxSize - sequence;
+            sequence = end - maxSize;
+        }
+        return sequence;
+    }
+
+    /**
+     * @return the item with the given sequence number, or null if it was removed, overwritten or not written yet
+     */
+    private SingleMetric get(long sequence) {
+        int index = (int) sequence & mask;
+        if (sequences.get(index) != sequence) {
+            return null;
+        }
+        SingleMetric metric = elements.get(index);
+        return sequences.get(index) == sequence ? metric : null;
+    }
+
+    /**
+     * Called by the consumer when there is no item with the given sequence number.
+     * @return true if the item was removed by a cleanout or overwritten, false if it has not been written yet
+     */
+    private boolean skip(long sequence) {
+        long current = sequences.get((int) sequence & mask);
+        if (current > sequence) {
+            dropped++;
+            return true;
         }
+        return current == sequence;
     }
 }
@@ -0,0 +1,401 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.client.common;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A persistent FIFO of metrics, stored in fixed size segment files written through memory-mapped I/O. It is the
+ * on-disk counterpart of {@link MetricBuffer}, meant to keep metrics while the backend is unavailable.
+ * <p>
+ * Metrics are {@link #append(SingleMetric) appended} at the tail, {@link #read(int) read} in insertion order and
+ * eventually {@link #acknowledge() acknowledged}, or {@link #rewind() rewound} to be read again if sending failed.
+ * Segments are deleted as soon as all their records are acknowledged. When the total size of the segments exceeds the
+ * maximum size, the oldest segment is discarded.
+ * <p>
+ * Records are {@code [int length][byte type][long timestamp][double value][UTF-8 id]}. The length is written last, so
+ * that a record interrupted by a crash is ignored when the spool is reopened. The acknowledgement position is kept in
+ * the {@value #ACK_FILE} file, so that acknowledged records are not read again after a restart.
+ * <p>
+ * Access is internally synchronized.
+ */
+public final class MetricSpool implements Closeable {
+    public static final String SEGMENT_SUFFIX = ".spool";
+    public static final String ACK_FILE = "ack";
+
+    private static final int HEADER_SIZE = 4 + 1 + 8 + 8;
+    private static final MetricType[] TYPES = MetricType.values();
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long maxSize;
+    private final NavigableMap<Long, Segment> segments = new TreeMap<>();
+    private final FileChannel ackChannel;
+    private final MappedByteBuffer ackBuffer;
+
+    private Segment readSegment;
+    private int readPosition;
+    private int ackPosition;
+    private long size;
+    private long inFlight;
+    private long discarded;
+
+    /**
+     * Opens the spool stored in {@code directory}, creating the directory if needed. Unacknowledged records of
+     * existing segments are recovered.
+     *
+     * @param directory   directory of the segment files
+     * @param segmentSize size of a segment file, in bytes
+     * @param maxSize     maximum total size of the segment files, in bytes
+     *
+     * @throws IllegalArgumentException if sizes are not positive or {@code maxSize} is lower than {@code segmentSize}
+     * @throws IOException              if the directory or existing segments cannot be opened
+     */
+    public MetricSpool(Path directory, int segmentSize, long maxSize) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("segmentSize: " + segmentSize);
+        }
+        if (maxSize < segmentSize) {
+            throw new IllegalArgumentException("maxSize: " + maxSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSize = maxSize;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                long sequence;
+                try {
+                    sequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                Segment segment = new Segment(sequence, path);
+                segment.recover();
+                segments.put(sequence, segment);
+                size += segment.records;
+            }
+        }
+        Map.Entry<Long, Segment> first = segments.firstEntry();
+        readSegment = first == null ? null : first.getValue();
+        ackChannel = FileChannel.open(directory.resolve(ACK_FILE), CREATE, READ, WRITE);
+        ackBuffer = ackChannel.map(FileChannel.MapMode.READ_WRITE, 0, 8 + 4);
+        if (readSegment != null && ackBuffer.getLong(0) == readSegment.sequence) {
+            recoverAckPosition(ackBuffer.getInt(8));
+        }
+    }
+
+    private void recoverAckPosition(int position) {
+        int records = 0;
+        int end = 0;
+        while (end < position && end < readSegment.writePosition) {
+            end += readSegment.buffer.getInt(end);
+            records++;
+        }
+        if (end != position) {
+            // Not a record boundary, the file was not written completely
+            return;
+        }
+        ackPosition = position;
+        readPosition = position;
+        size -= records;
+    }
+
+    /**
+     * @return the number of records which have not been acknowledged yet
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * @return true if all records have been acknowledged
+     */
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the number of bytes used by segment files
+     */
+    public synchronized long diskUsage() {
+        return (long) segments.size() * segmentSize;
+    }
+
+    /**
+     * @return the number of records discarded because the spool exceeded its maximum size
+     */
+    public synchronized long discarded() {
+        return discarded;
+    }
+
+    /**
+     * @return the timestamp of the oldest unacknowledged record, or -1 if the spool is empty
+     */
+    public synchronized long oldestTimestamp() {
+        if (size == 0) {
+            return -1;
+        }
+        Segment head = segments.firstEntry().getValue();
+        if (ackPosition < head.writePosition) {
+            return head.buffer.getLong(ackPosition + 5);
+        }
+        return segments.higherEntry(head.sequence).getValue().buffer.getLong(5);
+    }
+
+    /**
+     * Appends a metric at the tail of the spool.
+     *
+     * @param metric silently ignored if null
+     *
+     * @throws IllegalArgumentException if the record does not fit in a segment
+     * @throws UncheckedIOException     if a new segment cannot be created
+     */
+    public synchronized void append(SingleMetric metric) {
+        if (metric == null) {
+            return;
+        }
+        byte[] id = metric.getSource().getBytes(UTF_8);
+        int length = HEADER_SIZE + id.length;
+        if (length > segmentSize) {
+            throw new IllegalArgumentException("Metric id too long: " + metric.getSource());
+        }
+        Map.Entry<Long, Segment> last = segments.lastEntry();
+        Segment tail = last == null ? null : last.getValue();
+        if (tail == null || tail.writePosition + length > segmentSize) {
+            tail = createSegment(tail == null ? 0 : tail.sequence + 1);
+        }
+        MappedByteBuffer buffer = tail.buffer;
+        int position = tail.writePosition;
+        MetricType type = metric.getMetricType();
+        buffer.put(position + 4, type == null ? 0 : (byte) (type.ordinal() + 1));
+        buffer.putLong(position + 5, metric.getTimestamp());
+        buffer.putDouble(position + 13, metric.getValue() == null ? Double.NaN : metric.getValue());
+        for (int i = 0; i < id.length; i++) {
+            buffer.put(position + HEADER_SIZE + i, id[i]);
+        }
+        buffer.putInt(position, length);
+        tail.writePosition += length;
+        tail.records++;
+        size++;
+        while (segments.size() > 1 && diskUsage() > maxSize) {
+            discardHead();
+        }
+    }
+
+    /**
+     * Reads the next records, without removing them from the spool.
+     *
+     * @param batchSize the desired number of records to return
+     *
+     * @return a list of at most {@code batchSize} metrics, in insertion order
+     */
+    public synchronized List<SingleMetric> read(int batchSize) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException("batchSize: " + batchSize);
+        }
+        List<SingleMetric> metrics = new ArrayList<>((int) Math.min(batchSize, size - inFlight));
+        while (metrics.size() < batchSize && readSegment != null) {
+            if (readPosition >= readSegment.writePosition) {
+                Map.Entry<Long, Segment> next = segments.higherEntry(readSegment.sequence);
+                if (next == null) {
+                    break;
+                }
+                readSegment = next.getValue();
+                readPosition = 0;
+                continue;
+            }
+            MappedByteBuffer buffer = readSegment.buffer;
+            int length = buffer.getInt(readPosition);
+            byte type = buffer.get(readPosition + 4);
+            long timestamp = buffer.getLong(readPosition + 5);
+            double value = buffer.getDouble(readPosition + 13);
+            byte[] id = new byte[length - HEADER_SIZE];
+            for (int i = 0; i < id.length; i++) {
+                id[i] = buffer.get(readPosition + HEADER_SIZE + i);
+            }
+            metrics.add(new SingleMetric(new String(id, UTF_8), timestamp, value, type == 0 ? null : TYPES[type - 1]));
+            readPosition += length;
+            inFlight++;
+        }
+        return metrics;
+    }
+
+    /**
+     * Acknowledges all records read so far. Segments which only hold acknowledged records are deleted.
+     */
+    public synchronized void acknowledge() {
+        if (readSegment == null) {
+            return;
+        }
+        while (segments.firstKey() < readSegment.sequence) {
+            deleteSegment(segments.firstEntry().getValue());
+        }
+        ackPosition = readPosition;
+        size -= inFlight;
+        inFlight = 0;
+        if (readPosition == readSegment.writePosition && segments.lastKey() > readSegment.sequence) {
+            // The segment is complete and fully acknowledged
+            deleteSegment(readSegment);
+            readSegment = segments.firstEntry().getValue();
+            readPosition = 0;
+            ackPosition = 0;
+        }
+        persistAckPosition();
+    }
+
+    private void persistAckPosition() {
+        Map.Entry<Long, Segment> head = segments.firstEntry();
+        ackBuffer.putLong(0, head == null ? -1 : head.getKey());
+        ackBuffer.putInt(8, ackPosition);
+    }
+
+    /**
+     * Moves the read position back to the oldest unacknowledged record, so that records read since the last
+     * acknowledgement are returned again.
+     */
+    public synchronized void rewind() {
+        if (readSegment == null) {
+            return;
+        }
+        readSegment = segments.firstEntry().getValue();
+        readPosition = ackPosition;
+        inFlight = 0;
+    }
+
+    /**
+     * Flushes written records to the storage device and closes the segment files.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+            segment.channel.close();
+        }
+        segments.clear();
+        ackBuffer.force();
+        ackChannel.close();
+        readSegment = null;
+    }
+
+    private Segment createSegment(long sequence) {
+        Path path = directory.resolve(String.format("%020d%s", sequence, SEGMENT_SUFFIX));
+        try {
+            Segment segment = new Segment(sequence, path);
+            segments.put(sequence, segment);
+            if (readSegment == null) {
+                readSegment = segment;
+                readPosition = 0;
+                ackPosition = 0;
+            }
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create spool segment " + path, e);
+        }
+    }
+
+    private void discardHead() {
+        Segment head = segments.firstEntry().getValue();
+        long unacknowledged = head.records;
+        if (ackPosition > 0) {
+            unacknowledged -= countRecords(head, ackPosition);
+        }
+        if (readSegment == head) {
+            inFlight = 0;
+            readSegment = segments.higherEntry(head.sequence).getValue();
+            readPosition = 0;
+        } else {
+            // Records read from the head segment are discarded along with it
+            inFlight -= unacknowledged;
+            if (inFlight < 0) {
+                inFlight = 0;
+            }
+        }
+        ackPosition = 0;
+        size -= unacknowledged;
+        discarded += unacknowledged;
+        deleteSegment(head);
+        persistAckPosition();
+    }
+
+    private static int countRecords(Segment segment, int end) {
+        int count = 0;
+        int position = 0;
+        while (position < end) {
+            position += segment.buffer.getInt(position);
+            count++;
+        }
+        return count;
+    }
+
+    private void deleteSegment(Segment segment) {
+        segments.remove(segment.sequence);
+        try {
+            segment.channel.close();
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete spool segment " + segment.path, e);
+        }
+    }
+
+    private final class Segment {
+        final long sequence;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        int writePosition;
+        int records;
+
+        Segment(long sequence, Path path) throws IOException {
+            this.sequence = sequence;
+            this.path = path;
+            channel = FileChannel.open(path, CREATE, READ, WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+
+        void recover() {
+            int position = 0;
+            while (position + HEADER_SIZE <= segmentSize) {
+                int length = buffer.getInt(position);
+                if (length < HEADER_SIZE || position + length > segmentSize) {
+                    break;
+                }
+                position += length;
+                records++;
+            }
+            writePosition = position;
+        }
+    }
+}
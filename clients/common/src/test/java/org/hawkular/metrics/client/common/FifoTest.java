@@ -17,8 +17,11 @@
 package org.hawkular.metrics.client.common;
 
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.Test;
 
@@ -264,6 +267,13 @@ public class FifoTest {
 
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxSizeTooLarge() throws Exception {
+
+        new BoundMetricFifo(10, BoundMetricFifo.MAX_SIZE + 1);
+
+    }
+
     @Test
     public void testCleanoutNull() throws Exception {
 
@@ -273,4 +283,76 @@ public class FifoTest {
         assert !fifo.cleanout((SingleMetric)null);
 
     }
+
+    @Test
+    public void testDroppedCount() throws Exception {
+
+        BoundMetricFifo fifo = new BoundMetricFifo(10, 2);
+        for (int i = 1; i <= 5; i++) {
+            fifo.offer(new SingleMetric("" + i, (long) i, (double) i));
+        }
+
+        assert fifo.poll().getTimestamp() == 4;
+        assert fifo.poll().getTimestamp() == 5;
+        assert fifo.poll() == null;
+        assert fifo.getDropped() == 3 : "Expected 3 dropped items, but got " + fifo.getDropped();
+
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+
+        int producers = 4;
+        int itemsPerProducer = 100000;
+        BoundMetricFifo fifo = new BoundMetricFifo(10, 64);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(producers);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            String source = "p" + p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < itemsPerProducer; i++) {
+                        fifo.offer(new SingleMetric(source, (long) i, (double) i));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        long[] lastTimestamps = new long[producers];
+        Arrays.fill(lastTimestamps, -1);
+        long polled = 0;
+        start.countDown();
+        boolean producing = true;
+        while (true) {
+            SingleMetric metric = fifo.poll();
+            if (metric == null) {
+                if (!producing) {
+                    break;
+                }
+                producing = done.getCount() > 0;
+                continue;
+            }
+            polled++;
+            int producer = Integer.parseInt(metric.getSource().substring(1));
+            assert metric.getTimestamp() > lastTimestamps[producer] : "Item " + metric + " of producer " + producer
+                    + " polled after item " + lastTimestamps[producer];
+            lastTimestamps[producer] = metric.getTimestamp();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Every item was either consumed or counted as dropped
+        assert polled + fifo.getDropped() == (long) producers * itemsPerProducer : "Polled " + polled
+                + " items and dropped " + fifo.getDropped();
+
+    }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.client.common;
+
+import static java.util.stream.Collectors.toList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MetricSpoolTest {
+    // Room for 10 records of createMetric(i) with i < 100
+    private static final int SEGMENT_SIZE = 10 * (21 + 9);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+    private MetricSpool spool;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = temporaryFolder.newFolder().toPath();
+        spool = new MetricSpool(directory, SEGMENT_SIZE, 10 * SEGMENT_SIZE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        spool.close();
+    }
+
+    @Test
+    public void shouldReadInInsertionOrder() {
+        List<SingleMetric> expected = createMetrics(0, 25);
+        expected.forEach(spool::append);
+
+        assertEquals(25, spool.size());
+        assertEquals(3 * SEGMENT_SIZE, spool.diskUsage());
+
+        List<SingleMetric> actual = new ArrayList<>(spool.read(7));
+        actual.addAll(spool.read(100));
+        assertEquals(expected, actual);
+        assertEquals(expected.get(5).getValue(), actual.get(5).getValue());
+        assertEquals(expected.get(5).getMetricType(), actual.get(5).getMetricType());
+        assertTrue(spool.read(10).isEmpty());
+    }
+
+    @Test
+    public void shouldDeleteAcknowledgedSegments() throws Exception {
+        createMetrics(0, 25).forEach(spool::append);
+
+        spool.read(15);
+        spool.acknowledge();
+
+        assertEquals(10, spool.size());
+        assertEquals(2, countSegmentFiles());
+        assertEquals(15000, spool.oldestTimestamp());
+
+        spool.read(10);
+        spool.acknowledge();
+
+        assertTrue(spool.isEmpty());
+        assertEquals(1, countSegmentFiles());
+        assertEquals(-1, spool.oldestTimestamp());
+    }
+
+    @Test
+    public void shouldReadAgainAfterRewind() {
+        List<SingleMetric> expected = createMetrics(0, 15);
+        expected.forEach(spool::append);
+
+        spool.read(5);
+        spool.acknowledge();
+        spool.read(8);
+        spool.rewind();
+
+        assertEquals(expected.subList(5, 15), spool.read(100));
+        assertEquals(10, spool.size());
+    }
+
+    @Test
+    public void shouldDiscardOldestSegmentWhenFull() {
+        List<SingleMetric> appended = createMetrics(0, 105);
+        appended.forEach(spool::append);
+
+        assertEquals(10 * SEGMENT_SIZE, spool.diskUsage());
+        assertEquals(10, spool.discarded());
+        assertEquals(95, spool.size());
+        assertEquals(appended.subList(10, 105), spool.read(1000));
+    }
+
+    @Test
+    public void shouldRecoverRecordsAfterReopening() throws Exception {
+        List<SingleMetric> expected = createMetrics(0, 25);
+        expected.forEach(spool::append);
+        spool.read(12);
+        spool.acknowledge();
+        spool.close();
+
+        spool = new MetricSpool(directory, SEGMENT_SIZE, 10 * SEGMENT_SIZE);
+        assertEquals(13, spool.size());
+        spool.append(createMetric(25));
+
+        List<SingleMetric> actual = spool.read(100);
+        assertEquals(expected.subList(12, 25), actual.subList(0, 13));
+        assertEquals(createMetric(25), actual.get(13));
+    }
+
+    @Test
+    public void shouldReadUnacknowledgedRecordsAfterReopening() throws Exception {
+        List<SingleMetric> expected = createMetrics(0, 5);
+        expected.forEach(spool::append);
+        spool.read(2);
+        spool.acknowledge();
+        spool.read(2);
+        spool.close();
+
+        spool = new MetricSpool(directory, SEGMENT_SIZE, 10 * SEGMENT_SIZE);
+        assertEquals(3, spool.size());
+        assertEquals(expected.subList(2, 5), spool.read(100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTooLongIds() {
+        spool.append(new SingleMetric(new String(new char[SEGMENT_SIZE]), 1, 1.0));
+    }
+
+    private long countSegmentFiles() throws IOException {
+        return Files.list(directory).filter(path -> path.toString().endsWith(MetricSpool.SEGMENT_SUFFIX)).count();
+    }
+
+    private static List<SingleMetric> createMetrics(int from, int to) {
+        return IntStream.range(from, to).mapToObj(MetricSpoolTest::createMetric).collect(toList());
+    }
+
+    private static SingleMetric createMetric(int i) {
+        return new SingleMetric(String.format("metric.%02d", i), i * 1000L, (double) i,
+                i % 2 == 0 ? MetricType.GAUGE : MetricType.COUNTER);
+    }
+}
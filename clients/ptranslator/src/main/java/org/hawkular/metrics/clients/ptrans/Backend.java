@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.clients.ptrans;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Enumerates supported backends, where metrics are eventually written.
+ */
+public enum Backend {
+    /**
+     * Metrics are sent to the REST API of the metrics service.
+     */
+    HTTP("http"),
+    /**
+     * Metrics are written straight to the Cassandra cluster of the metrics service, through an embedded core service.
+     */
+    CASSANDRA("cassandra");
+
+    private final String externalForm;
+
+    Backend(String externalForm) {
+        this.externalForm = externalForm;
+    }
+
+    /**
+     * @return string representation of this backend
+     */
+    public String getExternalForm() {
+        return externalForm;
+    }
+
+    private static final Map<String, Backend> BACKENDS_BY_ID = new HashMap<>();
+
+    static {
+        for (Backend backend : Backend.values()) {
+            BACKENDS_BY_ID.put(backend.externalForm, backend);
+        }
+    }
+
+    /**
+     * @param externalForm backend string representation
+     *
+     * @return the {@link Backend} which externalForm is {@code externalForm}, null otherwise
+     */
+    public static Backend findByExternalForm(String externalForm) {
+        return BACKENDS_BY_ID.get(externalForm);
+    }
+}
@@ -19,25 +19,45 @@ package org.hawkular.metrics.clients.ptrans;
 
 import static java.util.stream.Collectors.toList;
 
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.BACKEND;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.BACKEND_CASSANDRA_CQL_PORT;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.BACKEND_CASSANDRA_DEFAULT_TTL;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.BACKEND_CASSANDRA_KEYSPACE;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.BACKEND_CASSANDRA_NODES;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.METRICS_ADAPTIVE;
 import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.METRICS_AUTH_ENABLED;
 import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.METRICS_AUTH_ID;
 import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.METRICS_AUTH_SECRET;
 import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.METRICS_BATCH_SIZE;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.METRICS_BUFFER_CAPACITY;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.METRICS_COMPRESSION;
 import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.METRICS_MAX_CONNECTIONS;
 import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.METRICS_TENANT;
 import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.METRICS_TENANT_SEND;
 import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.METRICS_URL;
 import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SERVICES;
 import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SERVICES_COLLECTD_PORT;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SERVICES_COLLECTD_RECEIVE_BUFFER_SIZE;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SERVICES_DATAGRAM_NATIVE_TRANSPORT;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SERVICES_DATAGRAM_READERS;
 import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SERVICES_GANGLIA_GROUP;
 import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SERVICES_GANGLIA_MULTICAST_INTERFACE;
 import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SERVICES_GANGLIA_PORT;
 import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SERVICES_GRAPHITE_PORT;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SERVICES_STATSD_FLUSH_INTERVAL;
 import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SERVICES_STATSD_PORT;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SERVICES_STATSD_RECEIVE_BUFFER_SIZE;
 import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SERVICES_TCP_PORT;
 import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SERVICES_UDP_PORT;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SERVICES_UDP_RECEIVE_BUFFER_SIZE;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SPOOL_DIRECTORY;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SPOOL_MAX_SIZE;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SPOOL_REPLAY_RATE;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SPOOL_SEGMENT_SIZE;
 
 import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
@@ -67,8 +87,19 @@ public class Configuration {
     private final String gangliaGroup;
     private final String multicastIfOverride;
     private final int statsDport;
+    private final int statsDflushInterval;
     private final int collectdPort;
     private final int graphitePort;
+    private final int udpReceiveBufferSize;
+    private final int statsDreceiveBufferSize;
+    private final int collectdReceiveBufferSize;
+    private final boolean datagramNativeTransport;
+    private final int datagramReaders;
+    private final Backend backend;
+    private final String cassandraNodes;
+    private final int cassandraCqlPort;
+    private final String cassandraKeyspace;
+    private final int cassandraDefaultTtl;
     private final URI metricsUrl;
     private final boolean sendTenant;
     private final String tenant;
@@ -78,12 +109,26 @@ public class Configuration {
     private final JsonObject httpHeaders;
     private final int maxConnections;
     private final int batchSize;
+    private final boolean adaptive;
+    private final boolean compression;
+    private final int bufferCapacity;
+    private final Path spoolDirectory;
+    private final int spoolSegmentSize;
+    private final int spoolMaxSize;
+    private final int spoolReplayRate;
     private final Set<String> validationMessages;
 
     private Configuration(Set<Service> services, int udpPort, int tcpPort, int gangliaPort, String gangliaGroup,
-                          String multicastIfOverride, int statsDport, int collectdPort, int graphitePort,
+                          String multicastIfOverride, int statsDport, int statsDflushInterval,
+                          int collectdPort, int graphitePort, int udpReceiveBufferSize,
+                          int statsDreceiveBufferSize, int collectdReceiveBufferSize,
+                          boolean datagramNativeTransport, int datagramReaders, Backend backend,
+                          String cassandraNodes, int cassandraCqlPort, String cassandraKeyspace,
+                          int cassandraDefaultTtl,
                           URI metricsUrl, boolean sendTenant, String tenant, boolean authEnabled, String authId,
                           String authSecret, JsonObject httpHeaders, int maxConnections, int batchSize,
+                          boolean adaptive, boolean compression, int bufferCapacity, Path spoolDirectory,
+                          int spoolSegmentSize, int spoolMaxSize, int spoolReplayRate,
                           Set<String> validationMessages) {
         this.services = services;
         this.udpPort = udpPort;
@@ -92,8 +137,19 @@ public class Configuration {
         this.gangliaGroup = gangliaGroup;
         this.multicastIfOverride = multicastIfOverride;
         this.statsDport = statsDport;
+        this.statsDflushInterval = statsDflushInterval;
         this.collectdPort = collectdPort;
         this.graphitePort = graphitePort;
+        this.udpReceiveBufferSize = udpReceiveBufferSize;
+        this.statsDreceiveBufferSize = statsDreceiveBufferSize;
+        this.collectdReceiveBufferSize = collectdReceiveBufferSize;
+        this.datagramNativeTransport = datagramNativeTransport;
+        this.datagramReaders = datagramReaders;
+        this.backend = backend;
+        this.cassandraNodes = cassandraNodes;
+        this.cassandraCqlPort = cassandraCqlPort;
+        this.cassandraKeyspace = cassandraKeyspace;
+        this.cassandraDefaultTtl = cassandraDefaultTtl;
         this.metricsUrl = metricsUrl;
         this.sendTenant = sendTenant;
         this.tenant = tenant;
@@ -103,6 +159,13 @@ public class Configuration {
         this.httpHeaders = httpHeaders;
         this.maxConnections = maxConnections;
         this.batchSize = batchSize;
+        this.adaptive = adaptive;
+        this.compression = compression;
+        this.bufferCapacity = bufferCapacity;
+        this.spoolDirectory = spoolDirectory;
+        this.spoolSegmentSize = spoolSegmentSize;
+        this.spoolMaxSize = spoolMaxSize;
+        this.spoolReplayRate = spoolReplayRate;
         this.validationMessages = Collections.unmodifiableSet(validationMessages);
     }
 
@@ -115,8 +178,44 @@ public class Configuration {
         String gangliaGroup = properties.getProperty(SERVICES_GANGLIA_GROUP.toString(), "239.2.11.71");
         String multicastIfOverride = properties.getProperty(SERVICES_GANGLIA_MULTICAST_INTERFACE.toString());
         int statsDport = getIntProperty(properties, SERVICES_STATSD_PORT, 8125);
+        int statsDflushInterval = getIntProperty(properties, SERVICES_STATSD_FLUSH_INTERVAL, 10);
+        if (statsDflushInterval <= 0) {
+            validationMessages.add(String.format(Locale.ROOT, "Property %s must be positive",
+                    SERVICES_STATSD_FLUSH_INTERVAL.toString()));
+        }
         int collectdPort = getIntProperty(properties, SERVICES_COLLECTD_PORT, 25826);
         int graphitePort = getIntProperty(properties, SERVICES_GRAPHITE_PORT, 2003);
+        int udpReceiveBufferSize = getIntProperty(properties, SERVICES_UDP_RECEIVE_BUFFER_SIZE, 0);
+        int statsDreceiveBufferSize = getIntProperty(properties, SERVICES_STATSD_RECEIVE_BUFFER_SIZE, 0);
+        int collectdReceiveBufferSize = getIntProperty(properties, SERVICES_COLLECTD_RECEIVE_BUFFER_SIZE, 0);
+        for (ConfigurationKey key : EnumSet.of(SERVICES_UDP_RECEIVE_BUFFER_SIZE, SERVICES_STATSD_RECEIVE_BUFFER_SIZE,
+                SERVICES_COLLECTD_RECEIVE_BUFFER_SIZE)) {
+            if (getIntProperty(properties, key, 0) < 0) {
+                validationMessages.add(String.format(Locale.ROOT, "Property %s must not be negative",
+                        key.toString()));
+            }
+        }
+        boolean datagramNativeTransport = getBooleanProperty(properties,
+                SERVICES_DATAGRAM_NATIVE_TRANSPORT.toString(), false);
+        int datagramReaders = getIntProperty(properties, SERVICES_DATAGRAM_READERS,
+                Runtime.getRuntime().availableProcessors());
+        if (datagramReaders <= 0) {
+            validationMessages.add(String.format(Locale.ROOT, "Property %s must be positive",
+                    SERVICES_DATAGRAM_READERS.toString()));
+        }
+        String backendProperty = properties.getProperty(BACKEND.toString(), Backend.HTTP.getExternalForm()).trim();
+        Backend backend = Backend.findByExternalForm(backendProperty);
+        if (backend == null) {
+            validationMessages.add(String.format(Locale.ROOT, "Unknown backend %s", backendProperty));
+        }
+        String cassandraNodes = properties.getProperty(BACKEND_CASSANDRA_NODES.toString(), "127.0.0.1");
+        int cassandraCqlPort = getIntProperty(properties, BACKEND_CASSANDRA_CQL_PORT, 9042);
+        String cassandraKeyspace = properties.getProperty(BACKEND_CASSANDRA_KEYSPACE.toString(), "hawkular_metrics");
+        int cassandraDefaultTtl = getIntProperty(properties, BACKEND_CASSANDRA_DEFAULT_TTL, 7);
+        if (cassandraDefaultTtl <= 0) {
+            validationMessages.add(String.format(Locale.ROOT, "Property %s must be positive",
+                    BACKEND_CASSANDRA_DEFAULT_TTL.toString()));
+        }
         URI metricsUrl = URI.create(properties.getProperty(METRICS_URL.toString(),
                 "http://localhost:8080/hawkular/metrics/gauges/raw"));
         boolean sendTenant = getBooleanProperty(properties, METRICS_TENANT_SEND.toString(), true);
@@ -127,6 +226,39 @@ public class Configuration {
         JsonObject httpHeaders = getHttpHeaders(properties);
         int maxConnections = getIntProperty(properties, METRICS_MAX_CONNECTIONS, 10);
         int batchSize = getIntProperty(properties, METRICS_BATCH_SIZE, 50);
+        boolean adaptive = getBooleanProperty(properties, METRICS_ADAPTIVE.toString(), false);
+        boolean compression = getBooleanProperty(properties, METRICS_COMPRESSION.toString(), true);
+        int bufferCapacity = getIntProperty(properties, METRICS_BUFFER_CAPACITY, 100000);
+        if (bufferCapacity <= 0) {
+            validationMessages.add(String.format(Locale.ROOT, "Property %s must be positive",
+                    METRICS_BUFFER_CAPACITY.toString()));
+        }
+        String spoolDirectoryProperty = properties.getProperty(SPOOL_DIRECTORY.toString());
+        Path spoolDirectory = spoolDirectoryProperty == null || spoolDirectoryProperty.trim().isEmpty() ? null
+                : Paths.get(spoolDirectoryProperty.trim());
+        int spoolSegmentSize = getIntProperty(properties, SPOOL_SEGMENT_SIZE, 16);
+        int spoolMaxSize = getIntProperty(properties, SPOOL_MAX_SIZE, 1024);
+        int spoolReplayRate = getIntProperty(properties, SPOOL_REPLAY_RATE, 5000);
+        if (spoolSegmentSize <= 0 || spoolSegmentSize > 1024) {
+            validationMessages.add(String.format(Locale.ROOT, "Property %s must be between 1 and 1024",
+                    SPOOL_SEGMENT_SIZE.toString()));
+        }
+        if (spoolMaxSize < spoolSegmentSize) {
+            validationMessages.add(String.format(Locale.ROOT, "Property %s must not be lower than %s",
+                    SPOOL_MAX_SIZE.toString(), SPOOL_SEGMENT_SIZE.toString()));
+        }
+        if (spoolReplayRate <= 0) {
+            validationMessages.add(String.format(Locale.ROOT, "Property %s must be positive",
+                    SPOOL_REPLAY_RATE.toString()));
+        }
+        if (spoolDirectory != null && backend == Backend.CASSANDRA) {
+            validationMessages.add(String.format(Locale.ROOT, "Property %s is not supported with the %s backend",
+                    SPOOL_DIRECTORY.toString(), backend.getExternalForm()));
+        } else if (spoolDirectory != null && !adaptive) {
+            // Only the adaptive sender reports whether replayed metrics were stored
+            validationMessages.add(String.format(Locale.ROOT, "Property %s requires %s to be enabled",
+                    SPOOL_DIRECTORY.toString(), METRICS_ADAPTIVE.toString()));
+        }
         return new Configuration(
                 services,
                 udpPort,
@@ -135,8 +267,19 @@ public class Configuration {
                 gangliaGroup,
                 multicastIfOverride,
                 statsDport,
+                statsDflushInterval,
                 collectdPort,
                 graphitePort,
+                udpReceiveBufferSize,
+                statsDreceiveBufferSize,
+                collectdReceiveBufferSize,
+                datagramNativeTransport,
+                datagramReaders,
+                backend,
+                cassandraNodes,
+                cassandraCqlPort,
+                cassandraKeyspace,
+                cassandraDefaultTtl,
                 metricsUrl,
                 sendTenant,
                 tenant,
@@ -146,6 +289,13 @@ public class Configuration {
                 httpHeaders,
                 maxConnections,
                 batchSize,
+                adaptive,
+                compression,
+                bufferCapacity,
+                spoolDirectory,
+                spoolSegmentSize,
+                spoolMaxSize,
+                spoolReplayRate,
                 validationMessages
         );
     }
@@ -262,6 +412,13 @@ public class Configuration {
         return statsDport;
     }
 
+    /**
+     * @return interval, in seconds, at which aggregated statsd metrics are flushed
+     */
+    public int getStatsDflushInterval() {
+        return statsDflushInterval;
+    }
+
     public int getCollectdPort() {
         return collectdPort;
     }
@@ -270,6 +427,41 @@ public class Configuration {
         return graphitePort;
     }
 
+    /**
+     * @return size, in bytes, of the socket receive buffers of the UDP server, 0 to keep the system default
+     */
+    public int getUdpReceiveBufferSize() {
+        return udpReceiveBufferSize;
+    }
+
+    /**
+     * @return size, in bytes, of the socket receive buffers of the statsd server, 0 to keep the system default
+     */
+    public int getStatsDreceiveBufferSize() {
+        return statsDreceiveBufferSize;
+    }
+
+    /**
+     * @return size, in bytes, of the socket receive buffers of the collectd server, 0 to keep the system default
+     */
+    public int getCollectdReceiveBufferSize() {
+        return collectdReceiveBufferSize;
+    }
+
+    /**
+     * @return true if the UDP, statsd and collectd servers should use the native transport, when available
+     */
+    public boolean isDatagramNativeTransport() {
+        return datagramNativeTransport;
+    }
+
+    /**
+     * @return number of sockets sharing the port of each server using the native transport
+     */
+    public int getDatagramReaders() {
+        return datagramReaders;
+    }
+
     public String getGangliaGroup() {
         return gangliaGroup;
     }
@@ -278,6 +470,32 @@ public class Configuration {
         return multicastIfOverride;
     }
 
+    public Backend getBackend() {
+        return backend;
+    }
+
+    /**
+     * @return comma-separated list of Cassandra nodes
+     */
+    public String getCassandraNodes() {
+        return cassandraNodes;
+    }
+
+    public int getCassandraCqlPort() {
+        return cassandraCqlPort;
+    }
+
+    public String getCassandraKeyspace() {
+        return cassandraKeyspace;
+    }
+
+    /**
+     * @return default data retention, in days, of metrics written by the {@code cassandra} backend
+     */
+    public int getCassandraDefaultTtl() {
+        return cassandraDefaultTtl;
+    }
+
     public URI getMetricsUrl() {
         return metricsUrl;
     }
@@ -313,4 +531,53 @@ public class Configuration {
     public int getBatchSize() {
         return batchSize;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return true if metrics are sent by the adaptive sender instead of the metrics bridge
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * @return true if requests of the adaptive sender are gzip compressed
+     */
+    public boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * @return maximum number of metrics buffered by the adaptive sender
+     */
+    public int getBufferCapacity() {
+        return bufferCapacity;
+    }
+
+    /**
+     * @return directory of the persistent spool, or null if spooling is disabled
+     */
+    public Path getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    /**
+     * @return size of spool segment files, in megabytes
+     */
+    public int getSpoolSegmentSize() {
+        return spoolSegmentSize;
+    }
+
+    /**
+     * @return maximum disk space used by the spool, in megabytes
+     */
+    public int getSpoolMaxSize() {
+        return spoolMaxSize;
+    }
+
+    /**
+     * @return maximum number of spooled metrics replayed per second
+     */
+    public int getSpoolReplayRate() {
+        return spoolReplayRate;
+    }
+}
@@ -30,6 +30,10 @@ public enum ConfigurationKey {
      * Multiplexed  UDP port.
      */
     SERVICES_UDP_PORT("services.port.udp"),
+    /**
+     * Size, in bytes, of the socket receive buffers of the multiplexed UDP server.
+     */
+    SERVICES_UDP_RECEIVE_BUFFER_SIZE("services.udp.receive-buffer-size"),
     /**
      * Multiplexed  TCP port.
      */
@@ -50,14 +54,55 @@ public enum ConfigurationKey {
      * UDP port for statsd type of messages.
      */
     SERVICES_STATSD_PORT("services.statsd.port"),
+    /**
+     * Interval, in seconds, at which aggregated statsd metrics are flushed.
+     */
+    SERVICES_STATSD_FLUSH_INTERVAL("services.statsd.flush-interval"),
+    /**
+     * Size, in bytes, of the socket receive buffers of the statsd server.
+     */
+    SERVICES_STATSD_RECEIVE_BUFFER_SIZE("services.statsd.receive-buffer-size"),
     /**
      * UDP port for collectd type of messages.
      */
     SERVICES_COLLECTD_PORT("services.collectd.port"),
+    /**
+     * Size, in bytes, of the socket receive buffers of the collectd server.
+     */
+    SERVICES_COLLECTD_RECEIVE_BUFFER_SIZE("services.collectd.receive-buffer-size"),
     /**
      * TCP port for graphite type of messages.
      */
     SERVICES_GRAPHITE_PORT("services.graphite.port"),
+    /**
+     * Native transport switch for the UDP, statsd and collectd servers. Only available on Linux.
+     */
+    SERVICES_DATAGRAM_NATIVE_TRANSPORT("services.datagram.native-transport"),
+    /**
+     * Number of sockets sharing the port of each UDP, statsd and collectd server. Ignored if the native transport is
+     * not used.
+     */
+    SERVICES_DATAGRAM_READERS("services.datagram.readers"),
+    /**
+     * Backend metrics are written to, {@code http} or {@code cassandra}.
+     */
+    BACKEND("backend"),
+    /**
+     * Comma-separated list of Cassandra nodes, used by the {@code cassandra} backend.
+     */
+    BACKEND_CASSANDRA_NODES("backend.cassandra.nodes"),
+    /**
+     * Cassandra CQL port, used by the {@code cassandra} backend.
+     */
+    BACKEND_CASSANDRA_CQL_PORT("backend.cassandra.cql-port"),
+    /**
+     * Keyspace of the metrics service, used by the {@code cassandra} backend.
+     */
+    BACKEND_CASSANDRA_KEYSPACE("backend.cassandra.keyspace"),
+    /**
+     * Default data retention, in days, used by the {@code cassandra} backend.
+     */
+    BACKEND_CASSANDRA_DEFAULT_TTL("backend.cassandra.default-ttl"),
     /**
      * Metrics service url.
      */
@@ -89,7 +134,36 @@ public enum ConfigurationKey {
     /**
      * Size of the metric batches sent to the backend.
      */
-    METRICS_BATCH_SIZE("metrics.batch-size");
+    METRICS_BATCH_SIZE("metrics.batch-size"),
+    /**
+     * Adaptive sender switch. When enabled, the batch size adapts to the observed latency and requests are pipelined.
+     */
+    METRICS_ADAPTIVE("metrics.adaptive"),
+    /**
+     * Compression of the requests sent by the adaptive sender.
+     */
+    METRICS_COMPRESSION("metrics.compression"),
+    /**
+     * Maximum number of metrics buffered by the adaptive sender. Oldest metrics are discarded when exceeded.
+     */
+    METRICS_BUFFER_CAPACITY("metrics.buffer-capacity"),
+    /**
+     * Directory of the persistent spool, which keeps metrics while the metrics service is unavailable. Spooling is
+     * disabled if not set, and requires the {@link #METRICS_ADAPTIVE adaptive sender}.
+     */
+    SPOOL_DIRECTORY("spool.directory"),
+    /**
+     * Size of spool segment files, in megabytes.
+     */
+    SPOOL_SEGMENT_SIZE("spool.segment-size"),
+    /**
+     * Maximum disk space used by the spool, in megabytes. Oldest metrics are discarded when exceeded.
+     */
+    SPOOL_MAX_SIZE("spool.max-size"),
+    /**
+     * Maximum number of spooled metrics replayed per second once the metrics service is available again.
+     */
+    SPOOL_REPLAY_RATE("spool.replay-rate");
 
     private final String externalForm;
 
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.clients.ptrans;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hawkular.metrics.clients.ptrans.backend.MetricBatch;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+
+/**
+ * Binds the datagram channels of a UDP server.
+ * <p>
+ * With the native transport, {@code readers} epoll channels are bound to the same port with {@code SO_REUSEPORT}: the
+ * kernel then spreads incoming datagrams across the sockets, each one read by its own event loop. Otherwise, a single
+ * NIO channel is bound.
+ * <p>
+ * Received, truncated and failed datagrams are counted per listener, along with the datagrams the kernel dropped
+ * because the receive buffers of the listener were full. The latter are read from {@code /proc/net/udp} and
+ * {@code /proc/net/udp6}, summing the drops of all sockets bound to the port, and are only available on Linux.
+ */
+public class DatagramListener {
+    /**
+     * Size of the buffers datagrams are read into. A datagram filling a whole buffer is counted as truncated.
+     */
+    public static final int MAX_DATAGRAM_SIZE = 16384;
+
+    private static final Path[] PROC_NET_UDP = {Paths.get("/proc/net/udp"), Paths.get("/proc/net/udp6")};
+
+    private final String name;
+    private final EventLoopGroup group;
+    private final boolean nativeTransport;
+    private final int readers;
+    private final int receiveBufferSize;
+    private final Stats stats = new Stats();
+    private final List<Channel> channels = new ArrayList<>();
+
+    private volatile int port = -1;
+    private long reportedKernelDrops;
+
+    /**
+     * @param name              name of the listener, used in reported metric ids
+     * @param group             event loop group of the channels, an {@link EpollEventLoopGroup} with the native
+     *                          transport
+     * @param readers           number of channels bound with the native transport, ignored otherwise
+     * @param receiveBufferSize size of the socket receive buffers, in bytes, or 0 to keep the system default
+     */
+    public DatagramListener(String name, EventLoopGroup group, int readers, int receiveBufferSize) {
+        this.name = name;
+        this.group = group;
+        this.nativeTransport = group instanceof EpollEventLoopGroup;
+        this.readers = nativeTransport ? readers : 1;
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    /**
+     * @return true if the epoll native transport can be used on this platform
+     */
+    public static boolean isNativeTransportAvailable() {
+        return Epoll.isAvailable();
+    }
+
+    /**
+     * Binds the channels of this listener and waits for completion.
+     *
+     * @param address local address
+     * @param handler handler of the channels, must be {@link Sharable} since it is added to every channel
+     *
+     * @return the bound channels
+     */
+    public List<Channel> bind(InetSocketAddress address, ChannelHandler handler) {
+        Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(nativeTransport ? EpollDatagramChannel.class : NioDatagramChannel.class)
+                .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(MAX_DATAGRAM_SIZE))
+                .localAddress(address)
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel channel) throws Exception {
+                        channel.pipeline().addLast(stats, handler);
+                    }
+                });
+        if (nativeTransport) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+        if (receiveBufferSize > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+        for (int i = 0; i < readers; i++) {
+            Channel channel = bootstrap.bind().syncUninterruptibly().channel();
+            channels.add(channel);
+        }
+        port = ((InetSocketAddress) channels.get(0).localAddress()).getPort();
+        return Collections.unmodifiableList(channels);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isNativeTransport() {
+        return nativeTransport;
+    }
+
+    /**
+     * @return the close futures of the bound channels
+     */
+    public List<ChannelFuture> closeFutures() {
+        List<ChannelFuture> closeFutures = new ArrayList<>(channels.size());
+        channels.forEach(channel -> closeFutures.add(channel.closeFuture()));
+        return closeFutures;
+    }
+
+    /**
+     * Adds the counters of this listener to {@code batch}, as {@code ptrans.udp.<name>.*} data points.
+     *
+     * @return the number of datagrams dropped by the kernel since the previous report
+     */
+    public long report(long timestamp, MetricBatch batch) {
+        String prefix = "ptrans.udp." + name + ".";
+        batch.add(prefix + "received", timestamp, stats.received.sum());
+        batch.add(prefix + "truncated", timestamp, stats.truncated.sum());
+        batch.add(prefix + "errors", timestamp, stats.errors.sum());
+        long kernelDrops = kernelDrops();
+        if (kernelDrops < 0) {
+            return 0;
+        }
+        batch.add(prefix + "kernel-drops", timestamp, kernelDrops);
+        long dropped = kernelDrops - reportedKernelDrops;
+        reportedKernelDrops = kernelDrops;
+        return dropped;
+    }
+
+    /**
+     * @return the number of datagrams dropped by the kernel on the sockets bound to the port of this listener, or -1 if
+     * not available
+     */
+    long kernelDrops() {
+        if (port < 0) {
+            return -1;
+        }
+        long drops = -1;
+        for (Path path : PROC_NET_UDP) {
+            if (!Files.isReadable(path)) {
+                continue;
+            }
+            try {
+                long fileDrops = parseDrops(Files.readAllLines(path, US_ASCII), port);
+                drops = drops < 0 ? fileDrops : drops + fileDrops;
+            } catch (IOException | RuntimeException e) {
+                return -1;
+            }
+        }
+        return drops;
+    }
+
+    /**
+     * Sums the {@code drops} column of the sockets bound to {@code port}, given the lines of a {@code /proc/net/udp}
+     * file. The local address column is {@code <hex address>:<hex port>} and drops are the last column.
+     */
+    static long parseDrops(List<String> lines, int port) {
+        long drops = 0;
+        for (int i = 1; i < lines.size(); i++) {
+            String[] columns = lines.get(i).trim().split("\\s+");
+            if (columns.length < 3) {
+                continue;
+            }
+            String localAddress = columns[1];
+            int separator = localAddress.lastIndexOf(':');
+            if (separator < 0 || Integer.parseInt(localAddress.substring(separator + 1), 16) != port) {
+                continue;
+            }
+            drops += Long.parseLong(columns[columns.length - 1]);
+        }
+        return drops;
+    }
+
+    @Sharable
+    private static class Stats extends ChannelInboundHandlerAdapter {
+        final LongAdder received = new LongAdder();
+        final LongAdder truncated = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (msg instanceof DatagramPacket) {
+                received.increment();
+                if (((DatagramPacket) msg).content().readableBytes() >= MAX_DATAGRAM_SIZE) {
+                    truncated.increment();
+                }
+            }
+            ctx.fireChannelRead(msg);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            errors.increment();
+            ctx.fireExceptionCaught(cause);
+        }
+    }
+}
@@ -29,27 +29,41 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.hawkular.metrics.clients.ptrans.backend.CassandraBackend;
 import org.hawkular.metrics.clients.ptrans.backend.Constants;
+import org.hawkular.metrics.clients.ptrans.backend.HttpSender;
+import org.hawkular.metrics.clients.ptrans.backend.MetricBatch;
+import org.hawkular.metrics.clients.ptrans.backend.MetricBatchCodec;
+import org.hawkular.metrics.clients.ptrans.backend.MetricBatchForwarder;
 import org.hawkular.metrics.clients.ptrans.backend.NettyToVertxHandler;
+import org.hawkular.metrics.clients.ptrans.backend.SpoolingForwarder;
 import org.hawkular.metrics.clients.ptrans.collectd.CollectdServer;
 import org.hawkular.metrics.clients.ptrans.ganglia.GangliaChannelInitializer;
 import org.hawkular.metrics.clients.ptrans.graphite.GraphiteServer;
 import org.hawkular.metrics.clients.ptrans.log.PTransLogger;
 import org.hawkular.metrics.clients.ptrans.log.PTransLogging;
+import org.hawkular.metrics.clients.ptrans.statsd.StatsdAggregator;
 import org.hawkular.metrics.clients.ptrans.statsd.StatsdChannelInitializer;
 import org.hawkular.metrics.clients.ptrans.syslog.TcpChannelInitializer;
 import org.hawkular.metrics.clients.ptrans.syslog.UdpChannelInitializer;
+import org.hawkular.metrics.clients.ptrans.util.MetricNameCache;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.DatagramChannel;
 import io.netty.channel.socket.nio.NioDatagramChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.vertx.core.Verticle;
 import io.vertx.core.Vertx;
 import io.vertx.core.VertxOptions;
 import io.vertx.core.http.HttpClientOptions;
@@ -66,10 +80,14 @@ import io.vertx.ext.hawkular.VertxHawkularOptions;
 public class PTrans {
     private static final PTransLogger log = PTransLogging.getPTransLogger(PTrans.class);
 
+    static final long DATAGRAM_STATS_INTERVAL = 10_000;
+
     private final Configuration configuration;
+    private final List<DatagramListener> datagramListeners = new ArrayList<>();
 
     private EventLoopGroup group;
     private EventLoopGroup workerGroup;
+    private EventLoopGroup datagramGroup;
     private Vertx vertx;
     // Needed as long as some servers are still Netty-based
     // Can be removed as soon as all servers are implemented on top of vertx
@@ -98,32 +116,64 @@ public class PTrans {
 
         group = new NioEventLoopGroup();
         workerGroup = new NioEventLoopGroup();
+        if (configuration.isDatagramNativeTransport() && DatagramListener.isNativeTransportAvailable()) {
+            datagramGroup = new EpollEventLoopGroup();
+            log.infoNativeTransport(configuration.getDatagramReaders());
+        } else {
+            if (configuration.isDatagramNativeTransport()) {
+                log.warnNativeTransportUnavailable(Epoll.unavailabilityCause());
+            }
+            datagramGroup = group;
+        }
+
+        Backend backend = configuration.getBackend();
+        // Only the HTTP backend can be unavailable while ptrans runs, the Cassandra backend writes directly. Spooled
+        // metrics are sent by the adaptive sender, which reports whether they were stored.
+        boolean spooling = backend == Backend.HTTP && configuration.isAdaptive()
+                && configuration.getSpoolDirectory() != null;
+        boolean adaptive = backend == Backend.HTTP && configuration.isAdaptive();
 
-        URI metricsUrl = configuration.getMetricsUrl();
-
-        VertxHawkularOptions metricsOptions = new VertxHawkularOptions()
-                .setEnabled(true)
-                .setHost(metricsUrl.getHost())
-                .setPort(metricsUrl.getPort())
-                .setMetricsServiceUri(metricsUrl.getPath())
-                .setHttpOptions(new HttpClientOptions()
-                        .setMaxPoolSize(configuration.getMaxConnections())
-                        .setSsl("https".equalsIgnoreCase(metricsUrl.getScheme())))
-                .setTenant(configuration.getTenant())
-                .setSendTenantHeader(configuration.isSendTenant())
-                .setAuthenticationOptions(new AuthenticationOptions()
-                        .setEnabled(configuration.isAuthEnabled())
-                        .setId(configuration.getAuthId())
-                        .setSecret(configuration.getAuthSecret()))
-                .setHttpHeaders(configuration.getHttpHeaders())
-                .setBatchSize(configuration.getBatchSize())
-                .setMetricsBridgeEnabled(true)
-                .setMetricsBridgeAddress(Constants.METRIC_ADDRESS);
-
-        vertx = Vertx.vertx(new VertxOptions().setMetricsOptions(metricsOptions));
+        VertxOptions vertxOptions = new VertxOptions();
+        if (backend == Backend.HTTP && !adaptive) {
+            URI metricsUrl = configuration.getMetricsUrl();
+            VertxHawkularOptions metricsOptions = new VertxHawkularOptions()
+                    .setEnabled(true)
+                    .setHost(metricsUrl.getHost())
+                    .setPort(metricsUrl.getPort())
+                    .setMetricsServiceUri(metricsUrl.getPath())
+                    .setHttpOptions(new HttpClientOptions()
+                            .setMaxPoolSize(configuration.getMaxConnections())
+                            .setSsl("https".equalsIgnoreCase(metricsUrl.getScheme())))
+                    .setTenant(configuration.getTenant())
+                    .setSendTenantHeader(configuration.isSendTenant())
+                    .setAuthenticationOptions(new AuthenticationOptions()
+                            .setEnabled(configuration.isAuthEnabled())
+                            .setId(configuration.getAuthId())
+                            .setSecret(configuration.getAuthSecret()))
+                    .setHttpHeaders(configuration.getHttpHeaders())
+                    .setBatchSize(configuration.getBatchSize())
+                    .setMetricsBridgeEnabled(true)
+                    .setMetricsBridgeAddress(Constants.METRIC_ADDRESS);
+            vertxOptions.setMetricsOptions(metricsOptions);
+        }
+
+        vertx = Vertx.vertx(vertxOptions);
         nettyToVertxHandler = new NettyToVertxHandler(vertx.eventBus());
+        vertx.eventBus().registerDefaultCodec(MetricBatch.class, new MetricBatchCodec());
+        if (backend == Backend.CASSANDRA) {
+            deployAndWait(new CassandraBackend(configuration), "Failed to start the Cassandra backend");
+        } else if (adaptive) {
+            deployAndWait(new HttpSender(configuration, spooling), "Failed to start the HTTP sender");
+        }
+        if (spooling) {
+            deployAndWait(new SpoolingForwarder(configuration), "Failed to open spool");
+        } else if (backend == Backend.HTTP && !adaptive) {
+            vertx.eventBus().consumer(Constants.METRIC_BATCH_ADDRESS, new MetricBatchForwarder(vertx.eventBus()));
+        }
 
         Set<Service> services = configuration.getServices();
+        // Shared by the collectd and Ganglia decoders
+        MetricNameCache nameCache = new MetricNameCache();
         List<ChannelFuture> closeFutures = new ArrayList<>(services.size());
 
         if (services.contains(Service.TCP)) {
@@ -138,14 +188,11 @@ public class PTrans {
         }
 
         if (services.contains(Service.UDP)) {
-            Bootstrap udpBootstrap = new Bootstrap()
-                    .group(group)
-                    .channel(NioDatagramChannel.class)
-                    .localAddress(configuration.getUdpPort())
-                    .handler(new UdpChannelInitializer(nettyToVertxHandler));
-            ChannelFuture udpBindFuture = udpBootstrap.bind().syncUninterruptibly();
-            log.infoServerListening("Syslogd", "UDP", udpBindFuture.channel().localAddress());
-            closeFutures.add(udpBindFuture.channel().closeFuture());
+            DatagramListener udpListener = newDatagramListener("syslog", configuration.getUdpReceiveBufferSize());
+            List<Channel> udpChannels = udpListener.bind(new InetSocketAddress(configuration.getUdpPort()),
+                    new UdpChannelInitializer(nettyToVertxHandler));
+            log.infoServerListening("Syslogd", "UDP", udpChannels.get(0).localAddress());
+            closeFutures.addAll(udpListener.closeFutures());
         }
 
         if (services.contains(Service.GANGLIA)) {
@@ -170,7 +217,7 @@ public class PTrans {
                     .option(ChannelOption.SO_REUSEADDR, true)
                     .option(ChannelOption.IP_MULTICAST_IF, mcIf)
                     .localAddress(gangliaSocket)
-                    .handler(new GangliaChannelInitializer(nettyToVertxHandler));
+                    .handler(new GangliaChannelInitializer(nettyToVertxHandler, nameCache));
             log.tracef("Ganglia bootstrap is %s", gangliaBootstrap);
             ChannelFuture gangliaBindFuture = gangliaBootstrap.bind().syncUninterruptibly();
             log.infoServerListening("Ganglia", "UDP", gangliaBindFuture.channel().localAddress());
@@ -181,14 +228,17 @@ public class PTrans {
         }
 
         if (services.contains(Service.STATSD)) {
-            Bootstrap statsdBootstrap = new Bootstrap()
-                    .group(group)
-                    .channel(NioDatagramChannel.class)
-                    .localAddress(configuration.getStatsDport())
-                    .handler(new StatsdChannelInitializer(nettyToVertxHandler));
-            ChannelFuture statsdBindFuture = statsdBootstrap.bind().syncUninterruptibly();
-            log.infoServerListening("Statsd", "UDP", statsdBindFuture.channel().localAddress());
-            closeFutures.add(statsdBindFuture.channel().closeFuture());
+            StatsdAggregator statsdAggregator = new StatsdAggregator(
+                    TimeUnit.SECONDS.toMillis(configuration.getStatsDflushInterval()));
+            CountDownLatch latch = new CountDownLatch(1);
+            vertx.deployVerticle(statsdAggregator, handler -> latch.countDown());
+            latch.await();
+            DatagramListener statsdListener = newDatagramListener("statsd",
+                    configuration.getStatsDreceiveBufferSize());
+            List<Channel> statsdChannels = statsdListener.bind(new InetSocketAddress(configuration.getStatsDport()),
+                    new StatsdChannelInitializer(statsdAggregator));
+            log.infoServerListening("Statsd", "UDP", statsdChannels.get(0).localAddress());
+            closeFutures.addAll(statsdListener.closeFutures());
         }
 
         if (services.contains(Service.GRAPHITE)) {
@@ -201,16 +251,56 @@ public class PTrans {
         }
 
         if (services.contains(Service.COLLECTD)) {
-            vertx.deployVerticle(new CollectdServer(configuration), handler -> {
+            DatagramListener collectdListener = null;
+            if (datagramGroup instanceof EpollEventLoopGroup) {
+                collectdListener = newDatagramListener("collectd", configuration.getCollectdReceiveBufferSize());
+            }
+            vertx.deployVerticle(new CollectdServer(configuration, collectdListener, nameCache), handler -> {
                 log.infoServerListening("Collectd", "UDP", configuration.getCollectdPort());
             });
         }
 
+        if (!datagramListeners.isEmpty()) {
+            vertx.setPeriodic(DATAGRAM_STATS_INTERVAL, id -> reportDatagramStats());
+        }
+
         log.infoStarted();
 
         closeFutures.forEach(ChannelFuture::syncUninterruptibly);
     }
 
+    private void deployAndWait(Verticle verticle, String failureMessage) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        vertx.deployVerticle(verticle, handler -> {
+            failure.set(handler.cause());
+            latch.countDown();
+        });
+        latch.await();
+        if (failure.get() != null) {
+            throw new RuntimeException(failureMessage, failure.get());
+        }
+    }
+
+    private DatagramListener newDatagramListener(String name, int receiveBufferSize) {
+        DatagramListener listener = new DatagramListener(name, datagramGroup, configuration.getDatagramReaders(),
+                receiveBufferSize);
+        datagramListeners.add(listener);
+        return listener;
+    }
+
+    private void reportDatagramStats() {
+        long now = System.currentTimeMillis();
+        MetricBatch batch = new MetricBatch(4 * datagramListeners.size());
+        datagramListeners.forEach(listener -> {
+            long dropped = listener.report(now, batch);
+            if (dropped > 0) {
+                log.warnDatagramsDropped(listener.getName(), dropped);
+            }
+        });
+        vertx.eventBus().publish(Constants.METRIC_BATCH_ADDRESS, batch);
+    }
+
     /**
      * Stops this PTrans instance.
      */
@@ -218,6 +308,9 @@ public class PTrans {
         log.infoStopping();
         group.shutdownGracefully().syncUninterruptibly();
         workerGroup.shutdownGracefully().syncUninterruptibly();
+        if (datagramGroup != group) {
+            datagramGroup.shutdownGracefully().syncUninterruptibly();
+        }
         Set<String> deploymentIDs = vertx.deploymentIDs();
         CountDownLatch deploymentsLatch = new CountDownLatch(deploymentIDs.size());
         deploymentIDs.forEach(id -> vertx.undeploy(id, handler -> deploymentsLatch.countDown()));
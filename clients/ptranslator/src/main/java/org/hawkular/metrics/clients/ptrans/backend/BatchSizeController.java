@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.clients.ptrans.backend;
+
+/**
+ * Adapts the size of the batches sent to the metrics service, and the time to wait for a batch to fill, to the
+ * observed request latency.
+ * <p>
+ * The batch size grows by half while full batches are sent within the target latency, and is halved when the average
+ * latency exceeds the target or a request fails. The linger time is a quarter of the average latency: over a slow link,
+ * waiting a fraction of a round trip for a fuller batch costs little and saves requests.
+ * <p>
+ * Not thread-safe.
+ */
+final class BatchSizeController {
+    static final long MIN_LINGER = 10;
+    static final long MAX_LINGER = 1000;
+
+    private static final double SMOOTHING = 0.2;
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long targetLatency;
+
+    private int batchSize;
+    private double averageLatency = -1;
+
+    /**
+     * @param initialBatchSize initial batch size
+     * @param minBatchSize     minimum batch size
+     * @param maxBatchSize     maximum batch size
+     * @param targetLatency    target request latency, in milliseconds
+     */
+    BatchSizeController(int initialBatchSize, int minBatchSize, int maxBatchSize, long targetLatency) {
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.targetLatency = targetLatency;
+        batchSize = Math.max(minBatchSize, Math.min(maxBatchSize, initialBatchSize));
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return the time to wait for a batch to fill, in milliseconds
+     */
+    long getLinger() {
+        if (averageLatency < 0) {
+            return MIN_LINGER;
+        }
+        return Math.max(MIN_LINGER, Math.min(MAX_LINGER, (long) (averageLatency / 4)));
+    }
+
+    /**
+     * @return the average latency of successful requests, in milliseconds, or -1 if none completed yet
+     */
+    double getAverageLatency() {
+        return averageLatency;
+    }
+
+    /**
+     * @param size    number of metrics in the batch
+     * @param latency request latency, in milliseconds
+     */
+    void onSuccess(int size, long latency) {
+        averageLatency = averageLatency < 0 ? latency : averageLatency + SMOOTHING * (latency - averageLatency);
+        if (averageLatency > targetLatency) {
+            decrease();
+        } else if (size >= batchSize) {
+            batchSize = Math.min(maxBatchSize, batchSize + Math.max(1, batchSize / 2));
+        }
+    }
+
+    void onFailure() {
+        decrease();
+    }
+
+    private void decrease() {
+        batchSize = Math.max(minBatchSize, batchSize / 2);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.clients.ptrans.backend;
+
+import static org.hawkular.metrics.clients.ptrans.backend.Constants.METRIC_ADDRESS;
+import static org.hawkular.metrics.clients.ptrans.backend.Constants.METRIC_BATCH_ADDRESS;
+import static org.hawkular.metrics.model.MetricType.COUNTER;
+import static org.hawkular.metrics.model.MetricType.GAUGE;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hawkular.metrics.clients.ptrans.Configuration;
+import org.hawkular.metrics.clients.ptrans.log.PTransLogger;
+import org.hawkular.metrics.clients.ptrans.log.PTransLogging;
+import org.hawkular.metrics.core.service.DataAccessImpl;
+import org.hawkular.metrics.core.service.MetricsServiceImpl;
+import org.hawkular.metrics.model.DataPoint;
+import org.hawkular.metrics.model.Metric;
+import org.hawkular.metrics.model.MetricId;
+import org.hawkular.metrics.model.MetricType;
+import org.hawkular.metrics.sysconfig.ConfigurationService;
+import org.hawkular.rx.cassandra.driver.RxSessionImpl;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Session;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import rx.Observable;
+
+/**
+ * Writes metrics straight to Cassandra with an embedded {@link MetricsServiceImpl}, instead of sending them to the
+ * REST API through the vertx-hawkular metrics bridge. Meant for deployments where ptrans runs next to the metrics
+ * service and can reach its Cassandra cluster.
+ * <p>
+ * Metrics received on the {@link Constants#METRIC_ADDRESS} and the {@link Constants#METRIC_BATCH_ADDRESS} are grouped
+ * by id and written with one {@code addDataPoints} call per metric type as soon as
+ * {@link Configuration#getBatchSize()} data points are buffered, or every {@link #FLUSH_INTERVAL} milliseconds. Metrics
+ * are created in the configured tenant; as with the bridge, metrics are gauges unless their type is {@code counter}.
+ * <p>
+ * At most {@link Configuration#getMaxConnections()} writes are in flight. Beyond that, data points are buffered, up to
+ * {@link #MAX_BUFFERED_BATCHES} batches, and then dropped. Failed writes are logged and not retried.
+ * <p>
+ * The schema is managed by the metrics service: the keyspace must exist before ptrans starts.
+ */
+public class CassandraBackend extends AbstractVerticle {
+    private static final PTransLogger log = PTransLogging.getPTransLogger(CassandraBackend.class);
+
+    static final long FLUSH_INTERVAL = 1000;
+    static final int MAX_BUFFERED_BATCHES = 100;
+    static final long STOP_TIMEOUT = 10_000;
+
+    private final Configuration configuration;
+    private final String tenant;
+    private final int batchSize;
+    private final int maxInFlight;
+
+    private Context context;
+    private Cluster cluster;
+    private Session session;
+    private MetricsServiceImpl metricsService;
+    private Map<String, List<DataPoint<Double>>> gauges = new HashMap<>();
+    private Map<String, List<DataPoint<Long>>> counters = new HashMap<>();
+    private int buffered;
+    private int inFlight;
+    private long dropped;
+
+    public CassandraBackend(Configuration configuration) {
+        this.configuration = configuration;
+        tenant = configuration.getTenant();
+        batchSize = configuration.getBatchSize();
+        maxInFlight = configuration.getMaxConnections();
+    }
+
+    @Override
+    public void start(Future<Void> startFuture) throws Exception {
+        context = vertx.getOrCreateContext();
+        vertx.<Void>executeBlocking(future -> {
+            startMetricsService();
+            future.complete();
+        }, result -> {
+            if (result.failed()) {
+                closeCluster();
+                startFuture.fail(result.cause());
+                return;
+            }
+            log.infoCassandraBackend(configuration.getCassandraNodes(), configuration.getCassandraKeyspace());
+            vertx.eventBus().<JsonObject>consumer(METRIC_ADDRESS, message -> handle(message.body()));
+            vertx.eventBus().<MetricBatch>consumer(METRIC_BATCH_ADDRESS, message -> handle(message.body()));
+            vertx.setPeriodic(FLUSH_INTERVAL, id -> flush(false));
+            startFuture.complete();
+        });
+    }
+
+    private void startMetricsService() {
+        Cluster.Builder clusterBuilder = new Cluster.Builder()
+                .withPort(configuration.getCassandraCqlPort())
+                .withoutJMXReporting();
+        for (String node : configuration.getCassandraNodes().split(",")) {
+            clusterBuilder.addContactPoint(node.trim());
+        }
+        cluster = clusterBuilder.build();
+        session = cluster.connect("system");
+
+        ConfigurationService configurationService = new ConfigurationService();
+        configurationService.init(new RxSessionImpl(session));
+
+        metricsService = new MetricsServiceImpl();
+        metricsService.setDataAccess(new DataAccessImpl(session));
+        metricsService.setConfigurationService(configurationService);
+        metricsService.setDefaultTTL(configuration.getCassandraDefaultTtl());
+        metricsService.startUp(session, configuration.getCassandraKeyspace(), false, false, new MetricRegistry());
+    }
+
+    private void handle(JsonObject metric) {
+        String id = metric.getString("id");
+        long timestamp = metric.getLong("timestamp");
+        if ("counter".equals(metric.getString("type"))) {
+            add(counters, id, new DataPoint<>(timestamp, metric.getDouble("value").longValue()));
+        } else {
+            add(gauges, id, new DataPoint<>(timestamp, metric.getDouble("value")));
+        }
+    }
+
+    private void handle(MetricBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            add(gauges, batch.getId(i), new DataPoint<>(batch.getTimestamp(i), batch.getValue(i)));
+        }
+    }
+
+    private <T> void add(Map<String, List<DataPoint<T>>> buffer, String id, DataPoint<T> dataPoint) {
+        if (buffered >= MAX_BUFFERED_BATCHES * batchSize) {
+            dropped++;
+            return;
+        }
+        List<DataPoint<T>> dataPoints = buffer.get(id);
+        if (dataPoints == null) {
+            dataPoints = new ArrayList<>(1);
+            buffer.put(id, dataPoints);
+        }
+        dataPoints.add(dataPoint);
+        buffered++;
+        if (buffered >= batchSize) {
+            flush(false);
+        }
+    }
+
+    /**
+     * @param force true to write buffered data points even if the maximum number of writes are in flight
+     */
+    private void flush(boolean force) {
+        if (dropped > 0) {
+            log.warnDataPointsDropped(dropped);
+            dropped = 0;
+        }
+        if (buffered == 0 || (!force && inFlight >= maxInFlight)) {
+            return;
+        }
+        List<Metric<Double>> gaugeMetrics = toMetrics(GAUGE, gauges);
+        List<Metric<Long>> counterMetrics = toMetrics(COUNTER, counters);
+        int count = buffered;
+        gauges = new HashMap<>();
+        counters = new HashMap<>();
+        buffered = 0;
+        inFlight++;
+        Observable<Void> gaugeWrites = gaugeMetrics.isEmpty() ? Observable.empty()
+                : metricsService.addDataPoints(GAUGE, Observable.from(gaugeMetrics));
+        Observable<Void> counterWrites = counterMetrics.isEmpty() ? Observable.empty()
+                : metricsService.addDataPoints(COUNTER, Observable.from(counterMetrics));
+        gaugeWrites.mergeWith(counterWrites).subscribe(
+                aVoid -> {
+                },
+                t -> context.runOnContext(v -> {
+                    inFlight--;
+                    log.warnWriteFailed(count, t);
+                }),
+                () -> context.runOnContext(v -> inFlight--));
+    }
+
+    private <T> List<Metric<T>> toMetrics(MetricType<T> type, Map<String, List<DataPoint<T>>> buffer) {
+        List<Metric<T>> metrics = new ArrayList<>(buffer.size());
+        buffer.forEach((id, dataPoints) -> metrics.add(new Metric<>(new MetricId<>(tenant, type, id), dataPoints)));
+        return metrics;
+    }
+
+    @Override
+    public void stop(Future<Void> stopFuture) throws Exception {
+        flush(true);
+        long deadline = System.currentTimeMillis() + STOP_TIMEOUT;
+        vertx.setPeriodic(100, id -> {
+            if (inFlight > 0 && System.currentTimeMillis() < deadline) {
+                return;
+            }
+            vertx.cancelTimer(id);
+            vertx.<Void>executeBlocking(future -> {
+                metricsService.shutdown();
+                closeCluster();
+                future.complete();
+            }, stopFuture.completer());
+        });
+    }
+
+    private void closeCluster() {
+        if (session != null) {
+            session.close();
+        }
+        if (cluster != null) {
+            cluster.close();
+        }
+    }
+}
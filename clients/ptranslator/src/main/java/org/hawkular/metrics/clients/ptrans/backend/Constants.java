@@ -21,6 +21,15 @@ package org.hawkular.metrics.clients.ptrans.backend;
  */
 public class Constants {
     public static final String METRIC_ADDRESS = "singlemetric";
+    public static final String METRIC_BATCH_ADDRESS = "metricbatch";
+    /**
+     * Address of the HTTP sender when metrics are spooled.
+     */
+    public static final String SPOOLED_METRIC_ADDRESS = "spooledmetric";
+    /**
+     * Address of the HTTP sender for batches of metrics replayed from the spool. Replies once the batch is stored.
+     */
+    public static final String SPOOLED_BATCH_ADDRESS = "spooledbatch";
 
     private Constants() {
         // Defensive
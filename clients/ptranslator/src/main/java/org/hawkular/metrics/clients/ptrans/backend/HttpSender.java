@@ -0,0 +1,407 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.clients.ptrans.backend;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.hawkular.metrics.clients.ptrans.backend.Constants.METRIC_ADDRESS;
+import static org.hawkular.metrics.clients.ptrans.backend.Constants.METRIC_BATCH_ADDRESS;
+import static org.hawkular.metrics.clients.ptrans.backend.Constants.SPOOLED_BATCH_ADDRESS;
+import static org.hawkular.metrics.clients.ptrans.backend.Constants.SPOOLED_METRIC_ADDRESS;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.hawkular.metrics.client.common.MetricBuffer;
+import org.hawkular.metrics.client.common.MetricType;
+import org.hawkular.metrics.client.common.SingleMetric;
+import org.hawkular.metrics.clients.ptrans.Configuration;
+import org.hawkular.metrics.clients.ptrans.log.PTransLogger;
+import org.hawkular.metrics.clients.ptrans.log.PTransLogging;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Sends metrics to the REST API of the metrics service, as a replacement of the vertx-hawkular metrics bridge for slow
+ * links between ptrans and the metrics service.
+ * <ul>
+ *     <li>Metrics are queued in a {@link MetricBuffer}; the oldest are discarded when it is full.</li>
+ *     <li>The batch size and the time to wait for a batch to fill adapt to the observed latency, see
+ *     {@link BatchSizeController}.</li>
+ *     <li>Request bodies are gzip compressed, unless disabled.</li>
+ *     <li>Requests are pipelined on keep-alive connections: up to {@link #PIPELINING_DEPTH} requests per connection
+ *     are in flight.</li>
+ * </ul>
+ * When a request fails, no new batch is sent until all requests in flight complete. Failed batches are then re-queued,
+ * newest first, at the head of the buffer, so that metrics keep their order. Sending resumes after a delay, doubled
+ * after each consecutive failure. Batches rejected with a client error other than 408 or 429 cannot succeed later and
+ * are dropped.
+ * <p>
+ * Batches replayed from the spool are sent as is, without going through the buffer. Their message is replied to once
+ * the batch is stored or dropped, and failed otherwise, in which case the metrics stay in the spool.
+ */
+public class HttpSender extends AbstractVerticle {
+    private static final PTransLogger log = PTransLogging.getPTransLogger(HttpSender.class);
+
+    static final int PIPELINING_DEPTH = 4;
+    static final int MIN_BATCH_SIZE = 10;
+    static final int MAX_BATCH_SIZE = 5000;
+    static final long TARGET_LATENCY = 1000;
+    static final long REQUEST_TIMEOUT = 30_000;
+    static final long MIN_RETRY_DELAY = 1000;
+    static final long MAX_RETRY_DELAY = 30_000;
+
+    private final Configuration configuration;
+    private final boolean spooling;
+    private final MetricBuffer buffer;
+    private final BatchSizeController controller;
+    private final int maxInFlight;
+
+    private HttpClient httpClient;
+    private String uri;
+    private String authorization;
+    private long lingerTimer = -1;
+    private long sequence;
+    private int inFlight;
+    private final List<Batch> failedBatches = new ArrayList<>();
+    private boolean retrying;
+    private long retryDelay = MIN_RETRY_DELAY;
+
+    /**
+     * @param spooling true if metrics come from the spooling forwarder, on the
+     *                 {@link Constants#SPOOLED_METRIC_ADDRESS}
+     */
+    public HttpSender(Configuration configuration, boolean spooling) {
+        this.configuration = configuration;
+        this.spooling = spooling;
+        buffer = new MetricBuffer(configuration.getBufferCapacity());
+        controller = new BatchSizeController(configuration.getBatchSize(), MIN_BATCH_SIZE, MAX_BATCH_SIZE,
+                TARGET_LATENCY);
+        maxInFlight = configuration.getMaxConnections() * PIPELINING_DEPTH;
+    }
+
+    @Override
+    public void start() throws Exception {
+        URI metricsUrl = configuration.getMetricsUrl();
+        boolean ssl = "https".equalsIgnoreCase(metricsUrl.getScheme());
+        int port = metricsUrl.getPort() < 0 ? (ssl ? 443 : 80) : metricsUrl.getPort();
+        httpClient = vertx.createHttpClient(new HttpClientOptions()
+                .setDefaultHost(metricsUrl.getHost())
+                .setDefaultPort(port)
+                .setSsl(ssl)
+                .setKeepAlive(true)
+                .setPipelining(true)
+                .setMaxPoolSize(configuration.getMaxConnections()));
+        uri = metricsUrl.getPath() + "/metrics/raw";
+        if (configuration.isAuthEnabled()) {
+            String credentials = configuration.getAuthId() + ":" + configuration.getAuthSecret();
+            authorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(UTF_8));
+        }
+
+        if (spooling) {
+            vertx.eventBus().<JsonObject>consumer(SPOOLED_METRIC_ADDRESS, message -> add(message.body()));
+            vertx.eventBus().<JsonArray>consumer(SPOOLED_BATCH_ADDRESS, this::replay);
+        } else {
+            vertx.eventBus().<JsonObject>consumer(METRIC_ADDRESS, message -> add(message.body()));
+            vertx.eventBus().<MetricBatch>consumer(METRIC_BATCH_ADDRESS, message -> add(message.body()));
+        }
+    }
+
+    private void add(JsonObject metric) {
+        buffer.insert(toSingleMetric(metric));
+        send();
+    }
+
+    private void replay(Message<JsonArray> message) {
+        if (retrying) {
+            message.fail(0, "Backend unavailable");
+            return;
+        }
+        List<SingleMetric> metrics = new ArrayList<>(message.body().size());
+        message.body().forEach(metric -> metrics.add(toSingleMetric((JsonObject) metric)));
+        sendBatch(new Batch(sequence++, metrics, message));
+    }
+
+    private static SingleMetric toSingleMetric(JsonObject metric) {
+        MetricType type = "counter".equals(metric.getString("type")) ? MetricType.COUNTER : MetricType.GAUGE;
+        return new SingleMetric(metric.getString("id"), metric.getLong("timestamp"), metric.getDouble("value"), type);
+    }
+
+    private void add(MetricBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            buffer.insert(new SingleMetric(batch.getId(i), batch.getTimestamp(i), batch.getValue(i),
+                    MetricType.GAUGE));
+        }
+        send();
+    }
+
+    /**
+     * Sends full batches while the number of requests in flight permits, and makes sure a partial batch is sent once
+     * the linger time elapses.
+     */
+    private void send() {
+        while (!retrying && inFlight < maxInFlight && buffer.size() >= controller.getBatchSize()) {
+            sendBatch();
+        }
+        if (lingerTimer < 0 && buffer.size() > 0 && !retrying) {
+            lingerTimer = vertx.setTimer(controller.getLinger(), id -> {
+                lingerTimer = -1;
+                if (!retrying && inFlight < maxInFlight && buffer.size() > 0) {
+                    sendBatch();
+                }
+                send();
+            });
+        }
+    }
+
+    private void sendBatch() {
+        sendBatch(new Batch(sequence++, buffer.remove(controller.getBatchSize()), null));
+    }
+
+    private void sendBatch(Batch batch) {
+        Buffer body;
+        try {
+            body = toBody(batch.metrics, configuration.isCompression());
+        } catch (UncheckedIOException e) {
+            log.warnWriteFailed(batch.metrics.size(), e);
+            batch.reply();
+            return;
+        }
+        inFlight++;
+        HttpClientRequest request = httpClient.post(uri, response -> {
+            response.exceptionHandler(t -> onFailure(batch, t));
+            response.endHandler(v -> {
+                int status = response.statusCode();
+                if (status / 100 == 2) {
+                    onSuccess(batch);
+                } else if (status / 100 == 4 && status != 408 && status != 429) {
+                    log.warnBatchRejected(batch.metrics.size(), status, response.statusMessage());
+                    onSuccess(batch);
+                } else {
+                    onFailure(batch, new IOException(status + " " + response.statusMessage()));
+                }
+            });
+        });
+        request.exceptionHandler(t -> onFailure(batch, t));
+        request.setTimeout(REQUEST_TIMEOUT);
+        request.putHeader("Content-Type", "application/json");
+        if (configuration.isCompression()) {
+            request.putHeader("Content-Encoding", "gzip");
+        }
+        if (configuration.isSendTenant()) {
+            request.putHeader("Hawkular-Tenant", configuration.getTenant());
+        }
+        if (authorization != null) {
+            request.putHeader("Authorization", authorization);
+        }
+        configuration.getHttpHeaders().forEach(header -> {
+            if (header.getValue() instanceof JsonArray) {
+                List<String> values = new ArrayList<>();
+                ((JsonArray) header.getValue()).forEach(value -> values.add(String.valueOf(value)));
+                request.putHeader(header.getKey(), values);
+            } else {
+                request.putHeader(header.getKey(), String.valueOf(header.getValue()));
+            }
+        });
+        request.end(body);
+    }
+
+    private void onSuccess(Batch batch) {
+        if (!batch.complete()) {
+            return;
+        }
+        inFlight--;
+        batch.reply();
+        retryDelay = MIN_RETRY_DELAY;
+        controller.onSuccess(batch.metrics.size(), System.currentTimeMillis() - batch.start);
+        onCompletion();
+    }
+
+    private void onFailure(Batch batch, Throwable t) {
+        // Both the request and the response exception handlers may be called
+        if (!batch.complete()) {
+            return;
+        }
+        inFlight--;
+        log.warnWriteFailed(batch.metrics.size(), t);
+        controller.onFailure();
+        if (batch.message != null) {
+            batch.message.fail(0, t.getMessage());
+        } else {
+            failedBatches.add(batch);
+        }
+        retrying = true;
+        onCompletion();
+    }
+
+    private void onCompletion() {
+        if (!retrying) {
+            send();
+            return;
+        }
+        if (inFlight > 0) {
+            return;
+        }
+        // Re-queue newest first: each batch goes in front of the ones re-queued before
+        failedBatches.sort(Comparator.comparingLong((Batch batch) -> batch.sequence).reversed());
+        failedBatches.forEach(batch -> buffer.reInsert(batch.metrics));
+        failedBatches.clear();
+        vertx.setTimer(retryDelay, id -> {
+            retrying = false;
+            send();
+        });
+        retryDelay = Math.min(MAX_RETRY_DELAY, retryDelay * 2);
+    }
+
+    /**
+     * Writes a {@code /metrics/raw} request body: gauges and counters, with the data points of each metric id grouped.
+     * Non finite gauge values, which cannot be represented in JSON, are skipped.
+     */
+    static Buffer toBody(List<SingleMetric> metrics, boolean compress) {
+        Map<String, List<SingleMetric>> gauges = new LinkedHashMap<>();
+        Map<String, List<SingleMetric>> counters = new LinkedHashMap<>();
+        for (SingleMetric metric : metrics) {
+            Double value = metric.getValue();
+            if (value == null || value.isNaN() || value.isInfinite()) {
+                continue;
+            }
+            Map<String, List<SingleMetric>> byId = metric.getMetricType() == MetricType.COUNTER ? counters : gauges;
+            byId.computeIfAbsent(metric.getSource(), id -> new ArrayList<>(1)).add(metric);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * metrics.size());
+        try (OutputStream out = compress ? new GZIPOutputStream(bytes) : bytes;
+             Writer writer = new OutputStreamWriter(out, UTF_8)) {
+            writer.write("{\"gauges\":");
+            writeMetrics(writer, gauges, false);
+            writer.write(",\"counters\":");
+            writeMetrics(writer, counters, true);
+            writer.write('}');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Buffer.buffer(bytes.toByteArray());
+    }
+
+    private static void writeMetrics(Writer writer, Map<String, List<SingleMetric>> byId, boolean counter)
+            throws IOException {
+        writer.write('[');
+        boolean firstMetric = true;
+        for (Map.Entry<String, List<SingleMetric>> entry : byId.entrySet()) {
+            if (!firstMetric) {
+                writer.write(',');
+            }
+            firstMetric = false;
+            writer.write("{\"id\":");
+            writeString(writer, entry.getKey());
+            writer.write(",\"data\":[");
+            boolean firstDataPoint = true;
+            for (SingleMetric metric : entry.getValue()) {
+                if (!firstDataPoint) {
+                    writer.write(',');
+                }
+                firstDataPoint = false;
+                writer.write("{\"timestamp\":");
+                writer.write(Long.toString(metric.getTimestamp()));
+                writer.write(",\"value\":");
+                if (counter) {
+                    writer.write(Long.toString(metric.getValue().longValue()));
+                } else {
+                    writer.write(Double.toString(metric.getValue()));
+                }
+                writer.write('}');
+            }
+            writer.write("]}");
+        }
+        writer.write(']');
+    }
+
+    private static void writeString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (httpClient != null) {
+            httpClient.close();
+        }
+    }
+
+    private static final class Batch {
+        final long sequence;
+        final List<SingleMetric> metrics;
+        final Message<?> message;
+        final long start = System.currentTimeMillis();
+        boolean completed;
+
+        /**
+         * @param message the message of a batch replayed from the spool, null otherwise
+         */
+        Batch(long sequence, List<SingleMetric> metrics, Message<?> message) {
+            this.sequence = sequence;
+            this.metrics = metrics;
+            this.message = message;
+        }
+
+        void reply() {
+            if (message != null) {
+                message.reply(null);
+            }
+        }
+
+        /**
+         * @return false if the batch was already completed
+         */
+        boolean complete() {
+            if (completed) {
+                return false;
+            }
+            completed = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.clients.ptrans.backend;
+
+import static org.hawkular.metrics.clients.ptrans.util.Arguments.checkArgument;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A fixed capacity batch of gauge data points, stored in parallel primitive arrays. A batch is filled by a single
+ * server and then published on the {@link Constants#METRIC_BATCH_ADDRESS} as one event bus message. Once published, a
+ * batch must not be modified anymore: the {@link MetricBatchCodec} hands the same instance over to local consumers.
+ */
+public final class MetricBatch {
+    private final String[] ids;
+    private final long[] timestamps;
+    private final double[] values;
+    private int size;
+
+    public MetricBatch(int capacity) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        ids = new String[capacity];
+        timestamps = new long[capacity];
+        values = new double[capacity];
+    }
+
+    /**
+     * Adds a data point to this batch.
+     *
+     * @return true if the batch is full after adding the data point
+     *
+     * @throws ArrayIndexOutOfBoundsException if the batch was already full
+     */
+    public boolean add(String id, long timestamp, double value) {
+        ids[size] = id;
+        timestamps[size] = timestamp;
+        values[size] = value;
+        size++;
+        return size == ids.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int capacity() {
+        return ids.length;
+    }
+
+    public String getId(int index) {
+        checkIndex(index);
+        return ids[index];
+    }
+
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return timestamps[index];
+    }
+
+    public double getValue(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    /**
+     * @return the data point at {@code index} in the format expected on the {@link Constants#METRIC_ADDRESS}
+     */
+    public JsonObject toJsonObject(int index) {
+        checkIndex(index);
+        return new JsonObject()
+                .put("id", ids[index])
+                .put("timestamp", timestamps[index])
+                .put("value", values[index]);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
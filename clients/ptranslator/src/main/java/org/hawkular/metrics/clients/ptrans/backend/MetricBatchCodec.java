@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.clients.ptrans.backend;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+
+/**
+ * Event bus codec for {@link MetricBatch}. Local delivery hands over the published instance as is, so that a batch is
+ * never copied on its way from a server to the backend.
+ */
+public class MetricBatchCodec implements MessageCodec<MetricBatch, MetricBatch> {
+    public static final String NAME = "metric-batch";
+
+    @Override
+    public void encodeToWire(Buffer buffer, MetricBatch batch) {
+        int size = batch.size();
+        buffer.appendInt(size);
+        for (int i = 0; i < size; i++) {
+            byte[] id = batch.getId(i).getBytes(UTF_8);
+            buffer.appendInt(id.length)
+                    .appendBytes(id)
+                    .appendLong(batch.getTimestamp(i))
+                    .appendDouble(batch.getValue(i));
+        }
+    }
+
+    @Override
+    public MetricBatch decodeFromWire(int pos, Buffer buffer) {
+        int size = buffer.getInt(pos);
+        pos += 4;
+        MetricBatch batch = new MetricBatch(Math.max(1, size));
+        for (int i = 0; i < size; i++) {
+            int length = buffer.getInt(pos);
+            pos += 4;
+            String id = buffer.getString(pos, pos + length, UTF_8.name());
+            pos += length;
+            long timestamp = buffer.getLong(pos);
+            pos += 8;
+            double value = buffer.getDouble(pos);
+            pos += 8;
+            batch.add(id, timestamp, value);
+        }
+        return batch;
+    }
+
+    @Override
+    public MetricBatch transform(MetricBatch batch) {
+        return batch;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.clients.ptrans.backend;
+
+import static org.hawkular.metrics.clients.ptrans.backend.Constants.METRIC_ADDRESS;
+
+import io.vertx.core.Handler;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
+
+/**
+ * Consumes {@link MetricBatch} messages and forwards each data point to the {@link Constants#METRIC_ADDRESS}, which is
+ * where the vertx-hawkular metrics bridge expects single metrics. The bridge has no notion of batches, so this is the
+ * only place where per-point messages are created for batching servers.
+ */
+public class MetricBatchForwarder implements Handler<Message<MetricBatch>> {
+    private final EventBus eventBus;
+
+    public MetricBatchForwarder(EventBus eventBus) {
+        this.eventBus = eventBus;
+    }
+
+    @Override
+    public void handle(Message<MetricBatch> message) {
+        MetricBatch batch = message.body();
+        for (int i = 0; i < batch.size(); i++) {
+            eventBus.publish(METRIC_ADDRESS, batch.toJsonObject(i));
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.clients.ptrans.backend;
+
+import static org.hawkular.metrics.clients.ptrans.backend.Constants.METRIC_ADDRESS;
+import static org.hawkular.metrics.clients.ptrans.backend.Constants.METRIC_BATCH_ADDRESS;
+import static org.hawkular.metrics.clients.ptrans.backend.Constants.SPOOLED_BATCH_ADDRESS;
+import static org.hawkular.metrics.clients.ptrans.backend.Constants.SPOOLED_METRIC_ADDRESS;
+
+import java.net.URI;
+import java.util.List;
+
+import org.hawkular.metrics.client.common.MetricSpool;
+import org.hawkular.metrics.client.common.MetricType;
+import org.hawkular.metrics.client.common.SingleMetric;
+import org.hawkular.metrics.clients.ptrans.Configuration;
+import org.hawkular.metrics.clients.ptrans.log.PTransLogger;
+import org.hawkular.metrics.clients.ptrans.log.PTransLogging;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Sits between the servers and the {@link HttpSender} when spooling is enabled. The sender then listens on the
+ * {@link Constants#SPOOLED_METRIC_ADDRESS} instead of the {@link Constants#METRIC_ADDRESS}.
+ * <p>
+ * The status endpoint of the metrics service is polled. While it is available and nothing is spooled, metrics go
+ * straight to the sender. Otherwise they are appended to a {@link MetricSpool}, which is replayed in order, at most
+ * {@link Configuration#getSpoolReplayRate()} metrics per second, once the service is available again. Replayed metrics
+ * are sent one batch at a time on the {@link Constants#SPOOLED_BATCH_ADDRESS}; a batch is only acknowledged once the
+ * sender reports it was stored, and is read again from the spool otherwise.
+ * <p>
+ * Spool size, disk usage, discarded metrics and replay lag are sent as {@code ptrans.spool.*} gauges.
+ */
+public class SpoolingForwarder extends AbstractVerticle {
+    private static final PTransLogger log = PTransLogging.getPTransLogger(SpoolingForwarder.class);
+
+    static final long HEALTH_CHECK_INTERVAL = 5000;
+    static final long REPLAY_INTERVAL = 100;
+    static final long STATS_INTERVAL = 10_000;
+
+    private final Configuration configuration;
+
+    private MetricSpool spool;
+    private HttpClient httpClient;
+    private boolean available;
+    private boolean replaying;
+
+    public SpoolingForwarder(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    @Override
+    public void start(Future<Void> startFuture) throws Exception {
+        vertx.<MetricSpool>executeBlocking(future -> {
+            try {
+                long megabyte = 1024 * 1024;
+                future.complete(new MetricSpool(configuration.getSpoolDirectory(),
+                        (int) (configuration.getSpoolSegmentSize() * megabyte),
+                        configuration.getSpoolMaxSize() * megabyte));
+            } catch (Exception e) {
+                future.fail(e);
+            }
+        }, result -> {
+            if (result.failed()) {
+                startFuture.fail(result.cause());
+                return;
+            }
+            spool = result.result();
+            log.infoSpoolOpened(configuration.getSpoolDirectory(), spool.size());
+
+            URI metricsUrl = configuration.getMetricsUrl();
+            boolean ssl = "https".equalsIgnoreCase(metricsUrl.getScheme());
+            int port = metricsUrl.getPort() < 0 ? (ssl ? 443 : 80) : metricsUrl.getPort();
+            httpClient = vertx.createHttpClient(new HttpClientOptions()
+                    .setDefaultHost(metricsUrl.getHost())
+                    .setDefaultPort(port)
+                    .setSsl(ssl));
+            checkAvailability();
+
+            vertx.eventBus().<JsonObject>consumer(METRIC_ADDRESS, message -> handle(message.body()));
+            vertx.eventBus().<MetricBatch>consumer(METRIC_BATCH_ADDRESS, message -> handle(message.body()));
+            vertx.setPeriodic(HEALTH_CHECK_INTERVAL, id -> checkAvailability());
+            vertx.setPeriodic(REPLAY_INTERVAL, id -> replay());
+            vertx.setPeriodic(STATS_INTERVAL, id -> sendStats());
+            startFuture.complete();
+        });
+    }
+
+    private void handle(JsonObject metric) {
+        if (available && spool.isEmpty()) {
+            vertx.eventBus().publish(SPOOLED_METRIC_ADDRESS, metric);
+        } else {
+            MetricType type = "counter".equals(metric.getString("type")) ? MetricType.COUNTER : MetricType.GAUGE;
+            spool.append(new SingleMetric(metric.getString("id"), metric.getLong("timestamp"),
+                    metric.getDouble("value"), type));
+        }
+    }
+
+    private void handle(MetricBatch batch) {
+        if (available && spool.isEmpty()) {
+            for (int i = 0; i < batch.size(); i++) {
+                vertx.eventBus().publish(SPOOLED_METRIC_ADDRESS, batch.toJsonObject(i));
+            }
+        } else {
+            for (int i = 0; i < batch.size(); i++) {
+                spool.append(new SingleMetric(batch.getId(i), batch.getTimestamp(i), batch.getValue(i),
+                        MetricType.GAUGE));
+            }
+        }
+    }
+
+    private void checkAvailability() {
+        String statusUri = configuration.getMetricsUrl().getPath() + "/status";
+        HttpClientRequest request = httpClient.get(statusUri, response -> {
+            response.exceptionHandler(t -> setAvailable(false));
+            response.bodyHandler(body -> {
+                boolean started = false;
+                if (response.statusCode() == 200) {
+                    try {
+                        started = "STARTED".equals(body.toJsonObject().getString("MetricsService"));
+                    } catch (RuntimeException e) {
+                        log.tracef(e, "Invalid status response");
+                    }
+                }
+                setAvailable(started);
+            });
+        });
+        request.exceptionHandler(t -> setAvailable(false));
+        request.setTimeout(HEALTH_CHECK_INTERVAL);
+        request.end();
+    }
+
+    private void setAvailable(boolean available) {
+        if (this.available == available) {
+            return;
+        }
+        this.available = available;
+        if (available) {
+            log.infoBackendAvailable(spool.size());
+        } else {
+            log.warnBackendUnavailable();
+        }
+    }
+
+    private void replay() {
+        if (!available || replaying || spool.isEmpty()) {
+            return;
+        }
+        int budget = (int) Math.max(1, configuration.getSpoolReplayRate() * REPLAY_INTERVAL / 1000);
+        List<SingleMetric> metrics = spool.read(budget);
+        if (metrics.isEmpty()) {
+            return;
+        }
+        JsonArray batch = new JsonArray();
+        metrics.forEach(metric -> batch.add(SingleMetricConverter.toJsonObject(metric)));
+        replaying = true;
+        // Wait longer than a request of the sender, so that batches are not read again while they are being sent
+        DeliveryOptions options = new DeliveryOptions().setSendTimeout(2 * HttpSender.REQUEST_TIMEOUT);
+        vertx.eventBus().send(SPOOLED_BATCH_ADDRESS, batch, options, reply -> {
+            replaying = false;
+            if (reply.succeeded()) {
+                spool.acknowledge();
+            } else {
+                log.tracef(reply.cause(), "Failed to replay %d spooled metrics", metrics.size());
+                spool.rewind();
+            }
+        });
+    }
+
+    private void sendStats() {
+        long now = System.currentTimeMillis();
+        long oldestTimestamp = spool.oldestTimestamp();
+        sendStat("ptrans.spool.size", now, spool.size());
+        sendStat("ptrans.spool.disk-usage", now, spool.diskUsage());
+        sendStat("ptrans.spool.discarded", now, spool.discarded());
+        sendStat("ptrans.spool.replay-lag", now, oldestTimestamp < 0 ? 0 : now - oldestTimestamp);
+    }
+
+    private void sendStat(String id, long timestamp, double value) {
+        vertx.eventBus().publish(SPOOLED_METRIC_ADDRESS, new JsonObject()
+                .put("id", id)
+                .put("timestamp", timestamp)
+                .put("value", value));
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (httpClient != null) {
+            httpClient.close();
+        }
+        if (spool != null) {
+            spool.close();
+        }
+    }
+}
@@ -18,18 +18,22 @@ package org.hawkular.metrics.clients.ptrans.collectd;
 
 import static org.hawkular.metrics.clients.ptrans.backend.Constants.METRIC_ADDRESS;
 
+import java.net.InetSocketAddress;
 import java.util.List;
-import java.util.ListIterator;
 
 import org.hawkular.metrics.clients.ptrans.Configuration;
+import org.hawkular.metrics.clients.ptrans.DatagramListener;
 import org.hawkular.metrics.clients.ptrans.collectd.event.CollectdEventsDecoder;
 import org.hawkular.metrics.clients.ptrans.collectd.event.Event;
 import org.hawkular.metrics.clients.ptrans.collectd.event.TimeResolution;
-import org.hawkular.metrics.clients.ptrans.collectd.event.TimeSpan;
 import org.hawkular.metrics.clients.ptrans.collectd.event.ValueListEvent;
 import org.hawkular.metrics.clients.ptrans.collectd.packet.CollectdPacket;
 import org.hawkular.metrics.clients.ptrans.collectd.packet.CollectdPacketDecoder;
+import org.hawkular.metrics.clients.ptrans.util.MetricNameCache;
 
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
 import io.vertx.core.datagram.DatagramPacket;
@@ -37,21 +41,44 @@ import io.vertx.core.datagram.DatagramSocket;
 import io.vertx.core.json.JsonObject;
 
 /**
+ * Receives collectd packets on a vertx datagram socket or, if created with a {@link DatagramListener}, on the channels
+ * of the listener. The latter allows to read packets with several native channels sharing the port, in which case
+ * packets are handled on the Netty event loop threads.
+ *
  * @author Thomas Segismont
  */
 public class CollectdServer extends AbstractVerticle {
     private final int port;
+    private final DatagramListener listener;
+    private final MetricNameCache nameCache;
     private final CollectdPacketDecoder packetDecoder;
     private final CollectdEventsDecoder eventsDecoder;
 
     public CollectdServer(Configuration configuration) {
+        this(configuration, null, new MetricNameCache());
+    }
+
+    /**
+     * @param listener  listener to bind, or null to use a vertx datagram socket
+     * @param nameCache cache of host, plugin and type names and of metric ids
+     */
+    public CollectdServer(Configuration configuration, DatagramListener listener, MetricNameCache nameCache) {
         port = configuration.getCollectdPort();
-        packetDecoder = new CollectdPacketDecoder();
+        this.listener = listener;
+        this.nameCache = nameCache;
+        packetDecoder = new CollectdPacketDecoder(nameCache);
         eventsDecoder = new CollectdEventsDecoder();
     }
 
     @Override
     public void start(Future<Void> startFuture) throws Exception {
+        if (listener != null) {
+            vertx.<Void>executeBlocking(future -> {
+                listener.bind(new InetSocketAddress(port), new NettyPacketHandler());
+                future.complete();
+            }, startFuture.completer());
+            return;
+        }
         DatagramSocket socket = vertx.createDatagramSocket();
         socket.handler(this::handlePacket);
         socket.listen(port, "0.0.0.0", result -> {
@@ -64,7 +91,10 @@ public class CollectdServer extends AbstractVerticle {
     }
 
     private void handlePacket(DatagramPacket packet) {
-        CollectdPacket collectdPacket = packetDecoder.decode(packet);
+        handlePacket(packetDecoder.decode(packet));
+    }
+
+    private void handlePacket(CollectdPacket collectdPacket) {
         if (collectdPacket == null) {
             return;
         }
@@ -77,32 +107,34 @@ public class CollectdServer extends AbstractVerticle {
     }
 
     private void handleValueListEvent(ValueListEvent event) {
-        StringBuilder prefixBuilder = new StringBuilder().append(event.getHost()).append(".")
-                .append(event.getPluginName());
+        String prefix = nameCache.join(event.getHost(), event.getPluginName());
         String pluginInstance = event.getPluginInstance();
         if (pluginInstance != null && pluginInstance.length() > 0) {
-            prefixBuilder.append(".").append(pluginInstance);
+            prefix = nameCache.join(prefix, pluginInstance);
         }
-        prefixBuilder.append(".").append(event.getTypeName());
+        prefix = nameCache.join(prefix, event.getTypeName());
         String typeInstance = event.getTypeInstance();
         if (typeInstance != null && typeInstance.length() > 0) {
-            prefixBuilder.append(".").append(typeInstance);
+            prefix = nameCache.join(prefix, typeInstance);
         }
-        String prefix = prefixBuilder.toString();
-        TimeSpan timeSpan = event.getTimestamp();
+        long timestamp = TimeResolution.toMillis(event.getTimestamp());
         List<Number> values = event.getValues();
-        for (ListIterator<Number> iterator = values.listIterator(); iterator.hasNext(); ) {
-            Number value = iterator.next();
-            long timestamp = TimeResolution.toMillis(timeSpan);
-            StringBuilder sourceBuilder = new StringBuilder(prefix);
-            if (values.size() > 1) {
-                sourceBuilder.append(".").append(iterator.previousIndex());
-            }
+        for (int i = 0; i < values.size(); i++) {
+            String id = values.size() > 1 ? nameCache.join(prefix, i) : prefix;
             JsonObject metric = new JsonObject()
-                    .put("id", sourceBuilder.toString())
+                    .put("id", id)
                     .put("timestamp", timestamp)
-                    .put("value", value.doubleValue());
+                    .put("value", values.get(i).doubleValue());
             vertx.eventBus().publish(METRIC_ADDRESS, metric);
         }
     }
+
+    @Sharable
+    private class NettyPacketHandler extends SimpleChannelInboundHandler<io.netty.channel.socket.DatagramPacket> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, io.netty.channel.socket.DatagramPacket msg)
+                throws Exception {
+            handlePacket(packetDecoder.decode(msg.content()));
+        }
+    }
 }
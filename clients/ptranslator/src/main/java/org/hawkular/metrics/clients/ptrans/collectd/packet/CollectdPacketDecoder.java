@@ -21,24 +21,42 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.hawkular.metrics.clients.ptrans.collectd.event.DataType;
+import org.hawkular.metrics.clients.ptrans.util.MetricNameCache;
 import org.jboss.logging.Logger;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
-import io.netty.util.CharsetUtil;
 import io.vertx.core.datagram.DatagramPacket;
 
 /**
- * A decoding handler: from {@link DatagramPacket} to {@link CollectdPacket}.
+ * A decoding handler: from {@link DatagramPacket} to {@link CollectdPacket}. Instances may be shared between threads.
+ * String parts are looked up in a {@link MetricNameCache}, since the same host, plugin and type names are sent over and
+ * over.
  *
  * @author Thomas Segismont
  */
 public final class CollectdPacketDecoder {
     private static final Logger log = Logger.getLogger(CollectdPacketDecoder.class);
 
+    private final MetricNameCache nameCache;
+
+    public CollectdPacketDecoder() {
+        this(new MetricNameCache());
+    }
+
+    public CollectdPacketDecoder(MetricNameCache nameCache) {
+        this.nameCache = nameCache;
+    }
+
     public CollectdPacket decode(DatagramPacket packet) {
+        return decode(packet.data().getByteBuf());
+    }
+
+    /**
+     * Decodes the readable bytes of {@code content}, as received from a Netty datagram channel.
+     */
+    public CollectdPacket decode(ByteBuf content) {
         long start = System.currentTimeMillis();
-        ByteBuf content = packet.data().getByteBuf();
         List<Part<?>> parts = new ArrayList<>(100);
         for (; ; ) {
             if (!hasReadableBytes(content, 4)) {
@@ -102,9 +120,8 @@ public final class CollectdPacketDecoder {
     }
 
     private String readStringPartContent(ByteBuf content, int length) {
-        String string = content.toString(
-                content.readerIndex(), length - 1 /* collectd strings are \0 terminated */,
-                CharsetUtil.US_ASCII
+        String string = nameCache.decode(
+                content, content.readerIndex(), length - 1 /* collectd strings are \0 terminated */
         );
         content.skipBytes(length); // the previous call does not move the readerIndex
         return string;
@@ -17,6 +17,7 @@
 package org.hawkular.metrics.clients.ptrans.ganglia;
 
 import org.hawkular.metrics.clients.ptrans.backend.NettyToVertxHandler;
+import org.hawkular.metrics.clients.ptrans.util.MetricNameCache;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
@@ -29,16 +30,18 @@ import io.netty.channel.ChannelPipeline;
  */
 public class GangliaChannelInitializer extends ChannelInitializer<Channel> {
     private final NettyToVertxHandler nettyToVertxHandler;
+    private final MetricNameCache nameCache;
 
-    public GangliaChannelInitializer(NettyToVertxHandler nettyToVertxHandler) {
+    public GangliaChannelInitializer(NettyToVertxHandler nettyToVertxHandler, MetricNameCache nameCache) {
         this.nettyToVertxHandler = nettyToVertxHandler;
+        this.nameCache = nameCache;
     }
 
 
     @Override
     public void initChannel(Channel socketChannel) throws Exception {
         ChannelPipeline pipeline = socketChannel.pipeline();
-        pipeline.addLast(new UdpGangliaDecoder());
+        pipeline.addLast(new UdpGangliaDecoder(nameCache));
         pipeline.addLast(nettyToVertxHandler);
     }
 }
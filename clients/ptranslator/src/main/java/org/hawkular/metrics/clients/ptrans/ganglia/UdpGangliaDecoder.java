@@ -18,67 +18,81 @@ package org.hawkular.metrics.clients.ptrans.ganglia;
 
 import java.util.List;
 
-import org.acplt.oncrpc.XdrBufferDecodingStream;
 import org.hawkular.metrics.client.common.SingleMetric;
+import org.hawkular.metrics.clients.ptrans.util.MetricNameCache;
+import org.jboss.logging.Logger;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.socket.DatagramPacket;
 import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.util.CharsetUtil;
 
 /**
  * A Decoder for Ganglia metrics packets.
  * Ganglia sends each metric value in its own packet.
- * Data is XDR encoded.
+ * Data is XDR encoded: strings are a 4 bytes length followed by the bytes, padded to a multiple of 4.
+ * Host and metric names are decoded in place through a {@link MetricNameCache}, as well as the metric path.
+ * Invalid packets are skipped.
  * @author Heiko W. Rupp
  */
 public class UdpGangliaDecoder extends MessageToMessageDecoder<DatagramPacket> {
+    private static final Logger log = Logger.getLogger(UdpGangliaDecoder.class);
+
+    private final MetricNameCache nameCache;
+
+    public UdpGangliaDecoder(MetricNameCache nameCache) {
+        this.nameCache = nameCache;
+    }
 
     @Override
     protected void decode(ChannelHandlerContext ctx, DatagramPacket in, List<Object> out) throws Exception {
         ByteBuf msg = in.content();
         if (msg.readableBytes()<5) {
-            msg.clear();
-            ctx.close();
             return;
         }
 
-        short magic = msg.getUnsignedByte(3);
-        if (msg.getByte(0)==0 && msg.getByte(1)==0 && msg.getByte(2)==0&& magic ==134) {
-
-            // We have an UnsafeSuperDuperBuffer, so we need to "manually" pull the bytes from it.
-            byte[] bytes = new byte[msg.readableBytes()];
-            msg.readBytes(bytes);
-
-            XdrBufferDecodingStream stream = new XdrBufferDecodingStream(bytes);
-            stream.beginDecoding();
-            stream.xdrDecodeInt(); // Packet id , should be 134 as in above magic => type of value
-            String host = stream.xdrDecodeString();
-            String metricName = stream.xdrDecodeString();
-            stream.xdrDecodeInt();
-            String format = stream.xdrDecodeString(); // e.g. .0f for a number
-            String value;
-            if (format.endsWith("f")) {
-                value = String.valueOf(stream.xdrDecodeFloat());
-            } else {
-                value = stream.xdrDecodeString();
-            }
-            stream.endDecoding();
-
+        int offset = msg.readerIndex();
+        short magic = msg.getUnsignedByte(offset + 3);
+        if (msg.getByte(offset)==0 && msg.getByte(offset + 1)==0 && msg.getByte(offset + 2)==0&& magic ==134) {
             try {
-                String path = host + "." + metricName;
-                Double val = Double.parseDouble(value);
+                // Packet id, should be 134 as in above magic => type of value
+                int position = offset + 4;
+                String host = readString(msg, position);
+                position = skipString(msg, position);
+                String metricName = readString(msg, position);
+                position = skipString(msg, position);
+                position += 4;
+                int formatLength = msg.getInt(position);
+                // e.g. .0f for a number
+                boolean isFloat = formatLength > 0 && msg.getByte(position + 4 + formatLength - 1) == 'f';
+                position = skipString(msg, position);
+                double val;
+                if (isFloat) {
+                    val = Double.parseDouble(String.valueOf(msg.getFloat(position)));
+                } else {
+                    val = Double.parseDouble(msg.toString(position + 4, msg.getInt(position), CharsetUtil.UTF_8));
+                }
 
+                String path = nameCache.join(host, metricName);
                 SingleMetric metric = new SingleMetric(path,System.currentTimeMillis(),val);
                 out.add(metric);
+            } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                log.tracef(e, "Invalid Ganglia packet, skipping");
             }
-            catch (Exception e) {
-                e.printStackTrace();
-                msg.clear();
-                ctx.close();
+        }
+    }
 
-            }
+    private String readString(ByteBuf msg, int position) {
+        int length = msg.getInt(position);
+        if (length < 0 || position + 4 + length > msg.writerIndex()) {
+            throw new IndexOutOfBoundsException("Invalid string length: " + length);
         }
+        return nameCache.decode(msg, position + 4, length);
+    }
 
+    private static int skipString(ByteBuf msg, int position) {
+        int length = msg.getInt(position);
+        return position + 4 + ((length + 3) & ~3);
     }
 }
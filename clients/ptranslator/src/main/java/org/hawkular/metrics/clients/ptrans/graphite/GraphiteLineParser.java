@@ -0,0 +1,197 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.clients.ptrans.graphite;
+
+import java.util.function.LongSupplier;
+
+import org.hawkular.metrics.core.service.DecimalParser;
+import org.jboss.logging.Logger;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Parses the Graphite plaintext protocol ({@code <name> <value> <timestamp>\n}) straight from the received buffers.
+ * Lines are located and their numeric fields decoded in place; the metric name is the only object created per line.
+ * Only the tail of a line split across two buffers is copied.
+ * <p>
+ * An instance keeps the state of a single connection and must not be shared between connections.
+ */
+public class GraphiteLineParser implements Handler<Buffer> {
+    private static final Logger log = Logger.getLogger(GraphiteLineParser.class);
+
+    /**
+     * Lines longer than this are discarded, so that a client which never sends a line feed cannot exhaust memory.
+     */
+    public static final int MAX_LINE_LENGTH = 8192;
+
+    /**
+     * Receives parsed data points. Using primitive parameters avoids boxing on the hot path.
+     */
+    @FunctionalInterface
+    public interface DataPointHandler {
+        void handle(String name, long timestamp, double value);
+    }
+
+    private final DataPointHandler handler;
+    private final LongSupplier clock;
+
+    private Buffer pending;
+    private boolean discarding;
+
+    public GraphiteLineParser(DataPointHandler handler) {
+        this(handler, System::currentTimeMillis);
+    }
+
+    GraphiteLineParser(DataPointHandler handler, LongSupplier clock) {
+        this.handler = handler;
+        this.clock = clock;
+    }
+
+    @Override
+    public void handle(Buffer buffer) {
+        int length = buffer.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (buffer.getByte(i) != '\n') {
+                continue;
+            }
+            if (discarding) {
+                discarding = false;
+            } else if (pending != null) {
+                pending.appendBuffer(buffer, start, i - start);
+                if (pending.length() <= MAX_LINE_LENGTH) {
+                    parseLine(pending, 0, pending.length());
+                } else {
+                    log.tracef("Line longer than %d bytes, skipping", MAX_LINE_LENGTH);
+                }
+                pending = null;
+            } else if (i - start <= MAX_LINE_LENGTH) {
+                parseLine(buffer, start, i);
+            } else {
+                log.tracef("Line longer than %d bytes, skipping", MAX_LINE_LENGTH);
+            }
+            start = i + 1;
+        }
+        if (start < length && !discarding) {
+            if (pending == null) {
+                pending = Buffer.buffer(length - start);
+            }
+            pending.appendBuffer(buffer, start, length - start);
+            if (pending.length() > MAX_LINE_LENGTH) {
+                log.tracef("Line longer than %d bytes, skipping", MAX_LINE_LENGTH);
+                pending = null;
+                discarding = true;
+            }
+        }
+    }
+
+    /**
+     * Parses the line between {@code start} (inclusive) and {@code end} (exclusive), without the line feed.
+     */
+    void parseLine(Buffer buffer, int start, int end) {
+        if (end > start && buffer.getByte(end - 1) == '\r') {
+            end--;
+        }
+        int nameStart = skipBlanks(buffer, start, end);
+        if (nameStart == end) {
+            return;
+        }
+        int nameEnd = nextBlank(buffer, nameStart, end);
+        int valueStart = skipBlanks(buffer, nameEnd, end);
+        int valueEnd = nextBlank(buffer, valueStart, end);
+        int timestampStart = skipBlanks(buffer, valueEnd, end);
+        int timestampEnd = nextBlank(buffer, timestampStart, end);
+        if (valueStart == valueEnd || timestampStart == timestampEnd || skipBlanks(buffer, timestampEnd, end) != end) {
+            logInvalidLine(buffer, start, end);
+            return;
+        }
+        double value;
+        long timestamp;
+        try {
+            value = DecimalParser.parseDouble(buffer, Buffer::getByte, valueStart, valueEnd);
+            timestamp = parseTimestamp(buffer, timestampStart, timestampEnd);
+        } catch (NumberFormatException e) {
+            logInvalidLine(buffer, start, end);
+            return;
+        }
+        handler.handle(buffer.getString(nameStart, nameEnd, "UTF-8"), timestamp, value);
+    }
+
+    /**
+     * Parses a timestamp in seconds, possibly with a fractional part, and converts it to milliseconds. As with Carbon,
+     * {@code -1} stands for the current time.
+     */
+    long parseTimestamp(Buffer buffer, int start, int end) {
+        if (end - start == 2 && buffer.getByte(start) == '-' && buffer.getByte(start + 1) == '1') {
+            return clock.getAsLong();
+        }
+        long seconds = 0;
+        long millis = 0;
+        int fractionDigits = -1;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.getByte(i);
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid timestamp");
+            }
+            if (fractionDigits < 0) {
+                if (seconds > (Long.MAX_VALUE / 1000 - digit) / 10) {
+                    throw new NumberFormatException("Timestamp out of range");
+                }
+                seconds = seconds * 10 + digit;
+            } else if (fractionDigits < 3) {
+                millis = millis * 10 + digit;
+                fractionDigits++;
+            }
+        }
+        for (int i = Math.max(fractionDigits, 0); i < 3; i++) {
+            millis *= 10;
+        }
+        return seconds * 1000 + millis;
+    }
+
+    private static int skipBlanks(Buffer buffer, int start, int end) {
+        int i = start;
+        while (i < end && isBlank(buffer.getByte(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int nextBlank(Buffer buffer, int start, int end) {
+        int i = start;
+        while (i < end && !isBlank(buffer.getByte(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static void logInvalidLine(Buffer buffer, int start, int end) {
+        if (log.isTraceEnabled()) {
+            log.tracef("Unknown data format for '%s', skipping", buffer.getString(start, end, "UTF-8"));
+        }
+    }
+}
@@ -16,42 +16,51 @@
  */
 package org.hawkular.metrics.clients.ptrans.graphite;
 
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
-import static java.util.concurrent.TimeUnit.SECONDS;
-
-import static org.hawkular.metrics.clients.ptrans.backend.Constants.METRIC_ADDRESS;
+import static org.hawkular.metrics.clients.ptrans.backend.Constants.METRIC_BATCH_ADDRESS;
 
 import org.hawkular.metrics.clients.ptrans.Configuration;
-import org.jboss.logging.Logger;
+import org.hawkular.metrics.clients.ptrans.backend.MetricBatch;
 
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
-import io.vertx.core.buffer.Buffer;
-import io.vertx.core.json.JsonObject;
 import io.vertx.core.net.NetServer;
-import io.vertx.core.parsetools.RecordParser;
 
 /**
  * A TCP server for the Graphite plaintext protocol.
+ * <p>
+ * Each connection gets its own {@link GraphiteLineParser}. Parsed data points of all connections are collected in a
+ * {@link MetricBatch}, which is published as a single event bus message when it is full, or at the latest
+ * {@link #FLUSH_INTERVAL} milliseconds after the previous publication.
  *
  * @author Thomas Segismont
  */
 public class GraphiteServer extends AbstractVerticle {
-    private static final Logger log = Logger.getLogger(GraphiteServer.class);
+    /**
+     * Maximum number of data points per published batch.
+     */
+    public static final int BATCH_SIZE = 1000;
+    /**
+     * Maximum time, in milliseconds, a data point waits in a batch before being published.
+     */
+    public static final long FLUSH_INTERVAL = 100;
 
     private final int port;
-    private final RecordParser recordParser;
+
+    private NetServer tcpServer;
+    private long flushTimer;
+    private MetricBatch batch;
 
     public GraphiteServer(Configuration configuration) {
         port = configuration.getGraphitePort();
-        recordParser = RecordParser.newDelimited("\n", this::handleRecord);
     }
 
     @Override
     public void start(Future<Void> startFuture) throws Exception {
-        NetServer tcpServer = vertx.createNetServer();
+        batch = new MetricBatch(BATCH_SIZE);
+        flushTimer = vertx.setPeriodic(FLUSH_INTERVAL, id -> flush());
+        tcpServer = vertx.createNetServer();
         tcpServer.connectHandler(socket -> {
-            socket.handler(recordParser);
+            socket.handler(new GraphiteLineParser(this::handleDataPoint));
         });
         tcpServer.listen(port, result -> {
             if (result.succeeded()) {
@@ -62,23 +71,26 @@ public class GraphiteServer extends AbstractVerticle {
         });
     }
 
-    private void handleRecord(Buffer buf) {
-        String msg = buf.toString("UTF-8");
+    private void handleDataPoint(String name, long timestamp, double value) {
+        if (batch.add(name, timestamp, value)) {
+            flush();
+        }
+    }
 
-        String[] items = msg.split(" ");
-        if (items.length != 3) {
-            log.tracef("Unknown data format for '%s', skipping", msg);
+    private void flush() {
+        if (batch.isEmpty()) {
             return;
         }
+        vertx.eventBus().publish(METRIC_BATCH_ADDRESS, batch);
+        batch = new MetricBatch(BATCH_SIZE);
+    }
 
-        String name = items[0];
-        double value = Double.parseDouble(items[1]);
-        long timestamp = MILLISECONDS.convert(Long.parseLong(items[2]), SECONDS);
-
-        JsonObject metric = new JsonObject()
-                .put("id", name)
-                .put("timestamp", timestamp)
-                .put("value", value);
-        vertx.eventBus().publish(METRIC_ADDRESS, metric);
+    @Override
+    public void stop() throws Exception {
+        vertx.cancelTimer(flushTimer);
+        flush();
+        if (tcpServer != null) {
+            tcpServer.close();
+        }
     }
 }
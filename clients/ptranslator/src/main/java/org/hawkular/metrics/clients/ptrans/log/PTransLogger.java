@@ -19,6 +19,7 @@ package org.hawkular.metrics.clients.ptrans.log;
 
 import static org.jboss.logging.Logger.Level.ERROR;
 import static org.jboss.logging.Logger.Level.INFO;
+import static org.jboss.logging.Logger.Level.WARN;
 
 import org.jboss.logging.BasicLogger;
 import org.jboss.logging.annotations.Cause;
@@ -59,4 +60,45 @@ public interface PTransLogger extends BasicLogger {
     @LogMessage(level = INFO)
     @Message(id = 500006, value = "ptrans stopped")
     void infoStopped();
+
+    @LogMessage(level = INFO)
+    @Message(id = 500007, value = "Spooling metrics in %s, %d metrics pending")
+    void infoSpoolOpened(Object directory, long size);
+
+    @LogMessage(level = WARN)
+    @Message(id = 500008, value = "Metrics service is unavailable, spooling metrics to disk")
+    void warnBackendUnavailable();
+
+    @LogMessage(level = INFO)
+    @Message(id = 500009, value = "Metrics service is available, replaying %d spooled metrics")
+    void infoBackendAvailable(long size);
+
+    @LogMessage(level = INFO)
+    @Message(id = 500010, value = "Using native transport, %d readers per datagram server")
+    void infoNativeTransport(int readers);
+
+    @LogMessage(level = WARN)
+    @Message(id = 500011, value = "Native transport is not available, falling back to NIO")
+    void warnNativeTransportUnavailable(@Cause Throwable cause);
+
+    @LogMessage(level = WARN)
+    @Message(id = 500012, value = "%s server: %d datagrams dropped by the kernel, consider increasing the receive "
+            + "buffer size or the number of readers")
+    void warnDatagramsDropped(String serverType, long dropped);
+
+    @LogMessage(level = INFO)
+    @Message(id = 500013, value = "Writing metrics to Cassandra nodes %s, keyspace %s")
+    void infoCassandraBackend(String nodes, String keyspace);
+
+    @LogMessage(level = WARN)
+    @Message(id = 500014, value = "Failed to write %d data points")
+    void warnWriteFailed(int count, @Cause Throwable cause);
+
+    @LogMessage(level = WARN)
+    @Message(id = 500015, value = "Backend is overloaded, %d data points dropped")
+    void warnDataPointsDropped(long count);
+
+    @LogMessage(level = WARN)
+    @Message(id = 500016, value = "Batch of %d data points rejected by the metrics service: %d %s")
+    void warnBatchRejected(int count, int status, String reason);
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.clients.ptrans.statsd;
+
+import static org.hawkular.metrics.clients.ptrans.backend.Constants.METRIC_BATCH_ADDRESS;
+import static org.hawkular.metrics.clients.ptrans.util.Arguments.checkArgument;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.hawkular.metrics.clients.ptrans.backend.MetricBatch;
+
+import io.vertx.core.AbstractVerticle;
+
+/**
+ * Aggregates statsd samples and publishes the aggregated values every flush interval, following statsd semantics:
+ * <ul>
+ *     <li>counters: the sum of the increments, scaled by the sample rate, published as {@code <key>} along with the
+ *     per second rate {@code <key>.rate}</li>
+ *     <li>gauges: the last value, or the previous value adjusted by signed deltas, published as {@code <key>}</li>
+ *     <li>timers: {@code <key>.count}, {@code .lower}, {@code .upper}, {@code .mean}, {@code .median}, {@code .sum}
+ *     and {@code .upper_90}</li>
+ *     <li>sets: the number of unique members, published as {@code <key>}</li>
+ * </ul>
+ * Only keys which received samples during the interval are published. Gauge values are kept across intervals so that
+ * deltas apply to the last known value.
+ * <p>
+ * Samples are recorded from Netty event loop threads, hence recording and flushing synchronize on this instance.
+ * The state of each key is held in a small mutable holder with primitive fields, so recording a sample of a known key
+ * does not allocate.
+ */
+public class StatsdAggregator extends AbstractVerticle {
+    /**
+     * Percentile published for timers, as {@code <key>.upper_90}.
+     */
+    public static final int PERCENTILE = 90;
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final long flushInterval;
+
+    private Map<String, Counter> counters = new HashMap<>();
+    private Map<String, Timer> timers = new HashMap<>();
+    private Map<String, Set<String>> sets = new HashMap<>();
+    private final Map<String, Gauge> gauges = new HashMap<>();
+
+    private long lastFlush;
+    private long flushTimer;
+
+    /**
+     * @param flushInterval flush interval, in milliseconds
+     */
+    public StatsdAggregator(long flushInterval) {
+        checkArgument(flushInterval > 0, "flushInterval must be positive");
+        this.flushInterval = flushInterval;
+        lastFlush = System.currentTimeMillis();
+    }
+
+    @Override
+    public void start() throws Exception {
+        flushTimer = vertx.setPeriodic(flushInterval, id -> flush());
+    }
+
+    @Override
+    public void stop() throws Exception {
+        vertx.cancelTimer(flushTimer);
+        flush();
+    }
+
+    private void flush() {
+        flush(System.currentTimeMillis(), batch -> vertx.eventBus().publish(METRIC_BATCH_ADDRESS, batch));
+    }
+
+    public synchronized void count(String key, double value, double sampleRate) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            counter = new Counter();
+            counters.put(key, counter);
+        }
+        counter.value += value / sampleRate;
+    }
+
+    public synchronized void gauge(String key, double value, boolean delta) {
+        Gauge gauge = gauges.get(key);
+        if (gauge == null) {
+            gauge = new Gauge();
+            gauges.put(key, gauge);
+        }
+        gauge.value = delta ? gauge.value + value : value;
+        gauge.updated = true;
+    }
+
+    public synchronized void time(String key, double value, double sampleRate) {
+        Timer timer = timers.get(key);
+        if (timer == null) {
+            timer = new Timer();
+            timers.put(key, timer);
+        }
+        timer.add(value, sampleRate);
+    }
+
+    public synchronized void set(String key, String member) {
+        Set<String> members = sets.get(key);
+        if (members == null) {
+            members = new HashSet<>();
+            sets.put(key, members);
+        }
+        members.add(member);
+    }
+
+    /**
+     * Computes the aggregated values of the interval ending at {@code timestamp} and resets the interval.
+     *
+     * @param timestamp timestamp of the published data points
+     * @param publisher receives the aggregated values, in batches
+     */
+    void flush(long timestamp, Consumer<MetricBatch> publisher) {
+        Map<String, Counter> counters;
+        Map<String, Timer> timers;
+        Map<String, Set<String>> sets;
+        Map<String, Double> gauges = new HashMap<>();
+        long interval;
+        synchronized (this) {
+            counters = this.counters;
+            timers = this.timers;
+            sets = this.sets;
+            this.counters = new HashMap<>();
+            this.timers = new HashMap<>();
+            this.sets = new HashMap<>();
+            this.gauges.forEach((key, gauge) -> {
+                if (gauge.updated) {
+                    gauges.put(key, gauge.value);
+                    gauge.updated = false;
+                }
+            });
+            interval = Math.max(1, timestamp - lastFlush);
+            lastFlush = timestamp;
+        }
+
+        Publisher out = new Publisher(timestamp, publisher);
+        double seconds = interval / 1000.0;
+        counters.forEach((key, counter) -> {
+            out.add(key, counter.value);
+            out.add(key + ".rate", counter.value / seconds);
+        });
+        gauges.forEach(out::add);
+        timers.forEach((key, timer) -> timer.publish(key, out));
+        sets.forEach((key, members) -> out.add(key, members.size()));
+        out.complete();
+    }
+
+    private static class Counter {
+        double value;
+    }
+
+    private static class Gauge {
+        double value;
+        boolean updated;
+    }
+
+    private static class Timer {
+        double[] samples = new double[16];
+        int size;
+        double count;
+
+        void add(double value, double sampleRate) {
+            if (size == samples.length) {
+                samples = Arrays.copyOf(samples, size * 2);
+            }
+            samples[size++] = value;
+            count += 1 / sampleRate;
+        }
+
+        void publish(String key, Publisher out) {
+            Arrays.sort(samples, 0, size);
+            double sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += samples[i];
+            }
+            int mid = size / 2;
+            double median = size % 2 == 1 ? samples[mid] : (samples[mid - 1] + samples[mid]) / 2;
+            int rank = Math.max(1, (int) Math.round(PERCENTILE / 100.0 * size));
+            out.add(key + ".count", count);
+            out.add(key + ".lower", samples[0]);
+            out.add(key + ".upper", samples[size - 1]);
+            out.add(key + ".mean", sum / size);
+            out.add(key + ".median", median);
+            out.add(key + ".sum", sum);
+            out.add(key + ".upper_" + PERCENTILE, samples[rank - 1]);
+        }
+    }
+
+    private static class Publisher {
+        final long timestamp;
+        final Consumer<MetricBatch> publisher;
+        MetricBatch batch = new MetricBatch(BATCH_SIZE);
+
+        Publisher(long timestamp, Consumer<MetricBatch> publisher) {
+            this.timestamp = timestamp;
+            this.publisher = publisher;
+        }
+
+        void add(String id, double value) {
+            if (batch.add(id, timestamp, value)) {
+                publisher.accept(batch);
+                batch = new MetricBatch(BATCH_SIZE);
+            }
+        }
+
+        void complete() {
+            if (!batch.isEmpty()) {
+                publisher.accept(batch);
+            }
+        }
+    }
+}
@@ -16,8 +16,6 @@
  */
 package org.hawkular.metrics.clients.ptrans.statsd;
 
-import org.hawkular.metrics.clients.ptrans.backend.NettyToVertxHandler;
-
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
@@ -28,17 +26,16 @@ import io.netty.channel.ChannelPipeline;
  * @author Thomas Segismont
  */
 public class StatsdChannelInitializer extends ChannelInitializer<Channel> {
-    private final NettyToVertxHandler nettyToVertxHandler;
+    private final StatsdDecoder statsdDecoder;
 
-    public StatsdChannelInitializer(NettyToVertxHandler nettyToVertxHandler) {
-        this.nettyToVertxHandler = nettyToVertxHandler;
+    public StatsdChannelInitializer(StatsdAggregator aggregator) {
+        statsdDecoder = new StatsdDecoder(aggregator);
     }
 
 
     @Override
     public void initChannel(Channel socketChannel) throws Exception {
         ChannelPipeline pipeline = socketChannel.pipeline();
-        pipeline.addLast(new StatsdDecoder());
-        pipeline.addLast(nettyToVertxHandler);
+        pipeline.addLast(statsdDecoder);
     }
 }
@@ -16,20 +16,17 @@
  */
 package org.hawkular.metrics.clients.ptrans.statsd;
 
-import java.util.List;
+import org.jboss.logging.Logger;
 
-import org.hawkular.metrics.client.common.MetricType;
-import org.hawkular.metrics.client.common.SingleMetric;
-
-import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.socket.DatagramPacket;
-import io.netty.handler.codec.MessageToMessageDecoder;
 import io.netty.util.CharsetUtil;
 
 /**
  * Decoder for Stats packets that comes in the form of
- * name:value[|type]
+ * name:value|type[|@sampleRate]
  * Type is a letter:
  * <ul>
  *     <li>g: Gauge</li>
@@ -37,43 +34,87 @@ import io.netty.util.CharsetUtil;
  *     <li>ms: Timing</li>
  *     <li>s: Set</li>
  * </ul>
+ * Samples without a type, in the form of {@code name:value}, are gauges.
+ * A packet may hold several newline separated lines, and a line several colon separated samples of the same name.
+ * Decoded samples are recorded in a {@link StatsdAggregator}; invalid lines are skipped.
+ *
  * @author Heiko W. Rupp
  */
-public class StatsdDecoder extends MessageToMessageDecoder<DatagramPacket> {
+@Sharable
+public class StatsdDecoder extends SimpleChannelInboundHandler<DatagramPacket> {
+    private static final Logger log = Logger.getLogger(StatsdDecoder.class);
+
+    private final StatsdAggregator aggregator;
+
+    public StatsdDecoder(StatsdAggregator aggregator) {
+        this.aggregator = aggregator;
+    }
 
     @Override
-    protected void decode(ChannelHandlerContext ctx, DatagramPacket msg, List<Object> out) throws Exception {
-        ByteBuf buf = msg.content();
+    protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket msg) throws Exception {
+        decode(msg.content().toString(CharsetUtil.UTF_8));
+    }
 
-        if (buf.readableBytes()<3) {
-            // Not enough data - nothing to do.
-            buf.clear();
-            ctx.close();
-            return;
+    void decode(String packet) {
+        int start = 0;
+        while (start < packet.length()) {
+            int end = packet.indexOf('\n', start);
+            if (end < 0) {
+                end = packet.length();
+            }
+            String line = packet.substring(start, end).trim();
+            if (!line.isEmpty()) {
+                try {
+                    decodeLine(line);
+                } catch (IllegalArgumentException e) {
+                    log.tracef("Invalid statsd line '%s' (%s), skipping", line, e.getMessage());
+                }
+            }
+            start = end + 1;
         }
+    }
 
-        String packet = buf.toString(CharsetUtil.UTF_8).trim();
-        if (!packet.contains(":")) {
-            buf.clear();
-            ctx.close();
-            return;
+    private void decodeLine(String line) {
+        String[] segments = line.split(":");
+        if (segments.length < 2 || segments[0].isEmpty()) {
+            throw new IllegalArgumentException("no value");
         }
+        String name = segments[0];
+        for (int i = 1; i < segments.length; i++) {
+            decodeSample(name, segments[i]);
+        }
+    }
 
-
-        String name = packet.substring(0,packet.indexOf(":"));
-        String remainder = packet.substring(packet.indexOf(":")+1);
-        String valString;
-        String type;
-        if (remainder.contains("|")) {
-            valString = remainder.substring(0,remainder.indexOf("|"));
-            type = remainder.substring(remainder.indexOf("|")+1);
+    private void decodeSample(String name, String sample) {
+        String[] fields = sample.split("\\|");
+        String value = fields[0];
+        String type = fields.length < 2 ? "g" : fields[1];
+        double sampleRate = 1;
+        for (int i = 2; i < fields.length; i++) {
+            if (fields[i].startsWith("@")) {
+                sampleRate = Double.parseDouble(fields[i].substring(1));
+                if (!(sampleRate > 0 && sampleRate <= 1)) {
+                    throw new IllegalArgumentException("invalid sample rate");
+                }
+            }
         }
-        else {
-            valString = remainder;
-            type = "";
+        switch (type) {
+            case "c":
+                aggregator.count(name, Double.parseDouble(value), sampleRate);
+                break;
+            case "g":
+                boolean delta = value.startsWith("+") || value.startsWith("-");
+                aggregator.gauge(name, Double.parseDouble(value), delta);
+                break;
+            case "ms":
+            case "h":
+                aggregator.time(name, Double.parseDouble(value), sampleRate);
+                break;
+            case "s":
+                aggregator.set(name, value);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown type " + type);
         }
-        Double value = Double.valueOf(valString);
-        SingleMetric singleMetric = new SingleMetric(name, System.currentTimeMillis(),value, MetricType.from(type));
-        out.add(singleMetric);
     }
 }
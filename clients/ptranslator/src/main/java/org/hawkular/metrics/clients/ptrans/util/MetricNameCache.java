@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.clients.ptrans.util;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import static org.hawkular.metrics.clients.ptrans.util.Arguments.checkArgument;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * A bounded cache of metric name parts and metric names, shared by the decoders of protocols which send the same
+ * names over and over (collectd, Ganglia).
+ * <p>
+ * {@link #decode(ByteBuf, int, int)} looks strings up by their raw bytes, so that decoding a known name part does not
+ * allocate, and always returns the same instance for the same bytes while they are cached. {@link #join(String,
+ * String)} returns the dot separated concatenation of two parts, so prefixes like {@code host.plugin.type} are built
+ * once instead of for every value of every packet.
+ * <p>
+ * Each table is direct-mapped: an entry replaces the previous one of its slot, which bounds memory usage without any
+ * bookkeeping. Entries are immutable and published through atomic arrays, so the cache can be used by several threads
+ * without locking; a concurrent replacement only costs a cache miss. {@link String#intern()} is not used as its table
+ * is never cleaned.
+ */
+public final class MetricNameCache {
+    /**
+     * Default number of entries of each table.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final String[] INDEXES = new String[64];
+
+    static {
+        for (int i = 0; i < INDEXES.length; i++) {
+            INDEXES[i] = String.valueOf(i);
+        }
+    }
+
+    private final int mask;
+    private final AtomicReferenceArray<BytesEntry> strings;
+    private final AtomicReferenceArray<JoinEntry> names;
+
+    public MetricNameCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of entries of each table, rounded up to a power of two
+     */
+    public MetricNameCache(int capacity) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        int slots = Integer.highestOneBit(capacity);
+        if (slots < capacity) {
+            slots <<= 1;
+        }
+        mask = slots - 1;
+        strings = new AtomicReferenceArray<>(slots);
+        names = new AtomicReferenceArray<>(slots);
+    }
+
+    /**
+     * Decodes {@code length} US-ASCII bytes of {@code buffer}, starting at {@code index}. The reader index is not
+     * modified.
+     */
+    public String decode(ByteBuf buffer, int index, int length) {
+        int hash = 1;
+        for (int i = index; i < index + length; i++) {
+            hash = 31 * hash + buffer.getByte(i);
+        }
+        int slot = spread(hash) & mask;
+        BytesEntry entry = strings.get(slot);
+        if (entry != null && entry.hash == hash && entry.matches(buffer, index, length)) {
+            return entry.value;
+        }
+        byte[] bytes = new byte[length];
+        buffer.getBytes(index, bytes);
+        entry = new BytesEntry(hash, bytes, new String(bytes, US_ASCII));
+        strings.set(slot, entry);
+        return entry.value;
+    }
+
+    /**
+     * @return {@code parent + "." + child}
+     */
+    public String join(String parent, String child) {
+        int hash = 31 * parent.hashCode() + child.hashCode();
+        int slot = spread(hash) & mask;
+        JoinEntry entry = names.get(slot);
+        if (entry != null && entry.hash == hash && entry.parent.equals(parent) && entry.child.equals(child)) {
+            return entry.value;
+        }
+        entry = new JoinEntry(hash, parent, child, parent + "." + child);
+        names.set(slot, entry);
+        return entry.value;
+    }
+
+    /**
+     * @return {@code parent + "." + index}
+     */
+    public String join(String parent, int index) {
+        return join(parent, index >= 0 && index < INDEXES.length ? INDEXES[index] : String.valueOf(index));
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class BytesEntry {
+        final int hash;
+        final byte[] bytes;
+        final String value;
+
+        BytesEntry(int hash, byte[] bytes, String value) {
+            this.hash = hash;
+            this.bytes = bytes;
+            this.value = value;
+        }
+
+        boolean matches(ByteBuf buffer, int index, int length) {
+            if (bytes.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != buffer.getByte(index + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class JoinEntry {
+        final int hash;
+        final String parent;
+        final String child;
+        final String value;
+
+        JoinEntry(int hash, String parent, String child, String value) {
+            this.hash = hash;
+            this.parent = parent;
+            this.child = child;
+            this.value = value;
+        }
+    }
+}
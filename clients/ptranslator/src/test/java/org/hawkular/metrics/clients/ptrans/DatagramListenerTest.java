@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.clients.ptrans;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DatagramListenerTest {
+
+    private static final List<String> PROC_NET_UDP = Arrays.asList(
+            "  sl  local_address rem_address   st tx_queue rx_queue tr tm->when retrnsmt   uid  timeout inode ref "
+                    + "pointer drops",
+            "  12: 00000000:1FBD 00000000:0000 07 00000000:00000000 00:00000000 00000000  1000        0 41821 2 "
+                    + "ffff8800b9a1c000 17",
+            "  13: 00000000:1FBD 00000000:0000 07 00000000:00000000 00:00000000 00000000  1000        0 41822 2 "
+                    + "ffff8800b9a1c400 5",
+            "  40: 0100007F:6502 00000000:0000 07 00000000:00000000 00:00000000 00000000     0        0 12345 2 "
+                    + "ffff8800b9a1c800 1000"
+    );
+
+    @Test
+    public void shouldSumDropsOfSocketsBoundToPort() {
+        assertEquals(22, DatagramListener.parseDrops(PROC_NET_UDP, 8125));
+    }
+
+    @Test
+    public void shouldIgnoreSocketsBoundToOtherPorts() {
+        assertEquals(0, DatagramListener.parseDrops(PROC_NET_UDP, 25826));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.clients.ptrans.backend;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class BatchSizeControllerTest {
+
+    @Test
+    public void shouldClampInitialBatchSize() {
+        assertEquals(10, new BatchSizeController(1, 10, 100, 1000).getBatchSize());
+        assertEquals(100, new BatchSizeController(1000, 10, 100, 1000).getBatchSize());
+    }
+
+    @Test
+    public void shouldGrowWhenFullBatchesAreFast() {
+        BatchSizeController controller = new BatchSizeController(100, 10, 1000, 1000);
+        controller.onSuccess(100, 50);
+        assertEquals(150, controller.getBatchSize());
+        controller.onSuccess(20, 50);
+        assertEquals("Partial batches must not grow the batch size", 150, controller.getBatchSize());
+        for (int i = 0; i < 20; i++) {
+            controller.onSuccess(controller.getBatchSize(), 50);
+        }
+        assertEquals(1000, controller.getBatchSize());
+    }
+
+    @Test
+    public void shouldShrinkWhenSlow() {
+        BatchSizeController controller = new BatchSizeController(400, 10, 1000, 1000);
+        controller.onSuccess(400, 2000);
+        assertEquals(200, controller.getBatchSize());
+        assertEquals(2000, controller.getAverageLatency(), 0);
+        for (int i = 0; i < 20; i++) {
+            controller.onSuccess(controller.getBatchSize(), 5000);
+        }
+        assertEquals(10, controller.getBatchSize());
+    }
+
+    @Test
+    public void shouldShrinkOnFailure() {
+        BatchSizeController controller = new BatchSizeController(400, 10, 1000, 1000);
+        controller.onFailure();
+        assertEquals(200, controller.getBatchSize());
+    }
+
+    @Test
+    public void shouldDeriveLingerFromLatency() {
+        BatchSizeController controller = new BatchSizeController(100, 10, 1000, 10_000);
+        assertEquals(BatchSizeController.MIN_LINGER, controller.getLinger());
+        controller.onSuccess(100, 400);
+        assertEquals(100, controller.getLinger());
+        controller.onSuccess(100, 20_000);
+        assertEquals(BatchSizeController.MAX_LINGER, controller.getLinger());
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.clients.ptrans.backend;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.METRICS_ADAPTIVE;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.METRICS_URL;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SERVICES;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SPOOL_DIRECTORY;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SPOOL_MAX_SIZE;
+import static org.hawkular.metrics.clients.ptrans.ConfigurationKey.SPOOL_SEGMENT_SIZE;
+import static org.hawkular.metrics.clients.ptrans.backend.Constants.SPOOLED_BATCH_ADDRESS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hawkular.metrics.client.common.MetricSpool;
+import org.hawkular.metrics.client.common.MetricType;
+import org.hawkular.metrics.client.common.SingleMetric;
+import org.hawkular.metrics.clients.ptrans.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+public class SpoolingForwarderTest {
+    private static final int MEGABYTE = 1024 * 1024;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Vertx vertx;
+    private int port;
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = temporaryFolder.newFolder().toPath();
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        vertx = Vertx.vertx();
+        // The metrics service reports it is started
+        String status = new JsonObject().put("MetricsService", "STARTED").encode();
+        CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+        vertx.createHttpServer()
+                .requestHandler(request -> request.response().end(status))
+                .listen(port, "localhost", completing(listening));
+        listening.get(10, SECONDS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (vertx != null) {
+            close();
+        }
+    }
+
+    @Test
+    public void shouldReplayAgainUntilStoredThenAcknowledge() throws Exception {
+        try (MetricSpool spool = new MetricSpool(directory, MEGABYTE, MEGABYTE)) {
+            for (int i = 0; i < 3; i++) {
+                spool.append(new SingleMetric("metric." + i, i * 1000L, (double) i, MetricType.GAUGE));
+            }
+        }
+        BlockingQueue<JsonArray> batches = new LinkedBlockingQueue<>();
+        AtomicInteger received = new AtomicInteger();
+        vertx.eventBus().<JsonArray>consumer(SPOOLED_BATCH_ADDRESS, message -> {
+            batches.add(message.body());
+            if (received.incrementAndGet() == 1) {
+                message.fail(0, "Service unavailable");
+            } else {
+                message.reply(null);
+            }
+        });
+
+        CompletableFuture<String> deployed = new CompletableFuture<>();
+        vertx.deployVerticle(new SpoolingForwarder(createConfiguration()), completing(deployed));
+        deployed.get(10, SECONDS);
+
+        JsonArray failed = batches.poll(10, SECONDS);
+        assertNotNull("The spool should be replayed", failed);
+        assertEquals(3, failed.size());
+        assertEquals("metric.0", failed.getJsonObject(0).getString("id"));
+        assertEquals("A failed batch should be replayed again", failed, batches.poll(10, SECONDS));
+        assertNull("A stored batch should not be replayed again", batches.poll(1, SECONDS));
+
+        close();
+        try (MetricSpool spool = new MetricSpool(directory, MEGABYTE, MEGABYTE)) {
+            assertTrue("Acknowledged metrics should not be recovered", spool.isEmpty());
+        }
+    }
+
+    private Configuration createConfiguration() {
+        Properties properties = new Properties();
+        properties.setProperty(SERVICES.toString(), "collectd");
+        properties.setProperty(METRICS_URL.toString(), "http://localhost:" + port + "/hawkular/metrics");
+        properties.setProperty(METRICS_ADAPTIVE.toString(), "true");
+        properties.setProperty(SPOOL_DIRECTORY.toString(), directory.toString());
+        properties.setProperty(SPOOL_SEGMENT_SIZE.toString(), "1");
+        properties.setProperty(SPOOL_MAX_SIZE.toString(), "1");
+        Configuration configuration = Configuration.from(properties);
+        assertTrue(configuration.getValidationMessages().toString(), configuration.isValid());
+        return configuration;
+    }
+
+    private void close() throws Exception {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(completing(closed));
+        vertx = null;
+        closed.get(10, SECONDS);
+    }
+
+    private static <T> Handler<AsyncResult<T>> completing(CompletableFuture<T> future) {
+        return result -> {
+            if (result.succeeded()) {
+                future.complete(result.result());
+            } else {
+                future.completeExceptionally(result.cause());
+            }
+        };
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.clients.ptrans.graphite;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+import io.vertx.core.buffer.Buffer;
+
+public class GraphiteLineParserTest {
+    private static final long NOW = 1234567890123L;
+
+    private List<String> points;
+    private GraphiteLineParser parser;
+
+    @Before
+    public void setUp() {
+        points = new ArrayList<>();
+        parser = new GraphiteLineParser((name, timestamp, value) -> points.add(name + "|" + timestamp + "|" + value),
+                () -> NOW);
+    }
+
+    @Test
+    public void parseLines() {
+        parser.handle(Buffer.buffer("foo.bar 13.5 1400000000\nbaz  -2\t1400000001.25\r\n\nqux 1e3 -1\n"));
+
+        assertEquals(3, points.size());
+        assertEquals("foo.bar|1400000000000|13.5", points.get(0));
+        assertEquals("baz|1400000001250|-2.0", points.get(1));
+        assertEquals("qux|" + NOW + "|1000.0", points.get(2));
+    }
+
+    @Test
+    public void parseValuesExactly() {
+        String[] values = {"0.1", "3.14159", "-0.000123", "123456789.123456", "12345678901234567890.5", ".5", "7.",
+                "+4", "NaN"};
+        StringBuilder lines = new StringBuilder();
+        for (String value : values) {
+            lines.append("g ").append(value).append(" 1\n");
+        }
+
+        parser.handle(Buffer.buffer(lines.toString()));
+
+        assertEquals(values.length, points.size());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals("g|1000|" + Double.parseDouble(values[i]), points.get(i));
+        }
+    }
+
+    @Test
+    public void joinLinesSplitAcrossBuffers() {
+        parser.handle(Buffer.buffer("a 1 1\nb 2"));
+        parser.handle(Buffer.buffer(" 2"));
+        parser.handle(Buffer.buffer("\nc 3 3\n"));
+
+        assertEquals(3, points.size());
+        assertEquals("a|1000|1.0", points.get(0));
+        assertEquals("b|2000|2.0", points.get(1));
+        assertEquals("c|3000|3.0", points.get(2));
+    }
+
+    @Test
+    public void skipInvalidLines() {
+        parser.handle(Buffer.buffer("a\nb 1\nc x 1\nd 1 x\ne 1 1 1\nf 1 1\n"));
+
+        assertEquals(1, points.size());
+        assertEquals("f|1000|1.0", points.get(0));
+    }
+
+    @Test
+    public void discardTooLongLines() {
+        String name = Strings.repeat("x", GraphiteLineParser.MAX_LINE_LENGTH);
+        parser.handle(Buffer.buffer(name));
+        parser.handle(Buffer.buffer(name + " 1 1\na 1 1\n"));
+        parser.handle(Buffer.buffer(name + " 2 2\nb 2 2\n"));
+
+        assertEquals(2, points.size());
+        assertEquals("a|1000|1.0", points.get(0));
+        assertEquals("b|2000|2.0", points.get(1));
+    }
+}
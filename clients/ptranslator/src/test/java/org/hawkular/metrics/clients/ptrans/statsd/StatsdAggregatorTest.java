@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.clients.ptrans.statsd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hawkular.metrics.clients.ptrans.backend.MetricBatch;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StatsdAggregatorTest {
+    private static final double DELTA = 1e-9;
+
+    private StatsdAggregator aggregator;
+    private StatsdDecoder decoder;
+    private long time;
+
+    @Before
+    public void setUp() {
+        aggregator = new StatsdAggregator(10_000);
+        decoder = new StatsdDecoder(aggregator);
+        // Align the first interval on a known start
+        flush();
+    }
+
+    @Test
+    public void aggregateCounters() {
+        decoder.decode("hits:1|c\nhits:2|c\nhits:1|c|@0.1\nmisses:3|c:4|c");
+
+        Map<String, Double> values = flush();
+
+        assertEquals(4, values.size());
+        assertEquals(13, values.get("hits"), DELTA);
+        assertEquals(1.3, values.get("hits.rate"), DELTA);
+        assertEquals(7, values.get("misses"), DELTA);
+        assertEquals(0.7, values.get("misses.rate"), DELTA);
+        assertTrue("Counters should be reset", flush().isEmpty());
+    }
+
+    @Test
+    public void keepGaugesForDeltas() {
+        decoder.decode("temp:20|g\ntemp:21|g");
+        assertEquals(21, flush().get("temp"), DELTA);
+
+        assertTrue("Gauges which were not updated should not be published", flush().isEmpty());
+
+        decoder.decode("temp:-3|g\ntemp:+1|g");
+        assertEquals(19, flush().get("temp"), DELTA);
+    }
+
+    @Test
+    public void defaultToGauges() {
+        decoder.decode("load:0.5\nload:0.7\nqueue:3:+2");
+
+        Map<String, Double> values = flush();
+
+        assertEquals(2, values.size());
+        assertEquals(0.7, values.get("load"), DELTA);
+        assertEquals(5, values.get("queue"), DELTA);
+    }
+
+    @Test
+    public void aggregateTimers() {
+        StringBuilder packet = new StringBuilder();
+        for (int i = 10; i >= 1; i--) {
+            packet.append("latency:").append(i).append("|ms\n");
+        }
+        packet.append("latency:5|ms|@0.5");
+        decoder.decode(packet.toString());
+
+        Map<String, Double> values = flush();
+
+        assertEquals(7, values.size());
+        assertEquals(12, values.get("latency.count"), DELTA);
+        assertEquals(1, values.get("latency.lower"), DELTA);
+        assertEquals(10, values.get("latency.upper"), DELTA);
+        assertEquals(60 / 11.0, values.get("latency.mean"), DELTA);
+        assertEquals(5, values.get("latency.median"), DELTA);
+        assertEquals(60, values.get("latency.sum"), DELTA);
+        assertEquals(9, values.get("latency.upper_90"), DELTA);
+    }
+
+    @Test
+    public void countUniqueSetMembers() {
+        decoder.decode("users:alice|s\nusers:bob|s\nusers:alice|s");
+
+        assertEquals(2, flush().get("users"), DELTA);
+    }
+
+    @Test
+    public void skipInvalidLines() {
+        decoder.decode("nocolon\nnovalue:|c\nbadvalue:x|c\nbadtype:1|z\nbadrate:1|c|@2\n:1|c\nvalid:1|c");
+
+        Map<String, Double> values = flush();
+
+        assertEquals(2, values.size());
+        assertEquals(1, values.get("valid"), DELTA);
+    }
+
+    @Test
+    public void publishInBatches() {
+        StringBuilder packet = new StringBuilder();
+        for (int i = 0; i < 1500; i++) {
+            packet.append("g").append(i).append(":1|g\n");
+        }
+        decoder.decode(packet.toString());
+
+        int[] batches = {0};
+        aggregator.flush(time += 10_000, batch -> batches[0]++);
+
+        assertEquals(2, batches[0]);
+    }
+
+    private Map<String, Double> flush() {
+        Map<String, Double> values = new HashMap<>();
+        long timestamp = time += 10_000;
+        aggregator.flush(timestamp, batch -> collect(batch, timestamp, values));
+        return values;
+    }
+
+    private static void collect(MetricBatch batch, long timestamp, Map<String, Double> values) {
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(timestamp, batch.getTimestamp(i));
+            values.put(batch.getId(i), batch.getValue(i));
+        }
+    }
+}
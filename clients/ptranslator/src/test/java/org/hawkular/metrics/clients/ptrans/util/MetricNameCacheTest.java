@@ -0,0 +1,70 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.clients.ptrans.util;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+public class MetricNameCacheTest {
+
+    @Test
+    public void shouldReturnSameInstanceForSameBytes() {
+        MetricNameCache cache = new MetricNameCache(16);
+        ByteBuf first = Unpooled.copiedBuffer("xxmyhostyy", US_ASCII);
+        ByteBuf second = Unpooled.copiedBuffer("myhost", US_ASCII);
+        String decoded = cache.decode(first, 2, 6);
+        assertEquals("myhost", decoded);
+        assertSame(decoded, cache.decode(second, 0, 6));
+        assertEquals(0, second.readerIndex());
+    }
+
+    @Test
+    public void shouldNotConfuseDifferentBytes() {
+        MetricNameCache cache = new MetricNameCache(1);
+        assertEquals("cpu", cache.decode(Unpooled.copiedBuffer("cpu", US_ASCII), 0, 3));
+        assertEquals("df", cache.decode(Unpooled.copiedBuffer("df", US_ASCII), 0, 2));
+        assertEquals("cpu", cache.decode(Unpooled.copiedBuffer("cpu", US_ASCII), 0, 3));
+    }
+
+    @Test
+    public void shouldJoinParts() {
+        MetricNameCache cache = new MetricNameCache(16);
+        String name = cache.join("myhost", "cpu");
+        assertEquals("myhost.cpu", name);
+        assertSame(name, cache.join("myhost", new String("cpu")));
+        assertEquals("myhost.cpu.1", cache.join(name, 1));
+        assertEquals("myhost.cpu.100", cache.join(name, 100));
+    }
+
+    @Test
+    public void shouldEvictOnCollision() {
+        MetricNameCache cache = new MetricNameCache(1);
+        String name = cache.join("a", "b");
+        assertEquals("c.d", cache.join("c", "d"));
+        String again = cache.join("a", "b");
+        assertEquals(name, again);
+        assertNotSame(name, again);
+    }
+}
@@ -17,6 +17,13 @@
 
 package org.hawkular.openshift.auth;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
 import static org.hawkular.openshift.auth.Utils.endExchange;
 
 import static io.undertow.util.Headers.AUTHORIZATION;
@@ -25,20 +32,36 @@ import static io.undertow.util.StatusCodes.FORBIDDEN;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.SecureRandom;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.codec.digest.HmacUtils;
 import org.apache.commons.codec.digest.Md5Crypt;
 import org.jboss.logging.Logger;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 
 /**
  * An authentication strategy which allows requests of users listed in an Apaches's server htpasswd file.
+ * <p>
+ * Verifying a password is CPU intensive, so successfully verified credentials are cached for a while. Cache keys are
+ * HMACs of the credentials, computed with a random key, so that passwords are not kept in memory. The file is watched
+ * and reloaded when it changes; the cache is invalidated at the same time.
  *
  * @author Thomas Segismont
  */
@@ -61,12 +84,87 @@ class BasicAuthenticator implements Authenticator {
     private static final String MD5_PREFIX = "$apr1$";
     private static final String SHA_PREFIX = "{SHA}";
 
+    private static final String CACHE_TTL_SYSPROP = "hawkular-metrics.openshift.htpasswd-cache.ttl";
+    private static final String CACHE_MAX_SIZE_SYSPROP = "hawkular-metrics.openshift.htpasswd-cache.max-size";
+    // Seconds
+    private static final long CACHE_TTL = Long.getLong(CACHE_TTL_SYSPROP, 300);
+    private static final long CACHE_MAX_SIZE = Long.getLong(CACHE_MAX_SIZE_SYSPROP, 10_000);
+
     private final HttpHandler containerHandler;
-    private final Map<String, String> users;
+    private final byte[] cacheKeySecret;
+    // Values are the users map the credentials were verified against, so that a concurrent reload cannot be missed
+    private final Cache<String, Map<String, String>> verifiedCredentials;
+    private final WatchService watchService;
+    private volatile Map<String, String> users;
 
     BasicAuthenticator(HttpHandler containerHandler) {
         this.containerHandler = containerHandler;
-        users = HTPASSWD_FILE.canRead() ? Collections.unmodifiableMap(readHtpasswdFile()) : Collections.emptyMap();
+        cacheKeySecret = new byte[32];
+        new SecureRandom().nextBytes(cacheKeySecret);
+        verifiedCredentials = CacheBuilder.newBuilder()
+                .maximumSize(CACHE_MAX_SIZE)
+                .expireAfterWrite(CACHE_TTL, SECONDS)
+                .build();
+        users = loadUsers();
+        watchService = watchHtpasswdFile();
+    }
+
+    private Map<String, String> loadUsers() {
+        return HTPASSWD_FILE.canRead() ? Collections.unmodifiableMap(readHtpasswdFile()) : Collections.emptyMap();
+    }
+
+    /**
+     * Starts a daemon thread which reloads the users when the htpasswd file is created, modified or deleted.
+     *
+     * @return the watch service, or null if the directory of the file cannot be watched
+     */
+    private WatchService watchHtpasswdFile() {
+        Path file = HTPASSWD_FILE.toPath().toAbsolutePath();
+        Path directory = file.getParent();
+        if (directory == null || !directory.toFile().isDirectory()) {
+            return null;
+        }
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        } catch (IOException e) {
+            log.warn("Could not watch the htpasswd file, changes will not be detected", e);
+            return null;
+        }
+        Path fileName = file.getFileName();
+        Thread watcher = new Thread(() -> {
+            try {
+                for (;;) {
+                    WatchKey key = watchService.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        Object context = event.context();
+                        // Kubernetes secret volumes are updated by swapping a '..data' symbolic link
+                        changed |= event.kind() == OVERFLOW || fileName.equals(context)
+                                || (context != null && context.toString().startsWith(".."));
+                    }
+                    if (changed) {
+                        reloadUsers();
+                    }
+                    if (!key.reset()) {
+                        log.warn("The htpasswd file directory is no longer accessible, changes will not be detected");
+                        return;
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // Stopped
+            }
+        }, "htpasswd-file-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        return watchService;
+    }
+
+    private void reloadUsers() {
+        users = loadUsers();
+        verifiedCredentials.invalidateAll();
+        log.infof("Reloaded htpasswd file %s, %d users", HTPASSWD_FILE, users.size());
     }
 
     private Map<String, String> readHtpasswdFile() {
@@ -86,6 +184,7 @@ class BasicAuthenticator implements Authenticator {
 
     @Override
     public void handleRequest(HttpServerExchange serverExchange) throws Exception {
+        Map<String, String> users = this.users;
         if (users.isEmpty()) {
             endExchange(serverExchange, FORBIDDEN);
             return;
@@ -104,14 +203,18 @@ class BasicAuthenticator implements Authenticator {
         String username = entries[0];
         String password = entries[1];
 
-        if (users.containsKey(username) && isAuthorized(username, password)) {
+        String cacheKey = HmacUtils.hmacSha256Hex(cacheKeySecret, usernamePassword.getBytes(UTF_8));
+        if (verifiedCredentials.getIfPresent(cacheKey) == users) {
+            containerHandler.handleRequest(serverExchange);
+        } else if (users.containsKey(username) && isAuthorized(users, username, password)) {
+            verifiedCredentials.put(cacheKey, users);
             containerHandler.handleRequest(serverExchange);
         } else {
             endExchange(serverExchange, FORBIDDEN);
         }
     }
 
-    private boolean isAuthorized(String username, String password) {
+    private boolean isAuthorized(Map<String, String> users, String username, String password) {
         String storedPassword = users.get(username);
         return (storedPassword.startsWith(MD5_PREFIX) && verifyMD5Password(storedPassword, password))
                 || (storedPassword.startsWith(SHA_PREFIX) && verifySHA1Password(storedPassword, password));
@@ -138,5 +241,12 @@ class BasicAuthenticator implements Authenticator {
 
     @Override
     public void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.debug("Failed to close the htpasswd file watch service", e);
+            }
+        }
     }
 }
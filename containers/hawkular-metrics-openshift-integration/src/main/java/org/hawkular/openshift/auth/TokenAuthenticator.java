@@ -36,6 +36,7 @@ import static io.undertow.util.StatusCodes.BAD_REQUEST;
 import static io.undertow.util.StatusCodes.CREATED;
 import static io.undertow.util.StatusCodes.FORBIDDEN;
 import static io.undertow.util.StatusCodes.INTERNAL_SERVER_ERROR;
+import static io.undertow.util.StatusCodes.UNAUTHORIZED;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -58,6 +59,7 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.function.Consumer;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.hawkular.metrics.api.jaxrs.util.MetricRegistryProvider;
 import org.jboss.logging.Logger;
 import org.xnio.BufferAllocator;
@@ -70,11 +72,15 @@ import org.xnio.XnioIoThread;
 import org.xnio.ssl.XnioSsl;
 
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
 import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.Uninterruptibles;
 
 import io.undertow.Undertow;
@@ -95,6 +101,10 @@ import io.undertow.util.StringWriteChannelListener;
 
 /**
  * An authentication/authorization strategy which relies on Openshift's OAuth server, using a non-blocking HTTP client.
+ * <p>
+ * Decisions are cached, keyed by a hash of the token, the tenant and the verb. Allowed and denied decisions expire
+ * after different delays. When a check is already in progress for the same key, the request waits for its result
+ * instead of sending another request to the Kubernetes master.
  *
  * @author Thomas Segismont
  */
@@ -142,6 +152,14 @@ class TokenAuthenticator implements Authenticator {
     private static final String TOO_MANY_PENDING_REQUESTS = "Too many pending requests";
     private static final String CLIENT_REQUEST_FAILURE = "Kubernetes client request failure";
 
+    private static final String CACHE_TTL_SYSPROP = "hawkular-metrics.openshift.auth-cache.ttl";
+    private static final String CACHE_NEGATIVE_TTL_SYSPROP = "hawkular-metrics.openshift.auth-cache.negative-ttl";
+    private static final String CACHE_MAX_SIZE_SYSPROP = "hawkular-metrics.openshift.auth-cache.max-size";
+    // Seconds
+    private static final long CACHE_TTL = Long.getLong(CACHE_TTL_SYSPROP, 60);
+    private static final long CACHE_NEGATIVE_TTL = Long.getLong(CACHE_NEGATIVE_TTL_SYSPROP, 5);
+    private static final long CACHE_MAX_SIZE = Long.getLong(CACHE_MAX_SIZE_SYSPROP, 10_000);
+
     private final HttpHandler containerHandler;
     private final ObjectMapper objectMapper;
     private final URI kubernetesMasterUri;
@@ -149,6 +167,12 @@ class TokenAuthenticator implements Authenticator {
     private final ConnectionFactory connectionFactory;
     private final Timer authLatency;
     private final Timer apiLatency;
+    private final Cache<DecisionKey, Boolean> allowedCache;
+    private final Cache<DecisionKey, Boolean> deniedCache;
+    private final ConcurrentMap<DecisionKey, PendingReview> pendingReviews;
+    private final Meter cacheHits;
+    private final Meter cacheMisses;
+    private final Meter coalescedRequests;
 
     TokenAuthenticator(HttpHandler containerHandler) {
         this.containerHandler = containerHandler;
@@ -163,6 +187,26 @@ class TokenAuthenticator implements Authenticator {
         MetricRegistry metrics = MetricRegistryProvider.INSTANCE.getMetricRegistry();
         authLatency = metrics.timer("openshift-oauth-latency");
         apiLatency = metrics.timer("openshift-oauth-kubernetes-response-time");
+        allowedCache = CacheBuilder.newBuilder()
+                .maximumSize(CACHE_MAX_SIZE)
+                .expireAfterWrite(CACHE_TTL, SECONDS)
+                .build();
+        deniedCache = CacheBuilder.newBuilder()
+                .maximumSize(CACHE_MAX_SIZE)
+                .expireAfterWrite(CACHE_NEGATIVE_TTL, SECONDS)
+                .build();
+        pendingReviews = new ConcurrentHashMap<>();
+        cacheHits = metrics.meter("openshift-oauth-cache-hits");
+        cacheMisses = metrics.meter("openshift-oauth-cache-misses");
+        coalescedRequests = metrics.meter("openshift-oauth-coalesced-requests");
+        metrics.remove("openshift-oauth-cache-hit-ratio");
+        metrics.register("openshift-oauth-cache-hit-ratio", new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(cacheHits.getOneMinuteRate(),
+                        cacheHits.getOneMinuteRate() + cacheMisses.getOneMinuteRate());
+            }
+        });
     }
 
     @Override
@@ -178,19 +222,53 @@ class TokenAuthenticator implements Authenticator {
             endExchange(serverExchange, BAD_REQUEST, MISSING_HEADERS_MSG);
             return;
         }
+        context.verb = getVerb(serverExchange.getRequestMethod());
+        context.decisionKey = new DecisionKey(context.authorizationHeader, context.tenant, context.verb);
+        Boolean allowed = getCachedDecision(context.decisionKey);
+        if (allowed != null) {
+            cacheHits.mark();
+            serverExchange.removeAttachment(AUTH_CONTEXT_KEY);
+            if (allowed) {
+                containerHandler.handleRequest(serverExchange);
+            } else {
+                endExchange(serverExchange, FORBIDDEN);
+            }
+            return;
+        }
+        cacheMisses.mark();
         // Marks the request as dispatched. If we don't do this, the exchange will be terminated by the container when
         // this method returns, but we need to wait for Kubernetes' master response.
         serverExchange.dispatch();
+        PendingReview pendingReview = new PendingReview();
+        PendingReview existing = pendingReviews.putIfAbsent(context.decisionKey, pendingReview);
+        if (existing == null) {
+            context.pendingReview = pendingReview;
+        } else if (existing.join(serverExchange)) {
+            // The result of the check in progress will be applied to this request
+            coalescedRequests.mark();
+            return;
+        }
+        // Otherwise the check in progress completed in the meantime, send a new one without coalescing
         XnioIoThread ioThread = serverExchange.getIoThread();
         ConnectionPool connectionPool = connectionPools.computeIfAbsent(ioThread, t -> {
             return new ConnectionPool(connectionFactory);
         });
         PooledConnectionWaiter waiter = createWaiter(serverExchange);
         if (!connectionPool.offer(waiter)) {
-            endExchange(serverExchange, INTERNAL_SERVER_ERROR, TOO_MANY_PENDING_REQUESTS);
+            fail(serverExchange, TOO_MANY_PENDING_REQUESTS);
         }
     }
 
+    private Boolean getCachedDecision(DecisionKey decisionKey) {
+        if (allowedCache.getIfPresent(decisionKey) != null) {
+            return Boolean.TRUE;
+        }
+        if (deniedCache.getIfPresent(decisionKey) != null) {
+            return Boolean.FALSE;
+        }
+        return null;
+    }
+
     private PooledConnectionWaiter createWaiter(HttpServerExchange serverExchange) {
         Consumer<PooledConnection> onGet = connection -> sendAuthenticationRequest(serverExchange, connection);
         Runnable onTimeout = () -> onPooledConnectionWaitTimeout(serverExchange);
@@ -202,8 +280,7 @@ class TokenAuthenticator implements Authenticator {
      */
     private void sendAuthenticationRequest(HttpServerExchange serverExchange, PooledConnection connection) {
         AuthContext context = serverExchange.getAttachment(AUTH_CONTEXT_KEY);
-        String verb = getVerb(serverExchange.getRequestMethod());
-        context.subjectAccessReview = generateSubjectAccessReview(context.tenant, verb);
+        context.subjectAccessReview = generateSubjectAccessReview(context.tenant, context.verb);
         ClientRequest request = buildClientRequest(context);
         context.clientRequestStarting();
         connection.sendRequest(request, new RequestReadyCallback(serverExchange, connection));
@@ -213,7 +290,7 @@ class TokenAuthenticator implements Authenticator {
      * Executed if no poooled connection was made available in a timely manner.
      */
     private void onPooledConnectionWaitTimeout(HttpServerExchange serverExchange) {
-        endExchange(serverExchange, INTERNAL_SERVER_ERROR, TIMEDOUT_WAITING_CONNECTION);
+        fail(serverExchange, TIMEDOUT_WAITING_CONNECTION);
     }
 
     /**
@@ -274,12 +351,42 @@ class TokenAuthenticator implements Authenticator {
         apiLatency.update(context.getClientResponseTime(), NANOSECONDS);
         authLatency.update(context.getLatency(), NANOSECONDS);
         if (allowed) {
+            allowedCache.put(context.decisionKey, Boolean.TRUE);
+            completeReview(context, exchange -> exchange.dispatch(containerHandler));
             serverExchange.dispatch(containerHandler);
         } else {
+            deniedCache.put(context.decisionKey, Boolean.FALSE);
+            completeReview(context, exchange -> endExchange(exchange, FORBIDDEN));
             endExchange(serverExchange, FORBIDDEN);
         }
     }
 
+    /**
+     * Ends the exchange with an internal server error, as well as the exchanges waiting for the same check.
+     */
+    private void fail(HttpServerExchange serverExchange, String reasonPhrase) {
+        AuthContext context = serverExchange.removeAttachment(AUTH_CONTEXT_KEY);
+        if (context != null) {
+            completeReview(context, exchange -> endExchange(exchange, INTERNAL_SERVER_ERROR, reasonPhrase));
+        }
+        endExchange(serverExchange, INTERNAL_SERVER_ERROR, reasonPhrase);
+    }
+
+    /**
+     * Applies the result of a check to the exchanges which joined it. Each exchange is resumed on its own io thread.
+     */
+    private void completeReview(AuthContext context, Consumer<HttpServerExchange> action) {
+        PendingReview pendingReview = context.pendingReview;
+        if (pendingReview == null) {
+            return;
+        }
+        context.pendingReview = null;
+        pendingReviews.remove(context.decisionKey, pendingReview);
+        for (HttpServerExchange follower : pendingReview.complete()) {
+            follower.getIoThread().execute(() -> action.accept(follower));
+        }
+    }
+
     /**
      * Called if an exception occurs at any stage in the process.
      */
@@ -293,10 +400,10 @@ class TokenAuthenticator implements Authenticator {
             context.retries++;
             PooledConnectionWaiter waiter = createWaiter(serverExchange);
             if (!connectionPool.offer(waiter)) {
-                endExchange(serverExchange, INTERNAL_SERVER_ERROR, TOO_MANY_PENDING_REQUESTS);
+                fail(serverExchange, TOO_MANY_PENDING_REQUESTS);
             }
         } else {
-            endExchange(serverExchange, INTERNAL_SERVER_ERROR, CLIENT_REQUEST_FAILURE);
+            fail(serverExchange, CLIENT_REQUEST_FAILURE);
         }
     }
 
@@ -321,6 +428,9 @@ class TokenAuthenticator implements Authenticator {
         private long creation;
         private String authorizationHeader;
         private String tenant;
+        private String verb;
+        private DecisionKey decisionKey;
+        private PendingReview pendingReview;
         private String subjectAccessReview;
         private int retries;
         private long requestStart;
@@ -431,7 +541,8 @@ class TokenAuthenticator implements Authenticator {
         protected void stringDone(String body) {
             AuthContext context = serverExchange.getAttachment(AUTH_CONTEXT_KEY);
             context.clientResponseReceived();
-            if (clientExchange.getResponse().getResponseCode() == CREATED) {
+            int responseCode = clientExchange.getResponse().getResponseCode();
+            if (responseCode == CREATED) {
                 try {
                     JsonNode jsonNode = objectMapper.readTree(body);
                     JsonNode allowedNode = jsonNode == null ? null : jsonNode.get("allowed");
@@ -440,6 +551,12 @@ class TokenAuthenticator implements Authenticator {
                 } catch (IOException e) {
                     onRequestFailure(serverExchange, connection, e);
                 }
+            } else if (responseCode == UNAUTHORIZED || responseCode == FORBIDDEN) {
+                // Invalid token, or not allowed to create subject access reviews
+                onRequestResult(serverExchange, connection, false);
+            } else {
+                onRequestFailure(serverExchange, connection,
+                        new IOException("Unexpected response code: " + responseCode));
             }
         }
 
@@ -449,6 +566,65 @@ class TokenAuthenticator implements Authenticator {
         }
     }
 
+    /**
+     * Key of the decision cache. The token is hashed so that it is not kept in memory.
+     */
+    private static final class DecisionKey {
+        private final String tokenHash;
+        private final String tenant;
+        private final String verb;
+
+        private DecisionKey(String authorizationHeader, String tenant, String verb) {
+            this.tokenHash = DigestUtils.sha256Hex(authorizationHeader);
+            this.tenant = tenant;
+            this.verb = verb;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            DecisionKey that = (DecisionKey) o;
+            return tokenHash.equals(that.tokenHash) && tenant.equals(that.tenant) && verb.equals(that.verb);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = tokenHash.hashCode();
+            result = 31 * result + tenant.hashCode();
+            result = 31 * result + verb.hashCode();
+            return result;
+        }
+    }
+
+    /**
+     * A check in progress, and the exchanges waiting for its result. Exchanges may join from any io thread.
+     */
+    private static final class PendingReview {
+        private final List<HttpServerExchange> followers = new ArrayList<>();
+        private boolean completed;
+
+        /**
+         * @return false if the check already completed
+         */
+        private synchronized boolean join(HttpServerExchange serverExchange) {
+            if (completed) {
+                return false;
+            }
+            followers.add(serverExchange);
+            return true;
+        }
+
+        private synchronized List<HttpServerExchange> complete() {
+            completed = true;
+            return followers;
+        }
+    }
+
     /**
      * A {@link ClientConnection} pool. Each {@link XnioIoThread} has its own pool. While it may not be perfect if
      * the container does not evenly assign requests to IO threads, implementation is easier as no synchronization is
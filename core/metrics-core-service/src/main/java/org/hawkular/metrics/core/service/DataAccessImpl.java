@@ -41,6 +41,7 @@ import org.hawkular.metrics.model.Tenant;
 import org.hawkular.rx.cassandra.driver.RxSession;
 import org.hawkular.rx.cassandra.driver.RxSessionImpl;
 
+import com.codahale.metrics.MetricRegistry;
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
@@ -160,6 +161,15 @@ public class DataAccessImpl implements DataAccess {
         initPreparedStatements();
     }
 
+    /**
+     * Records the latency and the errors of statements in {@code metricRegistry}, see {@link InstrumentedRxSession}.
+     */
+    public DataAccessImpl(Session session, MetricRegistry metricRegistry) {
+        this.session = session;
+        rxSession = new InstrumentedRxSession(new RxSessionImpl(session), metricRegistry);
+        initPreparedStatements();
+    }
+
     protected void initPreparedStatements() {
         insertTenant = session.prepare(
             "INSERT INTO tenants (id, retentions) VALUES (?, ?) IF NOT EXISTS");
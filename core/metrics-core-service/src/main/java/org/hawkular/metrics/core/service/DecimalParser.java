@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.core.service;
+
+/**
+ * Parses decimal numbers straight from bytes, for the text ingestion protocols.
+ * <p>
+ * Plain decimal numbers of up to {@link #MAX_EXACT_DIGITS} significant digits are parsed without allocating; in that
+ * case both the mantissa and the power of ten are exact doubles so a single division yields the correctly rounded
+ * result. Anything else (exponents, longer numbers, NaN...) falls back to {@link Double#parseDouble(String)}.
+ */
+public final class DecimalParser {
+
+    /**
+     * Reads the byte at an index of a source, so that byte arrays and other buffers can be parsed in place.
+     */
+    @FunctionalInterface
+    public interface ByteAccessor<T> {
+        byte get(T source, int index);
+    }
+
+    private static final ByteAccessor<byte[]> BYTE_ARRAY = (bytes, index) -> bytes[index];
+
+    /**
+     * Maximum number of significant digits for which the fast path is exact.
+     */
+    static final int MAX_EXACT_DIGITS = 15;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18,
+            1e19, 1e20, 1e21, 1e22
+    };
+
+    private DecimalParser() {
+    }
+
+    /**
+     * Parses the bytes between {@code start} (inclusive) and {@code end} (exclusive).
+     *
+     * @throws NumberFormatException if the bytes are not a number
+     */
+    public static double parseDouble(byte[] bytes, int start, int end) {
+        return parseDouble(bytes, BYTE_ARRAY, start, end);
+    }
+
+    /**
+     * Parses the bytes of {@code source} between {@code start} (inclusive) and {@code end} (exclusive). Passing a
+     * method reference such as {@code Buffer::getByte} as {@code accessor} does not allocate.
+     *
+     * @throws NumberFormatException if the bytes are not a number
+     */
+    public static <T> double parseDouble(T source, ByteAccessor<T> accessor, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end) {
+            byte first = accessor.get(source, i);
+            if (first == '-' || first == '+') {
+                negative = first == '-';
+                i++;
+            }
+        }
+        long mantissa = 0;
+        boolean hasDigits = false;
+        int significantDigits = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            byte b = accessor.get(source, i);
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || significantDigits == MAX_EXACT_DIGITS) {
+                return parseDoubleSlow(source, accessor, start, end);
+            }
+            hasDigits = true;
+            if (mantissa != 0 || digit != 0) {
+                significantDigits++;
+            }
+            mantissa = mantissa * 10 + digit;
+            if (fractionDigits >= 0) {
+                fractionDigits++;
+            }
+        }
+        if (!hasDigits) {
+            throw new NumberFormatException("No digits");
+        }
+        if (fractionDigits >= POWERS_OF_TEN.length) {
+            return parseDoubleSlow(source, accessor, start, end);
+        }
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private static <T> double parseDoubleSlow(T source, ByteAccessor<T> accessor, int start, int end) {
+        // Numbers are ASCII: any other byte makes Double.parseDouble fail, whatever char it is mapped to
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = (char) (accessor.get(source, i) & 0xff);
+        }
+        return Double.parseDouble(new String(chars));
+    }
+}
@@ -0,0 +1,580 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.core.service;
+
+import static java.util.stream.Collectors.toMap;
+
+import static org.hawkular.metrics.core.service.DataAccessImpl.DPART;
+import static org.hawkular.metrics.core.service.TimeUUIDUtils.getTimeUUID;
+import static org.hawkular.metrics.model.MetricType.AVAILABILITY;
+import static org.hawkular.metrics.model.MetricType.COUNTER;
+import static org.hawkular.metrics.model.MetricType.GAUGE;
+import static org.hawkular.metrics.model.MetricType.STRING;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.hawkular.metrics.core.service.InMemoryRow.Columns;
+import org.hawkular.metrics.model.AvailabilityType;
+import org.hawkular.metrics.model.DataPoint;
+import org.hawkular.metrics.model.Interval;
+import org.hawkular.metrics.model.Metric;
+import org.hawkular.metrics.model.MetricId;
+import org.hawkular.metrics.model.MetricType;
+import org.hawkular.metrics.model.Tenant;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.google.common.collect.ImmutableMap;
+
+import rx.Observable;
+import rx.functions.Func0;
+
+/**
+ * A {@link DataAccess} which keeps everything in memory, for benchmarks and single node setups without Cassandra.
+ * <p>
+ * Each table is modeled after its Cassandra counterpart: partitions are held in hash maps and the rows of a partition
+ * are sorted by clustering columns in concurrent skip lists, so that ranges, ordering and limits behave like the CQL
+ * queries of {@link DataAccessImpl}. Rows have the columns of the select clauses of these queries. Data points expire
+ * according to their TTL; expired data points are skipped, and removed, when read.
+ * <p>
+ * Operations which return an {@link Observable} are performed when it is subscribed to, on the subscribing thread.
+ * Operations which return a {@link ResultSetFuture} are performed immediately. Nothing is persisted.
+ */
+public class InMemoryDataAccess implements DataAccess {
+
+    // Columns of the rows returned by the equivalent DataAccessImpl queries
+    private static final Columns TENANT_ID_COLUMNS = new Columns("id");
+    private static final Columns TENANT_TYPE_COLUMNS = new Columns("tenant_id", "type");
+    private static final Columns TENANT_COLUMNS = new Columns("id", "retentions");
+    private static final Columns METRIC_COLUMNS = new Columns("metric", "tags", "data_retention");
+    private static final Columns TAGS_COLUMNS = new Columns("tags");
+    private static final Map<MetricType<?>, Columns> DATA_COLUMNS = ImmutableMap.of(
+            GAUGE, new Columns("time", "data_retention", "n_value", "tags"),
+            COUNTER, new Columns("time", "data_retention", "l_value", "tags"),
+            STRING, new Columns("time", "data_retention", "s_value", "tags"),
+            AVAILABILITY, new Columns("time", "data_retention", "availability", "tags"));
+    private static final Columns AVAILABILITY_WRITETIME_COLUMNS = new Columns("time", "data_retention", "availability",
+            "writetime(availability)");
+    private static final Columns RETENTIONS_COLUMNS = new Columns("tenant_id", "type", "metric", "retention");
+    private static final Columns TAG_NAME_COLUMNS = new Columns("type", "metric", "tvalue");
+    private static final Columns TAG_VALUE_COLUMNS = new Columns("tenant_id", "type", "metric");
+
+    // tenants: id -> retentions
+    private final ConcurrentMap<String, Map<String, Integer>> tenants = new ConcurrentHashMap<>();
+
+    // metrics_idx: (tenant_id, type) -> metric -> (tags, data_retention)
+    private final ConcurrentMap<PartitionKey, ConcurrentSkipListMap<String, IndexEntry>> metricsIndex =
+            new ConcurrentHashMap<>();
+
+    // retentions_idx: (tenant_id, type) -> metric -> retention
+    private final ConcurrentMap<PartitionKey, ConcurrentSkipListMap<String, Integer>> retentionsIndex =
+            new ConcurrentHashMap<>();
+
+    // metrics_tags_idx: (tenant_id, tname) -> (tvalue, type, metric)
+    private final ConcurrentMap<PartitionKey, ConcurrentSkipListSet<TagEntry>> tagsIndex = new ConcurrentHashMap<>();
+
+    // data: (tenant_id, type, metric, dpart) -> time -> value
+    private final ConcurrentMap<PartitionKey, DataPartition> data = new ConcurrentHashMap<>();
+
+    @Override
+    public Observable<ResultSet> insertTenant(Tenant tenant, boolean overwrite) {
+        return defer(() -> {
+            Map<String, Integer> retentions = tenant.getRetentionSettings().entrySet().stream()
+                    .collect(toMap(entry -> entry.getKey().getText(), Map.Entry::getValue));
+            if (overwrite) {
+                tenants.put(tenant.getId(), retentions);
+                return InMemoryResultSet.applied(true);
+            }
+            return InMemoryResultSet.applied(tenants.putIfAbsent(tenant.getId(), retentions) == null);
+        });
+    }
+
+    @Override
+    public Observable<Row> findAllTenantIds() {
+        return rows(() -> {
+            List<Row> rows = new ArrayList<>();
+            tenants.keySet().forEach(id -> rows.add(new InMemoryRow(TENANT_ID_COLUMNS, id)));
+            metricsIndex.forEach((key, metrics) -> {
+                if (!metrics.isEmpty()) {
+                    rows.add(new InMemoryRow(TENANT_TYPE_COLUMNS, key.get(0), key.get(1)));
+                }
+            });
+            return rows;
+        });
+    }
+
+    @Override
+    public Observable<Row> findTenant(String id) {
+        return rows(() -> {
+            Map<String, Integer> retentions = tenants.get(id);
+            if (retentions == null) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new InMemoryRow(TENANT_COLUMNS, id, retentions));
+        });
+    }
+
+    @Override
+    public <T> ResultSetFuture insertMetricInMetricsIndex(Metric<T> metric, boolean overwrite) {
+        MetricId<T> metricId = metric.getMetricId();
+        ConcurrentSkipListMap<String, IndexEntry> metrics = metricsIndex(metricId.getTenantId(), metricId.getType());
+        IndexEntry entry = new IndexEntry(metric.getTags(), metric.getDataRetention());
+        boolean applied;
+        if (overwrite) {
+            metrics.put(metricId.getName(), entry);
+            applied = true;
+        } else {
+            applied = metrics.putIfAbsent(metricId.getName(), entry) == null;
+        }
+        return InMemoryResultSet.immediateFuture(InMemoryResultSet.applied(applied));
+    }
+
+    @Override
+    public <T> Observable<Row> findMetric(MetricId<T> id) {
+        return rows(() -> {
+            IndexEntry entry = metricsIndex(id.getTenantId(), id.getType()).get(id.getName());
+            if (entry == null) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new InMemoryRow(METRIC_COLUMNS, id.getName(), entry.tags,
+                    entry.dataRetention));
+        });
+    }
+
+    @Override
+    public <T> Observable<ResultSet> addDataRetention(Metric<T> metric) {
+        return defer(() -> {
+            MetricId<T> metricId = metric.getMetricId();
+            dataPartition(metricId.getTenantId(), metricId.getType(), metricId.getName(), DPART).dataRetention =
+                    metric.getDataRetention();
+            return InMemoryResultSet.applied(true);
+        });
+    }
+
+    @Override
+    public <T> Observable<Row> getMetricTags(MetricId<T> id) {
+        return rows(() -> {
+            IndexEntry entry = metricsIndex(id.getTenantId(), id.getType()).get(id.getName());
+            if (entry == null) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new InMemoryRow(TAGS_COLUMNS, entry.tags));
+        });
+    }
+
+    @Override
+    public <T> Observable<ResultSet> addTags(Metric<T> metric, Map<String, String> tags) {
+        return defer(() -> {
+            MetricId<T> metricId = metric.getMetricId();
+            metricsIndex(metricId.getTenantId(), metricId.getType()).compute(metricId.getName(),
+                    (name, entry) -> entry == null ? new IndexEntry(tags, null) : entry.addTags(tags));
+            return InMemoryResultSet.applied(true);
+        });
+    }
+
+    @Override
+    public <T> Observable<ResultSet> deleteTags(Metric<T> metric, Set<String> tags) {
+        return defer(() -> {
+            MetricId<T> metricId = metric.getMetricId();
+            metricsIndex(metricId.getTenantId(), metricId.getType()).computeIfPresent(metricId.getName(),
+                    (name, entry) -> entry.deleteTags(tags));
+            return InMemoryResultSet.applied(true);
+        });
+    }
+
+    @Override
+    public <T> Observable<Integer> updateMetricsIndex(Observable<Metric<T>> metrics) {
+        return metrics.map(Metric::getMetricId)
+                .doOnNext(id -> metricsIndex(id.getTenantId(), id.getType()).putIfAbsent(id.getName(),
+                        IndexEntry.EMPTY))
+                .count()
+                .filter(count -> count > 0);
+    }
+
+    @Override
+    public <T> Observable<Row> findMetricsInMetricsIndex(String tenantId, MetricType<T> type) {
+        return rows(() -> {
+            List<Row> rows = new ArrayList<>();
+            metricsIndex(tenantId, type).forEach((name, entry) ->
+                    rows.add(new InMemoryRow(METRIC_COLUMNS, name, entry.tags, entry.dataRetention)));
+            return rows;
+        });
+    }
+
+    @Override
+    public Observable<Integer> insertGaugeData(Metric<Double> metric, int ttl) {
+        return insertData(metric, ttl, value -> value);
+    }
+
+    @Override
+    public Observable<Integer> insertStringData(Metric<String> metric, int ttl, int maxSize) {
+        return insertData(metric, ttl, value -> {
+            if (maxSize != -1 && value.length() > maxSize) {
+                throw new IllegalArgumentException(value + " exceeds max string length of " + maxSize +
+                        " characters");
+            }
+            return value;
+        });
+    }
+
+    @Override
+    public Observable<Integer> insertCounterData(Metric<Long> counter, int ttl) {
+        return insertData(counter, ttl, value -> value);
+    }
+
+    @Override
+    public Observable<Integer> insertAvailabilityData(Metric<AvailabilityType> metric, int ttl) {
+        return insertData(metric, ttl, value -> ByteBuffer.wrap(new byte[]{value.getCode()}));
+    }
+
+    private <T> Observable<Integer> insertData(Metric<T> metric, int ttl, Function<T, Object> toValue) {
+        return defer(() -> {
+            MetricId<T> metricId = metric.getMetricId();
+            List<DataPoint<T>> dataPoints = metric.getDataPoints();
+            // Values are converted first so that an invalid data point rejects the whole metric
+            Object[] values = new Object[dataPoints.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = toValue.apply(dataPoints.get(i).getValue());
+            }
+            DataPartition partition = dataPartition(metricId.getTenantId(), metricId.getType(), metricId.getName(),
+                    DPART);
+            long now = System.currentTimeMillis();
+            long expiresAt = ttl > 0 ? now + TimeUnit.SECONDS.toMillis(ttl) : Long.MAX_VALUE;
+            long writeTime = TimeUnit.MILLISECONDS.toMicros(now);
+            for (int i = 0; i < values.length; i++) {
+                DataPoint<T> dataPoint = dataPoints.get(i);
+                partition.cells.put(dataPoint.getTimestamp(), new Cell(getTimeUUID(dataPoint.getTimestamp()),
+                        values[i], dataPoint.getTags(), expiresAt, writeTime));
+            }
+            return values.length;
+        });
+    }
+
+    @Override
+    public Observable<Row> findCounterData(MetricId<Long> id, long startTime, long endTime, int limit, Order order) {
+        return findData(id, COUNTER, startTime, endTime, limit, order);
+    }
+
+    @Override
+    public Observable<Row> findGaugeData(MetricId<Double> id, long startTime, long endTime, int limit, Order order) {
+        return findData(id, GAUGE, startTime, endTime, limit, order);
+    }
+
+    @Override
+    public Observable<Row> findStringData(MetricId<String> id, long startTime, long endTime, int limit, Order order) {
+        return findData(id, STRING, startTime, endTime, limit, order);
+    }
+
+    @Override
+    public Observable<Row> findAvailabilityData(MetricId<AvailabilityType> id, long startTime, long endTime,
+            int limit, Order order) {
+        return findData(id, AVAILABILITY, startTime, endTime, limit, order);
+    }
+
+    private Observable<Row> findData(MetricId<?> id, MetricType<?> type, long startTime, long endTime, int limit,
+            Order order) {
+        return rows(() -> {
+            DataPartition partition = data.get(new PartitionKey(id.getTenantId(), type.getCode(), id.getName(),
+                    DPART));
+            if (partition == null || startTime >= endTime) {
+                return Collections.emptyList();
+            }
+            NavigableMap<Long, Cell> cells = partition.cells.subMap(startTime, true, endTime, false);
+            if (order != Order.ASC) {
+                cells = cells.descendingMap();
+            }
+            long now = System.currentTimeMillis();
+            Columns columns = DATA_COLUMNS.get(type);
+            List<Row> rows = new ArrayList<>();
+            for (Map.Entry<Long, Cell> entry : cells.entrySet()) {
+                Cell cell = entry.getValue();
+                if (cell.isExpired(now)) {
+                    partition.cells.remove(entry.getKey(), cell);
+                    continue;
+                }
+                rows.add(new InMemoryRow(columns, cell.time, partition.dataRetention, cell.value, cell.tags));
+                if (rows.size() == limit) {
+                    break;
+                }
+            }
+            return rows;
+        });
+    }
+
+    @Override
+    public Observable<Row> findAvailabilityData(MetricId<AvailabilityType> id, long timestamp) {
+        return rows(() -> {
+            DataPartition partition = data.get(new PartitionKey(id.getTenantId(), AVAILABILITY.getCode(),
+                    id.getName(), DPART));
+            Cell cell = partition == null ? null : partition.cells.get(timestamp);
+            if (cell == null || cell.isExpired(System.currentTimeMillis())) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new InMemoryRow(AVAILABILITY_WRITETIME_COLUMNS, cell.time,
+                    partition.dataRetention, cell.value, cell.writeTime));
+        });
+    }
+
+    @Override
+    public Observable<ResultSet> deleteGaugeMetric(String tenantId, String metric, Interval interval, long dpart) {
+        return defer(() -> {
+            data.remove(new PartitionKey(tenantId, GAUGE.getCode(), metric, dpart));
+            return InMemoryResultSet.applied(true);
+        });
+    }
+
+    @Override
+    public <T> ResultSetFuture findDataRetentions(String tenantId, MetricType<T> type) {
+        List<Row> rows = new ArrayList<>();
+        retentionsIndex(tenantId, type).forEach((metric, retention) ->
+                rows.add(new InMemoryRow(RETENTIONS_COLUMNS, tenantId, type.getCode(), metric, retention)));
+        return InMemoryResultSet.immediateFuture(InMemoryResultSet.of(rows));
+    }
+
+    @Override
+    public <T> Observable<ResultSet> updateRetentionsIndex(String tenantId, MetricType<T> type,
+            Map<String, Integer> retentions) {
+        return defer(() -> {
+            retentionsIndex(tenantId, type).putAll(retentions);
+            return InMemoryResultSet.applied(true);
+        });
+    }
+
+    @Override
+    public <T> ResultSetFuture updateRetentionsIndex(Metric<T> metric) {
+        MetricId<T> metricId = metric.getMetricId();
+        ConcurrentSkipListMap<String, Integer> retentions = retentionsIndex(metricId.getTenantId(),
+                metricId.getType());
+        if (metric.getDataRetention() == null) {
+            // Inserting a null value deletes the cell
+            retentions.remove(metricId.getName());
+        } else {
+            retentions.put(metricId.getName(), metric.getDataRetention());
+        }
+        return InMemoryResultSet.immediateFuture(InMemoryResultSet.applied(true));
+    }
+
+    @Override
+    public <T> Observable<ResultSet> insertIntoMetricsTagsIndex(Metric<T> metric, Map<String, String> tags) {
+        MetricId<T> metricId = metric.getMetricId();
+        return Observable.from(tags.entrySet())
+                .map(entry -> {
+                    tagsIndex.computeIfAbsent(new PartitionKey(metricId.getTenantId(), entry.getKey()),
+                            key -> new ConcurrentSkipListSet<>())
+                            .add(new TagEntry(entry.getValue(), metricId.getType().getCode(), metricId.getName()));
+                    return InMemoryResultSet.applied(true);
+                });
+    }
+
+    @Override
+    public <T> Observable<ResultSet> deleteFromMetricsTagsIndex(Metric<T> metric, Map<String, String> tags) {
+        MetricId<T> metricId = metric.getMetricId();
+        return Observable.from(tags.entrySet())
+                .map(entry -> {
+                    Set<TagEntry> entries = tagsIndex.get(new PartitionKey(metricId.getTenantId(), entry.getKey()));
+                    if (entries != null) {
+                        entries.remove(new TagEntry(entry.getValue(), metricId.getType().getCode(),
+                                metricId.getName()));
+                    }
+                    return InMemoryResultSet.applied(true);
+                });
+    }
+
+    @Override
+    public Observable<Row> findMetricsByTagName(String tenantId, String tag) {
+        return rows(() -> {
+            Set<TagEntry> entries = tagsIndex.get(new PartitionKey(tenantId, tag));
+            if (entries == null) {
+                return Collections.emptyList();
+            }
+            List<Row> rows = new ArrayList<>();
+            entries.forEach(entry -> rows.add(new InMemoryRow(TAG_NAME_COLUMNS, entry.type, entry.metric,
+                    entry.value)));
+            return rows;
+        });
+    }
+
+    @Override
+    public Observable<Row> findMetricsByTagNameValue(String tenantId, String tag, String tvalue) {
+        return rows(() -> {
+            ConcurrentSkipListSet<TagEntry> entries = tagsIndex.get(new PartitionKey(tenantId, tag));
+            if (entries == null) {
+                return Collections.emptyList();
+            }
+            List<Row> rows = new ArrayList<>();
+            for (TagEntry entry : entries.tailSet(new TagEntry(tvalue, Byte.MIN_VALUE, ""))) {
+                if (!entry.value.equals(tvalue)) {
+                    break;
+                }
+                rows.add(new InMemoryRow(TAG_VALUE_COLUMNS, tenantId, entry.type, entry.metric));
+            }
+            return rows;
+        });
+    }
+
+    private ConcurrentSkipListMap<String, IndexEntry> metricsIndex(String tenantId, MetricType<?> type) {
+        return metricsIndex.computeIfAbsent(new PartitionKey(tenantId, type.getCode()),
+                key -> new ConcurrentSkipListMap<>());
+    }
+
+    private ConcurrentSkipListMap<String, Integer> retentionsIndex(String tenantId, MetricType<?> type) {
+        return retentionsIndex.computeIfAbsent(new PartitionKey(tenantId, type.getCode()),
+                key -> new ConcurrentSkipListMap<>());
+    }
+
+    private DataPartition dataPartition(String tenantId, MetricType<?> type, String metric, long dpart) {
+        return data.computeIfAbsent(new PartitionKey(tenantId, type.getCode(), metric, dpart),
+                key -> new DataPartition());
+    }
+
+    private static <T> Observable<T> defer(Func0<T> operation) {
+        return Observable.defer(() -> Observable.just(operation.call()));
+    }
+
+    private static Observable<Row> rows(Func0<List<Row>> query) {
+        return Observable.defer(() -> Observable.from(query.call()));
+    }
+
+    private static final class PartitionKey {
+        private final Object[] components;
+        private final int hashCode;
+
+        PartitionKey(Object... components) {
+            this.components = components;
+            hashCode = Arrays.hashCode(components);
+        }
+
+        Object get(int i) {
+            return components[i];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            return Arrays.equals(components, ((PartitionKey) o).components);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class IndexEntry {
+        static final IndexEntry EMPTY = new IndexEntry(Collections.emptyMap(), null);
+
+        final Map<String, String> tags;
+        final Integer dataRetention;
+
+        IndexEntry(Map<String, String> tags, Integer dataRetention) {
+            this.tags = tags == null || tags.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(
+                    new HashMap<>(tags));
+            this.dataRetention = dataRetention;
+        }
+
+        IndexEntry addTags(Map<String, String> added) {
+            Map<String, String> updated = new HashMap<>(tags);
+            updated.putAll(added);
+            return new IndexEntry(updated, dataRetention);
+        }
+
+        IndexEntry deleteTags(Set<String> deleted) {
+            Map<String, String> updated = new HashMap<>(tags);
+            updated.keySet().removeAll(deleted);
+            return new IndexEntry(updated, dataRetention);
+        }
+    }
+
+    private static final class TagEntry implements Comparable<TagEntry> {
+        final String value;
+        final byte type;
+        final String metric;
+
+        TagEntry(String value, byte type, String metric) {
+            this.value = value;
+            this.type = type;
+            this.metric = metric;
+        }
+
+        @Override
+        public int compareTo(TagEntry other) {
+            int result = value.compareTo(other.value);
+            if (result == 0) {
+                result = Byte.compare(type, other.type);
+            }
+            return result == 0 ? metric.compareTo(other.metric) : result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TagEntry && compareTo((TagEntry) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return (value.hashCode() * 31 + type) * 31 + metric.hashCode();
+        }
+    }
+
+    private static final class DataPartition {
+        // data_retention is a static column
+        volatile Integer dataRetention;
+        final ConcurrentSkipListMap<Long, Cell> cells = new ConcurrentSkipListMap<>();
+    }
+
+    private static final class Cell {
+        final UUID time;
+        final Object value;
+        final Map<String, String> tags;
+        final long expiresAt;
+        // In microseconds, like WRITETIME
+        final long writeTime;
+
+        Cell(UUID time, Object value, Map<String, String> tags, long expiresAt, long writeTime) {
+            this.time = time;
+            this.value = value;
+            this.tags = tags;
+            this.expiresAt = expiresAt;
+            this.writeTime = writeTime;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt <= now;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.core.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * A fully fetched result set returned by {@link InMemoryDataAccess}.
+ * <p>
+ * {@link #getColumnDefinitions()} and {@link #getExecutionInfo()} are not supported: the driver does not expose
+ * constructors for their return types, and no query is ever executed. {@link DataAccess} consumers only read rows.
+ */
+class InMemoryResultSet implements ResultSet {
+    private static final InMemoryResultSet APPLIED = new InMemoryResultSet(Collections.emptyList(), true);
+    private static final InMemoryResultSet NOT_APPLIED = new InMemoryResultSet(Collections.emptyList(), false);
+
+    private final List<Row> rows;
+    private final boolean applied;
+    private int index;
+
+    private InMemoryResultSet(List<Row> rows, boolean applied) {
+        this.rows = rows;
+        this.applied = applied;
+    }
+
+    /**
+     * @return an empty result set, as returned by updates; {@link #wasApplied()} is false if a conditional update was
+     * rejected
+     */
+    static ResultSet applied(boolean applied) {
+        return applied ? APPLIED : NOT_APPLIED;
+    }
+
+    static ResultSet of(List<Row> rows) {
+        return new InMemoryResultSet(new ArrayList<>(rows), true);
+    }
+
+    static ResultSetFuture immediateFuture(ResultSet resultSet) {
+        ImmediateResultSetFuture future = new ImmediateResultSetFuture();
+        future.set(resultSet);
+        return future;
+    }
+
+    @Override
+    public ColumnDefinitions getColumnDefinitions() {
+        throw new UnsupportedOperationException("Column definitions are not available for in-memory results");
+    }
+
+    @Override
+    public synchronized boolean isExhausted() {
+        return index >= rows.size();
+    }
+
+    @Override
+    public synchronized Row one() {
+        return isExhausted() ? null : rows.get(index++);
+    }
+
+    @Override
+    public synchronized List<Row> all() {
+        List<Row> remaining = new ArrayList<>(rows.subList(index, rows.size()));
+        index = rows.size();
+        return remaining;
+    }
+
+    @Override
+    public Iterator<Row> iterator() {
+        return new Iterator<Row>() {
+            @Override
+            public boolean hasNext() {
+                return !isExhausted();
+            }
+
+            @Override
+            public Row next() {
+                return one();
+            }
+        };
+    }
+
+    @Override
+    public synchronized int getAvailableWithoutFetching() {
+        return rows.size() - index;
+    }
+
+    @Override
+    public boolean isFullyFetched() {
+        return true;
+    }
+
+    @Override
+    public ListenableFuture<ResultSet> fetchMoreResults() {
+        return Futures.immediateFuture(this);
+    }
+
+    @Override
+    public ExecutionInfo getExecutionInfo() {
+        throw new UnsupportedOperationException("No query was executed for in-memory results");
+    }
+
+    @Override
+    public List<ExecutionInfo> getAllExecutionInfo() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean wasApplied() {
+        return applied;
+    }
+
+    private static class ImmediateResultSetFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+        @Override
+        protected boolean set(ResultSet value) {
+            return super.set(value);
+        }
+
+        @Override
+        public ResultSet getUninterruptibly() {
+            return Futures.getUnchecked(this);
+        }
+
+        @Override
+        public ResultSet getUninterruptibly(long timeout, TimeUnit unit) throws TimeoutException {
+            try {
+                return Uninterruptibles.getUninterruptibly(this, timeout, unit);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+}
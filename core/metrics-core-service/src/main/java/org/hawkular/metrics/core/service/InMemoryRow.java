@@ -0,0 +1,413 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.core.service;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.LocalDate;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Token;
+import com.datastax.driver.core.TupleValue;
+import com.datastax.driver.core.TypeCodec;
+import com.datastax.driver.core.UDTValue;
+import com.google.common.reflect.TypeToken;
+
+/**
+ * A row returned by {@link InMemoryDataAccess}. Rows have the {@link Columns columns} of the select clause of the
+ * equivalent {@link DataAccessImpl} query, accessible by index or by name. Like the driver does, null primitives read
+ * as zero or false and null collections as empty collections; values are not converted between CQL types.
+ * <p>
+ * Column definitions, tokens, user types and tuples are not supported: the driver does not expose constructors for
+ * column definitions and tokens, and the in-memory tables have neither user types nor tuples.
+ */
+class InMemoryRow implements Row {
+
+    /**
+     * The names of the columns of a row, in order. Like CQL identifiers, names are case-insensitive.
+     */
+    static class Columns {
+        private final Map<String, Integer> indexes = new HashMap<>();
+
+        Columns(String... names) {
+            for (int i = 0; i < names.length; i++) {
+                indexes.put(names[i].toLowerCase(Locale.ROOT), i);
+            }
+        }
+
+        int size() {
+            return indexes.size();
+        }
+
+        int indexOf(String name) {
+            Integer index = indexes.get(name.toLowerCase(Locale.ROOT));
+            if (index == null) {
+                throw new IllegalArgumentException(name + " is not a column defined in this metadata");
+            }
+            return index;
+        }
+    }
+
+    private final Columns columns;
+    private final Object[] values;
+
+    InMemoryRow(Columns columns, Object... values) {
+        if (values.length != columns.size()) {
+            throw new IllegalArgumentException("Expected " + columns.size() + " values, got " + values.length);
+        }
+        this.columns = columns;
+        this.values = values;
+    }
+
+    @Override
+    public ColumnDefinitions getColumnDefinitions() {
+        throw new UnsupportedOperationException("Column definitions are not available in memory");
+    }
+
+    @Override
+    public Token getToken(int i) {
+        throw new UnsupportedOperationException("Tokens are not available in memory");
+    }
+
+    @Override
+    public Token getToken(String name) {
+        return getToken(columns.indexOf(name));
+    }
+
+    @Override
+    public Token getPartitionKeyToken() {
+        throw new UnsupportedOperationException("Tokens are not available in memory");
+    }
+
+    @Override
+    public boolean isNull(int i) {
+        return values[i] == null;
+    }
+
+    @Override
+    public boolean getBool(int i) {
+        return values[i] != null && (Boolean) values[i];
+    }
+
+    @Override
+    public byte getByte(int i) {
+        return values[i] == null ? 0 : (Byte) values[i];
+    }
+
+    @Override
+    public short getShort(int i) {
+        return values[i] == null ? 0 : (Short) values[i];
+    }
+
+    @Override
+    public int getInt(int i) {
+        return values[i] == null ? 0 : (Integer) values[i];
+    }
+
+    @Override
+    public long getLong(int i) {
+        return values[i] == null ? 0 : (Long) values[i];
+    }
+
+    @Override
+    public Date getTimestamp(int i) {
+        return (Date) values[i];
+    }
+
+    @Override
+    public LocalDate getDate(int i) {
+        return (LocalDate) values[i];
+    }
+
+    @Override
+    public long getTime(int i) {
+        return getLong(i);
+    }
+
+    @Override
+    public float getFloat(int i) {
+        return values[i] == null ? 0 : (Float) values[i];
+    }
+
+    @Override
+    public double getDouble(int i) {
+        return values[i] == null ? 0 : (Double) values[i];
+    }
+
+    @Override
+    public ByteBuffer getBytesUnsafe(int i) {
+        return getBytes(i);
+    }
+
+    @Override
+    public ByteBuffer getBytes(int i) {
+        return values[i] == null ? null : ((ByteBuffer) values[i]).duplicate();
+    }
+
+    @Override
+    public String getString(int i) {
+        return (String) values[i];
+    }
+
+    @Override
+    public BigInteger getVarint(int i) {
+        return (BigInteger) values[i];
+    }
+
+    @Override
+    public BigDecimal getDecimal(int i) {
+        return (BigDecimal) values[i];
+    }
+
+    @Override
+    public UUID getUUID(int i) {
+        return (UUID) values[i];
+    }
+
+    @Override
+    public InetAddress getInet(int i) {
+        return (InetAddress) values[i];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getList(int i, Class<T> elementsClass) {
+        List<T> list = (List<T>) values[i];
+        return list == null ? Collections.emptyList() : list;
+    }
+
+    @Override
+    public <T> List<T> getList(int i, TypeToken<T> elementsType) {
+        return getList(i, (Class<T>) null);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Set<T> getSet(int i, Class<T> elementsClass) {
+        Set<T> set = (Set<T>) values[i];
+        return set == null ? Collections.emptySet() : set;
+    }
+
+    @Override
+    public <T> Set<T> getSet(int i, TypeToken<T> elementsType) {
+        return getSet(i, (Class<T>) null);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> Map<K, V> getMap(int i, Class<K> keysClass, Class<V> valuesClass) {
+        Map<K, V> map = (Map<K, V>) values[i];
+        return map == null ? Collections.emptyMap() : map;
+    }
+
+    @Override
+    public <K, V> Map<K, V> getMap(int i, TypeToken<K> keysType, TypeToken<V> valuesType) {
+        return getMap(i, (Class<K>) null, (Class<V>) null);
+    }
+
+    @Override
+    public UDTValue getUDTValue(int i) {
+        throw new UnsupportedOperationException("User types are not available in memory");
+    }
+
+    @Override
+    public TupleValue getTupleValue(int i) {
+        throw new UnsupportedOperationException("Tuples are not available in memory");
+    }
+
+    @Override
+    public Object getObject(int i) {
+        return values[i];
+    }
+
+    @Override
+    public <T> T get(int i, Class<T> targetClass) {
+        return targetClass.cast(values[i]);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(int i, TypeToken<T> targetType) {
+        return (T) targetType.getRawType().cast(values[i]);
+    }
+
+    @Override
+    public <T> T get(int i, TypeCodec<T> codec) {
+        return get(i, codec.getJavaType());
+    }
+
+    @Override
+    public boolean isNull(String name) {
+        return isNull(columns.indexOf(name));
+    }
+
+    @Override
+    public boolean getBool(String name) {
+        return getBool(columns.indexOf(name));
+    }
+
+    @Override
+    public byte getByte(String name) {
+        return getByte(columns.indexOf(name));
+    }
+
+    @Override
+    public short getShort(String name) {
+        return getShort(columns.indexOf(name));
+    }
+
+    @Override
+    public int getInt(String name) {
+        return getInt(columns.indexOf(name));
+    }
+
+    @Override
+    public long getLong(String name) {
+        return getLong(columns.indexOf(name));
+    }
+
+    @Override
+    public Date getTimestamp(String name) {
+        return getTimestamp(columns.indexOf(name));
+    }
+
+    @Override
+    public LocalDate getDate(String name) {
+        return getDate(columns.indexOf(name));
+    }
+
+    @Override
+    public long getTime(String name) {
+        return getTime(columns.indexOf(name));
+    }
+
+    @Override
+    public float getFloat(String name) {
+        return getFloat(columns.indexOf(name));
+    }
+
+    @Override
+    public double getDouble(String name) {
+        return getDouble(columns.indexOf(name));
+    }
+
+    @Override
+    public ByteBuffer getBytesUnsafe(String name) {
+        return getBytesUnsafe(columns.indexOf(name));
+    }
+
+    @Override
+    public ByteBuffer getBytes(String name) {
+        return getBytes(columns.indexOf(name));
+    }
+
+    @Override
+    public String getString(String name) {
+        return getString(columns.indexOf(name));
+    }
+
+    @Override
+    public BigInteger getVarint(String name) {
+        return getVarint(columns.indexOf(name));
+    }
+
+    @Override
+    public BigDecimal getDecimal(String name) {
+        return getDecimal(columns.indexOf(name));
+    }
+
+    @Override
+    public UUID getUUID(String name) {
+        return getUUID(columns.indexOf(name));
+    }
+
+    @Override
+    public InetAddress getInet(String name) {
+        return getInet(columns.indexOf(name));
+    }
+
+    @Override
+    public <T> List<T> getList(String name, Class<T> elementsClass) {
+        return getList(columns.indexOf(name), elementsClass);
+    }
+
+    @Override
+    public <T> List<T> getList(String name, TypeToken<T> elementsType) {
+        return getList(columns.indexOf(name), elementsType);
+    }
+
+    @Override
+    public <T> Set<T> getSet(String name, Class<T> elementsClass) {
+        return getSet(columns.indexOf(name), elementsClass);
+    }
+
+    @Override
+    public <T> Set<T> getSet(String name, TypeToken<T> elementsType) {
+        return getSet(columns.indexOf(name), elementsType);
+    }
+
+    @Override
+    public <K, V> Map<K, V> getMap(String name, Class<K> keysClass, Class<V> valuesClass) {
+        return getMap(columns.indexOf(name), keysClass, valuesClass);
+    }
+
+    @Override
+    public <K, V> Map<K, V> getMap(String name, TypeToken<K> keysType, TypeToken<V> valuesType) {
+        return getMap(columns.indexOf(name), keysType, valuesType);
+    }
+
+    @Override
+    public UDTValue getUDTValue(String name) {
+        return getUDTValue(columns.indexOf(name));
+    }
+
+    @Override
+    public TupleValue getTupleValue(String name) {
+        return getTupleValue(columns.indexOf(name));
+    }
+
+    @Override
+    public Object getObject(String name) {
+        return getObject(columns.indexOf(name));
+    }
+
+    @Override
+    public <T> T get(String name, Class<T> targetClass) {
+        return get(columns.indexOf(name), targetClass);
+    }
+
+    @Override
+    public <T> T get(String name, TypeToken<T> targetType) {
+        return get(columns.indexOf(name), targetType);
+    }
+
+    @Override
+    public <T> T get(String name, TypeCodec<T> codec) {
+        return get(columns.indexOf(name), codec);
+    }
+}
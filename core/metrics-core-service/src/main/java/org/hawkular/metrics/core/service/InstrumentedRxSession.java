@@ -0,0 +1,233 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.core.service;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hawkular.rx.cassandra.driver.ResultSetToRowsTransformer;
+import org.hawkular.rx.cassandra.driver.RxSession;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func0;
+
+/**
+ * Records the latency and the errors of each statement executed through a {@link RxSession}, and the size of batches.
+ * <p>
+ * Statements are identified by their CQL text, so that all executions of a prepared statement share the same metrics.
+ * The statement is set as a {@code statement} label of the {@code cassandra-statement-latency} timer and the
+ * {@code cassandra-statement-errors} meter, e.g. {@code cassandra-statement-latency{statement="SELECT ..."}}. Batches
+ * are identified by the first statement they hold. Sizes of batches are recorded in the {@code cassandra-batch-size}
+ * histogram.
+ */
+public class InstrumentedRxSession implements RxSession {
+
+    private final RxSession delegate;
+    private final MetricRegistry metricRegistry;
+    private final Histogram batchSizes;
+    private final ConcurrentMap<String, StatementMetrics> statementMetrics = new ConcurrentHashMap<>();
+
+    public InstrumentedRxSession(RxSession delegate, MetricRegistry metricRegistry) {
+        this.delegate = delegate;
+        this.metricRegistry = metricRegistry;
+        batchSizes = metricRegistry.histogram("cassandra-batch-size");
+    }
+
+    @Override
+    public String getLoggedKeyspace() {
+        return delegate.getLoggedKeyspace();
+    }
+
+    @Override
+    public RxSession init() {
+        delegate.init();
+        return this;
+    }
+
+    @Override
+    public Observable<ResultSet> execute(String query) {
+        return instrument(query, () -> delegate.execute(query));
+    }
+
+    @Override
+    public Observable<Row> executeAndFetch(String query) {
+        return execute(query).compose(new ResultSetToRowsTransformer());
+    }
+
+    @Override
+    public Observable<ResultSet> execute(String query, Scheduler scheduler) {
+        return instrument(query, () -> delegate.execute(query, scheduler));
+    }
+
+    @Override
+    public Observable<Row> executeAndFetch(String query, Scheduler scheduler) {
+        return execute(query, scheduler).compose(new ResultSetToRowsTransformer(scheduler));
+    }
+
+    @Override
+    public Observable<ResultSet> execute(String query, Object... values) {
+        return instrument(query, () -> delegate.execute(query, values));
+    }
+
+    @Override
+    public Observable<Row> executeAndFetch(String query, Object... values) {
+        return execute(query, values).compose(new ResultSetToRowsTransformer());
+    }
+
+    @Override
+    public Observable<ResultSet> execute(String query, Scheduler scheduler, Object... values) {
+        return instrument(query, () -> delegate.execute(query, scheduler, values));
+    }
+
+    @Override
+    public Observable<Row> executeAndFetch(String query, Scheduler scheduler, Object... values) {
+        return execute(query, scheduler, values).compose(new ResultSetToRowsTransformer(scheduler));
+    }
+
+    @Override
+    public Observable<ResultSet> execute(Statement statement) {
+        return instrument(statement, () -> delegate.execute(statement));
+    }
+
+    @Override
+    public Observable<Row> executeAndFetch(Statement statement) {
+        return execute(statement).compose(new ResultSetToRowsTransformer());
+    }
+
+    @Override
+    public Observable<ResultSet> execute(Statement statement, Scheduler scheduler) {
+        return instrument(statement, () -> delegate.execute(statement, scheduler));
+    }
+
+    @Override
+    public Observable<Row> executeAndFetch(Statement statement, Scheduler scheduler) {
+        return execute(statement, scheduler).compose(new ResultSetToRowsTransformer(scheduler));
+    }
+
+    @Override
+    public Observable<PreparedStatement> prepare(String query) {
+        return delegate.prepare(query);
+    }
+
+    @Override
+    public Observable<PreparedStatement> prepare(String query, Scheduler scheduler) {
+        return delegate.prepare(query, scheduler);
+    }
+
+    @Override
+    public Observable<PreparedStatement> prepare(RegularStatement statement) {
+        return delegate.prepare(statement);
+    }
+
+    @Override
+    public Observable<PreparedStatement> prepare(RegularStatement statement, Scheduler scheduler) {
+        return delegate.prepare(statement, scheduler);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return delegate.isClosed();
+    }
+
+    @Override
+    public Cluster getCluster() {
+        return delegate.getCluster();
+    }
+
+    @Override
+    public Session getSession() {
+        return delegate.getSession();
+    }
+
+    @Override
+    public Session.State getState() {
+        return delegate.getState();
+    }
+
+    private Observable<ResultSet> instrument(Statement statement, Func0<Observable<ResultSet>> execute) {
+        if (statement instanceof BatchStatement) {
+            batchSizes.update(((BatchStatement) statement).size());
+        }
+        return instrument(getQuery(statement), execute);
+    }
+
+    private Observable<ResultSet> instrument(String query, Func0<Observable<ResultSet>> execute) {
+        StatementMetrics metrics = statementMetrics.computeIfAbsent(query, StatementMetrics::new);
+        // The driver sends the query as soon as the observable is created, not when it is subscribed
+        Timer.Context context = metrics.latency.time();
+        Observable<ResultSet> resultSet;
+        try {
+            resultSet = execute.call();
+        } catch (RuntimeException e) {
+            metrics.errors.mark();
+            throw e;
+        }
+        return resultSet
+                .doOnNext(rs -> context.stop())
+                .doOnError(t -> metrics.errors.mark());
+    }
+
+    private static String getQuery(Statement statement) {
+        if (statement instanceof BoundStatement) {
+            return ((BoundStatement) statement).preparedStatement().getQueryString();
+        }
+        if (statement instanceof RegularStatement) {
+            return ((RegularStatement) statement).getQueryString();
+        }
+        if (statement instanceof BatchStatement) {
+            Iterator<Statement> statements = ((BatchStatement) statement).getStatements().iterator();
+            return statements.hasNext() ? "BATCH " + getQuery(statements.next()) : "BATCH";
+        }
+        return statement.getClass().getSimpleName();
+    }
+
+    private static String label(String name, String query) {
+        String value = query.trim().replaceAll("\\s+", " ").replace("\\", "\\\\").replace("\"", "\\\"");
+        return name + "{statement=\"" + value + "\"}";
+    }
+
+    private class StatementMetrics {
+        final Timer latency;
+        final Meter errors;
+
+        StatementMetrics(String query) {
+            latency = metricRegistry.timer(label("cassandra-statement-latency", query));
+            errors = metricRegistry.meter(label("cassandra-statement-errors", query));
+        }
+    }
+}
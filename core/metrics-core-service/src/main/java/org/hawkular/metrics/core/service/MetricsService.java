@@ -22,6 +22,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.function.Predicate;
 
+import org.hawkular.metrics.core.service.events.OverflowPolicy;
 import org.hawkular.metrics.model.AvailabilityBucketPoint;
 import org.hawkular.metrics.model.AvailabilityType;
 import org.hawkular.metrics.model.Buckets;
@@ -46,6 +47,8 @@ import rx.functions.Func1;
  */
 public interface MetricsService {
 
+    int DEFAULT_INSERTED_DATA_EVENTS_CAPACITY = 10_000;
+
     /**
      * <p>
      * This method should be call before ever inserting any data to ensure that the tenant id is unique and to establish
@@ -334,9 +337,23 @@ public interface MetricsService {
     Observable<List<long[]>> getPeriods(MetricId<Double> id, Predicate<Double> predicate, long start, long end);
 
     /**
+     * Equivalent to {@link #insertedDataEvents(String, int, OverflowPolicy)} with a generated subscriber name, a
+     * capacity of {@link #DEFAULT_INSERTED_DATA_EVENTS_CAPACITY} and {@link OverflowPolicy#DROP_OLDEST}.
+     *
      * @return a hot {@link Observable} emitting {@link Metric} events after data has been inserted
      */
     Observable<Metric<?>> insertedDataEvents();
 
+    /**
+     * Each subscription gets its own bounded buffer of events, so that a slow subscriber does not hold up inserts or
+     * accumulate events without bounds.
+     *
+     * @param subscriberName names the delivery thread and the lag and drop metrics of the subscription
+     * @param capacity       maximum number of events buffered for the subscription
+     * @param overflowPolicy what to do when an event is inserted while the buffer is full
+     * @return a hot {@link Observable} emitting {@link Metric} events after data has been inserted
+     */
+    Observable<Metric<?>> insertedDataEvents(String subscriberName, int capacity, OverflowPolicy overflowPolicy);
+
     <T> Func1<Metric<T>, Boolean> idFilter(String regexp);
 }
@@ -37,13 +37,19 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
+import org.hawkular.metrics.core.service.cache.StatsCache;
+import org.hawkular.metrics.core.service.cost.QueryCost;
+import org.hawkular.metrics.core.service.cost.QueryCostModel;
+import org.hawkular.metrics.core.service.events.BoundedFanOut;
+import org.hawkular.metrics.core.service.events.OverflowPolicy;
 import org.hawkular.metrics.core.service.log.CoreLogger;
 import org.hawkular.metrics.core.service.log.CoreLogging;
 import org.hawkular.metrics.core.service.transformers.ItemsToSetTransformer;
@@ -74,6 +80,7 @@ import org.hawkular.metrics.sysconfig.ConfigurationService;
 import org.hawkular.metrics.tasks.api.TaskScheduler;
 import org.joda.time.Duration;
 
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
@@ -95,7 +102,6 @@ import rx.functions.Func1;
 import rx.functions.Func2;
 import rx.functions.Func5;
 import rx.observable.ListenableFutureObservable;
-import rx.subjects.PublishSubject;
 
 /**
  * @author John Sanda
@@ -140,7 +146,8 @@ public class MetricsServiceImpl implements MetricsService {
      * Note that while user specifies the durations in hours, we store them in seconds.
      */
     private final Map<DataRetentionKey, Integer> dataRetentions = new ConcurrentHashMap<>();
-    private final PublishSubject<Metric<?>> insertedDataPointEvents = PublishSubject.create();
+    private final BoundedFanOut<Metric<?>> insertedDataPointEvents = new BoundedFanOut<>("inserted-data-events");
+    private final AtomicInteger insertedDataSubscribers = new AtomicInteger();
 
     private ListeningExecutorService metricsTasks;
 
@@ -153,6 +160,13 @@ public class MetricsServiceImpl implements MetricsService {
 
     private MetricRegistry metricRegistry;
 
+    private StatsCache statsCache;
+
+    /**
+     * Limits the cost of stats queries over many metrics, unlimited by default.
+     */
+    private QueryCostModel queryCostModel = new QueryCostModel(10_000, 0, 0);
+
     /**
      * Functions used to insert metric data points.
      */
@@ -168,6 +182,11 @@ public class MetricsServiceImpl implements MetricsService {
      */
     private Map<MetricType<?>, Timer> dataPointReadTimers;
 
+    /**
+     * Measures the number of rows read by queries for data points.
+     */
+    private Map<MetricType<?>, Histogram> dataPointReadRows;
+
     /**
      * Functions used to find metric data points.
      */
@@ -191,10 +210,19 @@ public class MetricsServiceImpl implements MetricsService {
             MetricRegistry metricRegistry) {
         session.execute("USE " + keyspace);
         log.infoKeyspaceUsed(keyspace);
+        startUp(metricRegistry);
+    }
+
+    /**
+     * Starts the service without a Cassandra session, e.g. with an {@link InMemoryDataAccess}. The data access must be
+     * set beforehand. If no configuration service is set, strings have no size limit.
+     */
+    public void startUp(MetricRegistry metricRegistry) {
         metricsTasks = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4, new MetricsThreadFactory()));
         loadDataRetentions();
 
         this.metricRegistry = metricRegistry;
+        queryCostModel.setMetricRegistry(metricRegistry);
 
         dataPointInserters = ImmutableMap
                 .<MetricType<?>, Func2<? extends Metric<?>, Integer,
@@ -258,8 +286,37 @@ public class MetricsServiceImpl implements MetricsService {
                 .put(STRING, Functions::getStringDataPoint)
                 .build();
 
-        initStringSize(session);
+        initStringSize();
         initMetrics();
+        initStatsCache();
+    }
+
+    private void initStatsCache() {
+        if (statsCache == null) {
+            return;
+        }
+        statsCache.registerMetrics(metricRegistry);
+        subscribeStatsCache();
+    }
+
+    /**
+     * Events are published from driver callback threads, which must not block. When events are dropped, or the
+     * subscription fails, the whole cache is cleared instead.
+     */
+    private void subscribeStatsCache() {
+        AtomicBoolean eventsDropped = new AtomicBoolean();
+        insertedDataPointEvents.observe("stats-cache", DEFAULT_INSERTED_DATA_EVENTS_CAPACITY,
+                OverflowPolicy.DROP_OLDEST, metricRegistry, () -> eventsDropped.set(true))
+                .subscribe(metric -> {
+                    if (eventsDropped.getAndSet(false)) {
+                        statsCache.invalidateAll();
+                    }
+                    statsCache.invalidate(metric);
+                }, t -> {
+                    log.errorStatsCacheInvalidationFailed(t);
+                    statsCache.invalidateAll();
+                    subscribeStatsCache();
+                });
     }
 
     void loadDataRetentions() {
@@ -295,7 +352,7 @@ public class MetricsServiceImpl implements MetricsService {
                 .put(GAUGE, metricRegistry.meter("gauge-inserts"))
                 .put(AVAILABILITY, metricRegistry.meter("availability-inserts"))
                 .put(COUNTER, metricRegistry.meter("counter-inserts"))
-                .put(COUNTER_RATE, metricRegistry.meter("gauge-inserts"))
+                .put(COUNTER_RATE, metricRegistry.meter("counter-rate-inserts"))
                 .put(STRING, metricRegistry.meter("string-inserts"))
                 .build();
         dataPointReadTimers = ImmutableMap.<MetricType<?>, Timer> builder()
@@ -304,11 +361,19 @@ public class MetricsServiceImpl implements MetricsService {
                 .put(COUNTER, metricRegistry.timer("counter-read-latency"))
                 .put(STRING, metricRegistry.timer("string-read-latency"))
                 .build();
+        dataPointReadRows = ImmutableMap.<MetricType<?>, Histogram> builder()
+                .put(GAUGE, metricRegistry.histogram("gauge-read-rows"))
+                .put(AVAILABILITY, metricRegistry.histogram("availability-read-rows"))
+                .put(COUNTER, metricRegistry.histogram("counter-read-rows"))
+                .put(STRING, metricRegistry.histogram("string-read-rows"))
+                .build();
     }
 
-    private void initStringSize(Session session) {
-        Configuration configuration = configurationService.load("org.hawkular.metrics").toBlocking()
-                .lastOrDefault(null);
+    private void initStringSize() {
+        Configuration configuration = null;
+        if (configurationService != null) {
+            configuration = configurationService.load("org.hawkular.metrics").toBlocking().lastOrDefault(null);
+        }
         if (configuration == null) {
             maxStringSize = -1;  // no size limit
         } else {
@@ -368,6 +433,17 @@ public class MetricsServiceImpl implements MetricsService {
         this.configurationService = configurationService;
     }
 
+    /**
+     * Caches the results of single metric gauge and counter stats queries. Must be set before the service starts.
+     */
+    public void setStatsCache(StatsCache statsCache) {
+        this.statsCache = statsCache;
+    }
+
+    public void setQueryCostModel(QueryCostModel queryCostModel) {
+        this.queryCostModel = queryCostModel;
+    }
+
     public void setDefaultTTL(int defaultTTL) {
         this.defaultTTL = Duration.standardDays(defaultTTL).toStandardSeconds().getSeconds();
     }
@@ -653,7 +729,7 @@ public class MetricsServiceImpl implements MetricsService {
         Observable<Integer> updates = metrics
                 .filter(metric -> !metric.getDataPoints().isEmpty())
                 .flatMap(metric -> inserter.call(metric, getTTL(metric.getMetricId()))
-                        .doOnNext(i -> insertedDataPointEvents.onNext(metric)))
+                        .doOnNext(i -> insertedDataPointEvents.publish(metric)))
                 .doOnNext(meter::mark);
 
         Observable<Integer> indexUpdates = dataAccess.updateMetricsIndex(metrics)
@@ -687,10 +763,20 @@ public class MetricsServiceImpl implements MetricsService {
         checkArgument(isValidTimeRange(start, end), "Invalid time range");
         MetricType<T> metricType = metricId.getType();
         Timer timer = getDataPointFindTimer(metricType);
+        Histogram rows = dataPointReadRows.get(metricType);
         Func5<MetricId<T>, Long, Long, Integer, Order, Observable<Row>> finder = getDataPointFinder(metricType);
         Func1<Row, DataPoint<T>> mapper = getDataPointMapper(metricType);
-        return time(timer, () -> finder.call(metricId, start, end, limit, order)
-                .map(mapper));
+        return Observable.defer(() -> {
+            Timer.Context context = timer.time();
+            AtomicInteger count = new AtomicInteger();
+            return finder.call(metricId, start, end, limit, order)
+                    .doOnNext(row -> count.incrementAndGet())
+                    .doOnTerminate(() -> {
+                        context.stop();
+                        rows.update(count.get());
+                    })
+                    .map(mapper);
+        });
     }
 
     @Override
@@ -785,8 +871,12 @@ public class MetricsServiceImpl implements MetricsService {
                 List<Percentile> percentiles) {
         TimeRange timeRange = bucketConfig.getTimeRange();
         checkArgument(isValidTimeRange(timeRange.getStart(), timeRange.getEnd()), "Invalid time range");
-        return findDataPoints(metricId, timeRange.getStart(), timeRange.getEnd(), 0, Order.DESC)
-                .compose(new NumericBucketPointTransformer(bucketConfig.getBuckets(), percentiles));
+        StatsCache.Loader loader = (start, end, buckets) -> findDataPoints(metricId, start, end, 0, Order.DESC)
+                .compose(new NumericBucketPointTransformer(buckets, percentiles));
+        if (statsCache == null) {
+            return loader.load(timeRange.getStart(), timeRange.getEnd(), bucketConfig.getBuckets());
+        }
+        return statsCache.find(metricId, bucketConfig.getBuckets(), timeRange.getEnd(), percentiles, loader);
     }
 
     @Override
@@ -805,31 +895,43 @@ public class MetricsServiceImpl implements MetricsService {
         checkArgument(metricType == GAUGE || metricType == GAUGE_RATE
                 || metricType == COUNTER || metricType == COUNTER_RATE, "Invalid metric type: %s", metricType);
 
+        QueryCost cost = queryCostModel.start(tenantId, metricType, start, end);
+        return findNumericStats(tenantId, metricType, tagFilters, start, end, buckets, percentiles, stacked, cost)
+                .doOnTerminate(cost::complete);
+    }
+
+    private <T extends Number> Observable<List<NumericBucketPoint>> findNumericStats(String tenantId,
+            MetricType<T> metricType, Map<String, String> tagFilters, long start, long end, Buckets buckets,
+            List<Percentile> percentiles, boolean stacked, QueryCost cost) {
         if (!stacked) {
             if (COUNTER == metricType || GAUGE == metricType) {
-                return findMetricsWithFilters(tenantId, metricType, tagFilters)
-                        .flatMap(metric -> findDataPoints(metric.getMetricId(), start, end, 0, Order.DESC))
+                return cost.checkEstimate(findMetricsWithFilters(tenantId, metricType, tagFilters))
+                        .flatMap(metric -> findDataPoints(metric.getMetricId(), start, end, 0, Order.DESC)
+                                .doOnNext(cost::scanned))
                         .compose(new NumericBucketPointTransformer(buckets, percentiles));
             } else {
                 MetricType<? extends Number> mtype = metricType == GAUGE_RATE ? GAUGE : COUNTER;
-                return findMetricsWithFilters(tenantId, mtype, tagFilters)
-                        .flatMap(metric -> findRateData(metric.getMetricId(), start, end, 0, ASC))
+                return cost.checkEstimate(findMetricsWithFilters(tenantId, mtype, tagFilters))
+                        .flatMap(metric -> findRateData(metric.getMetricId(), start, end, 0, ASC)
+                                .doOnNext(cost::scanned))
                         .compose(new NumericBucketPointTransformer(buckets, percentiles));
             }
         } else {
             Observable<Observable<NumericBucketPoint>> individualStats;
             if (COUNTER == metricType || GAUGE == metricType) {
-                individualStats = findMetricsWithFilters(tenantId, metricType, tagFilters)
+                individualStats = cost.checkEstimate(findMetricsWithFilters(tenantId, metricType, tagFilters))
                         .map(metric -> {
                             return findDataPoints(metric.getMetricId(), start, end, 0, Order.DESC)
+                                    .doOnNext(cost::scanned)
                                     .compose(new NumericBucketPointTransformer(buckets, percentiles))
                                     .flatMap(Observable::from);
                         });
             } else {
                 MetricType<? extends Number> mtype = metricType == GAUGE_RATE ? GAUGE : COUNTER;
-                individualStats = findMetricsWithFilters(tenantId, mtype, tagFilters)
+                individualStats = cost.checkEstimate(findMetricsWithFilters(tenantId, mtype, tagFilters))
                         .map(metric -> {
                             return findRateData(metric.getMetricId(), start, end, 0, ASC)
+                                    .doOnNext(cost::scanned)
                                     .compose(new NumericBucketPointTransformer(buckets, percentiles))
                                     .flatMap(Observable::from);
                         });
@@ -854,35 +956,47 @@ public class MetricsServiceImpl implements MetricsService {
         checkArgument(metricType == GAUGE || metricType == GAUGE_RATE
                 || metricType == COUNTER || metricType == COUNTER_RATE, "Invalid metric type: %s", metricType);
 
+        QueryCost cost = queryCostModel.start(tenantId, metricType, start, end);
+        return findNumericStats(tenantId, metricType, metrics, start, end, buckets, percentiles, stacked, cost)
+                .doOnTerminate(cost::complete);
+    }
+
+    private <T extends Number> Observable<List<NumericBucketPoint>> findNumericStats(String tenantId,
+            MetricType<T> metricType, List<String> metrics, long start, long end, Buckets buckets,
+            List<Percentile> percentiles, boolean stacked, QueryCost cost) {
         if (!stacked) {
             if (COUNTER == metricType || GAUGE == metricType) {
-                return Observable.from(metrics)
-                        .flatMap(metricName -> findMetric(new MetricId<>(tenantId, metricType, metricName)))
-                        .flatMap(metric -> findDataPoints(metric.getMetricId(), start, end, 0, Order.DESC))
+                return cost.checkEstimate(Observable.from(metrics)
+                        .flatMap(metricName -> findMetric(new MetricId<>(tenantId, metricType, metricName))))
+                        .flatMap(metric -> findDataPoints(metric.getMetricId(), start, end, 0, Order.DESC)
+                                .doOnNext(cost::scanned))
                         .compose(new NumericBucketPointTransformer(buckets, percentiles));
             } else {
                 MetricType<? extends Number> mtype = metricType == GAUGE_RATE ? GAUGE : COUNTER;
-                return Observable.from(metrics)
-                        .flatMap(metricName -> findMetric(new MetricId<>(tenantId, mtype, metricName)))
-                        .flatMap(metric -> findRateData(metric.getMetricId(), start, end, 0, ASC))
+                return cost.checkEstimate(Observable.from(metrics)
+                        .flatMap(metricName -> findMetric(new MetricId<>(tenantId, mtype, metricName))))
+                        .flatMap(metric -> findRateData(metric.getMetricId(), start, end, 0, ASC)
+                                .doOnNext(cost::scanned))
                         .compose(new NumericBucketPointTransformer(buckets, percentiles));
             }
         } else {
             Observable<Observable<NumericBucketPoint>> individualStats;
             if (COUNTER == metricType || GAUGE == metricType) {
-                individualStats = Observable.from(metrics)
-                        .flatMap(metricName -> findMetric(new MetricId<>(tenantId, metricType, metricName)))
+                individualStats = cost.checkEstimate(Observable.from(metrics)
+                        .flatMap(metricName -> findMetric(new MetricId<>(tenantId, metricType, metricName))))
                         .map(metric -> {
                             return findDataPoints(metric.getMetricId(), start, end, 0, Order.DESC)
+                                    .doOnNext(cost::scanned)
                                     .compose(new NumericBucketPointTransformer(buckets, percentiles))
                                     .flatMap(Observable::from);
                         });
             } else {
                 MetricType<? extends Number> mtype = metricType == GAUGE_RATE ? GAUGE : COUNTER;
-                individualStats = Observable.from(metrics)
-                        .flatMap(metricName -> findMetric(new MetricId<>(tenantId, mtype, metricName)))
+                individualStats = cost.checkEstimate(Observable.from(metrics)
+                        .flatMap(metricName -> findMetric(new MetricId<>(tenantId, mtype, metricName))))
                         .map(metric -> {
                             return findRateData(metric.getMetricId(), start, end, 0, ASC)
+                                    .doOnNext(cost::scanned)
                                     .compose(new NumericBucketPointTransformer(buckets, percentiles))
                                     .flatMap(Observable::from);
                         });
@@ -954,8 +1068,12 @@ public class MetricsServiceImpl implements MetricsService {
     public Observable<List<NumericBucketPoint>> findCounterStats(MetricId<Long> id, long start, long end,
             Buckets buckets, List<Percentile> percentiles) {
         checkArgument(isValidTimeRange(start, end), "Invalid time range");
-        return findDataPoints(id, start, end, 0, ASC)
-                .compose(new NumericBucketPointTransformer(buckets, percentiles));
+        StatsCache.Loader loader = (from, to, bucketsToLoad) -> findDataPoints(id, from, to, 0, ASC)
+                .compose(new NumericBucketPointTransformer(bucketsToLoad, percentiles));
+        if (statsCache == null) {
+            return loader.load(start, end, buckets);
+        }
+        return statsCache.find(id, buckets, end, percentiles, loader);
     }
 
     @Override
@@ -999,7 +1117,14 @@ public class MetricsServiceImpl implements MetricsService {
 
     @Override
     public Observable<Metric<?>> insertedDataEvents() {
-        return insertedDataPointEvents;
+        return insertedDataEvents("subscriber-" + insertedDataSubscribers.incrementAndGet(),
+                DEFAULT_INSERTED_DATA_EVENTS_CAPACITY, OverflowPolicy.DROP_OLDEST);
+    }
+
+    @Override
+    public Observable<Metric<?>> insertedDataEvents(String subscriberName, int capacity,
+            OverflowPolicy overflowPolicy) {
+        return insertedDataPointEvents.observe(subscriberName, capacity, overflowPolicy, metricRegistry);
     }
 
     private int getTTL(MetricId<?> metricId) {
@@ -1012,18 +1137,8 @@ public class MetricsServiceImpl implements MetricsService {
     }
 
     public void shutdown() {
-        insertedDataPointEvents.onCompleted();
+        insertedDataPointEvents.complete();
         metricsTasks.shutdown();
         unloadDataRetentions();
     }
-
-    private <T> T time(Timer timer, Callable<T> callable) {
-        try {
-            // TODO Should this method always return an observable?
-            // If so, than we should return Observable.error(e) in the catch block
-            return timer.time(callable);
-        } catch (Exception e) {
-            throw new RuntimeException("There was an error during a timed event", e);
-        }
-    }
 }
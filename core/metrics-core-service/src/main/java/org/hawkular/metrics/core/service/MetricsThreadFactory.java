@@ -31,12 +31,27 @@ public class MetricsThreadFactory implements ThreadFactory, UncaughtExceptionHan
 
     private static final String METRICS_THREAD_POOL = "MetricsThreadPool";
 
+    private final String poolName;
+    private final boolean daemon;
     private AtomicInteger threadNumber = new AtomicInteger(0);
 
+    public MetricsThreadFactory() {
+        this(METRICS_THREAD_POOL, false);
+    }
+
+    /**
+     * @param poolName the prefix of the thread names, followed by a sequence number
+     * @param daemon   whether the threads should be daemon threads
+     */
+    public MetricsThreadFactory(String poolName, boolean daemon) {
+        this.poolName = poolName;
+        this.daemon = daemon;
+    }
+
     @Override
     public Thread newThread(Runnable r) {
-        Thread t = new Thread(r, METRICS_THREAD_POOL + "-" + threadNumber.getAndIncrement());
-        t.setDaemon(false);
+        Thread t = new Thread(r, poolName + "-" + threadNumber.getAndIncrement());
+        t.setDaemon(daemon);
         t.setUncaughtExceptionHandler(this);
         return t;
     }
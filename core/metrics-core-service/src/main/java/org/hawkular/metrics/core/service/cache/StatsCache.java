@@ -0,0 +1,350 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.core.service.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+import org.hawkular.metrics.model.Buckets;
+import org.hawkular.metrics.model.DataPoint;
+import org.hawkular.metrics.model.Metric;
+import org.hawkular.metrics.model.MetricId;
+import org.hawkular.metrics.model.NumericBucketPoint;
+import org.hawkular.metrics.model.Percentile;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+
+import rx.Observable;
+
+/**
+ * Caches the {@link NumericBucketPoint bucket points} of single metric stats queries, so that dashboards polling the
+ * same stats over a sliding window only compute the buckets which are new or still open.
+ * <p>
+ * Bucket points are cached per metric, bucket step, bucket alignment ({@code start % step}) and percentiles. Only
+ * closed buckets, which end before both the query end and the current time, are cached; open buckets are always
+ * computed. A query reuses the cached points and loads the missing ones with as few range scans as possible.
+ * <p>
+ * {@link #invalidate(Metric) Inserted data} evicts the cached buckets which it falls into, so late writes are accounted
+ * for. Data inserted while a query loads buckets prevents the query from caching its results. Only writes received by
+ * this node are seen: cached points also expire after a fixed delay, which bounds staleness in a cluster.
+ * <p>
+ * The cache holds at most {@code maxBuckets} bucket points; least recently used metrics are evicted first. The
+ * {@code stats-cache-hits}, {@code stats-cache-misses}, {@code stats-cache-invalidations} and
+ * {@code stats-cache-evictions} meters count bucket points, the {@code stats-cache-size} gauge is the number of
+ * metrics in the cache.
+ */
+public class StatsCache {
+
+    /**
+     * Computes the bucket points of a time range, from storage.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        /**
+         * @param start   the start time inclusive
+         * @param end     the end time exclusive
+         * @param buckets the buckets to compute, starting at {@code start}
+         * @return an {@link Observable} emitting a single list of {@link NumericBucketPoint}, one per bucket
+         */
+        Observable<List<NumericBucketPoint>> load(long start, long end, Buckets buckets);
+    }
+
+    private final long expiration;
+    private final LongSupplier clock;
+    private final Cache<MetricId<?>, Entry> cache;
+    private final Meter hits = new Meter();
+    private final Meter misses = new Meter();
+    private final Meter invalidations = new Meter();
+    private final Meter evictions = new Meter();
+
+    /**
+     * @param maxBuckets maximum number of bucket points to keep
+     * @param expiration how long a bucket point is kept
+     * @param unit       the unit of {@code expiration}
+     */
+    public StatsCache(long maxBuckets, long expiration, TimeUnit unit) {
+        this(maxBuckets, expiration, unit, System::currentTimeMillis);
+    }
+
+    StatsCache(long maxBuckets, long expiration, TimeUnit unit, LongSupplier clock) {
+        checkArgument(maxBuckets > 0, "maxBuckets is not positive");
+        checkArgument(expiration > 0, "expiration is not positive");
+        this.expiration = unit.toMillis(expiration);
+        this.clock = clock;
+        RemovalListener<MetricId<?>, Entry> removalListener = notification -> {
+            if (notification.wasEvicted()) {
+                evictions.mark(notification.getValue().size);
+            }
+        };
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxBuckets)
+                .<MetricId<?>, Entry>weigher((id, entry) -> entry.size + 1)
+                .expireAfterAccess(expiration, unit)
+                .removalListener(removalListener)
+                .build();
+    }
+
+    public void registerMetrics(MetricRegistry metricRegistry) {
+        register(metricRegistry, "stats-cache-hits", hits);
+        register(metricRegistry, "stats-cache-misses", misses);
+        register(metricRegistry, "stats-cache-invalidations", invalidations);
+        register(metricRegistry, "stats-cache-evictions", evictions);
+        Gauge<Long> size = cache::size;
+        register(metricRegistry, "stats-cache-size", size);
+    }
+
+    private static void register(MetricRegistry metricRegistry, String name, com.codahale.metrics.Metric metric) {
+        metricRegistry.remove(name);
+        metricRegistry.register(name, metric);
+    }
+
+    /**
+     * Finds the bucket points of a single metric, using cached points for closed buckets.
+     *
+     * @param metricId    the metric
+     * @param buckets     the buckets to compute
+     * @param end         the end time exclusive of the query
+     * @param percentiles the percentiles to compute
+     * @param loader      computes bucket points which are not cached
+     * @return an {@link Observable} emitting a single list of {@link NumericBucketPoint}, one per bucket
+     */
+    public Observable<List<NumericBucketPoint>> find(MetricId<?> metricId, Buckets buckets, long end,
+            List<Percentile> percentiles, Loader loader) {
+        return Observable.defer(() -> doFind(metricId, buckets, end, percentiles, loader));
+    }
+
+    private Observable<List<NumericBucketPoint>> doFind(MetricId<?> metricId, Buckets buckets, long end,
+            List<Percentile> percentiles, Loader loader) {
+        long now = clock.getAsLong();
+        long step = buckets.getStep();
+        int count = buckets.getCount();
+        int closed = (int) Math.max(0, Math.min(count, (Math.min(end, now) - buckets.getStart()) / step));
+        if (closed == 0) {
+            return loader.load(buckets.getStart(), end, buckets);
+        }
+
+        Series series = new Series(step, Math.floorMod(buckets.getStart(), step), percentiles);
+        Entry entry = cache.asMap().computeIfAbsent(metricId, id -> new Entry());
+        NumericBucketPoint[] points = new NumericBucketPoint[count];
+        long version;
+        synchronized (entry) {
+            NavigableMap<Long, CachedPoint> cached = entry.series.get(series);
+            if (cached != null) {
+                for (int i = 0; i < closed; i++) {
+                    long bucketStart = buckets.getBucketStart(i);
+                    CachedPoint cachedPoint = cached.get(bucketStart);
+                    if (cachedPoint == null) {
+                        continue;
+                    }
+                    if (now - cachedPoint.time < expiration) {
+                        points[i] = cachedPoint.point;
+                    } else {
+                        cached.remove(bucketStart);
+                        entry.size--;
+                    }
+                }
+            }
+            version = entry.version;
+            entry.loads++;
+            entry.loadingUntil = Math.max(entry.loadingUntil, buckets.getStart() + closed * step);
+        }
+
+        // Runs of consecutive missing buckets, the last one includes the open buckets
+        List<int[]> runs = new ArrayList<>();
+        int hitCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (points[i] != null) {
+                hitCount++;
+            } else if (runs.isEmpty() || runs.get(runs.size() - 1)[1] != i) {
+                runs.add(new int[]{i, i + 1});
+            } else {
+                runs.get(runs.size() - 1)[1] = i + 1;
+            }
+        }
+        hits.mark(hitCount);
+        misses.mark(closed - hitCount);
+
+        AtomicBoolean released = new AtomicBoolean();
+        return Observable.from(runs)
+                .concatMap(run -> {
+                    long runStart = buckets.getBucketStart(run[0]);
+                    long runEnd = run[1] == count ? end : runStart + (run[1] - run[0]) * step;
+                    return loader.load(runStart, runEnd, new Buckets(runStart, step, run[1] - run[0]))
+                            .doOnNext(loaded -> {
+                                for (int i = 0; i < loaded.size(); i++) {
+                                    points[run[0] + i] = loaded.get(i);
+                                }
+                            });
+                })
+                .toList()
+                .map(loaded -> {
+                    if (released.compareAndSet(false, true)) {
+                        store(metricId, entry, series, buckets, points, closed, version, now);
+                    }
+                    return Arrays.asList(points);
+                })
+                .doOnUnsubscribe(() -> {
+                    if (released.compareAndSet(false, true)) {
+                        release(entry);
+                    }
+                });
+    }
+
+    private void store(MetricId<?> metricId, Entry entry, Series series, Buckets buckets,
+            NumericBucketPoint[] points, int closed, long version, long now) {
+        synchronized (entry) {
+            release(entry);
+            if (entry.version != version) {
+                // Data was inserted while loading, the points may not include it
+                return;
+            }
+            NavigableMap<Long, CachedPoint> cached = entry.series.computeIfAbsent(series, key -> new TreeMap<>());
+            for (int i = 0; i < closed; i++) {
+                long bucketStart = buckets.getBucketStart(i);
+                if (!cached.containsKey(bucketStart)) {
+                    cached.put(bucketStart, new CachedPoint(points[i], now));
+                    entry.size++;
+                }
+            }
+        }
+        // Updates the weight of the entry, unless it has been evicted in the meantime
+        cache.asMap().replace(metricId, entry, entry);
+    }
+
+    private static void release(Entry entry) {
+        synchronized (entry) {
+            entry.loads--;
+            if (entry.loads == 0) {
+                entry.loadingUntil = Long.MIN_VALUE;
+            }
+        }
+    }
+
+    /**
+     * Evicts the cached buckets which the data points of {@code metric} belong to.
+     */
+    public void invalidate(Metric<?> metric) {
+        Entry entry = cache.getIfPresent(metric.getMetricId());
+        if (entry == null) {
+            return;
+        }
+        int removed = 0;
+        synchronized (entry) {
+            for (DataPoint<?> dataPoint : metric.getDataPoints()) {
+                long timestamp = dataPoint.getTimestamp();
+                if (entry.loads > 0 && timestamp < entry.loadingUntil) {
+                    entry.version++;
+                }
+                for (Map.Entry<Series, NavigableMap<Long, CachedPoint>> cached : entry.series.entrySet()) {
+                    Series series = cached.getKey();
+                    long bucketStart = timestamp - Math.floorMod(timestamp - series.phase, series.step);
+                    if (cached.getValue().remove(bucketStart) != null) {
+                        entry.size--;
+                        removed++;
+                    }
+                }
+            }
+        }
+        invalidations.mark(removed);
+    }
+
+    /**
+     * Evicts all cached buckets, when invalidation events may have been lost.
+     */
+    public void invalidateAll() {
+        int removed = 0;
+        for (Entry entry : cache.asMap().values()) {
+            synchronized (entry) {
+                if (entry.loads > 0) {
+                    entry.version++;
+                }
+                removed += entry.size;
+                entry.series.clear();
+                entry.size = 0;
+            }
+        }
+        cache.invalidateAll();
+        invalidations.mark(removed);
+    }
+
+    /**
+     * Cached points of a metric. Guarded by its monitor.
+     */
+    private static class Entry {
+        final Map<Series, NavigableMap<Long, CachedPoint>> series = new HashMap<>();
+        volatile int size;
+        long version;
+        int loads;
+        long loadingUntil = Long.MIN_VALUE;
+    }
+
+    private static class CachedPoint {
+        final NumericBucketPoint point;
+        final long time;
+
+        CachedPoint(NumericBucketPoint point, long time) {
+            this.point = point;
+            this.time = time;
+        }
+    }
+
+    private static class Series {
+        final long step;
+        final long phase;
+        final double[] quantiles;
+
+        Series(long step, long phase, List<Percentile> percentiles) {
+            this.step = step;
+            this.phase = phase;
+            quantiles = percentiles == null ? new double[0]
+                    : percentiles.stream().mapToDouble(Percentile::getQuantile).toArray();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Series series = (Series) o;
+            return step == series.step && phase == series.phase && Arrays.equals(quantiles, series.quantiles);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(step, phase) * 31 + Arrays.hashCode(quantiles);
+        }
+    }
+}
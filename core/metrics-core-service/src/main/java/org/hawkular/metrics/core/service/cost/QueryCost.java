@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.core.service.cost;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hawkular.metrics.model.exception.QueryTooExpensiveException;
+
+import com.codahale.metrics.Histogram;
+
+import rx.Observable;
+
+/**
+ * Tracks the cost of a single query, see {@link QueryCostModel}.
+ */
+public class QueryCost {
+    private final QueryCostModel model;
+    private final String query;
+    private final long maxEstimatedRows;
+    private final long maxScannedRows;
+    private final long start;
+    private final long end;
+    private final Histogram estimatedRows;
+    private final Histogram scannedRowsHistogram;
+    private final AtomicLong scannedRows = new AtomicLong();
+
+    QueryCost(QueryCostModel model, String query, long maxEstimatedRows, long maxScannedRows, long start, long end,
+            Histogram estimatedRows, Histogram scannedRowsHistogram) {
+        this.model = model;
+        this.query = query;
+        this.maxEstimatedRows = maxEstimatedRows;
+        this.maxScannedRows = maxScannedRows;
+        this.start = start;
+        this.end = end;
+        this.estimatedRows = estimatedRows;
+        this.scannedRowsHistogram = scannedRowsHistogram;
+    }
+
+    /**
+     * Collects the metrics of the query and checks the estimated cost before emitting them.
+     *
+     * @throws QueryTooExpensiveException (emitted) if the estimate exceeds the limit
+     */
+    public <M> Observable<M> checkEstimate(Observable<M> metrics) {
+        return metrics.toList().flatMap(list -> {
+            long estimate = model.estimateRows(list.size(), start, end);
+            estimatedRows.update(estimate);
+            if (maxEstimatedRows > 0 && estimate > maxEstimatedRows) {
+                return Observable.error(new QueryTooExpensiveException("Query too expensive: about " + estimate
+                        + " rows would be scanned for " + list.size() + " metrics, the limit is "
+                        + maxEstimatedRows + ". Use a shorter time range or fewer metrics."));
+            }
+            return Observable.from(list);
+        });
+    }
+
+    /**
+     * Counts a row read by the query.
+     *
+     * @throws QueryTooExpensiveException as soon as the limit is exceeded
+     */
+    public void scanned(Object row) {
+        long scanned = scannedRows.incrementAndGet();
+        if (maxScannedRows > 0 && scanned > maxScannedRows) {
+            throw new QueryTooExpensiveException("Query too expensive: more than " + maxScannedRows
+                    + " rows scanned, the query was aborted. Use a shorter time range or fewer metrics.");
+        }
+    }
+
+    /**
+     * Records the number of rows scanned, once the query has completed or failed.
+     */
+    public void complete() {
+        scannedRowsHistogram.update(scannedRows.get());
+    }
+
+    @Override
+    public String toString() {
+        return "QueryCost[query=" + query + ", scannedRows=" + scannedRows.get() + "]";
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.core.service.cost;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.hawkular.metrics.core.service.limit.TenantLimits;
+import org.hawkular.metrics.model.MetricType;
+import org.hawkular.metrics.model.exception.QueryTooExpensiveException;
+import org.hawkular.metrics.sysconfig.Configuration;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Estimates and limits the number of rows scanned by queries which fan out to many metrics.
+ * <p>
+ * The estimated cost of a query is the number of metrics times the number of samples of a metric in the time range,
+ * assuming one sample every {@code sampleInterval}. A query whose estimate exceeds the {@code max-estimated-rows} limit
+ * of its tenant fails before any data is read; a query which reads more than {@code max-scanned-rows} rows fails as
+ * soon as the limit is reached. Both fail with a {@link QueryTooExpensiveException}.
+ * A limit of zero means no limit.
+ * <p>
+ * Default limits can be overridden in the {@code sys_config} table, under the {@link #CONFIGURATION_ID} configuration
+ * id, with the {@code max-estimated-rows} and {@code max-scanned-rows} properties for all tenants, and
+ * {@code <tenant>.max-estimated-rows} and {@code <tenant>.max-scanned-rows} for a single tenant.
+ * <p>
+ * The estimated and scanned rows of each query are recorded in the {@code query-cost.<query>.estimated-rows} and
+ * {@code query-cost.<query>.scanned-rows} histograms, where {@code query} is {@code gauge-stats},
+ * {@code counter-stats}, {@code gauge-rate-stats} or {@code counter-rate-stats}.
+ */
+public class QueryCostModel {
+    public static final String CONFIGURATION_ID = "org.hawkular.metrics.query-limits";
+
+    static final String MAX_ESTIMATED_ROWS = "max-estimated-rows";
+    static final String MAX_SCANNED_ROWS = "max-scanned-rows";
+
+    private final long sampleInterval;
+    private final TenantLimits configuredLimits;
+
+    private volatile TenantLimits limits;
+    private MetricRegistry metricRegistry = new MetricRegistry();
+
+    /**
+     * @param sampleInterval   the assumed interval between two samples of a metric, in milliseconds
+     * @param maxEstimatedRows the default limit of estimated rows per query
+     * @param maxScannedRows   the default limit of scanned rows per query
+     */
+    public QueryCostModel(long sampleInterval, long maxEstimatedRows, long maxScannedRows) {
+        checkArgument(sampleInterval > 0, "sampleInterval is not positive");
+        checkArgument(maxEstimatedRows >= 0, "maxEstimatedRows is negative");
+        checkArgument(maxScannedRows >= 0, "maxScannedRows is negative");
+        this.sampleInterval = sampleInterval;
+        configuredLimits = new TenantLimits(ImmutableMap.of(MAX_ESTIMATED_ROWS, maxEstimatedRows, MAX_SCANNED_ROWS,
+                maxScannedRows), Long.MAX_VALUE);
+        limits = configuredLimits;
+    }
+
+    /**
+     * Histograms are registered lazily, the first time a query of each kind runs.
+     */
+    public void setMetricRegistry(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    /**
+     * Applies the limits stored in the {@link #CONFIGURATION_ID} configuration on top of the configured defaults.
+     */
+    public void configure(Configuration configuration) {
+        limits = configuredLimits.configure(configuration);
+    }
+
+    /**
+     * @return the estimated number of rows scanned to read {@code metrics} metrics between {@code start} and
+     * {@code end}
+     */
+    public long estimateRows(long metrics, long start, long end) {
+        long samples = (end - start + sampleInterval - 1) / sampleInterval;
+        return metrics * samples;
+    }
+
+    /**
+     * Starts tracking the cost of a stats query over metrics of type {@code metricType}.
+     */
+    public QueryCost start(String tenantId, MetricType<?> metricType, long start, long end) {
+        String query = metricType.getText().replace('_', '-') + "-stats";
+        TenantLimits current = limits;
+        return new QueryCost(this, query, current.get(tenantId, MAX_ESTIMATED_ROWS),
+                current.get(tenantId, MAX_SCANNED_ROWS), start, end,
+                metricRegistry.histogram(MetricRegistry.name("query-cost", query, "estimated-rows")),
+                metricRegistry.histogram(MetricRegistry.name("query-cost", query, "scanned-rows")));
+    }
+}
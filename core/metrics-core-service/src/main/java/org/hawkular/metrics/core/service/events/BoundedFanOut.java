@@ -0,0 +1,348 @@
+/*
+ * Copyright 2014-2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.core.service.events;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadFactory;
+
+import org.hawkular.metrics.core.service.MetricsThreadFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import rx.Observable;
+import rx.Producer;
+import rx.Subscriber;
+import rx.exceptions.Exceptions;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Delivers published events to any number of subscribers, each through its own bounded ring buffer. Unlike a
+ * {@link rx.subjects.PublishSubject}, a slow subscriber can neither make memory usage grow without bounds nor, unless
+ * it asks for it, slow down publishers.
+ * <p>
+ * Each subscriber chooses the capacity of its buffer and the {@link OverflowPolicy} applied when the buffer is full.
+ * Events are delivered to a subscriber by a dedicated daemon thread, honoring backpressure. The bound only holds if
+ * the subscriber itself does not request events faster than it can process them. Publishing does not allocate: an
+ * event reference is stored in a preallocated array slot of each subscriber buffer.
+ * <p>
+ * When a {@link MetricRegistry} is given, a subscriber named {@code sub} of a fan-out named {@code fanout} registers a
+ * {@code fanout.sub.lag} gauge, the number of events waiting in its buffer, and a {@code fanout.sub.dropped} counter.
+ */
+public class BoundedFanOut<T> {
+    private final String name;
+
+    private final Object lock = new Object();
+    private volatile Buffer<?>[] buffers = new Buffer<?>[0];
+    private boolean completed;
+
+    public BoundedFanOut(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Hands over {@code event} to the buffer of each subscriber. Depending on the overflow policy of a subscriber, this
+     * may block until the subscriber has room for the event.
+     */
+    @SuppressWarnings("unchecked")
+    public void publish(T event) {
+        for (Buffer<?> buffer : buffers) {
+            ((Buffer<T>) buffer).offer(event);
+        }
+    }
+
+    /**
+     * Completes current subscribers, once they have consumed their buffered events, as well as future subscribers.
+     */
+    public void complete() {
+        Buffer<?>[] current;
+        synchronized (lock) {
+            completed = true;
+            current = buffers;
+        }
+        for (Buffer<?> buffer : current) {
+            buffer.complete();
+        }
+    }
+
+    /**
+     * @param subscriberName  used to name the delivery thread and the metrics of each subscription
+     * @param capacity        the maximum number of events buffered for each subscription
+     * @param overflowPolicy  what happens to events published while the buffer is full
+     * @param metricRegistry  where to register the lag and drop metrics, can be null
+     * @return an observable which creates a new buffer for each subscription
+     */
+    public Observable<T> observe(String subscriberName, int capacity, OverflowPolicy overflowPolicy,
+            MetricRegistry metricRegistry) {
+        return observe(subscriberName, capacity, overflowPolicy, metricRegistry, null);
+    }
+
+    /**
+     * Same as {@link #observe(String, int, OverflowPolicy, MetricRegistry)}, with {@code onDrop} invoked each time an
+     * event is dropped. It runs on the publishing thread, while the buffer is locked, and must return quickly.
+     */
+    public Observable<T> observe(String subscriberName, int capacity, OverflowPolicy overflowPolicy,
+            MetricRegistry metricRegistry, Runnable onDrop) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        checkArgument(overflowPolicy != null, "overflowPolicy is null");
+        ThreadFactory threadFactory = new MetricsThreadFactory(name + "-" + subscriberName, true);
+        return Observable.create(subscriber -> {
+            String metricPrefix = MetricRegistry.name(name, subscriberName);
+            Buffer<T> buffer = new Buffer<>(subscriber, capacity, overflowPolicy, metricRegistry, metricPrefix,
+                    onDrop);
+            if (!add(buffer)) {
+                buffer.unregisterMetrics();
+                subscriber.onCompleted();
+                return;
+            }
+            subscriber.add(Subscriptions.create(() -> {
+                remove(buffer);
+                buffer.cancel();
+            }));
+            subscriber.setProducer(buffer);
+            threadFactory.newThread(() -> {
+                try {
+                    buffer.drain();
+                } finally {
+                    remove(buffer);
+                    buffer.unregisterMetrics();
+                }
+            }).start();
+        });
+    }
+
+    private boolean add(Buffer<?> buffer) {
+        synchronized (lock) {
+            if (completed) {
+                return false;
+            }
+            Buffer<?>[] current = buffers;
+            Buffer<?>[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = buffer;
+            buffers = updated;
+            return true;
+        }
+    }
+
+    private void remove(Buffer<?> buffer) {
+        synchronized (lock) {
+            Buffer<?>[] current = buffers;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == buffer) {
+                    Buffer<?>[] updated = new Buffer<?>[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    buffers = updated;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A ring buffer written by any number of publishers and drained by a single thread. All the state is guarded by
+     * the buffer monitor.
+     */
+    private static final class Buffer<T> implements Producer {
+        private final Subscriber<? super T> subscriber;
+        private final Object[] events;
+        private final OverflowPolicy overflowPolicy;
+
+        private final MetricRegistry metricRegistry;
+        private final String lagName;
+        private final Gauge<Integer> lag;
+        private final Counter dropped;
+        private final Runnable onDrop;
+
+        private int head;
+        private int size;
+        private long requested;
+        private boolean completed;
+        private boolean cancelled;
+        private boolean drainerWaiting;
+        private int blockedPublishers;
+
+        Buffer(Subscriber<? super T> subscriber, int capacity, OverflowPolicy overflowPolicy,
+                MetricRegistry metricRegistry, String metricPrefix, Runnable onDrop) {
+            this.subscriber = subscriber;
+            this.onDrop = onDrop;
+            this.events = new Object[capacity];
+            this.overflowPolicy = overflowPolicy;
+            this.metricRegistry = metricRegistry;
+            this.lagName = MetricRegistry.name(metricPrefix, "lag");
+            if (metricRegistry == null) {
+                lag = null;
+                dropped = new Counter();
+            } else {
+                lag = this::lag;
+                metricRegistry.remove(lagName);
+                metricRegistry.register(lagName, lag);
+                dropped = metricRegistry.counter(MetricRegistry.name(metricPrefix, "dropped"));
+            }
+        }
+
+        void offer(T event) {
+            synchronized (this) {
+                if (cancelled || completed) {
+                    return;
+                }
+                if (size == events.length) {
+                    switch (overflowPolicy) {
+                        case DROP_NEWEST:
+                            drop();
+                            return;
+                        case DROP_OLDEST:
+                            events[head] = null;
+                            head = next(head);
+                            size--;
+                            drop();
+                            break;
+                        case BLOCK:
+                            if (!awaitRoom()) {
+                                drop();
+                                return;
+                            }
+                            break;
+                        default:
+                            throw new IllegalStateException("Unsupported overflow policy " + overflowPolicy);
+                    }
+                }
+                int tail = head + size;
+                events[tail < events.length ? tail : tail - events.length] = event;
+                size++;
+                if (drainerWaiting) {
+                    notifyAll();
+                }
+            }
+        }
+
+        private void drop() {
+            dropped.inc();
+            if (onDrop != null) {
+                onDrop.run();
+            }
+        }
+
+        /**
+         * @return false if the buffer was cancelled or the publisher interrupted while waiting
+         */
+        private boolean awaitRoom() {
+            blockedPublishers++;
+            try {
+                while (size == events.length && !cancelled) {
+                    wait();
+                }
+                return !cancelled;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                blockedPublishers--;
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                return;
+            }
+            synchronized (this) {
+                long r = requested + n;
+                requested = r < 0 ? Long.MAX_VALUE : r;
+                if (drainerWaiting) {
+                    notifyAll();
+                }
+            }
+        }
+
+        synchronized void complete() {
+            completed = true;
+            notifyAll();
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            notifyAll();
+        }
+
+        synchronized int lag() {
+            return size;
+        }
+
+        /**
+         * Delivers buffered events as requested, until the subscriber unsubscribes or the buffer is completed and
+         * empty.
+         */
+        @SuppressWarnings("unchecked")
+        void drain() {
+            while (true) {
+                T event;
+                synchronized (this) {
+                    try {
+                        while (!cancelled && (size == 0 ? !completed : requested == 0)) {
+                            drainerWaiting = true;
+                            wait();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } finally {
+                        drainerWaiting = false;
+                    }
+                    if (cancelled) {
+                        return;
+                    }
+                    if (size == 0) {
+                        break;
+                    }
+                    event = (T) events[head];
+                    events[head] = null;
+                    head = next(head);
+                    size--;
+                    if (requested != Long.MAX_VALUE) {
+                        requested--;
+                    }
+                    if (blockedPublishers > 0) {
+                        notifyAll();
+                    }
+                }
+                try {
+                    subscriber.onNext(event);
+                } catch (Throwable t) {
+                    Exceptions.throwIfFatal(t);
+                    cancel();
+                    subscriber.onError(t);
+                    return;
+                }
+            }
+            subscriber.onCompleted();
+        }
+
+        private int next(int index) {
+            return index + 1 == events.length ? 0 : index + 1;
+        }
+
+        void unregisterMetrics() {
+            if (metricRegistry != null && metricRegistry.getGauges().get(lagName) == lag) {
+                metricRegistry.remove(lagName);
+            }
+        }
+    }
+}
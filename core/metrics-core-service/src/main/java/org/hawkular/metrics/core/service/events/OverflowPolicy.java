@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014-2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.core.service.events;
+
+/**
+ * What a {@link BoundedFanOut} does with a new event when the buffer of a subscriber is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * Discard the oldest buffered event to make room for the new one.
+     */
+    DROP_OLDEST("drop-oldest"),
+    /**
+     * Discard the new event.
+     */
+    DROP_NEWEST("drop-newest"),
+    /**
+     * Block the publishing thread until the subscriber catches up.
+     */
+    BLOCK("block");
+
+    private final String text;
+
+    OverflowPolicy(String text) {
+        this.text = text;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public static OverflowPolicy fromText(String text) {
+        for (OverflowPolicy policy : values()) {
+            if (policy.text.equalsIgnoreCase(text)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException(text + " is not a valid overflow policy");
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
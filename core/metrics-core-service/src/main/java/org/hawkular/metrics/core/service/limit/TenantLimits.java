@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.core.service.limit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hawkular.metrics.core.service.log.CoreLogger;
+import org.hawkular.metrics.core.service.log.CoreLogging;
+import org.hawkular.metrics.sysconfig.Configuration;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Immutable set of named, non-negative limits, with a default value for all tenants and optional overrides for single
+ * tenants. A limit of zero means no limit.
+ * <p>
+ * Limits are configured in code and can be overridden with a {@link Configuration}: a {@code <name>} property sets the
+ * default of all tenants and a {@code <tenant>.<name>} property the limit of a single tenant. Invalid values are logged
+ * and ignored.
+ */
+public class TenantLimits {
+    private static final CoreLogger log = CoreLogging.getCoreLogger(TenantLimits.class);
+
+    private final Map<String, Long> defaults;
+    private final Map<String, Map<String, Long>> tenantLimits;
+    private final long maxValue;
+
+    /**
+     * @param defaults the limits of all tenants, by name
+     * @param maxValue the largest valid limit
+     */
+    public TenantLimits(Map<String, Long> defaults, long maxValue) {
+        this(ImmutableMap.copyOf(defaults), ImmutableMap.of(), maxValue);
+        defaults.forEach((name, limit) -> checkArgument(limit >= 0 && limit <= maxValue, "Invalid limit %s: %s",
+                name, limit));
+    }
+
+    private TenantLimits(Map<String, Long> defaults, Map<String, Map<String, Long>> tenantLimits, long maxValue) {
+        this.defaults = defaults;
+        this.tenantLimits = tenantLimits;
+        this.maxValue = maxValue;
+    }
+
+    /**
+     * @return new limits, with the values of {@code configuration} applied on top of the default limits of this
+     * instance; the tenant overrides of this instance are discarded
+     */
+    public TenantLimits configure(Configuration configuration) {
+        Map<String, Long> newDefaults = new HashMap<>();
+        defaults.forEach((name, limit) -> newDefaults.put(name, parse(name, configuration.get(name), limit,
+                maxValue)));
+        Map<String, Map<String, Long>> newTenantLimits = new HashMap<>();
+        configuration.getProperties().forEach((property, value) -> {
+            int separator = property.lastIndexOf('.');
+            if (separator <= 0) {
+                return;
+            }
+            String name = property.substring(separator + 1);
+            Long defaultLimit = newDefaults.get(name);
+            if (defaultLimit != null) {
+                newTenantLimits.computeIfAbsent(property.substring(0, separator), tenant -> new HashMap<>())
+                        .put(name, parse(property, value, defaultLimit, maxValue));
+            }
+        });
+        return new TenantLimits(ImmutableMap.copyOf(newDefaults), ImmutableMap.copyOf(newTenantLimits), maxValue);
+    }
+
+    /**
+     * @return the limit {@code name} of {@code tenant}
+     * @throws IllegalArgumentException if there is no such limit
+     */
+    public long get(String tenant, String name) {
+        Map<String, Long> limits = tenantLimits.get(tenant);
+        Long limit = limits == null ? null : limits.get(name);
+        if (limit != null) {
+            return limit;
+        }
+        limit = defaults.get(name);
+        checkArgument(limit != null, "Unknown limit %s", name);
+        return limit;
+    }
+
+    /**
+     * @return true if any tenant has a limit
+     */
+    public boolean isLimited() {
+        return defaults.values().stream().anyMatch(limit -> limit > 0) || tenantLimits.values().stream()
+                .anyMatch(limits -> limits.values().stream().anyMatch(limit -> limit > 0));
+    }
+
+    /**
+     * Parses a limit, logging a warning if {@code value} is not a number between zero and {@code maxValue}.
+     *
+     * @return the parsed limit, or {@code defaultValue} if {@code value} is null or invalid
+     */
+    public static long parse(String name, String value, long defaultValue, long maxValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long limit = Long.parseLong(value.trim());
+            if (limit >= 0 && limit <= maxValue) {
+                return limit;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        log.warnInvalidLimit(value, name, defaultValue);
+        return defaultValue;
+    }
+}
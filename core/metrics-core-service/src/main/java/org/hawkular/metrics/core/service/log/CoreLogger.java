@@ -16,6 +16,7 @@
  */
 package org.hawkular.metrics.core.service.log;
 
+import static org.jboss.logging.Logger.Level.ERROR;
 import static org.jboss.logging.Logger.Level.INFO;
 import static org.jboss.logging.Logger.Level.WARN;
 
@@ -59,4 +60,12 @@ public interface CoreLogger extends BasicLogger {
     @LogMessage(level = WARN)
     @Message(id = 100006, value = "There was an error persisting rates for {tenant= %s, start= %d, end= %d}")
     void warnFailedToPersistRates(String tenantId, Long start, Long end, @Cause Throwable t);
+
+    @LogMessage(level = WARN)
+    @Message(id = 100007, value = "Invalid value [%s] for limit %s. Will use a default of %d")
+    void warnInvalidLimit(String value, String name, long defaultValue);
+
+    @LogMessage(level = ERROR)
+    @Message(id = 100008, value = "Stats cache invalidation failed, clearing the cache and resubscribing")
+    void errorStatsCacheInvalidationFailed(@Cause Throwable t);
 }
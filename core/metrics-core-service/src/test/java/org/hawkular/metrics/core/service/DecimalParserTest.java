@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.core.service;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class DecimalParserTest {
+
+    @Test
+    public void parseExactly() {
+        String[] values = {"0", "-0", "0.1", "3.14159", "-0.000123", "123456789.123456", "999999999999999",
+                "9999999999999999", "12345678901234567890.5", "0.00000000000000000000001", "1e-3", "-2.5E10", ".5",
+                "7.", "+4", "NaN", "-Infinity"};
+        for (String value : values) {
+            assertEquals(value, Double.parseDouble(value), parse(value), 0);
+        }
+    }
+
+    @Test
+    public void parseRange() {
+        byte[] bytes = "x 42.5 y".getBytes(US_ASCII);
+        assertEquals(42.5, DecimalParser.parseDouble(bytes, 2, 6), 0);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectEmpty() {
+        parse("");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectSignOnly() {
+        parse("-");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectDotOnly() {
+        parse(".");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectGarbage() {
+        parse("12a");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectNonAscii() {
+        byte[] bytes = "1\u00e9".getBytes(UTF_8);
+        DecimalParser.parseDouble(bytes, 0, bytes.length);
+    }
+
+    private static double parse(String value) {
+        byte[] bytes = value.getBytes(US_ASCII);
+        return DecimalParser.parseDouble(bytes, 0, bytes.length);
+    }
+}
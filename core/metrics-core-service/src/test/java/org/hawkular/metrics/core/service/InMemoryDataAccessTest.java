@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.core.service;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+
+import static org.hawkular.metrics.model.MetricType.GAUGE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.hawkular.metrics.model.DataPoint;
+import org.hawkular.metrics.model.Metric;
+import org.hawkular.metrics.model.MetricId;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datastax.driver.core.Row;
+import com.google.common.collect.ImmutableMap;
+
+public class InMemoryDataAccessTest {
+    private static final String TENANT_ID = "in-memory-test";
+
+    private InMemoryDataAccess dataAccess;
+    private MetricId<Double> gaugeId;
+
+    @Before
+    public void setup() {
+        dataAccess = new InMemoryDataAccess();
+        gaugeId = new MetricId<>(TENANT_ID, GAUGE, "gauge");
+        Metric<Double> gauge = new Metric<>(gaugeId, asList(
+                new DataPoint<>(10L, 1.0),
+                new DataPoint<>(20L, 2.0),
+                new DataPoint<>(30L, 3.0),
+                new DataPoint<>(40L, 4.0)));
+        dataAccess.insertGaugeData(gauge, 0).toBlocking().last();
+    }
+
+    @Test
+    public void findGaugeDataInRangeDescending() {
+        List<Double> values = values(dataAccess.findGaugeData(gaugeId, 20, 40, 0, Order.DESC).toList().toBlocking()
+                .single());
+        assertEquals(asList(3.0, 2.0), values);
+    }
+
+    @Test
+    public void findGaugeDataAscendingWithLimit() {
+        List<Double> values = values(dataAccess.findGaugeData(gaugeId, 0, 100, 3, Order.ASC).toList().toBlocking()
+                .single());
+        assertEquals(asList(1.0, 2.0, 3.0), values);
+    }
+
+    @Test
+    public void expiredDataPointsAreNotReturned() throws Exception {
+        MetricId<Double> id = new MetricId<>(TENANT_ID, GAUGE, "expiring");
+        Metric<Double> gauge = new Metric<>(id, asList(new DataPoint<>(10L, 1.0)));
+        dataAccess.insertGaugeData(gauge, 1).toBlocking().last();
+        assertEquals(1, dataAccess.findGaugeData(id, 0, 100, 0, Order.DESC).count().toBlocking().single()
+                .intValue());
+
+        Thread.sleep(1100);
+
+        assertEquals(0, dataAccess.findGaugeData(id, 0, 100, 0, Order.DESC).count().toBlocking().single()
+                .intValue());
+    }
+
+    @Test
+    public void insertMetricInMetricsIndexOnlyOnce() throws Exception {
+        Metric<Double> metric = new Metric<>(gaugeId, ImmutableMap.of("host", "a"), 7);
+        assertTrue(dataAccess.insertMetricInMetricsIndex(metric, false).get().wasApplied());
+        assertFalse(dataAccess.insertMetricInMetricsIndex(metric, false).get().wasApplied());
+
+        Row row = dataAccess.findMetric(gaugeId).toBlocking().single();
+        assertEquals("gauge", row.getString(0));
+        assertEquals(ImmutableMap.of("host", "a"), row.getMap(1, String.class, String.class));
+        assertEquals(7, row.getInt(2));
+    }
+
+    @Test
+    public void readColumnsByName() {
+        Row row = dataAccess.findGaugeData(gaugeId, 0, 100, 1, Order.ASC).toBlocking().single();
+        assertEquals(row.getUUID(0), row.getUUID("time"));
+        assertEquals(1.0, row.getDouble("N_VALUE"), 0);
+        assertTrue(row.getMap("tags", String.class, String.class).isEmpty());
+        assertEquals(row.getDouble(2), row.get("n_value", Double.class), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readUnknownColumn() {
+        dataAccess.findGaugeData(gaugeId, 0, 100, 1, Order.ASC).toBlocking().single().getString("s_value");
+    }
+
+    @Test
+    public void findMetricsByTagNameValue() {
+        Metric<Double> a = new Metric<>(new MetricId<>(TENANT_ID, GAUGE, "a"));
+        Metric<Double> b = new Metric<>(new MetricId<>(TENANT_ID, GAUGE, "b"));
+        dataAccess.insertIntoMetricsTagsIndex(a, ImmutableMap.of("host", "x")).toBlocking().last();
+        dataAccess.insertIntoMetricsTagsIndex(b, ImmutableMap.of("host", "y")).toBlocking().last();
+
+        List<String> metrics = dataAccess.findMetricsByTagNameValue(TENANT_ID, "host", "y")
+                .map(row -> row.getString(2))
+                .toList().toBlocking().single();
+        assertEquals(asList("b"), metrics);
+
+        dataAccess.deleteFromMetricsTagsIndex(b, ImmutableMap.of("host", "y")).toBlocking().last();
+        assertEquals(0, dataAccess.findMetricsByTagName(TENANT_ID, "host")
+                .filter(row -> row.getString(2).equals("y"))
+                .count().toBlocking().single().intValue());
+    }
+
+    private static List<Double> values(List<Row> rows) {
+        return rows.stream().map(row -> row.getDouble(2)).collect(toList());
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.core.service.cache;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import static org.hawkular.metrics.model.MetricType.GAUGE;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hawkular.metrics.model.Buckets;
+import org.hawkular.metrics.model.DataPoint;
+import org.hawkular.metrics.model.Metric;
+import org.hawkular.metrics.model.MetricId;
+import org.hawkular.metrics.model.NumericBucketPoint;
+import org.junit.Test;
+
+import rx.Observable;
+
+public class StatsCacheTest {
+    private static final long STEP = 100;
+    private static final long T0 = 100_000;
+
+    private final MetricId<Double> metricId = new MetricId<>("t1", GAUGE, "m1");
+    private final List<String> loads = new ArrayList<>();
+    private long now;
+    private final StatsCache statsCache = new StatsCache(1000, 5, MINUTES, () -> now);
+
+    @Test
+    public void reuseClosedBucketsAcrossSlidingWindows() {
+        now = T0 + 10 * STEP;
+        List<NumericBucketPoint> points = find(T0, T0 + 10 * STEP);
+        assertEquals(10, points.size());
+        assertEquals(asList("0-10"), loads);
+
+        now += STEP;
+        points = find(T0 + STEP, T0 + 11 * STEP);
+        assertEquals(10, points.size());
+        assertEquals(T0 + STEP, points.get(0).getStart());
+        assertEquals(T0 + 10 * STEP, points.get(9).getStart());
+        assertEquals(asList("0-10", "10-11"), loads);
+    }
+
+    @Test
+    public void alwaysLoadOpenBuckets() {
+        now = T0 + 9 * STEP + STEP / 2;
+        find(T0, T0 + 10 * STEP);
+        find(T0, T0 + 10 * STEP);
+        assertEquals(asList("0-10", "9-10"), loads);
+    }
+
+    @Test
+    public void invalidateBucketsOfLateWrites() {
+        now = T0 + 10 * STEP;
+        find(T0, T0 + 10 * STEP);
+
+        statsCache.invalidate(new Metric<>(metricId, asList(new DataPoint<>(T0 + 3 * STEP + 50, 1.0),
+                new DataPoint<>(T0 + 7 * STEP, 1.0))));
+        find(T0, T0 + 10 * STEP);
+        assertEquals(asList("0-10", "3-4", "7-8"), loads);
+    }
+
+    @Test
+    public void invalidateAllBuckets() {
+        now = T0 + 10 * STEP;
+        find(T0, T0 + 10 * STEP);
+
+        statsCache.invalidateAll();
+        find(T0, T0 + 10 * STEP);
+        assertEquals(asList("0-10", "0-10"), loads);
+    }
+
+    @Test
+    public void doNotCacheBucketsLoadedWhileDataIsInserted() {
+        now = T0 + 10 * STEP;
+        Buckets buckets = new Buckets(T0, STEP, 10);
+        statsCache.find(metricId, buckets, T0 + 10 * STEP, emptyList(), (start, end, toLoad) -> {
+            statsCache.invalidate(new Metric<>(metricId, asList(new DataPoint<>(T0 + 5 * STEP, 1.0))));
+            return load(start, end, toLoad);
+        }).toBlocking().single();
+
+        find(T0, T0 + 10 * STEP);
+        assertEquals(asList("0-10", "0-10"), loads);
+    }
+
+    @Test
+    public void doNotShareBucketsWithDifferentAlignment() {
+        now = T0 + 20 * STEP;
+        find(T0, T0 + 10 * STEP);
+        find(T0 + STEP / 2, T0 + 10 * STEP + STEP / 2);
+        assertEquals(2, loads.size());
+    }
+
+    @Test
+    public void expireCachedBuckets() {
+        now = T0 + 10 * STEP;
+        find(T0, T0 + 10 * STEP);
+        now += MINUTES.toMillis(5);
+        find(T0, T0 + 10 * STEP);
+        assertEquals(asList("0-10", "0-10"), loads);
+    }
+
+    private List<NumericBucketPoint> find(long start, long end) {
+        Buckets buckets = Buckets.fromStep(start, end, STEP);
+        return statsCache.find(metricId, buckets, end, emptyList(), this::load).toBlocking().single();
+    }
+
+    private Observable<List<NumericBucketPoint>> load(long start, long end, Buckets buckets) {
+        // Bucket indexes relative to the first bucket of all queries
+        loads.add((start - T0) / STEP + "-" + (end - T0 + STEP - 1) / STEP);
+        List<NumericBucketPoint> points = new ArrayList<>();
+        for (int i = 0; i < buckets.getCount(); i++) {
+            long bucketStart = buckets.getBucketStart(i);
+            points.add(new NumericBucketPoint.Builder(bucketStart, bucketStart + STEP).setSamples(1).build());
+        }
+        return Observable.just(points);
+    }
+}
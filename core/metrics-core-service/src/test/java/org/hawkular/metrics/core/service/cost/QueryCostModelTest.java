@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.core.service.cost;
+
+import static java.util.Arrays.asList;
+
+import static org.hawkular.metrics.model.MetricType.COUNTER_RATE;
+import static org.hawkular.metrics.model.MetricType.GAUGE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hawkular.metrics.model.exception.QueryTooExpensiveException;
+import org.hawkular.metrics.sysconfig.Configuration;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import rx.Observable;
+
+public class QueryCostModelTest {
+    private static final long HOUR = 3600_000;
+
+    @Test
+    public void estimateRows() {
+        QueryCostModel model = new QueryCostModel(10_000, 0, 0);
+        assertEquals(360, model.estimateRows(1, 0, HOUR));
+        assertEquals(3610, model.estimateRows(10, 0, HOUR + 1));
+        assertEquals(0, model.estimateRows(0, 0, HOUR));
+    }
+
+    @Test
+    public void rejectQueriesOverEstimatedLimit() {
+        QueryCostModel model = new QueryCostModel(10_000, 1000, 0);
+        QueryCost cost = model.start("t1", GAUGE, 0, HOUR);
+        assertEquals(asList("m1", "m2"), cost.checkEstimate(Observable.just("m1", "m2")).toList().toBlocking()
+                .single());
+
+        cost = model.start("t1", GAUGE, 0, HOUR);
+        try {
+            cost.checkEstimate(Observable.just("m1", "m2", "m3")).toList().toBlocking().single();
+            fail("Expected a " + QueryTooExpensiveException.class.getSimpleName());
+        } catch (QueryTooExpensiveException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("1080"));
+        }
+    }
+
+    @Test
+    public void abortQueriesOverScannedLimit() {
+        QueryCostModel model = new QueryCostModel(10_000, 0, 5);
+        QueryCost cost = model.start("t1", GAUGE, 0, HOUR);
+        List<Integer> rows = Observable.range(0, 5).doOnNext(cost::scanned).toList().toBlocking().single();
+        assertEquals(5, rows.size());
+        try {
+            cost.scanned(5);
+            fail("Expected a " + QueryTooExpensiveException.class.getSimpleName());
+        } catch (QueryTooExpensiveException expected) {
+        }
+    }
+
+    @Test
+    public void applyTenantLimits() {
+        QueryCostModel model = new QueryCostModel(10_000, 2000, 0);
+        Map<String, String> properties = new HashMap<>();
+        properties.put("max-estimated-rows", "100");
+        properties.put("t2.max-estimated-rows", "0");
+        properties.put("t3.max-estimated-rows", "invalid");
+        model.configure(new Configuration(QueryCostModel.CONFIGURATION_ID, properties));
+
+        assertEstimateRejected(model, "t1", true);
+        assertEstimateRejected(model, "t2", false);
+        assertEstimateRejected(model, "t3", true);
+
+        model.configure(new Configuration(QueryCostModel.CONFIGURATION_ID, new HashMap<>()));
+        assertEstimateRejected(model, "t1", false);
+    }
+
+    @Test
+    public void recordCostsPerQuery() {
+        MetricRegistry registry = new MetricRegistry();
+        QueryCostModel model = new QueryCostModel(10_000, 0, 0);
+        model.setMetricRegistry(registry);
+        QueryCost cost = model.start("t1", COUNTER_RATE, 0, HOUR);
+        cost.checkEstimate(Observable.just("m1")).toBlocking().single();
+        cost.scanned(1);
+        cost.scanned(2);
+        cost.complete();
+
+        assertEquals(360, registry.histogram("query-cost.counter-rate-stats.estimated-rows").getSnapshot().getMax());
+        assertEquals(2, registry.histogram("query-cost.counter-rate-stats.scanned-rows").getSnapshot().getMax());
+    }
+
+    private static void assertEstimateRejected(QueryCostModel model, String tenantId, boolean rejected) {
+        // 5 metrics over an hour: 1800 rows
+        QueryCost cost = model.start(tenantId, GAUGE, 0, HOUR);
+        try {
+            cost.checkEstimate(Observable.range(0, 5)).toList().toBlocking().single();
+            assertTrue("Expected " + tenantId + " to be rejected", !rejected);
+        } catch (QueryTooExpensiveException e) {
+            assertTrue("Expected " + tenantId + " to be accepted", rejected);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.core.service.events;
+
+import static java.util.Arrays.asList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import rx.Subscriber;
+
+public class BoundedFanOutTest {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final BoundedFanOut<Integer> fanOut = new BoundedFanOut<>("test");
+
+    @Test
+    public void deliverEventsToAllSubscribers() throws Exception {
+        RecordingSubscriber s1 = subscribe("s1", 16, OverflowPolicy.BLOCK, Long.MAX_VALUE);
+        RecordingSubscriber s2 = subscribe("s2", 16, OverflowPolicy.BLOCK, Long.MAX_VALUE);
+
+        for (int i = 0; i < 100; i++) {
+            fanOut.publish(i);
+        }
+        fanOut.complete();
+
+        assertTrue(s1.completed.await(5, TimeUnit.SECONDS));
+        assertTrue(s2.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(100, s1.events.size());
+        assertEquals(s1.events, s2.events);
+        assertEquals(0, metricRegistry.counter("test.s1.dropped").getCount());
+    }
+
+    @Test
+    public void dropNewestEventsWhenFull() throws Exception {
+        RecordingSubscriber subscriber = subscribe("s", 3, OverflowPolicy.DROP_NEWEST, 0);
+
+        for (int i = 0; i < 5; i++) {
+            fanOut.publish(i);
+        }
+        assertEquals(3, metricRegistry.getGauges().get("test.s.lag").getValue());
+        assertEquals(2, metricRegistry.counter("test.s.dropped").getCount());
+
+        subscriber.requestMore(10);
+        waitFor(() -> subscriber.events.size() == 3);
+        assertEquals(asList(0, 1, 2), subscriber.events);
+    }
+
+    @Test
+    public void dropOldestEventsWhenFull() throws Exception {
+        RecordingSubscriber subscriber = subscribe("s", 3, OverflowPolicy.DROP_OLDEST, 0);
+
+        for (int i = 0; i < 5; i++) {
+            fanOut.publish(i);
+        }
+        assertEquals(2, metricRegistry.counter("test.s.dropped").getCount());
+
+        subscriber.requestMore(10);
+        waitFor(() -> subscriber.events.size() == 3);
+        assertEquals(asList(2, 3, 4), subscriber.events);
+    }
+
+    @Test
+    public void notifyDroppedEvents() throws Exception {
+        AtomicInteger drops = new AtomicInteger();
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        fanOut.observe("s", 2, OverflowPolicy.DROP_OLDEST, metricRegistry, drops::incrementAndGet)
+                .subscribe(subscriber);
+
+        for (int i = 0; i < 5; i++) {
+            fanOut.publish(i);
+        }
+        assertEquals(3, drops.get());
+    }
+
+    @Test
+    public void blockPublisherWhenFull() throws Exception {
+        RecordingSubscriber subscriber = subscribe("s", 2, OverflowPolicy.BLOCK, 0);
+
+        Thread publisher = new Thread(() -> {
+            for (int i = 0; i < 5; i++) {
+                fanOut.publish(i);
+            }
+        });
+        publisher.start();
+        waitFor(() -> publisher.getState() == Thread.State.WAITING);
+        assertEquals(2, metricRegistry.getGauges().get("test.s.lag").getValue());
+
+        subscriber.requestMore(1);
+        waitFor(() -> subscriber.events.size() == 1);
+        assertTrue(publisher.isAlive());
+
+        subscriber.requestMore(Long.MAX_VALUE);
+        publisher.join(5000);
+        assertFalse(publisher.isAlive());
+        waitFor(() -> subscriber.events.size() == 5);
+        assertEquals(asList(0, 1, 2, 3, 4), subscriber.events);
+        assertEquals(0, metricRegistry.counter("test.s.dropped").getCount());
+    }
+
+    @Test
+    public void stopDeliveringAfterUnsubscribe() throws Exception {
+        RecordingSubscriber subscriber = subscribe("s", 4, OverflowPolicy.DROP_NEWEST, Long.MAX_VALUE);
+        fanOut.publish(1);
+        waitFor(() -> subscriber.events.size() == 1);
+
+        subscriber.unsubscribe();
+        fanOut.publish(2);
+
+        waitFor(() -> !metricRegistry.getGauges().containsKey("test.s.lag"));
+        assertEquals(asList(1), subscriber.events);
+        assertEquals(0, metricRegistry.counter("test.s.dropped").getCount());
+    }
+
+    @Test
+    public void completeLateSubscribers() throws Exception {
+        fanOut.complete();
+        RecordingSubscriber subscriber = subscribe("s", 4, OverflowPolicy.BLOCK, Long.MAX_VALUE);
+
+        assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+        assertNull(metricRegistry.getGauges().get("test.s.lag"));
+    }
+
+    private RecordingSubscriber subscribe(String name, int capacity, OverflowPolicy overflowPolicy,
+            long initialRequest) {
+        RecordingSubscriber subscriber = new RecordingSubscriber(initialRequest);
+        fanOut.observe(name, capacity, overflowPolicy, metricRegistry).subscribe(subscriber);
+        return subscriber;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static class RecordingSubscriber extends Subscriber<Integer> {
+        final List<Integer> events = new CopyOnWriteArrayList<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        final long initialRequest;
+
+        RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onStart() {
+            request(initialRequest);
+        }
+
+        void requestMore(long n) {
+            request(n);
+        }
+
+        @Override
+        public void onNext(Integer event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onError(Throwable e) {
+        }
+
+        @Override
+        public void onCompleted() {
+            completed.countDown();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.core.service.limit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hawkular.metrics.sysconfig.Configuration;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class TenantLimitsTest {
+
+    @Test
+    public void applyDefaultsAndTenantOverrides() {
+        TenantLimits limits = new TenantLimits(ImmutableMap.of("a", 10L, "b", 0L), 100);
+        assertTrue(limits.isLimited());
+        assertEquals(10, limits.get("t1", "a"));
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put("a", "20");
+        properties.put("t1.a", "0");
+        properties.put("t.with.dots.b", "5");
+        properties.put("t2.a", "invalid");
+        properties.put("t3.a", "101");
+        properties.put("t4.unknown", "1");
+        TenantLimits configured = limits.configure(new Configuration("test", properties));
+
+        assertEquals(20, configured.get("other", "a"));
+        assertEquals(0, configured.get("other", "b"));
+        assertEquals(0, configured.get("t1", "a"));
+        assertEquals(5, configured.get("t.with.dots", "b"));
+        assertEquals(20, configured.get("t.with.dots", "a"));
+        assertEquals(20, configured.get("t2", "a"));
+        assertEquals(20, configured.get("t3", "a"));
+        // Tenant overrides are not inherited from the previous configuration
+        assertEquals(20, configured.configure(new Configuration("test", new HashMap<>())).get("t1", "a"));
+    }
+
+    @Test
+    public void onlyLimitedIfAnyLimitIsPositive() {
+        TenantLimits limits = new TenantLimits(ImmutableMap.of("a", 0L), 100);
+        assertFalse(limits.isLimited());
+        assertTrue(limits.configure(new Configuration("test", ImmutableMap.of("t1.a", "1"))).isLimited());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectUnknownLimit() {
+        new TenantLimits(ImmutableMap.of("a", 0L), 100).get("t1", "b");
+    }
+}
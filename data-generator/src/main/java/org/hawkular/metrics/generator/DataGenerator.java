@@ -16,12 +16,23 @@
  */
 package org.hawkular.metrics.generator;
 
-import static org.hawkular.metrics.model.MetricType.GAUGE;
+import static org.hawkular.metrics.model.MetricType.COUNTER;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -33,8 +44,9 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PosixParser;
-import org.apache.commons.math3.random.ValueServer;
 import org.hawkular.metrics.core.service.TimeUUIDUtils;
+import org.hawkular.metrics.generator.ValueDistribution.ValueGenerator;
+import org.hawkular.metrics.model.MetricType;
 
 import com.google.common.base.Stopwatch;
 
@@ -47,6 +59,53 @@ public class DataGenerator {
 
     public static final int STATUS_SHOW_USAGE = 1;
 
+    private static final long PROGRESS_INTERVAL = 10;
+
+    private static final String DATA_SCHEMA = "CREATE TABLE %s.data ( " +
+            "tenant_id text, " +
+            "type tinyint, " +
+            "metric text, " +
+            "dpart bigint, " +
+            "time timeuuid, " +
+            "data_retention int static, " +
+            "n_value double, " +
+            "availability blob, " +
+            "l_value bigint, " +
+            // Commenting out the aggregates column because there appears to be a bug in the C*
+            // code that breaks CQLSSTableWriter when the schema includes a collection. Fortunately,
+            // we are not using the column so it can safely be ignored.
+//            "aggregates set<frozen <aggregate_data>>, " +
+            "PRIMARY KEY ((tenant_id, type, metric, dpart), time) " +
+            ") WITH CLUSTERING ORDER BY (time DESC)";
+
+    private static final String INSERT_GAUGE = "INSERT INTO %s.data (tenant_id, type, metric, dpart, time, n_value) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_COUNTER = "INSERT INTO %s.data (tenant_id, type, metric, dpart, time, " +
+            "l_value) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String METRICS_IDX_SCHEMA = "CREATE TABLE %s.metrics_idx ( " +
+            "tenant_id text, " +
+            "type tinyint, " +
+            "metric text, " +
+            "tags map<text, text>, " +
+            "data_retention int, " +
+            "PRIMARY KEY ((tenant_id, type), metric))";
+
+    private static final String INSERT_METRICS_IDX = "INSERT INTO %s.metrics_idx (tenant_id, type, metric, tags) " +
+            "VALUES (?, ?, ?, ?)";
+
+    private static final String METRICS_TAGS_IDX_SCHEMA = "CREATE TABLE %s.metrics_tags_idx ( " +
+            "tenant_id text, " +
+            "tname text, " +
+            "tvalue text, " +
+            "type tinyint, " +
+            "metric text, " +
+            "PRIMARY KEY ((tenant_id, tname), tvalue, type, metric))";
+
+    private static final String INSERT_METRICS_TAGS_IDX = "INSERT INTO %s.metrics_tags_idx (tenant_id, tname, " +
+            "tvalue, type, metric) VALUES (?, ?, ?, ?, ?)";
+
     private Options options;
 
     private String keyspace;
@@ -65,6 +124,18 @@ public class DataGenerator {
 
     private int bufferSize;
 
+    private int threads;
+
+    private List<ValueDistribution> distributions;
+
+    private TagGenerator tagGenerator;
+
+    private long seed;
+
+    private final LongAdder dataPoints = new LongAdder();
+
+    private final LongAdder indexRows = new LongAdder();
+
     private Pattern startEndRegexp;
 
     private Pattern intervalRegexp;
@@ -93,7 +164,20 @@ public class DataGenerator {
                 "points written. Defaults to one minute.");
         Option bufferSize = new Option(null, "buffer-size", true,
                 "Defines how much data will be buffered before being written out as a new SSTable. This corresponds " +
-                "roughly to the data size of the SSTable. Interpreted as mega bytes and defaults to 128 MB.");
+                "roughly to the data size of the SSTable. Interpreted as mega bytes and defaults to 128 MB. Each " +
+                "thread has its own buffers.");
+        Option threads = new Option(null, "threads", true,
+                "The number of threads writing SSTables. Series are sharded by tenant and metric between threads, " +
+                "each of which writes its own SSTables. Defaults to the number of processors.");
+        Option distribution = new Option(null, "distribution", true,
+                "Comma separated list of value distributions: uniform, random-walk, sine and counter. Metrics are " +
+                "assigned a distribution in a round-robin fashion. Metrics using the counter distribution are " +
+                "counters, others are gauges. Defaults to uniform.");
+        Option tags = new Option(null, "tags", true,
+                "Comma separated list of tag names and cardinalities, e.g. host:100,env:3. Metrics are tagged with " +
+                "all the names and are distributed evenly between the values of each name. Defaults to no tags.");
+        Option seed = new Option(null, "seed", true,
+                "The seed of the generated values, so that runs are reproducible. Defaults to 0.");
 
         options = new Options().addOption(new Option("h", "help", false, "Show this message."))
                 .addOption(keyspace)
@@ -103,7 +187,11 @@ public class DataGenerator {
                 .addOption(start)
                 .addOption(end)
                 .addOption(interval)
-                .addOption(bufferSize);
+                .addOption(bufferSize)
+                .addOption(threads)
+                .addOption(distribution)
+                .addOption(tags)
+                .addOption(seed);
     }
 
     public void run(CommandLine cmdLine) throws Exception {
@@ -120,10 +208,6 @@ public class DataGenerator {
         tenants = Integer.parseInt(cmdLine.getOptionValue("tenants", "100"));
         metricsPerTenant = Integer.parseInt(cmdLine.getOptionValue("metrics-per-tenant", "100"));
 
-        ValueServer valueServer = new ValueServer();
-        valueServer.setMu(100);
-        valueServer.setMode(ValueServer.UNIFORM_MODE);
-
         String endValue = cmdLine.getOptionValue("end");
         if (endValue == null) {
             endTime = System.currentTimeMillis();
@@ -147,32 +231,55 @@ public class DataGenerator {
 
         bufferSize = Integer.parseInt(cmdLine.getOptionValue("buffer-size", "128"));
 
-        CQLSSTableWriter writer = createWriter();
-        long totalDataPoints = 0;
+        threads = Integer.parseInt(cmdLine.getOptionValue("threads",
+                Integer.toString(Runtime.getRuntime().availableProcessors())));
+        if (threads < 1) {
+            throw new IllegalArgumentException(threads + " is an invalid value for --threads");
+        }
+        distributions = new ArrayList<>();
+        for (String name : cmdLine.getOptionValue("distribution", "uniform").split(",")) {
+            distributions.add(ValueDistribution.fromText(name.trim()));
+        }
+        tagGenerator = new TagGenerator(cmdLine.getOptionValue("tags", ""));
+        seed = Long.parseLong(cmdLine.getOptionValue("seed", "0"));
 
-        long currentTime = startTime;
-        while (currentTime <= endTime) {
-            for (int i = 0; i < tenants; ++i) {
-                for (int j = 0; j < metricsPerTenant; ++j) {
-                    UUID timeUUID = TimeUUIDUtils.getTimeUUID(currentTime);
-                    writer.addRow("TENANT-" + i, GAUGE.getCode(), "GAUGE-" + j, 0L, timeUUID, valueServer.getNext());
-                    ++totalDataPoints;
-                }
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+        progress.scheduleAtFixedRate(() -> printProgress(stopwatch), PROGRESS_INTERVAL, PROGRESS_INTERVAL,
+                TimeUnit.SECONDS);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> shards = new ArrayList<>(threads);
+            for (int i = 0; i < threads; ++i) {
+                shards.add(executor.submit(new Shard(i)));
+            }
+            for (Future<Void> shard : shards) {
+                shard.get();
             }
-            currentTime += interval;
+        } finally {
+            executor.shutdownNow();
+            progress.shutdownNow();
         }
-
-        writer.close();
         stopwatch.stop();
 
+        long elapsed = Math.max(1, stopwatch.elapsed(TimeUnit.MILLISECONDS));
         System.out.println("\n\nStart time: " + startTime);
         System.out.println("End time: " + endTime);
         System.out.println("Total duration: " + (endTime - startTime) + " ms");
         System.out.println("Interval: " + interval);
         System.out.println("Tenants: " + tenants);
         System.out.println("Metrics per tenant: " + metricsPerTenant);
-        System.out.println("Total data points: " + totalDataPoints);
-        System.out.println("Execution time: " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + " ms");
+        System.out.println("Threads: " + threads);
+        System.out.println("Total data points: " + dataPoints.sum());
+        System.out.println("Total index rows: " + indexRows.sum());
+        System.out.println("Execution time: " + elapsed + " ms");
+        System.out.println("Throughput: " + dataPoints.sum() * 1000 / elapsed + " data points/s");
+    }
+
+    private void printProgress(Stopwatch stopwatch) {
+        long elapsed = Math.max(1, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        long written = dataPoints.sum();
+        System.out.println("Written " + written + " data points in " + elapsed / 1000 + " s (" +
+                written * 1000 / elapsed + " data points/s)");
     }
 
     private long getDuration(String option, String optionValue, Pattern regexp) {
@@ -195,34 +302,128 @@ public class DataGenerator {
         }
     }
 
-    private CQLSSTableWriter createWriter() {
-        String schema = "CREATE TABLE " + keyspace +  ".data ( " +
-                "tenant_id text, " +
-                "type tinyint, " +
-                "metric text, " +
-                "dpart bigint, " +
-                "time timeuuid, " +
-                "data_retention int static, " +
-                "n_value double, " +
-                "availability blob, " +
-                "l_value bigint, " +
-                // Commenting out the aggregates column because there appears to be a bug in the C*
-                // code that breaks CQLSSTableWriter when the schema includes a collection. Fortunately,
-                // we are not using the column so it can safely be ignored.
-//                "aggregates set<frozen <aggregate_data>>, " +
-                "PRIMARY KEY ((tenant_id, type, metric, dpart), time) " +
-                ") WITH CLUSTERING ORDER BY (time DESC)";
-
-        String insertGauge = "INSERT INTO " + keyspace + ".data (tenant_id, type, metric, dpart, time, n_value) " +
-                "VALUES (?, ?, ?, ?, ?, ?)";
-
-
-        return CQLSSTableWriter.builder()
-                .inDirectory(dataDir)
-                .forTable(schema)
-                .using(insertGauge)
-                .withBufferSizeInMB(bufferSize)
-                .build();
+    /**
+     * Creates a writer storing SSTables in {@code <data-dir>/<name>/<keyspace>/<table>}, the layout expected by
+     * sstableloader.
+     */
+    private CQLSSTableWriter createWriter(String name, String table, String schema, String insert) {
+        File directory = new File(dataDir, name + File.separator + keyspace + File.separator + table);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("Cannot create directory " + directory);
+        }
+        // The builder registers the table in the global schema
+        synchronized (DataGenerator.class) {
+            return CQLSSTableWriter.builder()
+                    .inDirectory(directory)
+                    .forTable(String.format(schema, keyspace))
+                    .using(String.format(insert, keyspace))
+                    .withBufferSizeInMB(bufferSize)
+                    .build();
+        }
+    }
+
+    /**
+     * Writes the series of the tenant and metric pairs assigned to one thread, along with their index rows. Gauges,
+     * counters and each index table are written by separate writers in separate directories.
+     */
+    private class Shard implements Callable<Void> {
+        private final int index;
+        private CQLSSTableWriter gauges;
+        private CQLSSTableWriter counters;
+        private CQLSSTableWriter metricsIdx;
+        private CQLSSTableWriter metricsTagsIdx;
+
+        Shard(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            try {
+                for (int i = 0; i < tenants; ++i) {
+                    for (int j = 0; j < metricsPerTenant; ++j) {
+                        if (((long) i * metricsPerTenant + j) % threads == index) {
+                            write(i, j);
+                        }
+                    }
+                }
+            } finally {
+                close(gauges, counters, metricsIdx, metricsTagsIdx);
+            }
+            return null;
+        }
+
+        private void write(int tenant, int metric) throws Exception {
+            ValueDistribution distribution = distributions.get(metric % distributions.size());
+            MetricType<?> type = distribution.getType();
+            String tenantId = "TENANT-" + tenant;
+            String metricId = (type == COUNTER ? "COUNTER-" : "GAUGE-") + metric;
+
+            Map<String, String> tags = tagGenerator.getTags(metric);
+            if (metricsIdx == null) {
+                metricsIdx = createWriter("metrics_idx-" + index, "metrics_idx", METRICS_IDX_SCHEMA,
+                        INSERT_METRICS_IDX);
+            }
+            metricsIdx.addRow(tenantId, type.getCode(), metricId, tags);
+            indexRows.increment();
+            if (!tags.isEmpty()) {
+                if (metricsTagsIdx == null) {
+                    metricsTagsIdx = createWriter("metrics_tags_idx-" + index, "metrics_tags_idx",
+                            METRICS_TAGS_IDX_SCHEMA, INSERT_METRICS_TAGS_IDX);
+                }
+                for (Map.Entry<String, String> tag : tags.entrySet()) {
+                    metricsTagsIdx.addRow(tenantId, tag.getKey(), tag.getValue(), type.getCode(), metricId);
+                    indexRows.increment();
+                }
+            }
+
+            CQLSSTableWriter writer;
+            if (type == COUNTER) {
+                if (counters == null) {
+                    counters = createWriter("counters-" + index, "data", DATA_SCHEMA, INSERT_COUNTER);
+                }
+                writer = counters;
+            } else {
+                if (gauges == null) {
+                    gauges = createWriter("gauges-" + index, "data", DATA_SCHEMA, INSERT_GAUGE);
+                }
+                writer = gauges;
+            }
+            ValueGenerator generator = distribution.create(new Random(Objects.hash(seed, tenant, metric)));
+            long written = 0;
+            for (long currentTime = startTime; currentTime <= endTime; currentTime += interval) {
+                UUID timeUUID = TimeUUIDUtils.getTimeUUID(currentTime);
+                double value = generator.next(currentTime);
+                if (type == COUNTER) {
+                    writer.addRow(tenantId, type.getCode(), metricId, 0L, timeUUID, (long) value);
+                } else {
+                    writer.addRow(tenantId, type.getCode(), metricId, 0L, timeUUID, value);
+                }
+                ++written;
+            }
+            dataPoints.add(written);
+        }
+
+        private void close(CQLSSTableWriter... writers) throws Exception {
+            Exception failure = null;
+            for (CQLSSTableWriter writer : writers) {
+                if (writer == null) {
+                    continue;
+                }
+                try {
+                    writer.close();
+                } catch (Exception e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
     }
 
     private void printUsage() {
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.generator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns tags to metrics, given the number of distinct values of each tag name. The tags of a metric are derived
+ * from its index as the digits of a mixed radix number, so that all the combinations of tag values are used before
+ * any is repeated. For example with {@code host:100,env:3}, metric 0 has {@code host=host-0,env=env-0}, metric 1 has
+ * {@code host=host-1,env=env-0} and metric 100 has {@code host=host-0,env=env-1}.
+ */
+public class TagGenerator {
+
+    private final List<String> names = new ArrayList<>();
+    private final List<Integer> cardinalities = new ArrayList<>();
+
+    /**
+     * @param spec comma separated list of {@code name:cardinality} pairs, may be empty
+     */
+    public TagGenerator(String spec) {
+        if (spec.trim().isEmpty()) {
+            return;
+        }
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.trim().split(":");
+            int cardinality;
+            try {
+                cardinality = parts.length == 2 ? Integer.parseInt(parts[1]) : 0;
+            } catch (NumberFormatException e) {
+                cardinality = 0;
+            }
+            if (parts[0].isEmpty() || cardinality < 1) {
+                throw new IllegalArgumentException(entry + " is an invalid value for --tags");
+            }
+            names.add(parts[0]);
+            cardinalities.add(cardinality);
+        }
+    }
+
+    public boolean isEmpty() {
+        return names.isEmpty();
+    }
+
+    public Map<String, String> getTags(int metric) {
+        if (names.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> tags = new HashMap<>();
+        int remainder = metric;
+        for (int i = 0; i < names.size(); ++i) {
+            int cardinality = cardinalities.get(i);
+            tags.put(names.get(i), names.get(i) + "-" + remainder % cardinality);
+            remainder /= cardinality;
+        }
+        return tags;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.generator;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+
+import java.util.Random;
+
+import org.hawkular.metrics.model.MetricType;
+
+/**
+ * The shapes of generated time series. Each series gets its own {@link ValueGenerator}, seeded so that the generated
+ * data does not depend on the number of threads.
+ */
+public enum ValueDistribution {
+
+    /**
+     * Gauge values uniformly distributed between 0 and 200, without any correlation between successive values.
+     */
+    UNIFORM("uniform", MetricType.GAUGE) {
+        @Override
+        public ValueGenerator create(Random random) {
+            return timestamp -> random.nextDouble() * 200;
+        }
+    },
+
+    /**
+     * Gauge values moving by small normally distributed steps from a random starting point, like memory usage or
+     * queue sizes. Successive values are close, which is representative for compression.
+     */
+    RANDOM_WALK("random-walk", MetricType.GAUGE) {
+        @Override
+        public ValueGenerator create(Random random) {
+            return new ValueGenerator() {
+                double value = random.nextDouble() * 100;
+
+                @Override
+                public double next(long timestamp) {
+                    value = Math.max(0, value + random.nextGaussian());
+                    return value;
+                }
+            };
+        }
+    },
+
+    /**
+     * Gauge values following a daily cycle with a random phase and amplitude plus some noise, like request rates or
+     * CPU usage.
+     */
+    SINE("sine", MetricType.GAUGE) {
+        @Override
+        public ValueGenerator create(Random random) {
+            double phase = random.nextDouble() * 2 * Math.PI;
+            double amplitude = 10 + random.nextDouble() * 40;
+            double period = DAYS.toMillis(1);
+            return timestamp -> 50 + amplitude * Math.sin(2 * Math.PI * timestamp / period + phase)
+                    + random.nextGaussian();
+        }
+    },
+
+    /**
+     * Monotonically increasing counter values, reset to zero from time to time as when a process restarts.
+     */
+    COUNTER("counter", MetricType.COUNTER) {
+        @Override
+        public ValueGenerator create(Random random) {
+            return new ValueGenerator() {
+                long value;
+
+                @Override
+                public double next(long timestamp) {
+                    if (random.nextDouble() < COUNTER_RESET_PROBABILITY) {
+                        value = 0;
+                    } else {
+                        value += random.nextInt(100);
+                    }
+                    return value;
+                }
+            };
+        }
+    };
+
+    static final double COUNTER_RESET_PROBABILITY = 0.001;
+
+    private final String text;
+    private final MetricType<?> type;
+
+    ValueDistribution(String text, MetricType<?> type) {
+        this.text = text;
+        this.type = type;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the type of the metrics generated with this distribution
+     */
+    public MetricType<?> getType() {
+        return type;
+    }
+
+    /**
+     * @param random the source of randomness of the series, which must not be shared with other series
+     */
+    public abstract ValueGenerator create(Random random);
+
+    public static ValueDistribution fromText(String text) {
+        for (ValueDistribution distribution : values()) {
+            if (distribution.text.equals(text)) {
+                return distribution;
+            }
+        }
+        throw new IllegalArgumentException(text + " is an invalid value distribution");
+    }
+
+    /**
+     * Generates the values of a single series.
+     */
+    @FunctionalInterface
+    public interface ValueGenerator {
+        double next(long timestamp);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.component.insert;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSConsumer;
+import javax.jms.JMSContext;
+import javax.jms.Message;
+import javax.jms.Queue;
+import javax.jms.TextMessage;
+
+import org.hawkular.bus.common.AbstractMessage;
+import org.hawkular.bus.common.BasicMessage;
+import org.hawkular.metrics.core.service.MetricsService;
+import org.hawkular.metrics.model.DataPoint;
+import org.hawkular.metrics.model.Metric;
+import org.hawkular.metrics.model.MetricId;
+import org.hawkular.metrics.model.MetricType;
+import org.jboss.logging.Logger;
+
+import rx.Observable;
+
+/**
+ * Consumes a queue from a single thread, with its own JMS context in client acknowledge mode.
+ * <p>
+ * The data points of consecutive messages are coalesced by metric id into a micro-batch, which is written when it
+ * holds {@code batchSize} data points or when its first message was received {@code batchDelay} milliseconds ago.
+ * Messages are acknowledged only once their batch has been persisted. If persisting fails, the session is recovered so
+ * that the messages are redelivered.
+ */
+class BatchingConsumer<M extends BasicMessage, T> implements Runnable {
+    private static final Logger LOG = Logger.getLogger(BatchingConsumer.class);
+
+    private static final long IDLE_RECEIVE_TIMEOUT = 1000;
+    private static final long RECONNECT_DELAY = 5000;
+
+    /**
+     * Extracts the data points of a message and hands them over to a sink.
+     */
+    @FunctionalInterface
+    interface DataPointsExtractor<M, T> {
+        void extract(M message, BiConsumer<MetricId<T>, DataPoint<T>> sink);
+    }
+
+    private final ConnectionFactory connectionFactory;
+    private final Queue queue;
+    private final Class<M> messageClass;
+    private final MetricType<T> type;
+    private final DataPointsExtractor<M, T> extractor;
+    private final MetricsService metricsService;
+    private final int batchSize;
+    private final long batchDelay;
+    private final long reconnectDelay;
+
+    private volatile boolean running = true;
+
+    private final Map<MetricId<T>, List<DataPoint<T>>> batch = new LinkedHashMap<>();
+    private int batchDataPoints;
+    private int batchMessages;
+    private long batchDeadline;
+
+    BatchingConsumer(ConnectionFactory connectionFactory, Queue queue, Class<M> messageClass, MetricType<T> type,
+            DataPointsExtractor<M, T> extractor, MetricsService metricsService, int batchSize, long batchDelay) {
+        this(connectionFactory, queue, messageClass, type, extractor, metricsService, batchSize, batchDelay,
+                RECONNECT_DELAY);
+    }
+
+    BatchingConsumer(ConnectionFactory connectionFactory, Queue queue, Class<M> messageClass, MetricType<T> type,
+            DataPointsExtractor<M, T> extractor, MetricsService metricsService, int batchSize, long batchDelay,
+            long reconnectDelay) {
+        this.connectionFactory = connectionFactory;
+        this.queue = queue;
+        this.messageClass = messageClass;
+        this.type = type;
+        this.extractor = extractor;
+        this.metricsService = metricsService;
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try (JMSContext context = connectionFactory.createContext(JMSContext.CLIENT_ACKNOWLEDGE)) {
+                consume(context);
+            } catch (RuntimeException e) {
+                // Unexpected failures must not end the loop, or the pool would shrink on each of them
+                if (!running) {
+                    break;
+                }
+                LOG.warnf(e, "Consumer of %s failed, reconnecting in %d ms", queue, reconnectDelay);
+                resetBatch();
+                try {
+                    TimeUnit.MILLISECONDS.sleep(reconnectDelay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    private void consume(JMSContext context) {
+        JMSConsumer consumer = context.createConsumer(queue);
+        while (running) {
+            long timeout = batchMessages == 0 ? IDLE_RECEIVE_TIMEOUT
+                    : Math.max(1, batchDeadline - System.currentTimeMillis());
+            Message message = consumer.receive(timeout);
+            if (message != null) {
+                if (batchMessages == 0) {
+                    batchDeadline = System.currentTimeMillis() + batchDelay;
+                }
+                batchMessages++;
+                addToBatch(message);
+            }
+            if (batchMessages > 0 && (batchDataPoints >= batchSize || System.currentTimeMillis() >= batchDeadline)) {
+                flush(context);
+            }
+        }
+        if (batchMessages > 0) {
+            flush(context);
+        }
+    }
+
+    private void addToBatch(Message message) {
+        Map<MetricId<T>, List<DataPoint<T>>> dataPoints = new LinkedHashMap<>();
+        try {
+            M basicMessage = AbstractMessage.fromJSON(((TextMessage) message).getText(), messageClass);
+            extractor.extract(basicMessage, (id, dataPoint) -> dataPoints.computeIfAbsent(id,
+                    key -> new ArrayList<>()).add(dataPoint));
+        } catch (Exception e) {
+            // Redelivering would not help, the message is acknowledged with the rest of the batch
+            LOG.errorf(e, "Ignoring invalid message %s", message);
+            return;
+        }
+        dataPoints.forEach((id, points) -> {
+            batch.computeIfAbsent(id, key -> new ArrayList<>()).addAll(points);
+            batchDataPoints += points.size();
+        });
+    }
+
+    private void flush(JMSContext context) {
+        List<Metric<T>> metrics = new ArrayList<>(batch.size());
+        batch.forEach((id, dataPoints) -> metrics.add(new Metric<>(id, dataPoints)));
+        try {
+            if (!metrics.isEmpty()) {
+                metricsService.addDataPoints(type, Observable.from(metrics)).toBlocking().lastOrDefault(null);
+            }
+            context.acknowledge();
+        } catch (Exception e) {
+            LOG.warnf(e, "Failed to persist %d data points from %s, %d messages will be redelivered",
+                    batchDataPoints, queue, batchMessages);
+            context.recover();
+        } finally {
+            resetBatch();
+        }
+    }
+
+    private void resetBatch() {
+        batch.clear();
+        batchDataPoints = 0;
+        batchMessages = 0;
+    }
+
+    void stop() {
+        running = false;
+    }
+}
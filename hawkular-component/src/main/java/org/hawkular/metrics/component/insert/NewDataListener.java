@@ -14,46 +14,58 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package org.hawkular.metrics.component.insert;
 
 import static org.hawkular.metrics.model.MetricType.AVAILABILITY;
 import static org.hawkular.metrics.model.MetricType.COUNTER;
 import static org.hawkular.metrics.model.MetricType.GAUGE;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedThreadFactory;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 import javax.jms.ConnectionFactory;
-import javax.jms.JMSConsumer;
-import javax.jms.JMSContext;
-import javax.jms.JMSRuntimeException;
 import javax.jms.Queue;
 
-import org.hawkular.bus.common.consumer.BasicMessageListener;
+import org.hawkular.bus.common.BasicMessage;
 import org.hawkular.metrics.api.jaxrs.ServiceReady;
 import org.hawkular.metrics.api.jaxrs.ServiceReadyEvent;
 import org.hawkular.metrics.api.jaxrs.util.Eager;
+import org.hawkular.metrics.component.insert.BatchingConsumer.DataPointsExtractor;
 import org.hawkular.metrics.component.publish.AvailDataMessage;
 import org.hawkular.metrics.component.publish.AvailDataMessage.AvailData;
+import org.hawkular.metrics.component.publish.AvailDataMessage.SingleAvail;
 import org.hawkular.metrics.component.publish.MetricDataMessage;
 import org.hawkular.metrics.component.publish.MetricDataMessage.MetricData;
+import org.hawkular.metrics.component.publish.MetricDataMessage.SingleMetric;
 import org.hawkular.metrics.core.service.MetricsService;
 import org.hawkular.metrics.model.AvailabilityType;
 import org.hawkular.metrics.model.DataPoint;
-import org.hawkular.metrics.model.Metric;
 import org.hawkular.metrics.model.MetricId;
+import org.hawkular.metrics.model.MetricType;
 import org.jboss.logging.Logger;
 
-import rx.Observable;
-import rx.Subscriber;
-
 /**
  * Listens to new date coming from the bus and saves it with the MetricsService.
+ * <p>
+ * Each queue is consumed by a pool of {@link BatchingConsumer consumers}, which coalesce the data points of several
+ * messages before writing them. Messages are acknowledged only after their data points have been persisted. The pool
+ * can be tuned with the following system properties:
+ * <ul>
+ *     <li>{@code hawkular.metrics.bus.consumers}: number of consumers per queue</li>
+ *     <li>{@code hawkular.metrics.bus.batch-size}: maximum number of data points written at once</li>
+ *     <li>{@code hawkular.metrics.bus.batch-delay}: maximum time, in milliseconds, a message waits for its batch to be
+ *     written</li>
+ * </ul>
  *
  * @author Thomas Segismont
  */
@@ -62,6 +74,10 @@ import rx.Subscriber;
 public class NewDataListener {
     private static final Logger LOG = Logger.getLogger(NewDataListener.class);
 
+    public static final int DEFAULT_CONSUMERS = 2;
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final long DEFAULT_BATCH_DELAY = 100;
+
     @Resource(mappedName = "java:/queue/hawkular/metrics/gauges/new")
     Queue gaugesQueue;
 
@@ -74,104 +90,81 @@ public class NewDataListener {
     @Resource(name = "java:/HawkularBusConnectionFactory")
     private ConnectionFactory connectionFactory;
 
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
     @Inject
     MetricsService metricsService;
 
-    private JMSContext context;
-    private JMSConsumer gaugesConsumer;
-    private JMSConsumer countersConsumer;
-    private JMSConsumer availabilityConsumer;
+    private final List<BatchingConsumer<?, ?>> consumers = new ArrayList<>();
+    private ExecutorService executor;
 
     public void onMetricsServiceReady(@Observes @ServiceReady ServiceReadyEvent event) {
-        context = connectionFactory.createContext();
-        gaugesConsumer = context.createConsumer(gaugesQueue);
-        gaugesConsumer.setMessageListener(new BasicMessageListener<MetricDataMessage>() {
-            @Override
-            protected void onBasicMessage(MetricDataMessage basicMessage) {
-                onGaugeData(basicMessage.getMetricData());
-            }
-        });
-        countersConsumer = context.createConsumer(countersQueue);
-        countersConsumer.setMessageListener(new BasicMessageListener<MetricDataMessage>() {
-            @Override
-            protected void onBasicMessage(MetricDataMessage basicMessage) {
-                onCounterData(basicMessage.getMetricData());
-            }
-        });
-        availabilityConsumer = context.createConsumer(availabilityQueue);
-        availabilityConsumer.setMessageListener(new BasicMessageListener<AvailDataMessage>() {
-            @Override
-            protected void onBasicMessage(AvailDataMessage basicMessage) {
-                onAvailData(basicMessage.getAvailData());
-            }
-        });
+        int concurrency = Math.max(1, Integer.getInteger("hawkular.metrics.bus.consumers", DEFAULT_CONSUMERS));
+        int batchSize = Math.max(1, Integer.getInteger("hawkular.metrics.bus.batch-size", DEFAULT_BATCH_SIZE));
+        long batchDelay = Math.max(0, Long.getLong("hawkular.metrics.bus.batch-delay", DEFAULT_BATCH_DELAY));
+
+        for (int i = 0; i < concurrency; i++) {
+            addConsumer(gaugesQueue, MetricDataMessage.class, GAUGE, NewDataListener::extractGaugeData, batchSize,
+                    batchDelay);
+            addConsumer(countersQueue, MetricDataMessage.class, COUNTER, NewDataListener::extractCounterData,
+                    batchSize, batchDelay);
+            addConsumer(availabilityQueue, AvailDataMessage.class, AVAILABILITY, NewDataListener::extractAvailData,
+                    batchSize, batchDelay);
+        }
+        executor = Executors.newFixedThreadPool(consumers.size(), threadFactory);
+        consumers.forEach(executor::execute);
+    }
+
+    private <M extends BasicMessage, T> void addConsumer(Queue queue, Class<M> messageClass, MetricType<T> type,
+            DataPointsExtractor<M, T> extractor, int batchSize, long batchDelay) {
+        consumers.add(new BatchingConsumer<>(connectionFactory, queue, messageClass, type, extractor, metricsService,
+                batchSize, batchDelay));
     }
 
-    private void onGaugeData(MetricData metricData) {
-        Observable<Metric<Double>> metrics = Observable.from(metricData.getData()).map(singleMetric -> {
+    private static void extractGaugeData(MetricDataMessage message,
+            BiConsumer<MetricId<Double>, DataPoint<Double>> sink) {
+        MetricData metricData = message.getMetricData();
+        for (SingleMetric singleMetric : metricData.getData()) {
             MetricId<Double> id = new MetricId<>(metricData.getTenantId(), GAUGE, singleMetric.getSource());
-            DataPoint<Double> dataPoint = new DataPoint<>(singleMetric.getTimestamp(), singleMetric.getValue());
-            return new Metric<>(id, Collections.singletonList(dataPoint));
-        });
-        metricsService.addDataPoints(GAUGE, metrics).subscribe(new NewDataSubscriber());
+            sink.accept(id, new DataPoint<>(singleMetric.getTimestamp(), singleMetric.getValue()));
+        }
     }
 
-    private void onCounterData(MetricData metricData) {
-        Observable<Metric<Long>> metrics = Observable.from(metricData.getData()).map(singleMetric -> {
+    private static void extractCounterData(MetricDataMessage message,
+            BiConsumer<MetricId<Long>, DataPoint<Long>> sink) {
+        MetricData metricData = message.getMetricData();
+        for (SingleMetric singleMetric : metricData.getData()) {
             MetricId<Long> id = new MetricId<>(metricData.getTenantId(), COUNTER, singleMetric.getSource());
             long value = (long) singleMetric.getValue();
-            DataPoint<Long> dataPoint = new DataPoint<>(singleMetric.getTimestamp(), value);
-            return new Metric<>(id, Collections.singletonList(dataPoint));
-        });
-        metricsService.addDataPoints(COUNTER, metrics).subscribe(new NewDataSubscriber());
+            sink.accept(id, new DataPoint<>(singleMetric.getTimestamp(), value));
+        }
     }
 
-    private void onAvailData(AvailData availData) {
-        Observable<Metric<AvailabilityType>> metrics = Observable.from(availData.getData()).map(singleMetric -> {
+    private static void extractAvailData(AvailDataMessage message,
+            BiConsumer<MetricId<AvailabilityType>, DataPoint<AvailabilityType>> sink) {
+        AvailData availData = message.getAvailData();
+        for (SingleAvail singleAvail : availData.getData()) {
             MetricId<AvailabilityType> id;
-            id = new MetricId<>(singleMetric.getTenantId(), AVAILABILITY, singleMetric.getId());
-            AvailabilityType availabilityType = AvailabilityType.fromString(singleMetric.getAvail());
-            DataPoint<AvailabilityType> dataPoint = new DataPoint<>(singleMetric.getTimestamp(), availabilityType);
-            return new Metric<>(id, Collections.singletonList(dataPoint));
-        });
-        metricsService.addDataPoints(AVAILABILITY, metrics).subscribe(new NewDataSubscriber());
+            id = new MetricId<>(singleAvail.getTenantId(), AVAILABILITY, singleAvail.getId());
+            AvailabilityType availabilityType = AvailabilityType.fromString(singleAvail.getAvail());
+            sink.accept(id, new DataPoint<>(singleAvail.getTimestamp(), availabilityType));
+        }
     }
 
     @PreDestroy
     void shutdown() {
-        closeQuietly(gaugesConsumer);
-        closeQuietly(countersConsumer);
-        closeQuietly(availabilityConsumer);
-        if (context != null) {
+        consumers.forEach(BatchingConsumer::stop);
+        if (executor != null) {
+            executor.shutdown();
             try {
-                context.close();
-            } catch (JMSRuntimeException ignored) {
+                if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    LOG.warn("Bus consumers did not stop in time, unacknowledged messages will be redelivered");
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
     }
-
-    private void closeQuietly(JMSConsumer jmsConsumer) {
-        if (jmsConsumer != null) {
-            try {
-                jmsConsumer.close();
-            } catch (JMSRuntimeException ignored) {
-            }
-        }
-    }
-
-    private static class NewDataSubscriber extends Subscriber<Void> {
-
-        @Override
-        public void onCompleted() {
-        }
-
-        @Override
-        public void onError(Throwable t) {
-            LOG.warn("Failed to persist data", t);
-        }
-
-        @Override
-        public void onNext(Void aVoid) {
-        }
-    }
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.component.insert;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import static org.hawkular.metrics.model.MetricType.GAUGE;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BiConsumer;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSConsumer;
+import javax.jms.JMSContext;
+import javax.jms.JMSRuntimeException;
+import javax.jms.Message;
+import javax.jms.Queue;
+import javax.jms.TextMessage;
+
+import org.hawkular.metrics.component.publish.MetricDataMessage;
+import org.hawkular.metrics.component.publish.MetricDataMessage.MetricData;
+import org.hawkular.metrics.component.publish.MetricDataMessage.SingleMetric;
+import org.hawkular.metrics.core.service.MetricsService;
+import org.hawkular.metrics.model.DataPoint;
+import org.hawkular.metrics.model.Metric;
+import org.hawkular.metrics.model.MetricId;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.stubbing.Answer;
+
+import rx.Observable;
+import rx.subjects.PublishSubject;
+
+public class BatchingConsumerTest {
+    private static final String TENANT = "test";
+    private static final long VERIFY_TIMEOUT = 5000;
+
+    private final ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+    private final Queue queue = mock(Queue.class);
+    private final MetricsService metricsService = mock(MetricsService.class);
+    private final BlockingQueue<Message> messages = new LinkedBlockingQueue<>();
+    private final List<List<Metric<Double>>> stored = new CopyOnWriteArrayList<>();
+
+    private BatchingConsumer<MetricDataMessage, Double> consumer;
+    private Thread thread;
+
+    @After
+    public void stopConsumer() throws Exception {
+        if (consumer != null) {
+            consumer.stop();
+            thread.join(VERIFY_TIMEOUT);
+        }
+    }
+
+    @Test
+    public void flushWhenBatchIsFull() throws Exception {
+        JMSContext context = context(receiveMessages());
+        when(connectionFactory.createContext(JMSContext.CLIENT_ACKNOWLEDGE)).thenReturn(context);
+        storeDataPoints();
+        start(3, HOURS.toMillis(1));
+
+        messages.add(message(new SingleMetric("a", 1, 1), new SingleMetric("b", 1, 1)));
+        messages.add(message(new SingleMetric("a", 2, 2)));
+
+        verify(context, timeout(VERIFY_TIMEOUT)).acknowledge();
+        assertEquals(1, stored.size());
+        List<Metric<Double>> batch = stored.get(0);
+        assertEquals(2, batch.size());
+        assertEquals(new MetricId<>(TENANT, GAUGE, "a"), batch.get(0).getMetricId());
+        assertEquals(asList(new DataPoint<>(1L, 1.0), new DataPoint<>(2L, 2.0)), batch.get(0).getDataPoints());
+        assertEquals(new MetricId<>(TENANT, GAUGE, "b"), batch.get(1).getMetricId());
+    }
+
+    @Test
+    public void flushWhenBatchDelayElapses() throws Exception {
+        JMSContext context = context(receiveMessages());
+        when(connectionFactory.createContext(JMSContext.CLIENT_ACKNOWLEDGE)).thenReturn(context);
+        storeDataPoints();
+        start(100, 50);
+
+        messages.add(message(new SingleMetric("a", 1, 1)));
+
+        verify(context, timeout(VERIFY_TIMEOUT)).acknowledge();
+        assertEquals(1, stored.size());
+        assertEquals(1, stored.get(0).size());
+    }
+
+    @Test
+    public void acknowledgeOnlyOnceStored() throws Exception {
+        JMSContext context = context(receiveMessages());
+        when(connectionFactory.createContext(JMSContext.CLIENT_ACKNOWLEDGE)).thenReturn(context);
+        PublishSubject<Void> storing = PublishSubject.create();
+        when(metricsService.addDataPoints(eq(GAUGE), any())).thenReturn(storing);
+        start(1, HOURS.toMillis(1));
+
+        messages.add(message(new SingleMetric("a", 1, 1)));
+
+        verify(metricsService, timeout(VERIFY_TIMEOUT)).addDataPoints(eq(GAUGE), any());
+        MILLISECONDS.sleep(200);
+        verify(context, never()).acknowledge();
+
+        storing.onCompleted();
+        verify(context, timeout(VERIFY_TIMEOUT)).acknowledge();
+    }
+
+    @Test
+    public void recoverWhenStoringFails() throws Exception {
+        JMSContext context = context(receiveMessages());
+        when(connectionFactory.createContext(JMSContext.CLIENT_ACKNOWLEDGE)).thenReturn(context);
+        when(metricsService.addDataPoints(eq(GAUGE), any())).thenReturn(Observable.error(new RuntimeException()));
+        start(1, HOURS.toMillis(1));
+
+        messages.add(message(new SingleMetric("a", 1, 1)));
+
+        verify(context, timeout(VERIFY_TIMEOUT)).recover();
+        verify(context, never()).acknowledge();
+    }
+
+    @Test
+    public void reconnectAfterFailure() throws Exception {
+        JMSContext broken = context(invocation -> {
+            throw new JMSRuntimeException("Connection lost");
+        });
+        JMSContext working = context(receiveMessages());
+        when(connectionFactory.createContext(JMSContext.CLIENT_ACKNOWLEDGE)).thenReturn(broken, working);
+        storeDataPoints();
+        start(1, HOURS.toMillis(1));
+
+        messages.add(message(new SingleMetric("a", 1, 1)));
+
+        verify(broken, timeout(VERIFY_TIMEOUT)).close();
+        verify(working, timeout(VERIFY_TIMEOUT)).acknowledge();
+        assertEquals(1, stored.size());
+    }
+
+    private void start(int batchSize, long batchDelay) {
+        consumer = new BatchingConsumer<>(connectionFactory, queue, MetricDataMessage.class, GAUGE,
+                BatchingConsumerTest::extractGaugeData, metricsService, batchSize, batchDelay, 10);
+        thread = new Thread(consumer);
+        thread.start();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void storeDataPoints() {
+        when(metricsService.addDataPoints(eq(GAUGE), any())).thenAnswer(invocation -> {
+            Observable<Metric<Double>> metrics = (Observable<Metric<Double>>) invocation.getArguments()[1];
+            return metrics.toList().doOnNext(stored::add).ignoreElements().cast(Void.class);
+        });
+    }
+
+    private JMSContext context(Answer<Message> receive) {
+        JMSConsumer jmsConsumer = mock(JMSConsumer.class);
+        when(jmsConsumer.receive(anyLong())).thenAnswer(receive);
+        JMSContext context = mock(JMSContext.class);
+        when(context.createConsumer(queue)).thenReturn(jmsConsumer);
+        return context;
+    }
+
+    private Answer<Message> receiveMessages() {
+        return invocation -> messages.poll((Long) invocation.getArguments()[0], MILLISECONDS);
+    }
+
+    private static Message message(SingleMetric... data) throws Exception {
+        MetricData metricData = new MetricData();
+        metricData.setTenantId(TENANT);
+        metricData.setData(asList(data));
+        TextMessage message = mock(TextMessage.class);
+        when(message.getText()).thenReturn(new MetricDataMessage(metricData).toJSON());
+        return message;
+    }
+
+    private static void extractGaugeData(MetricDataMessage message,
+            BiConsumer<MetricId<Double>, DataPoint<Double>> sink) {
+        MetricData metricData = message.getMetricData();
+        for (SingleMetric singleMetric : metricData.getData()) {
+            MetricId<Double> id = new MetricId<>(metricData.getTenantId(), GAUGE, singleMetric.getSource());
+            sink.accept(id, new DataPoint<>(singleMetric.getTimestamp(), singleMetric.getValue()));
+        }
+    }
+}
@@ -17,4 +17,10 @@
 #
 
 #mvn clean install
-java -Xmx2048m -Xms1024m -jar target/benchmark.jar
+# Benchmarks which do not need Cassandra, with allocation profiling: ./run.sh cpu
+if [ "$1" = "cpu" ]; then
+  shift
+  java -Xmx2048m -Xms1024m -cp target/benchmark.jar org.hawkular.metrics.benchmark.jmh.cpu.CpuBenchmarks "$@"
+else
+  java -Xmx2048m -Xms1024m -jar target/benchmark.jar "$@"
+fi
@@ -72,6 +72,7 @@ public class InsertBenchmark {
             metricsManager = new MetricServiceManager(new LiveCassandraManager());
 //            metricsManager = new MetricServiceManager(new SCassandraManager());
 //            metricsManager = new MetricServiceManager(new MockCassandraManager());
+//            metricsManager = new MetricServiceManager();
             metricsService = metricsManager.getMetricsService();
         }
 
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.benchmark.jmh;
+
+import static org.hawkular.metrics.model.MetricType.COUNTER;
+import static org.hawkular.metrics.model.MetricType.GAUGE;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.metrics.benchmark.jmh.util.MetricServiceManager;
+import org.hawkular.metrics.core.service.MetricsService;
+import org.hawkular.metrics.core.service.Order;
+import org.hawkular.metrics.model.Buckets;
+import org.hawkular.metrics.model.DataPoint;
+import org.hawkular.metrics.model.Metric;
+import org.hawkular.metrics.model.MetricId;
+import org.hawkular.metrics.model.Percentile;
+import org.hawkular.metrics.model.param.BucketConfig;
+import org.hawkular.metrics.model.param.TimeRange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import rx.Observable;
+
+/**
+ * Benchmarks of the read paths of MetricsServiceImpl, without JSON or REST overhead. Each trial writes its own data
+ * set, in a dedicated tenant, then queries it.
+ * <p>
+ * With {@code memory}, data is kept in an in-memory DataAccess and results are bound by the service layer. Stand-in
+ * cluster managers do not store data: with them, results measure the overhead of the query paths only. Run a subset
+ * with JMH options, e.g. {@code -p cluster=live -p metrics=100 ReadBenchmark.findGaugeStats}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ReadBenchmark {
+
+    private static final long INTERVAL = TimeUnit.SECONDS.toMillis(10);
+    private static final int TAG_GROUPS = 10;
+
+    @State(Scope.Benchmark)
+    public static class DataSet {
+
+        @Param({"live", "mock", "memory"})
+        public String cluster;
+
+        @Param({"10", "100", "1000"})
+        public int metrics;
+
+        @Param({"100", "10000"})
+        public int datapointsPerMetric;
+
+        private MetricServiceManager metricsManager;
+        private MetricsService metricsService;
+        private String tenantId;
+        private long start;
+        private long end;
+        private MetricId<Double> gaugeId;
+        private MetricId<Long> counterId;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            metricsManager = MetricServiceManager.create(cluster);
+            metricsService = metricsManager.getMetricsService();
+            tenantId = "read-benchmark-" + System.currentTimeMillis();
+            end = System.currentTimeMillis();
+            start = end - datapointsPerMetric * INTERVAL;
+
+            List<Metric<Double>> gauges = new ArrayList<>(metrics);
+            List<Metric<Long>> counters = new ArrayList<>(metrics);
+            for (int i = 0; i < metrics; i++) {
+                Map<String, String> tags = new HashMap<>();
+                tags.put("host", "host-" + i);
+                tags.put("group", "group-" + (i % TAG_GROUPS));
+                MetricId<Double> gauge = new MetricId<>(tenantId, GAUGE, "read.gauge." + i);
+                MetricId<Long> counter = new MetricId<>(tenantId, COUNTER, "read.counter." + i);
+                metricsService.createMetric(new Metric<>(gauge, tags, null), false).toBlocking()
+                        .lastOrDefault(null);
+                metricsService.createMetric(new Metric<>(counter, tags, null), false).toBlocking()
+                        .lastOrDefault(null);
+
+                List<DataPoint<Double>> gaugePoints = new ArrayList<>(datapointsPerMetric);
+                List<DataPoint<Long>> counterPoints = new ArrayList<>(datapointsPerMetric);
+                for (int j = 0; j < datapointsPerMetric; j++) {
+                    long timestamp = start + j * INTERVAL;
+                    gaugePoints.add(new DataPoint<>(timestamp, Math.sin(j / 100.0) * 100 + i));
+                    counterPoints.add(new DataPoint<>(timestamp, (long) j * (i + 1)));
+                }
+                gauges.add(new Metric<>(gauge, gaugePoints));
+                counters.add(new Metric<>(counter, counterPoints));
+            }
+            // Insert metric by metric, so that a single call does not hold the whole data set in flight
+            Observable.from(gauges)
+                    .concatMap(m -> metricsService.addDataPoints(GAUGE, Observable.just(m)))
+                    .toBlocking().lastOrDefault(null);
+            Observable.from(counters)
+                    .concatMap(m -> metricsService.addDataPoints(COUNTER, Observable.just(m)))
+                    .toBlocking().lastOrDefault(null);
+
+            gaugeId = gauges.get(0).getMetricId();
+            counterId = counters.get(0).getMetricId();
+        }
+
+        @TearDown(Level.Trial)
+        public void shutdown() {
+            metricsManager.shutdown();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class RawQuery {
+
+        // 0 means no limit
+        @Param({"0", "100"})
+        public int limit;
+    }
+
+    @State(Scope.Benchmark)
+    public static class StatsQuery {
+
+        @Param({"1", "60", "1000"})
+        public int buckets;
+
+        @Param({"none", "50,90,99"})
+        public String percentiles;
+
+        private List<Percentile> percentileList;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            if ("none".equals(percentiles)) {
+                percentileList = Collections.emptyList();
+            } else {
+                percentileList = new ArrayList<>();
+                Arrays.stream(percentiles.split(",")).map(Percentile::new).forEach(percentileList::add);
+            }
+        }
+    }
+
+    @Benchmark
+    public void findDataPointsAsc(DataSet data, RawQuery query, Blackhole bh) {
+        bh.consume(data.metricsService.findDataPoints(data.gaugeId, data.start, data.end, query.limit, Order.ASC)
+                .toList().toBlocking().lastOrDefault(null));
+    }
+
+    @Benchmark
+    public void findDataPointsDesc(DataSet data, RawQuery query, Blackhole bh) {
+        bh.consume(data.metricsService.findDataPoints(data.gaugeId, data.start, data.end, query.limit, Order.DESC)
+                .toList().toBlocking().lastOrDefault(null));
+    }
+
+    @Benchmark
+    public void findGaugeStats(DataSet data, StatsQuery query, Blackhole bh) {
+        BucketConfig bucketConfig = new BucketConfig(query.buckets, null, new TimeRange(data.start, data.end));
+        bh.consume(data.metricsService.findGaugeStats(data.gaugeId, bucketConfig, query.percentileList)
+                .toBlocking().lastOrDefault(null));
+    }
+
+    @Benchmark
+    public void findRateData(DataSet data, RawQuery query, Blackhole bh) {
+        bh.consume(data.metricsService.findRateData(data.counterId, data.start, data.end, query.limit, Order.ASC)
+                .toList().toBlocking().lastOrDefault(null));
+    }
+
+    @Benchmark
+    public void findMetricsWithTagValue(DataSet data, Blackhole bh) {
+        Map<String, String> tags = Collections.singletonMap("group", "group-1");
+        bh.consume(data.metricsService.findMetricsWithFilters(data.tenantId, GAUGE, tags)
+                .toList().toBlocking().lastOrDefault(null));
+    }
+
+    @Benchmark
+    public void findMetricsWithTagRegex(DataSet data, Blackhole bh) {
+        Map<String, String> tags = Collections.singletonMap("host", "host-1.*");
+        bh.consume(data.metricsService.findMetricsWithFilters(data.tenantId, GAUGE, tags)
+                .toList().toBlocking().lastOrDefault(null));
+    }
+
+    @Benchmark
+    public void findStackedNumericStats(DataSet data, StatsQuery query, Blackhole bh) {
+        Map<String, String> tags = Collections.singletonMap("group", "group-1");
+        Buckets buckets = Buckets.fromCount(data.start, data.end, query.buckets);
+        bh.consume(data.metricsService.findNumericStats(data.tenantId, GAUGE, tags, data.start, data.end, buckets,
+                query.percentileList, true).toBlocking().lastOrDefault(null));
+    }
+}
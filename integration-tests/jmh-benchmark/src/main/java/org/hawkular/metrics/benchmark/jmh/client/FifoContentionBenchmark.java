@@ -0,0 +1,172 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.benchmark.jmh.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.metrics.client.common.BoundMetricFifo;
+import org.hawkular.metrics.client.common.SingleMetric;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link BoundMetricFifo} under contention: several producer threads offer metrics while a single consumer
+ * drains them in batches. The {@code synchronized} implementation is the former ArrayDeque guarded by a mutex, kept
+ * here as a baseline.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class FifoContentionBenchmark {
+    private static final int CAPACITY = 10_000;
+    private static final int DRAIN_SIZE = 100;
+
+    public interface Fifo {
+        void offer(SingleMetric metric);
+
+        int drain(List<SingleMetric> batch, int maxElements);
+    }
+
+    @State(Scope.Group)
+    public static class FifoState {
+        @Param({"lock-free", "synchronized"})
+        public String implementation;
+
+        Fifo fifo;
+
+        @Setup
+        public void setup() {
+            if ("synchronized".equals(implementation)) {
+                fifo = new SynchronizedFifo(CAPACITY);
+            } else {
+                BoundMetricFifo boundMetricFifo = new BoundMetricFifo(CAPACITY, CAPACITY);
+                fifo = new Fifo() {
+                    @Override
+                    public void offer(SingleMetric metric) {
+                        boundMetricFifo.offer(metric);
+                    }
+
+                    @Override
+                    public int drain(List<SingleMetric> batch, int maxElements) {
+                        return boundMetricFifo.drainTo(batch, maxElements);
+                    }
+                };
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ProducerState {
+        final SingleMetric metric = new SingleMetric("benchmark", System.currentTimeMillis(), 1.0);
+    }
+
+    @State(Scope.Thread)
+    public static class ConsumerState {
+        final List<SingleMetric> batch = new ArrayList<>(DRAIN_SIZE);
+    }
+
+    @Benchmark
+    @Group("producers4")
+    @GroupThreads(4)
+    public void offer4(FifoState state, ProducerState producer) {
+        state.fifo.offer(producer.metric);
+    }
+
+    @Benchmark
+    @Group("producers4")
+    @GroupThreads(1)
+    public void drain4(FifoState state, ConsumerState consumer, Blackhole bh) {
+        drain(state, consumer, bh);
+    }
+
+    @Benchmark
+    @Group("producers1")
+    @GroupThreads(1)
+    public void offer1(FifoState state, ProducerState producer) {
+        state.fifo.offer(producer.metric);
+    }
+
+    @Benchmark
+    @Group("producers1")
+    @GroupThreads(1)
+    public void drain1(FifoState state, ConsumerState consumer, Blackhole bh) {
+        drain(state, consumer, bh);
+    }
+
+    private static void drain(FifoState state, ConsumerState consumer, Blackhole bh) {
+        consumer.batch.clear();
+        bh.consume(state.fifo.drain(consumer.batch, DRAIN_SIZE));
+    }
+
+    /**
+     * The former BoundMetricFifo implementation.
+     */
+    static class SynchronizedFifo implements Fifo {
+        private final int maxSize;
+        private final Deque<SingleMetric> contents;
+
+        SynchronizedFifo(int maxSize) {
+            this.maxSize = maxSize;
+            contents = new ArrayDeque<>(maxSize);
+        }
+
+        @Override
+        public void offer(SingleMetric metric) {
+            synchronized (this) {
+                if (contents.size() == maxSize) {
+                    contents.removeLast();
+                }
+                contents.offerFirst(metric);
+            }
+        }
+
+        @Override
+        public int drain(List<SingleMetric> batch, int maxElements) {
+            int count = 0;
+            while (count < maxElements) {
+                SingleMetric metric;
+                synchronized (this) {
+                    metric = contents.pollLast();
+                }
+                if (metric == null) {
+                    break;
+                }
+                batch.add(metric);
+                count++;
+            }
+            return count;
+        }
+    }
+}
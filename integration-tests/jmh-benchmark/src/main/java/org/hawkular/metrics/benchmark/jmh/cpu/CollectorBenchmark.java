@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.benchmark.jmh.cpu;
+
+import static java.util.stream.Collectors.toList;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.metrics.core.service.AvailabilityDataPointCollector;
+import org.hawkular.metrics.core.service.transformers.NumericDataPointCollector;
+import org.hawkular.metrics.core.service.transformers.TaggedDataPointCollector;
+import org.hawkular.metrics.model.AvailabilityBucketPoint;
+import org.hawkular.metrics.model.AvailabilityType;
+import org.hawkular.metrics.model.Buckets;
+import org.hawkular.metrics.model.DataPoint;
+import org.hawkular.metrics.model.NumericBucketPoint;
+import org.hawkular.metrics.model.Percentile;
+import org.hawkular.metrics.model.TaggedBucketPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the stats collectors, in data points per second. Each invocation fills a new collector with a bucket
+ * of data points, then computes its bucket point, like a stats query does for every bucket.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class CollectorBenchmark {
+    private static final int SAMPLES = 1000;
+    private static final long INTERVAL = 10_000;
+
+    @Param({"none", "50,90,99"})
+    public String percentiles;
+
+    private List<Percentile> percentileList;
+    private Buckets buckets;
+    private Map<String, String> tags;
+    private DataPoint<Double>[] gaugeDataPoints;
+    private DataPoint<AvailabilityType>[] availabilityDataPoints;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        percentileList = "none".equals(percentiles) ? Collections.emptyList() :
+                Arrays.stream(percentiles.split(",")).map(Percentile::new).collect(toList());
+        buckets = new Buckets(0, SAMPLES * INTERVAL, 1);
+        tags = new HashMap<>();
+        tags.put("host", "host-1");
+
+        Random random = new Random(17);
+        gaugeDataPoints = new DataPoint[SAMPLES];
+        availabilityDataPoints = new DataPoint[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            long timestamp = i * INTERVAL;
+            gaugeDataPoints[i] = new DataPoint<>(timestamp, random.nextDouble() * 100);
+            availabilityDataPoints[i] = new DataPoint<>(timestamp, random.nextInt(10) == 0 ? AvailabilityType.DOWN :
+                    AvailabilityType.UP);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public NumericBucketPoint numericDataPointCollector() {
+        NumericDataPointCollector collector = new NumericDataPointCollector(buckets, 0, percentileList);
+        for (DataPoint<Double> dataPoint : gaugeDataPoints) {
+            collector.increment(dataPoint);
+        }
+        return collector.toBucketPoint();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public TaggedBucketPoint taggedDataPointCollector() {
+        TaggedDataPointCollector collector = new TaggedDataPointCollector(tags, percentileList);
+        for (DataPoint<Double> dataPoint : gaugeDataPoints) {
+            collector.increment(dataPoint);
+        }
+        return collector.toBucketPoint();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public AvailabilityBucketPoint availabilityDataPointCollector() {
+        AvailabilityDataPointCollector collector = new AvailabilityDataPointCollector(buckets, 0);
+        for (DataPoint<AvailabilityType> dataPoint : availabilityDataPoints) {
+            collector.increment(dataPoint);
+        }
+        return collector.toBucketPoint();
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.benchmark.jmh.cpu;
+
+import static org.hawkular.metrics.model.MetricType.AVAILABILITY;
+import static org.hawkular.metrics.model.MetricType.COUNTER;
+import static org.hawkular.metrics.model.MetricType.GAUGE;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.metrics.model.AvailabilityType;
+import org.hawkular.metrics.model.DataPoint;
+import org.hawkular.metrics.model.Metric;
+import org.hawkular.metrics.model.MetricId;
+import org.hawkular.metrics.model.MetricType;
+import org.hawkular.metrics.model.MixedMetricsRequest;
+import org.hawkular.metrics.model.NumericBucketPoint;
+import org.hawkular.metrics.model.Percentile;
+import org.hawkular.metrics.model.fasterxml.jackson.AvailabilityTypeDeserializer;
+import org.hawkular.metrics.model.fasterxml.jackson.AvailabilityTypeSerializer;
+import org.hawkular.metrics.model.fasterxml.jackson.MetricTypeDeserializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+/**
+ * Jackson serialization and deserialization of the REST payloads, with the object mapper configured like the one of
+ * the JAX-RS module: a gauge with its data points, a mixed ingestion request, and the bucket points of a stats query.
+ * Generic types are resolved once, in the setup.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class SerializationBenchmark {
+
+    @Param({"1", "100"})
+    public int dataPoints;
+
+    private ObjectMapper mapper;
+    private JavaType metricType;
+    private JavaType dataPointsType;
+
+    private Metric<Double> gauge;
+    private byte[] gaugeJson;
+    private List<DataPoint<Double>> gaugeDataPoints;
+    private byte[] gaugeDataPointsJson;
+    private MixedMetricsRequest mixedRequest;
+    private byte[] mixedRequestJson;
+    private List<NumericBucketPoint> bucketPoints;
+
+    @Setup
+    public void setup() throws IOException {
+        mapper = createMapper();
+        metricType = mapper.getTypeFactory().constructType(new TypeReference<Metric<Double>>() {});
+        dataPointsType = mapper.getTypeFactory().constructType(new TypeReference<List<DataPoint<Double>>>() {});
+
+        Random random = new Random(17);
+        long now = System.currentTimeMillis();
+        Map<String, String> tags = new HashMap<>();
+        tags.put("host", "host-1");
+        tags.put("group", "group-1");
+
+        gaugeDataPoints = new ArrayList<>(dataPoints);
+        List<DataPoint<Long>> counterDataPoints = new ArrayList<>(dataPoints);
+        List<DataPoint<AvailabilityType>> availabilityDataPoints = new ArrayList<>(dataPoints);
+        for (int i = 0; i < dataPoints; i++) {
+            long timestamp = now - i * 10_000L;
+            gaugeDataPoints.add(new DataPoint<>(timestamp, random.nextDouble() * 100));
+            counterDataPoints.add(new DataPoint<>(timestamp, (long) i));
+            availabilityDataPoints.add(new DataPoint<>(timestamp, i % 10 == 0 ? AvailabilityType.DOWN :
+                    AvailabilityType.UP));
+        }
+        gauge = new Metric<>(new MetricId<>("", GAUGE, "serialization.gauge"), tags, 7, gaugeDataPoints);
+        gaugeJson = mapper.writeValueAsBytes(gauge);
+        gaugeDataPointsJson = mapper.writeValueAsBytes(gaugeDataPoints);
+
+        mixedRequest = new MixedMetricsRequest(
+                Collections.singletonList(gauge),
+                Collections.singletonList(metric(AVAILABILITY, "serialization.availability", availabilityDataPoints)),
+                Collections.singletonList(metric(COUNTER, "serialization.counter", counterDataPoints)),
+                Collections.emptyList());
+        mixedRequestJson = mapper.writeValueAsBytes(mixedRequest);
+
+        List<Percentile> percentiles = Arrays.asList(new Percentile("50", 42), new Percentile("90", 84),
+                new Percentile("99", 99));
+        bucketPoints = new ArrayList<>(dataPoints);
+        for (int i = 0; i < dataPoints; i++) {
+            long start = now + i * 60_000L;
+            bucketPoints.add(new NumericBucketPoint.Builder(start, start + 60_000)
+                    .setMin(1)
+                    .setAvg(random.nextDouble() * 100)
+                    .setMedian(50)
+                    .setMax(100)
+                    .setSum(5000)
+                    .setPercentiles(percentiles)
+                    .setSamples(100)
+                    .build());
+        }
+    }
+
+    private static <T> Metric<T> metric(MetricType<T> type, String name, List<DataPoint<T>> dataPoints) {
+        return new Metric<>(new MetricId<>("", type, name), dataPoints);
+    }
+
+    /**
+     * Same configuration as the ObjectMapperProducer of the JAX-RS module.
+     */
+    private static ObjectMapper createMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true);
+        mapper.configure(JsonParser.Feature.ALLOW_UNQUOTED_FIELD_NAMES, true);
+        mapper.setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
+        mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        mapper.configure(SerializationFeature.WRITE_EMPTY_JSON_ARRAYS, false);
+        mapper.configure(SerializationFeature.WRITE_NULL_MAP_VALUES, false);
+
+        SimpleModule module = new SimpleModule();
+        module.addDeserializer(AvailabilityType.class, new AvailabilityTypeDeserializer());
+        module.addDeserializer(MetricType.class, new MetricTypeDeserializer());
+        module.addSerializer(AvailabilityType.class, new AvailabilityTypeSerializer());
+        mapper.registerModule(module);
+        return mapper;
+    }
+
+    @Benchmark
+    public byte[] writeMetric() throws IOException {
+        return mapper.writeValueAsBytes(gauge);
+    }
+
+    @Benchmark
+    public Metric<Double> readMetric() throws IOException {
+        return mapper.readValue(gaugeJson, metricType);
+    }
+
+    @Benchmark
+    public byte[] writeDataPoints() throws IOException {
+        return mapper.writeValueAsBytes(gaugeDataPoints);
+    }
+
+    @Benchmark
+    public List<DataPoint<Double>> readDataPoints() throws IOException {
+        return mapper.readValue(gaugeDataPointsJson, dataPointsType);
+    }
+
+    @Benchmark
+    public byte[] writeMixedMetricsRequest() throws IOException {
+        return mapper.writeValueAsBytes(mixedRequest);
+    }
+
+    @Benchmark
+    public MixedMetricsRequest readMixedMetricsRequest() throws IOException {
+        return mapper.readValue(mixedRequestJson, MixedMetricsRequest.class);
+    }
+
+    @Benchmark
+    public byte[] writeNumericBucketPoints() throws IOException {
+        return mapper.writeValueAsBytes(bucketPoints);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.benchmark.jmh.cpu;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.metrics.core.service.TimeUUIDUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datastax.driver.core.utils.UUIDs;
+
+/**
+ * Conversions between timestamps and time UUIDs, done for every data point written and every row read.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class TimeUUIDBenchmark {
+
+    private long timestamp;
+    private UUID uuid;
+
+    @Setup
+    public void setup() {
+        timestamp = System.currentTimeMillis();
+        uuid = TimeUUIDUtils.getTimeUUID(timestamp);
+    }
+
+    @Benchmark
+    public UUID getTimeUUID() {
+        // Vary the input so that the result cannot be constant folded
+        return TimeUUIDUtils.getTimeUUID(timestamp++);
+    }
+
+    @Benchmark
+    public long unixTimestamp() {
+        return UUIDs.unixTimestamp(uuid);
+    }
+}
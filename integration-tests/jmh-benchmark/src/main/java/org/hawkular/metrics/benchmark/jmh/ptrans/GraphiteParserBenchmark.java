@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.benchmark.jmh.ptrans;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.metrics.clients.ptrans.backend.MetricBatch;
+import org.hawkular.metrics.clients.ptrans.graphite.GraphiteLineParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.RecordParser;
+
+/**
+ * Measures how many Graphite plaintext lines a single thread turns into event bus payloads per second. The split
+ * benchmark reproduces the original String based handling (one {@link JsonObject} per line), the other one uses the
+ * {@link GraphiteLineParser} filling {@link MetricBatch}es as the Graphite server does.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class GraphiteParserBenchmark {
+    private static final int LINES = 10_000;
+    private static final int CHUNK_SIZE = 8192;
+
+    private Buffer[] chunks;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(17);
+        StringBuilder lines = new StringBuilder();
+        long timestamp = 1400000000L;
+        for (int i = 0; i < LINES; i++) {
+            lines.append("servers.host-").append(i % 100).append(".cpu.").append(i % 8).append(".user ")
+                    .append(Math.round(random.nextDouble() * 100_000) / 1000.0).append(' ')
+                    .append(timestamp + i / 100).append('\n');
+        }
+        // Split the payload like the network would, with lines spanning buffers
+        Buffer payload = Buffer.buffer(lines.toString());
+        int count = (payload.length() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunks = new Buffer[count];
+        for (int i = 0; i < count; i++) {
+            chunks[i] = payload.getBuffer(i * CHUNK_SIZE, Math.min(payload.length(), (i + 1) * CHUNK_SIZE));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void splitAndPublishSingleMetrics(Blackhole bh) {
+        RecordParser recordParser = RecordParser.newDelimited("\n", buf -> {
+            String msg = buf.toString("UTF-8");
+            String[] items = msg.split(" ");
+            if (items.length != 3) {
+                return;
+            }
+            JsonObject metric = new JsonObject()
+                    .put("id", items[0])
+                    .put("timestamp", MILLISECONDS.convert(Long.parseLong(items[2]), SECONDS))
+                    .put("value", Double.parseDouble(items[1]));
+            bh.consume(metric);
+        });
+        for (Buffer chunk : chunks) {
+            recordParser.handle(chunk);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void parseInPlaceAndPublishBatches(Blackhole bh) {
+        MetricBatch[] batch = {new MetricBatch(1000)};
+        GraphiteLineParser parser = new GraphiteLineParser((name, timestamp, value) -> {
+            if (batch[0].add(name, timestamp, value)) {
+                bh.consume(batch[0]);
+                batch[0] = new MetricBatch(1000);
+            }
+        });
+        for (Buffer chunk : chunks) {
+            parser.handle(chunk);
+        }
+        bh.consume(batch[0]);
+    }
+}
@@ -26,4 +26,22 @@ public interface ClusterManager {
     void startCluster();
     Session createSession();
     void shutdown();
+
+    /**
+     * Creates a cluster manager by name, so that benchmarks can be parameterized over implementations.
+     *
+     * @param name {@code live}, {@code scassandra} or {@code mock}
+     */
+    static ClusterManager create(String name) {
+        switch (name) {
+            case "live":
+                return new LiveCassandraManager();
+            case "scassandra":
+                return new SCassandraManager();
+            case "mock":
+                return new MockCassandraManager();
+            default:
+                throw new IllegalArgumentException("Unknown cluster manager: " + name);
+        }
+    }
 }
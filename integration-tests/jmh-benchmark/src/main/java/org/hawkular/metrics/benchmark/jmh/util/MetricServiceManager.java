@@ -17,6 +17,7 @@
 package org.hawkular.metrics.benchmark.jmh.util;
 
 import org.hawkular.metrics.core.service.DataAccessImpl;
+import org.hawkular.metrics.core.service.InMemoryDataAccess;
 import org.hawkular.metrics.core.service.MetricsServiceImpl;
 import org.hawkular.metrics.schema.SchemaService;
 import org.hawkular.metrics.sysconfig.ConfigurationService;
@@ -45,6 +46,29 @@ public class MetricServiceManager {
         metricsService = createMetricsService(session);
     }
 
+    /**
+     * Creates a MetricsService backed by an {@link InMemoryDataAccess}, so that benchmarks measure the service layer
+     * only.
+     */
+    public MetricServiceManager() {
+        metricsService = new MetricsServiceImpl();
+        metricsService.setDataAccess(new InMemoryDataAccess());
+        metricsService.setDefaultTTL(DEFAULT_TTL);
+        metricsService.startUp(new MetricRegistry());
+    }
+
+    /**
+     * Creates a manager by name, so that benchmarks can be parameterized over storage implementations.
+     *
+     * @param name {@code memory}, or a {@link ClusterManager#create(String) cluster manager} name
+     */
+    public static MetricServiceManager create(String name) {
+        if ("memory".equals(name)) {
+            return new MetricServiceManager();
+        }
+        return new MetricServiceManager(ClusterManager.create(name));
+    }
+
     private MetricsServiceImpl createMetricsService(Session session) {
         SchemaService schemaService = new SchemaService();
         schemaService.run(session, keyspace, true);
@@ -76,6 +100,8 @@ public class MetricServiceManager {
 
     public void shutdown() {
         metricsService.shutdown();
-        manager.shutdown();
+        if (manager != null) {
+            manager.shutdown();
+        }
     }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.loadharness;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares two reports, typically of the same workload run against two builds, and prints the relative difference
+ * of throughput and latency percentiles for each operation.
+ * <p>
+ * Usage: {@code CompareReports <baseline report> <candidate report>}. When the {@code threshold} system property is
+ * set, the process exits with status 1 if the p99 latency of an operation grew by more than {@code threshold}
+ * percent, so that the comparison can fail a build.
+ */
+public class CompareReports {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: CompareReports <baseline report> <candidate report>");
+            System.exit(2);
+        }
+        String threshold = System.getProperty("threshold");
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode baseline = mapper.readTree(new File(args[0])).get("operations");
+        JsonNode candidate = mapper.readTree(new File(args[1])).get("operations");
+
+        boolean regression = false;
+        System.out.printf("%-10s %-10s %12s %12s %9s%n", "operation", "value", "baseline", "candidate", "change");
+        for (Iterator<Map.Entry<String, JsonNode>> i = baseline.fields(); i.hasNext(); ) {
+            Map.Entry<String, JsonNode> entry = i.next();
+            JsonNode before = entry.getValue();
+            JsonNode after = candidate.get(entry.getKey());
+            if (after == null) {
+                System.out.printf("%-10s missing from the candidate report%n", entry.getKey());
+                continue;
+            }
+            print(entry.getKey(), "throughput", before.get("throughput").asDouble(),
+                    after.get("throughput").asDouble());
+            print(entry.getKey(), "errors", before.get("errors").asDouble(), after.get("errors").asDouble());
+            for (String percentile : Report.PERCENTILES) {
+                print(entry.getKey(), percentile, before.get("latency").get(percentile).asDouble(),
+                        after.get("latency").get(percentile).asDouble());
+            }
+            print(entry.getKey(), "max", before.get("latency").get("max").asDouble(),
+                    after.get("latency").get("max").asDouble());
+            if (threshold != null) {
+                double p99Before = before.get("latency").get("p99").asDouble();
+                double p99After = after.get("latency").get("p99").asDouble();
+                if (change(p99Before, p99After) > Double.parseDouble(threshold)) {
+                    System.out.printf("%-10s p99 latency regression above %s%%%n", entry.getKey(), threshold);
+                    regression = true;
+                }
+            }
+        }
+        System.exit(regression ? 1 : 0);
+    }
+
+    private static void print(String operation, String name, double before, double after) {
+        System.out.printf("%-10s %-10s %12.1f %12.1f %+8.1f%%%n", operation, name, before, after,
+                change(before, after));
+    }
+
+    private static double change(double before, double after) {
+        if (before == 0) {
+            return after == 0 ? 0 : 100;
+        }
+        return (after - before) * 100 / before;
+    }
+}
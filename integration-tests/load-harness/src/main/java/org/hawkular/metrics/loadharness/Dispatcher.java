@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.loadharness;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Issues the requests of one operation at a fixed rate, whether or not previous requests have completed (open loop).
+ * <p>
+ * Each request has an intended start time on the schedule. Latency is measured from the intended start time rather
+ * than from the time the request is actually sent, so that time spent waiting for a worker thread or a connection
+ * while the server is slow is accounted for. This avoids the coordinated omission of closed loop load generators,
+ * which silently stop sending requests while the server stalls. Latencies are recorded in microseconds.
+ * <p>
+ * Only requests scheduled after the warmup period are measured. Failed requests, either non 2xx responses, I/O
+ * errors or requests still pending when the results are collected, are counted separately and not recorded in the
+ * histogram.
+ */
+final class Dispatcher implements Runnable {
+    private static final long HIGHEST_TRACKABLE_LATENCY = HOURS.toMicros(1);
+
+    private final Operation operation;
+    private final double rate;
+    private final Workload workload;
+    private final RestClient client;
+    private final Executor executor;
+    private final Random random;
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_LATENCY, 3);
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong pending = new AtomicLong();
+
+    private volatile long measureStart;
+    private volatile long measureEnd;
+
+    Dispatcher(Operation operation, double rate, Workload workload, RestClient client, Executor executor,
+            long seed) {
+        this.operation = operation;
+        this.rate = rate;
+        this.workload = workload;
+        this.client = client;
+        this.executor = executor;
+        this.random = new Random(seed);
+    }
+
+    Operation getOperation() {
+        return operation;
+    }
+
+    double getRate() {
+        return rate;
+    }
+
+    /**
+     * Schedules the measured period. Must be called before the dispatcher is started.
+     *
+     * @param measureStart start of the measured period, as a {@link System#nanoTime()} value
+     * @param measureEnd   end of the measured period and of the run, as a {@link System#nanoTime()} value
+     */
+    void schedule(long measureStart, long measureEnd) {
+        this.measureStart = measureStart;
+        this.measureEnd = measureEnd;
+    }
+
+    @Override
+    public void run() {
+        long interval = (long) (SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        long startMillis = System.currentTimeMillis();
+        for (long i = 0; !Thread.currentThread().isInterrupted(); i++) {
+            long intended = start + i * interval;
+            if (intended - measureEnd >= 0) {
+                return;
+            }
+            long delay;
+            while ((delay = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            long timestamp = startMillis + NANOSECONDS.toMillis(intended - start);
+            Request request = workload.next(operation, random, timestamp);
+            boolean measured = intended - measureStart >= 0;
+            if (measured) {
+                pending.incrementAndGet();
+            }
+            try {
+                executor.execute(() -> execute(request, intended, measured));
+            } catch (RejectedExecutionException e) {
+                return;
+            }
+        }
+    }
+
+    private void execute(Request request, long intended, boolean measured) {
+        boolean success;
+        try {
+            int status = client.execute(request);
+            success = status >= 200 && status < 300;
+        } catch (IOException e) {
+            success = false;
+        }
+        long latency = System.nanoTime() - intended;
+        if (!measured) {
+            return;
+        }
+        pending.decrementAndGet();
+        if (success) {
+            recorder.recordValue(Math.min(NANOSECONDS.toMicros(latency), HIGHEST_TRACKABLE_LATENCY));
+        } else {
+            errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the latencies of the successful measured requests
+     */
+    Histogram getHistogram() {
+        return recorder.getIntervalHistogram();
+    }
+
+    /**
+     * @return the number of failed measured requests, including those which have not completed yet
+     */
+    long getErrors() {
+        return errors.get() + pending.get();
+    }
+}
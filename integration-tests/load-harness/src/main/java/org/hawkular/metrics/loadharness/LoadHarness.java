@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.loadharness;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Drives a mixed ingestion and query workload against a Hawkular Metrics server and writes a latency report.
+ * <p>
+ * A run goes through these steps:
+ * <ol>
+ *     <li>wait for the metrics service to be started</li>
+ *     <li>create the metrics of every tenant, with their tags, and store {@code history} minutes of data</li>
+ *     <li>start one {@link Dispatcher} per operation and run the workload for {@code warmup} seconds, then for
+ *     {@code duration} measured seconds</li>
+ *     <li>print a summary and write the {@link Report} to the {@code report} file</li>
+ * </ol>
+ * Options are set with system properties, see the README.
+ */
+public class LoadHarness {
+    private static final long SERVICE_TIMEOUT = MINUTES.toMillis(5);
+    private static final long TERMINATION_TIMEOUT = 60;
+
+    private final Options options;
+    private final RestClient client;
+    private final Workload workload;
+
+    LoadHarness(Options options) {
+        this.options = options;
+        this.client = new RestClient(options.baseURI);
+        this.workload = new Workload(options);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.fromSystemProperties();
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", String.valueOf(options.threads));
+        }
+        new LoadHarness(options).run();
+    }
+
+    void run() throws Exception {
+        waitForService();
+        ExecutorService workers = Executors.newFixedThreadPool(options.threads);
+        try {
+            setUp(workers);
+            Report report = runWorkload(workers);
+            System.out.print(report);
+            File file = new File(options.report);
+            report.write(file);
+            System.out.println("Report written to " + file.getAbsolutePath());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void waitForService() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        long deadline = System.currentTimeMillis() + SERVICE_TIMEOUT;
+        while (true) {
+            try {
+                byte[] body = client.fetch(Request.get(workload.tenant(0), "/status"));
+                if (body != null) {
+                    JsonNode status = mapper.readTree(body).get("MetricsService");
+                    if (status != null && "STARTED".equals(status.asText())) {
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                // Not deployed yet
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Metrics service at " + options.baseURI + " did not start");
+            }
+            Thread.sleep(1000);
+        }
+    }
+
+    private void setUp(ExecutorService workers) throws Exception {
+        System.out.printf("Creating %d metrics for each of the %d tenants%n", options.hosts * options.metrics,
+                options.tenants);
+        List<Request> requests = new ArrayList<>();
+        for (int tenant = 0; tenant < options.tenants; tenant++) {
+            requests.addAll(workload.definitions(tenant));
+        }
+        executeAll(workers, requests);
+
+        if (options.history == 0) {
+            return;
+        }
+        System.out.printf("Storing %d minutes of history%n", options.history);
+        long end = System.currentTimeMillis();
+        long start = end - MINUTES.toMillis(options.history);
+        requests.clear();
+        for (int tenant = 0; tenant < options.tenants; tenant++) {
+            for (int host = 0; host < options.hosts; host++) {
+                requests.add(workload.history(tenant, host, start, end));
+            }
+        }
+        executeAll(workers, requests);
+    }
+
+    private void executeAll(ExecutorService workers, List<Request> requests) throws Exception {
+        List<Future<Integer>> results = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            results.add(workers.submit(() -> client.execute(request)));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            int status;
+            try {
+                status = results.get(i).get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Request " + requests.get(i) + " failed", e.getCause());
+            }
+            // Metrics already exist when the harness is run twice against the same server
+            if ((status < 200 || status >= 300) && status != 409) {
+                throw new IllegalStateException("Request " + requests.get(i) + " failed with status " + status);
+            }
+        }
+    }
+
+    private Report runWorkload(ExecutorService workers) throws Exception {
+        List<Dispatcher> dispatchers = new ArrayList<>();
+        for (Operation operation : Operation.values()) {
+            double rate = options.rate(operation);
+            if (rate > 0) {
+                dispatchers.add(new Dispatcher(operation, rate, workload, client, workers,
+                        options.seed + operation.ordinal()));
+            }
+        }
+        System.out.printf("Running for %d seconds of warmup and %d measured seconds%n", options.warmup,
+                options.duration);
+        long measureStart = System.nanoTime() + SECONDS.toNanos(options.warmup);
+        long measureEnd = measureStart + SECONDS.toNanos(options.duration);
+        List<Thread> threads = new ArrayList<>(dispatchers.size());
+        for (Dispatcher dispatcher : dispatchers) {
+            dispatcher.schedule(measureStart, measureEnd);
+            Thread thread = new Thread(dispatcher, "dispatcher-" + dispatcher.getOperation().getText());
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        workers.shutdown();
+        if (!workers.awaitTermination(TERMINATION_TIMEOUT, SECONDS)) {
+            System.out.println("Some requests did not complete, the server cannot sustain the requested rates");
+        }
+
+        Report report = new Report(options, System.currentTimeMillis());
+        for (Dispatcher dispatcher : dispatchers) {
+            report.add(dispatcher.getOperation(), dispatcher.getRate(), dispatcher.getHistogram(),
+                    dispatcher.getErrors(), options.duration);
+        }
+        return report;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.loadharness;
+
+/**
+ * The requests issued by the harness. Each operation gets its own latency histogram in the report.
+ */
+enum Operation {
+    /**
+     * An agent reporting the current value of all the metrics of a host, {@code POST /metrics/raw}.
+     */
+    INGEST("ingest"),
+    /**
+     * The raw data of a single metric over the last hour, {@code GET /gauges/{id}/raw}.
+     */
+    RAW("raw"),
+    /**
+     * A dashboard chart of a single metric, {@code GET /gauges/{id}/stats}.
+     */
+    STATS("stats"),
+    /**
+     * A dashboard chart aggregating a metric over a group of hosts, {@code GET /gauges/stats?tags=...}.
+     */
+    TAG_STATS("tagStats"),
+    /**
+     * Lookup of the metrics of a host, {@code GET /metrics?tags=...}.
+     */
+    FIND("find");
+
+    private final String text;
+
+    Operation(String text) {
+        this.text = text;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public static Operation fromText(String text) {
+        for (Operation operation : values()) {
+            if (operation.text.equals(text)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation: " + text);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.loadharness;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Harness options, read from system properties. See the README for a description of each option.
+ */
+final class Options {
+    final String baseURI;
+    final String tenantPrefix;
+    final int tenants;
+    final int hosts;
+    final int metrics;
+    final int groups;
+    final long history;
+    final long warmup;
+    final long duration;
+    final double ingestRate;
+    final double queryRate;
+    final Map<Operation, Double> mix;
+    final int threads;
+    final long seed;
+    final String report;
+    final String label;
+
+    private Options() {
+        baseURI = System.getProperty("baseURI", "http://localhost:8080/hawkular/metrics");
+        tenantPrefix = System.getProperty("tenantPrefix", "load-");
+        tenants = Integer.getInteger("tenants", 5);
+        hosts = Integer.getInteger("hosts", 20);
+        metrics = Integer.getInteger("metrics", 20);
+        groups = Integer.getInteger("groups", 4);
+        history = Long.getLong("history", 360);
+        warmup = Long.getLong("warmup", 30);
+        duration = Long.getLong("duration", 120);
+        ingestRate = Double.parseDouble(System.getProperty("ingestRate", "50"));
+        queryRate = Double.parseDouble(System.getProperty("queryRate", "20"));
+        mix = parseMix(System.getProperty("mix", "raw:2,stats:4,tagStats:2,find:1"));
+        threads = Integer.getInteger("threads", 64);
+        seed = Long.getLong("seed", 42);
+        report = System.getProperty("report", "load-report.json");
+        label = System.getProperty("label", "");
+        if (tenants < 1 || hosts < 1 || metrics < 1 || groups < 1 || threads < 1) {
+            throw new IllegalArgumentException("tenants, hosts, metrics, groups and threads must be positive");
+        }
+        if (duration < 1 || warmup < 0 || history < 0 || ingestRate < 0 || queryRate < 0) {
+            throw new IllegalArgumentException("Invalid duration, warmup, history or rate");
+        }
+    }
+
+    static Options fromSystemProperties() {
+        return new Options();
+    }
+
+    /**
+     * @return the rate of the operation, in requests per second
+     */
+    double rate(Operation operation) {
+        if (operation == Operation.INGEST) {
+            return ingestRate;
+        }
+        Double weight = mix.get(operation);
+        if (weight == null) {
+            return 0;
+        }
+        double total = mix.values().stream().mapToDouble(Double::doubleValue).sum();
+        return total == 0 ? 0 : queryRate * weight / total;
+    }
+
+    private static Map<Operation, Double> parseMix(String value) {
+        Map<Operation, Double> mix = new EnumMap<>(Operation.class);
+        for (String entry : value.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid mix entry: " + entry);
+            }
+            Operation operation = Operation.fromText(parts[0].trim());
+            if (operation == Operation.INGEST) {
+                throw new IllegalArgumentException("The ingest rate is set with ingestRate");
+            }
+            double weight = Double.parseDouble(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Invalid mix entry: " + entry);
+            }
+            mix.put(operation, weight);
+        }
+        return mix;
+    }
+}
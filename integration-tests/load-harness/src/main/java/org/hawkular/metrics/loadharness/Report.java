@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.loadharness;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * The machine readable result of a run. The report is a JSON document:
+ * <pre>
+ * {
+ *   "label": "...",
+ *   "timestamp": 1461000000000,
+ *   "options": { "tenants": 5, ... },
+ *   "operations": {
+ *     "stats": {
+ *       "rate": 8.9, "requests": 1068, "errors": 0, "throughput": 8.9,
+ *       "latency": { "mean": 2310.5, "p50": 2015, "p90": 3411, "p99": 7203, "p99.9": 12015, "max": 13107 },
+ *       "histogram": "HISTFAAAA..."
+ *     }
+ *   }
+ * }
+ * </pre>
+ * Latencies are in microseconds. The histogram is the base64 encoding of the compressed HdrHistogram, which can be
+ * decoded with {@link Histogram#decodeFromCompressedByteBuffer(ByteBuffer, long)} for further analysis, e.g. with
+ * HistogramLogAnalyzer.
+ */
+final class Report {
+    static final String[] PERCENTILES = {"p50", "p90", "p99", "p99.9"};
+    private static final double[] PERCENTILE_VALUES = {50, 90, 99, 99.9};
+
+    private final Map<String, Object> content = new LinkedHashMap<>();
+    private final Map<String, Object> operations = new LinkedHashMap<>();
+
+    Report(Options options, long timestamp) {
+        content.put("label", options.label);
+        content.put("timestamp", timestamp);
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("tenants", options.tenants);
+        settings.put("hosts", options.hosts);
+        settings.put("metrics", options.metrics);
+        settings.put("groups", options.groups);
+        settings.put("history", options.history);
+        settings.put("warmup", options.warmup);
+        settings.put("duration", options.duration);
+        settings.put("ingestRate", options.ingestRate);
+        settings.put("queryRate", options.queryRate);
+        settings.put("threads", options.threads);
+        settings.put("seed", options.seed);
+        content.put("options", settings);
+        content.put("operations", operations);
+    }
+
+    void add(Operation operation, double rate, Histogram histogram, long errors, long duration) {
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("mean", histogram.getTotalCount() == 0 ? 0 : histogram.getMean());
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            latency.put(PERCENTILES[i], histogram.getValueAtPercentile(PERCENTILE_VALUES[i]));
+        }
+        latency.put("max", histogram.getMaxValue());
+
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        byte[] encoded = Arrays.copyOf(buffer.array(), length);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("rate", rate);
+        result.put("requests", histogram.getTotalCount() + errors);
+        result.put("errors", errors);
+        result.put("throughput", (double) histogram.getTotalCount() / duration);
+        result.put("latency", latency);
+        result.put("histogram", Base64.getEncoder().encodeToString(encoded));
+        operations.put(operation.getText(), result);
+    }
+
+    void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, content);
+    }
+
+    /**
+     * @return a human readable summary, one line per operation
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public String toString() {
+        StringBuilder summary = new StringBuilder(String.format("%-10s %8s %8s %8s %10s %10s %10s %10s %10s%n",
+                "operation", "rate", "requests", "errors", "p50(us)", "p90(us)", "p99(us)", "p99.9(us)",
+                "max(us)"));
+        operations.forEach((name, value) -> {
+            Map<String, Object> result = (Map<String, Object>) value;
+            Map<String, Object> latency = (Map<String, Object>) result.get("latency");
+            summary.append(String.format("%-10s %8.1f %8d %8d %10d %10d %10d %10d %10d%n", name, result.get("rate"),
+                    result.get("requests"), result.get("errors"), latency.get("p50"), latency.get("p90"),
+                    latency.get("p99"), latency.get("p99.9"), latency.get("max")));
+        });
+        return summary.toString();
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.loadharness;
+
+/**
+ * A request to the REST interface. The path is relative to the base URI and includes the query string.
+ */
+final class Request {
+    final String method;
+    final String tenant;
+    final String path;
+    final byte[] body;
+
+    Request(String method, String tenant, String path, byte[] body) {
+        this.method = method;
+        this.tenant = tenant;
+        this.path = path;
+        this.body = body;
+    }
+
+    static Request get(String tenant, String path) {
+        return new Request("GET", tenant, path, null);
+    }
+
+    static Request post(String tenant, String path, byte[] body) {
+        return new Request("POST", tenant, path, body);
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + path + " (" + tenant + ")";
+    }
+}
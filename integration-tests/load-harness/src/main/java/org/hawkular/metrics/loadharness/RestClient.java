@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.loadharness;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * A minimal blocking HTTP client. It relies on the keep-alive connection cache of {@link HttpURLConnection}, so
+ * response bodies are always read to the end. The size of the cache is set with the {@code http.maxConnections}
+ * system property.
+ */
+final class RestClient {
+    private static final int TIMEOUT = 60_000;
+
+    private final String baseURI;
+
+    RestClient(String baseURI) {
+        this.baseURI = baseURI.endsWith("/") ? baseURI.substring(0, baseURI.length() - 1) : baseURI;
+    }
+
+    /**
+     * @return the response status code
+     * @throws IOException if the request could not be sent or the response could not be read
+     */
+    int execute(Request request) throws IOException {
+        HttpURLConnection connection = send(request);
+        int status = connection.getResponseCode();
+        read(connection, status, null);
+        return status;
+    }
+
+    /**
+     * @return the response body, or null if the response status is not 200
+     * @throws IOException if the request could not be sent or the response could not be read
+     */
+    byte[] fetch(Request request) throws IOException {
+        HttpURLConnection connection = send(request);
+        int status = connection.getResponseCode();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        read(connection, status, body);
+        return status == 200 ? body.toByteArray() : null;
+    }
+
+    private HttpURLConnection send(Request request) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseURI + request.path).openConnection();
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        connection.setRequestMethod(request.method);
+        connection.setRequestProperty("Accept", "application/json");
+        connection.setRequestProperty("Hawkular-Tenant", request.tenant);
+        if (request.body != null) {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(request.body.length);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(request.body);
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Reads the response body to the end, so that the connection can be reused.
+     */
+    private static void read(HttpURLConnection connection, int status, OutputStream out) throws IOException {
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in == null) {
+            return;
+        }
+        try (InputStream body = in) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = body.read(buffer)) >= 0) {
+                if (out != null) {
+                    out.write(buffer, 0, read);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2014-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.metrics.loadharness;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Models the data set and the requests of a monitoring system: each tenant has {@code hosts} hosts, split into
+ * {@code groups} groups, and each host reports the same {@code metrics} gauges. Metrics are tagged with
+ * {@code hostname}, {@code group} and {@code metric}, so the tag cardinality is set by the number of hosts, groups and
+ * metrics.
+ * <p>
+ * Agents report all the metrics of a host at once. Dashboards chart single metrics or a metric aggregated over a
+ * group, look up the metrics of a host and sometimes display raw data. Values follow a daily-like wave with some noise
+ * so that stats are not degenerate.
+ */
+final class Workload {
+    static final long RAW_RANGE = HOURS.toMillis(1);
+    static final long CHART_RANGE = HOURS.toMillis(6);
+    static final int CHART_BUCKETS = 60;
+    static final long HISTORY_INTERVAL = MINUTES.toMillis(1);
+
+    private final Options options;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    Workload(Options options) {
+        this.options = options;
+    }
+
+    String tenant(int tenant) {
+        return options.tenantPrefix + tenant;
+    }
+
+    static String host(int host) {
+        return "host-" + host;
+    }
+
+    static String metric(int metric) {
+        return "metric-" + metric;
+    }
+
+    String group(int host) {
+        return "group-" + host % options.groups;
+    }
+
+    static String metricId(int host, int metric) {
+        return host(host) + "." + metric(metric);
+    }
+
+    /**
+     * @return the requests creating all the metrics of a tenant along with their tags
+     */
+    List<Request> definitions(int tenant) {
+        List<Request> requests = new ArrayList<>(options.hosts * options.metrics);
+        for (int host = 0; host < options.hosts; host++) {
+            for (int metric = 0; metric < options.metrics; metric++) {
+                Map<String, String> tags = new HashMap<>();
+                tags.put("hostname", host(host));
+                tags.put("group", group(host));
+                tags.put("metric", metric(metric));
+                Map<String, Object> definition = new HashMap<>();
+                definition.put("id", metricId(host, metric));
+                definition.put("tags", tags);
+                requests.add(Request.post(tenant(tenant), "/gauges", toJson(definition)));
+            }
+        }
+        return requests;
+    }
+
+    /**
+     * @return a request storing the data points of all the metrics of a host, from {@code start} (inclusive) to
+     * {@code end} (exclusive), one point per {@link #HISTORY_INTERVAL}
+     */
+    Request history(int tenant, int host, long start, long end) {
+        List<Object> gauges = new ArrayList<>(options.metrics);
+        for (int metric = 0; metric < options.metrics; metric++) {
+            List<Object> data = new ArrayList<>();
+            for (long timestamp = start; timestamp < end; timestamp += HISTORY_INTERVAL) {
+                data.add(dataPoint(metric, timestamp));
+            }
+            gauges.add(gauge(host, metric, data));
+        }
+        return Request.post(tenant(tenant), "/metrics/raw", toJson(mixedMetrics(gauges)));
+    }
+
+    /**
+     * @param random the source of the tenant, host and metric selection
+     * @param now    the intended start time of the request, in milliseconds
+     */
+    Request next(Operation operation, Random random, long now) {
+        String tenant = tenant(random.nextInt(options.tenants));
+        int host = random.nextInt(options.hosts);
+        int metric = random.nextInt(options.metrics);
+        switch (operation) {
+            case INGEST:
+                List<Object> gauges = new ArrayList<>(options.metrics);
+                for (int i = 0; i < options.metrics; i++) {
+                    List<Object> data = new ArrayList<>(1);
+                    data.add(dataPoint(i, now));
+                    gauges.add(gauge(host, i, data));
+                }
+                return Request.post(tenant, "/metrics/raw", toJson(mixedMetrics(gauges)));
+            case RAW:
+                return Request.get(tenant, "/gauges/" + metricId(host, metric) + "/raw?start=" + (now - RAW_RANGE)
+                        + "&end=" + now);
+            case STATS:
+                return Request.get(tenant, "/gauges/" + metricId(host, metric) + "/stats?start="
+                        + (now - CHART_RANGE) + "&end=" + now + "&buckets=" + CHART_BUCKETS + "&percentiles=95");
+            case TAG_STATS:
+                return Request.get(tenant, "/gauges/stats?tags=" + encode("group:" + group(host) + ",metric:"
+                        + metric(metric)) + "&start=" + (now - CHART_RANGE) + "&end=" + now + "&buckets="
+                        + CHART_BUCKETS);
+            case FIND:
+                return Request.get(tenant, "/metrics?type=gauge&tags=" + encode("hostname:" + host(host)));
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+    }
+
+    private static Map<String, Object> mixedMetrics(List<Object> gauges) {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("gauges", gauges);
+        return metrics;
+    }
+
+    private static Map<String, Object> gauge(int host, int metric, List<Object> data) {
+        Map<String, Object> gauge = new HashMap<>();
+        gauge.put("id", metricId(host, metric));
+        gauge.put("data", data);
+        return gauge;
+    }
+
+    private static Map<String, Object> dataPoint(int metric, long timestamp) {
+        double phase = 2 * Math.PI * metric / 24;
+        double wave = Math.sin(2 * Math.PI * timestamp / HOURS.toMillis(24) + phase);
+        double value = 50 + 40 * wave + ThreadLocalRandom.current().nextGaussian() * 5;
+        Map<String, Object> dataPoint = new HashMap<>();
+        dataPoint.put("timestamp", timestamp);
+        dataPoint.put("value", value);
+        return dataPoint;
+    }
+
+    private byte[] toJson(Object value) {
+        try {
+            return mapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}